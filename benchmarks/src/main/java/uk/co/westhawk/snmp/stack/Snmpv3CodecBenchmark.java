@@ -0,0 +1,147 @@
+package uk.co.westhawk.snmp.stack;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub, Westhawk
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the SNMPv3 message codec: {@link AsnEncoderv3} and
+ * {@link AsnDecoderv3}, end to end, for each security level and for
+ * response PDUs of realistic sizes (one varbind, a small table row and a
+ * bulk response of 25 interface descriptions). Authentication uses
+ * HMAC-SHA-256, privacy AES-128.
+ *
+ * <p>
+ * The context never sends anything; it only provides the USM user, the
+ * message size and the port under which the local engine ID of the
+ * decoder is registered. Decoding works on a copy of the message, the
+ * way the context does, so the copy is part of the measure.
+ * </p>
+ *
+ * <p>
+ * Run with <code>-prof gc</code> to get the allocation rate per operation.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Snmpv3CodecBenchmark {
+
+    @Param({ "noAuthNoPriv", "authNoPriv", "authPriv" })
+    public String securityLevel;
+
+    @Param({ "1", "10", "25" })
+    public int varbinds;
+
+    private final SnmpEngineId engineId = SnmpEngineId.fromHexString("80001f8880aabbccdd00112233");
+
+    private SnmpContextv3 context;
+    private TimeWindowNode node;
+    private Vector<varbind> response;
+    private byte[] message;
+
+    @Setup
+    public void setup() throws IOException, PduException {
+        context = new SnmpContextv3("localhost", 16161);
+        context.setUserName("benchmark");
+        if (securityLevel.equals("noAuthNoPriv") == false) {
+            context.setUseAuthentication(true);
+            context.setAuthenticationProtocol(SnmpContextv3Face.SHA256_PROTOCOL);
+            context.setUserAuthenticationPassword("maplesyrup");
+        }
+        if (securityLevel.equals("authPriv")) {
+            context.setUsePrivacy(true);
+            context.setPrivacyProtocol(SnmpContextv3Face.AES_ENCRYPT);
+            context.setUserPrivacyPassword("maplesyrup");
+        }
+
+        // Registers the engine as the local (authoritative) one, as an
+        // agent would, so the decoder accepts its engine ID
+        TimeWindow timeWindow = TimeWindow.getCurrent();
+        timeWindow.setSnmpEngineId(new SnmpEngineAddress(UsmAgent.MYFAKEHOSTNAME, context.getPort()), engineId);
+        timeWindow.updateTimeWindow(engineId, 3, 1234, true);
+        node = timeWindow.getTimeLine(engineId);
+
+        response = new Vector<varbind>(varbinds);
+        for (int i = 1; i <= varbinds; i++) {
+            response.add(new varbind("1.3.6.1.2.1.2.2.1.2." + i,
+                    new AsnOctets("GigabitEthernet0/" + i + " uplink")));
+        }
+        message = encode();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.destroy();
+    }
+
+    /**
+     * Encodes the response.
+     */
+    @Benchmark
+    public byte[] encode() throws IOException, EncodingException {
+        return new AsnEncoderv3().EncodeSNMPv3(context, 1, node, SnmpConstants.GET_RSP_MSG, 1, 0, 0,
+                response.elements());
+    }
+
+    /**
+     * Decodes, checks the authentication of and decrypts the response.
+     */
+    @Benchmark
+    public AsnPduSequence decode() throws IOException, DecodingException {
+        return decode(message);
+    }
+
+    /**
+     * Encodes and decodes the response.
+     */
+    @Benchmark
+    public AsnPduSequence roundTrip() throws IOException, EncodingException, DecodingException {
+        return decode(encode());
+    }
+
+    private AsnPduSequence decode(byte[] bytes) throws IOException, DecodingException {
+        AsnDecoderv3 decoder = new AsnDecoderv3();
+        AsnSequence top = decoder.DecodeSNMPv3(new ByteArrayInputStream(bytes));
+        return decoder.processSNMPv3(context, top, bytes.clone(), true);
+    }
+}
@@ -0,0 +1,120 @@
+package uk.co.westhawk.snmp.util;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub, Westhawk
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the HMAC that authenticates every SNMPv3 message, with
+ * each authentication protocol, over messages of typical sizes: a small
+ * request, the minimum message size every agent must accept (484 bytes)
+ * and a full Ethernet datagram.
+ *
+ * <p>
+ * Run with <code>-prof gc</code> to get the allocation rate per operation.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FingerprintBenchmark {
+
+    @Param({ "MD5", "SHA1", "SHA224", "SHA256", "SHA384", "SHA512" })
+    public String protocol;
+
+    @Param({ "100", "484", "1472" })
+    public int messageSize;
+
+    private byte[] key;
+    private byte[] message;
+
+    @Setup
+    public void setup() {
+        byte[] engineId = SnmpUtilities.toBytes("80001f8880aabbccdd00112233");
+        String password = "maplesyrup";
+        switch (protocol) {
+            case "MD5":
+                key = SnmpUtilities.getLocalizedKeyMD5(SnmpUtilities.passwordToKeyMD5(password), engineId);
+                break;
+            case "SHA1":
+                key = SnmpUtilities.getLocalizedKeySHA1(SnmpUtilities.passwordToKeySHA1(password), engineId);
+                break;
+            case "SHA224":
+                key = SnmpUtilities.getLocalizedKeySHA224(SnmpUtilities.passwordToKeySHA224(password), engineId);
+                break;
+            case "SHA256":
+                key = SnmpUtilities.getLocalizedKeySHA256(SnmpUtilities.passwordToKeySHA256(password), engineId);
+                break;
+            case "SHA384":
+                key = SnmpUtilities.getLocalizedKeySHA384(SnmpUtilities.passwordToKeySHA384(password), engineId);
+                break;
+            case "SHA512":
+                key = SnmpUtilities.getLocalizedKeySHA512(SnmpUtilities.passwordToKeySHA512(password), engineId);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown protocol " + protocol);
+        }
+        message = new byte[messageSize];
+        for (int i = 0; i < messageSize; i++) {
+            message[i] = (byte) i;
+        }
+    }
+
+    /**
+     * Computes the fingerprint of the message.
+     */
+    @Benchmark
+    public byte[] fingerprint() {
+        switch (protocol) {
+            case "MD5":
+                return SnmpUtilities.getFingerPrintMD5(key, message);
+            case "SHA1":
+                return SnmpUtilities.getFingerPrintSHA1(key, message);
+            case "SHA224":
+                return SnmpUtilities.getFingerPrintSHA224(key, message);
+            case "SHA256":
+                return SnmpUtilities.getFingerPrintSHA256(key, message);
+            case "SHA384":
+                return SnmpUtilities.getFingerPrintSHA384(key, message);
+            case "SHA512":
+                return SnmpUtilities.getFingerPrintSHA512(key, message);
+            default:
+                throw new IllegalArgumentException("Unknown protocol " + protocol);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package uk.co.westhawk.snmp.util;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub, Westhawk
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import uk.co.westhawk.snmp.stack.DecodingException;
+import uk.co.westhawk.snmp.stack.EncodingException;
+import uk.co.westhawk.snmp.stack.SnmpContextv3Face;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the USM privacy protocols: CBC-DES (RFC 3414) and CFB-AES
+ * with 128 bits (RFC 3826), 192 and 256 bits keys, encrypting and
+ * decrypting scoped PDUs of typical sizes.
+ *
+ * <p>
+ * Run with <code>-prof gc</code> to get the allocation rate per operation.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrivacyBenchmark {
+
+    @Param({ "DES", "AES128", "AES192", "AES256" })
+    public String protocol;
+
+    @Param({ "64", "512", "1408" })
+    public int scopedPduSize;
+
+    private final int engineBoots = 12;
+    private final int engineTime = 34567;
+
+    private int aesVersion;
+    private byte[] key;
+    private byte[] salt;
+    private byte[] plaintext;
+    private byte[] ciphertext;
+
+    @Setup
+    public void setup() throws EncodingException {
+        byte[] engineId = SnmpUtilities.toBytes("80001f8880aabbccdd00112233");
+        // a SHA-512 localized key is long enough for every protocol
+        key = SnmpUtilities.getLocalizedKeySHA512(SnmpUtilities.passwordToKeySHA512("maplesyrup"), engineId);
+        plaintext = new byte[scopedPduSize];
+        for (int i = 0; i < scopedPduSize; i++) {
+            plaintext[i] = (byte) i;
+        }
+
+        if (protocol.equals("DES")) {
+            salt = SnmpUtilities.getSaltDES(engineBoots);
+            ciphertext = SnmpUtilities.DESencrypt(plaintext, key, salt);
+        } else {
+            if (protocol.equals("AES128")) {
+                aesVersion = SnmpContextv3Face.AES_ENCRYPT;
+            } else if (protocol.equals("AES192")) {
+                aesVersion = SnmpContextv3Face.AES192_ENCRYPT;
+            } else if (protocol.equals("AES256")) {
+                aesVersion = SnmpContextv3Face.AES256_ENCRYPT;
+            } else {
+                throw new IllegalArgumentException("Unknown protocol " + protocol);
+            }
+            salt = SnmpUtilities.getSaltAES();
+            ciphertext = SnmpUtilities.AESencrypt(plaintext, key, engineBoots, engineTime, salt, aesVersion);
+        }
+    }
+
+    /**
+     * Encrypts the scoped PDU.
+     */
+    @Benchmark
+    public byte[] encrypt() throws EncodingException {
+        if (aesVersion == 0) {
+            return SnmpUtilities.DESencrypt(plaintext, key, salt);
+        }
+        return SnmpUtilities.AESencrypt(plaintext, key, engineBoots, engineTime, salt, aesVersion);
+    }
+
+    /**
+     * Decrypts the scoped PDU.
+     */
+    @Benchmark
+    public byte[] decrypt() throws DecodingException {
+        if (aesVersion == 0) {
+            return SnmpUtilities.DESdecrypt(ciphertext, salt, key);
+        }
+        return SnmpUtilities.AESdecrypt(ciphertext, key, engineBoots, engineTime, salt, aesVersion);
+    }
+}
@@ -0,0 +1,114 @@
+package uk.co.westhawk.snmp.util;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub, Westhawk
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the USM key derivation of RFC 3414 (section A.2) and its
+ * SHA-2 variants of RFC 7860: the password to key algorithm, that hashes
+ * one megabyte of repeated password, and the localization of the
+ * resulting key with an engine ID.
+ *
+ * <p>
+ * Run with <code>-prof gc</code> to get the allocation rate per operation.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UsmKeyBenchmark {
+
+    @Param({ "MD5", "SHA1", "SHA224", "SHA256", "SHA384", "SHA512" })
+    public String protocol;
+
+    private final String password = "maplesyrup";
+    private final byte[] engineId = SnmpUtilities.toBytes("80001f8880aabbccdd00112233");
+    private byte[] passwordKey;
+
+    @Setup
+    public void setup() {
+        passwordKey = passwordToKey();
+    }
+
+    /**
+     * Turns the password into a (non localized) key.
+     */
+    @Benchmark
+    public byte[] passwordToKey() {
+        switch (protocol) {
+            case "MD5":
+                return SnmpUtilities.passwordToKeyMD5(password);
+            case "SHA1":
+                return SnmpUtilities.passwordToKeySHA1(password);
+            case "SHA224":
+                return SnmpUtilities.passwordToKeySHA224(password);
+            case "SHA256":
+                return SnmpUtilities.passwordToKeySHA256(password);
+            case "SHA384":
+                return SnmpUtilities.passwordToKeySHA384(password);
+            case "SHA512":
+                return SnmpUtilities.passwordToKeySHA512(password);
+            default:
+                throw new IllegalArgumentException("Unknown protocol " + protocol);
+        }
+    }
+
+    /**
+     * Localizes the password key with the engine ID.
+     */
+    @Benchmark
+    public byte[] localizeKey() {
+        switch (protocol) {
+            case "MD5":
+                return SnmpUtilities.getLocalizedKeyMD5(passwordKey, engineId);
+            case "SHA1":
+                return SnmpUtilities.getLocalizedKeySHA1(passwordKey, engineId);
+            case "SHA224":
+                return SnmpUtilities.getLocalizedKeySHA224(passwordKey, engineId);
+            case "SHA256":
+                return SnmpUtilities.getLocalizedKeySHA256(passwordKey, engineId);
+            case "SHA384":
+                return SnmpUtilities.getLocalizedKeySHA384(passwordKey, engineId);
+            case "SHA512":
+                return SnmpUtilities.getLocalizedKeySHA512(passwordKey, engineId);
+            default:
+                throw new IllegalArgumentException("Unknown protocol " + protocol);
+        }
+    }
+}
@@ -0,0 +1,411 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.co.westhawk.snmp.stack.AsnObjectId;
+
+/**
+ * {@link ISnmpClient} that answers from a {@link SnmpResponseCache} shared with
+ * other clients, and asks the client it wraps only for the responses that are
+ * not in the cache, or expired. While a request is in flight, the other
+ * clients of the cache that need the same response wait for it, rather than
+ * sending the request again.
+ * <p>
+ * A walk with a visitor that joins the same walk in flight does not stream:
+ * its visitor gets the results only once the whole walk is over, replayed from
+ * the results of the walk in flight, and all at once. When that walk ends
+ * early, e.g. stopped by its visitor or truncated, or is not recorded, because
+ * its TTL is 0 or it does not fit in the cache, the waiting walk is sent again
+ * instead.
+ * <p>
+ * Partial results ({@link SnmpClient#isTruncated()}), walks stopped by their
+ * visitor, and errors are not cached. The OIDs that a multi-OID GET reports as
+ * missing are cached only with an {@link SnmpClient}, which fails rather than
+ * reporting the OIDs of an unanswered request as missing: with other clients, a
+ * missing OID may come from an error.
+ */
+public class CachingSnmpClient implements ISnmpClient {
+
+	// Cached response of a GET for an OID that does not exist
+	private static final Object NO_SUCH_OBJECT = new Object();
+
+	private final ISnmpClient client;
+	private final Object target;
+	private final SnmpResponseCache cache;
+
+	/**
+	 * Creates a caching client for an SNMP client, whose responses are shared
+	 * with the other clients of the same target and credentials.
+	 *
+	 * @param client The SNMP client
+	 * @param cache  The response cache
+	 */
+	public CachingSnmpClient(SnmpClient client, SnmpResponseCache cache) {
+		this(client, client.getTargetKey(), cache);
+	}
+
+	/**
+	 * Creates a caching client.
+	 *
+	 * @param client The client that sends the requests
+	 * @param target Identifies the target and credentials of the client, whose
+	 *               responses are shared with the other clients with an equal
+	 *               target
+	 * @param cache  The response cache
+	 */
+	public CachingSnmpClient(ISnmpClient client, Object target, SnmpResponseCache cache) {
+		if (client == null || target == null || cache == null) {
+			throw new IllegalArgumentException("Missing client, target or cache");
+		}
+		this.client = client;
+		this.target = target;
+		this.cache = cache;
+	}
+
+	/**
+	 * @return The client that sends the requests
+	 */
+	public ISnmpClient getClient() {
+		return client;
+	}
+
+	/**
+	 * Forgets the cached responses of the target of this client.
+	 */
+	public void invalidate() {
+		cache.invalidate(target);
+	}
+
+	/**
+	 * Forgets the cached responses of the target of this client about a
+	 * subtree.
+	 *
+	 * @param subtree The OID of the subtree
+	 */
+	public void invalidate(String subtree) {
+		cache.invalidate(target, subtree);
+	}
+
+	@Override
+	public String get(String oid) throws Exception {
+		String stripped = stripDot(oid);
+		Object value = cache.get(target, "get", stripped, null);
+		if (value instanceof String) {
+			return (String) value;
+		}
+		if (value == NO_SUCH_OBJECT) {
+			return client.get(stripped);
+		}
+		return cache.load(target, "get", stripped, null, () -> {
+			String result = client.get(stripped);
+			if (result != null && isComplete()) {
+				cache.put(target, "get", stripped, null, result);
+			}
+			return result;
+		});
+	}
+
+	@Override
+	public List<String> get(List<String> oids) throws Exception {
+		List<String> results = new ArrayList<>(oids.size());
+		List<String> missing = new ArrayList<>();
+		List<Integer> missingIndexes = new ArrayList<>();
+		for (int i = 0; i < oids.size(); i++) {
+			String oid = stripDot(oids.get(i));
+			Object value = cache.get(target, "get", oid, null);
+			if (value == null) {
+				missing.add(oid);
+				missingIndexes.add(i);
+			}
+			results.add(value instanceof String ? (String) value : null);
+		}
+		if (missing.isEmpty()) {
+			return results;
+		}
+
+		List<String> values = cache.load(target, "getList", missing.get(0), missing, () -> {
+			List<String> loaded = client.get(missing);
+			boolean missingKnown = client instanceof SnmpClient && isComplete();
+			for (int i = 0; i < missing.size(); i++) {
+				String value = loaded.get(i);
+				// Missing OIDs only when known to be missing, rather than not read
+				if (value != null || missingKnown) {
+					cache.put(target, "get", missing.get(i), null, value == null ? NO_SUCH_OBJECT : value);
+				}
+			}
+			return loaded;
+		});
+		for (int i = 0; i < missing.size(); i++) {
+			results.set(missingIndexes.get(i), values.get(i));
+		}
+		return results;
+	}
+
+	@Override
+	public String getNext(String oid) throws Exception {
+		return load("getNext", stripDot(oid), client::getNext);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<List<String>> table(String rootOID, String[] selectColumns) throws Exception {
+		String root = stripDot(rootOID);
+		List<String> columns = Arrays.asList(selectColumns.clone());
+		List<List<String>> rows = (List<List<String>>) cache.get(target, "table", root, columns);
+		if (rows == null) {
+			rows = cache.load(target, "table", root, columns, () -> {
+				List<List<String>> loaded = client.table(root, selectColumns);
+				if (loaded != null && isComplete()) {
+					loaded = copy(loaded);
+					cache.put(target, "table", root, columns, loaded);
+				}
+				return loaded;
+			});
+		}
+		// Callers may modify the rows
+		return rows == null ? null : copy(rows);
+	}
+
+	@Override
+	public String walk(String oid) throws Exception {
+		return load("walk", stripDot(oid), client::walk);
+	}
+
+	@Override
+	public void walk(String oid, SnmpWalkVisitor visitor) throws Exception {
+		walk(Collections.singletonList(oid), visitor);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * When another client of the cache is walking the same trees, this waits
+	 * for the end of its walk, and then hands its results over to the visitor,
+	 * rather than as they arrive.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void walk(List<String> oids, SnmpWalkVisitor visitor) throws Exception {
+
+		// Replay the cached trees, and walk the other ones
+		List<String> missing = new ArrayList<>();
+		for (String oid : oids) {
+			oid = stripDot(oid);
+			List<SnmpResult> results = (List<SnmpResult>) cache.get(target, "walkResults", oid, null);
+			if (results == null) {
+				missing.add(oid);
+			} else if (!replay(results, visitor)) {
+				return;
+			}
+		}
+		if (missing.isEmpty()) {
+			return;
+		}
+
+		// The caller that sends the requests walks with its visitor, and the
+		// others replay the trees it recorded, if complete. The exceptions of
+		// the visitor are for its caller only.
+		boolean[] leader = new boolean[1];
+		Exception[] visitorException = new Exception[1];
+		Map<String, List<SnmpResult>> walked = cache.load(target, "walkList", missing.get(0), missing, () -> {
+			leader[0] = true;
+			return walk(missing, result -> {
+				try {
+					return visitor.visit(result);
+				} catch (Exception e) {
+					visitorException[0] = e;
+					return false;
+				}
+			}, true);
+		});
+		if (visitorException[0] != null) {
+			throw visitorException[0];
+		}
+		if (leader[0]) {
+			return;
+		}
+		if (walked == null) {
+			walk(missing, visitor, false);
+			return;
+		}
+		for (List<SnmpResult> results : walked.values()) {
+			if (!replay(results, visitor)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Walks the specified trees, and caches them once walked entirely.
+	 * <p>
+	 * The results of a tree are recorded only while they may be cached: not
+	 * at all when its TTL is 0, and no more once their estimated size exceeds
+	 * the bound of the cache.
+	 *
+	 * @param roots   The OIDs of the trees
+	 * @param visitor Receives the results
+	 * @param record  Whether to return the results of the trees
+	 * @return The results of each tree, or <code>null</code> when not walked
+	 *         entirely or not recorded
+	 * @throws Exception on error, or thrown by the visitor
+	 */
+	private Map<String, List<SnmpResult>> walk(List<String> roots, SnmpWalkVisitor visitor, boolean record)
+			throws Exception {
+		Map<AsnObjectId, TreeRecord> trees = new LinkedHashMap<>();
+		for (String root : roots) {
+			trees.put(new AsnObjectId(root), new TreeRecord(root, cache.getTtlNanos(root) > 0));
+		}
+		long maxBytes = cache.getMaxBytes();
+		boolean[] stopped = new boolean[1];
+		client.walk(roots, result -> {
+			TreeRecord tree = trees.get(getRoot(trees.keySet(), new AsnObjectId(result.oid)));
+			if (tree != null && tree.results != null) {
+				tree.bytes += SnmpResponseCache.sizeOf(result);
+				if (tree.bytes > maxBytes) {
+					// Would not be cached: stop recording
+					tree.results = null;
+				} else {
+					tree.results.add(copy(result));
+				}
+			}
+			stopped[0] = !visitor.visit(result);
+			return !stopped[0];
+		});
+		if (stopped[0] || !isComplete()) {
+			return null;
+		}
+		Map<String, List<SnmpResult>> walked = new LinkedHashMap<>();
+		for (TreeRecord tree : trees.values()) {
+			if (tree.results == null) {
+				record = false;
+			} else {
+				cache.put(target, "walkResults", tree.root, null, tree.results);
+				walked.put(tree.root, tree.results);
+			}
+		}
+		return record ? walked : null;
+	}
+
+	/**
+	 * Hands over copies of recorded results to a visitor.
+	 *
+	 * @return Whether the visitor goes on
+	 */
+	private static boolean replay(List<SnmpResult> results, SnmpWalkVisitor visitor) throws Exception {
+		for (SnmpResult result : results) {
+			if (!visitor.visit(copy(result))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a string response from the cache, or from the client, waiting for
+	 * the same request of another client if it is in flight.
+	 */
+	private String load(String operation, String oid, Operation request) throws Exception {
+		String result = (String) cache.get(target, operation, oid, null);
+		if (result != null) {
+			return result;
+		}
+		return cache.load(target, operation, oid, null, () -> {
+			String loaded = request.run(oid);
+			if (loaded != null && isComplete()) {
+				cache.put(target, operation, oid, null, loaded);
+			}
+			return loaded;
+		});
+	}
+
+	/**
+	 * An operation of the client on an OID
+	 */
+	@FunctionalInterface
+	private interface Operation {
+		String run(String oid) throws Exception;
+	}
+
+	@Override
+	public void freeResources() {
+		client.freeResources();
+	}
+
+	/**
+	 * @return Whether the last operation of the client returned all its results
+	 */
+	private boolean isComplete() {
+		return !(client instanceof SnmpClient) || !((SnmpClient) client).isTruncated();
+	}
+
+	/**
+	 * @return The longest of the roots that contains the OID, or
+	 *         <code>null</code>
+	 */
+	private static AsnObjectId getRoot(Iterable<AsnObjectId> roots, AsnObjectId oid) {
+		AsnObjectId matched = null;
+		for (AsnObjectId root : roots) {
+			if (SnmpResponseCache.isInSubtree(oid, root) && (matched == null || root.getSize() > matched.getSize())) {
+				matched = root;
+			}
+		}
+		return matched;
+	}
+
+	/**
+	 * The results of a walked tree, while they are recorded
+	 */
+	private static class TreeRecord {
+		private final String root;
+		private List<SnmpResult> results;
+		private long bytes;
+
+		private TreeRecord(String root, boolean recorded) {
+			this.root = root;
+			this.results = recorded ? new ArrayList<>() : null;
+		}
+	}
+
+	private static SnmpResult copy(SnmpResult result) {
+		SnmpResult copy = new SnmpResult();
+		copy.oid = result.oid;
+		copy.type = result.type;
+		copy.value = result.value;
+		return copy;
+	}
+
+	private static List<List<String>> copy(List<List<String>> rows) {
+		List<List<String>> copy = new ArrayList<>(rows.size());
+		for (List<String> row : rows) {
+			copy.add(new ArrayList<>(row));
+		}
+		return copy;
+	}
+}
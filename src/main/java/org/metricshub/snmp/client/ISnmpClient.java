@@ -22,6 +22,7 @@
 
 package org.metricshub.snmp.client;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -38,6 +39,29 @@ public interface ISnmpClient {
 	 */
 	String get(String oid) throws Exception;
 
+	/**
+	 * Performs SNMP get action for several OIDs, with as few requests as possible.
+	 * <p>
+	 * The default implementation calls {@link #get(String)} for each OID, and
+	 * cannot tell a missing OID from another failure: it returns
+	 * <code>null</code> for both. Implementations should override it.
+	 * @param oids The OIDs.
+	 * @return The corresponding objects as strings, in the order of the OIDs, with
+	 *         <code>null</code> for the OIDs that do not exist.
+	 * @throws Exception on error (other than a missing OID).
+	 */
+	default List<String> get(List<String> oids) throws Exception {
+		final List<String> values = new ArrayList<>(oids.size());
+		for (String oid : oids) {
+			try {
+				values.add(get(oid));
+			} catch (Exception e) {
+				values.add(null);
+			}
+		}
+		return values;
+	}
+
 	/**
 	 * Performs SNMP getNext action for	 a single OID.
 	 * @param oid A given OID.
@@ -74,6 +98,65 @@ public interface ISnmpClient {
 	 */
 	String walk(String oid) throws Exception;
 
+	/**
+	 * Performs SNMP walk action starting from a given OID, handing each result
+	 * over to the visitor as soon as it is available, instead of collecting them.
+	 * <p>
+	 * The default implementation parses the result of {@link #walk(String)}:
+	 * it does not stream, and the visitor only stops the parsing.
+	 * Implementations should override it.
+	 * @param oid A given OID.
+	 * @param visitor Receives the results, in order, and may stop the walk.
+	 * @throws Exception on error (e.g. no such OID), or thrown by the visitor.
+	 */
+	default void walk(String oid, SnmpWalkVisitor visitor) throws Exception {
+		SnmpResult result = null;
+		for (String line : walk(oid).split("\n")) {
+			final String[] fields = line.split("\t", 3);
+			if (fields.length < 3 || fields[0].isEmpty()) {
+				// The value of the previous OID spans several lines
+				if (result != null) {
+					result.value += "\n" + line;
+				}
+				continue;
+			}
+			if (result != null && !visitor.visit(result)) {
+				return;
+			}
+			result = new SnmpResult();
+			result.oid = fields[0];
+			result.type = fields[1];
+			result.value = fields[2];
+		}
+		if (result != null) {
+			visitor.visit(result);
+		}
+	}
+
+	/**
+	 * Performs SNMP walk action starting from several OIDs, handing each result
+	 * over to the visitor as soon as it is available. The results of a given OID
+	 * come in order, possibly interleaved with the results of the other ones.
+	 * <p>
+	 * The default implementation walks the OIDs one after the other with
+	 * {@link #walk(String, SnmpWalkVisitor)}.
+	 * @param oids The OIDs.
+	 * @param visitor Receives the results and may stop the walk of all the OIDs.
+	 * @throws Exception on error (e.g. no such OID), or thrown by the visitor.
+	 */
+	default void walk(List<String> oids, SnmpWalkVisitor visitor) throws Exception {
+		final boolean[] stopped = new boolean[1];
+		for (String oid : oids) {
+			walk(oid, result -> {
+				stopped[0] = !visitor.visit(result);
+				return !stopped[0];
+			});
+			if (stopped[0]) {
+				return;
+			}
+		}
+	}
+
 	/**
 	 * Frees any resources held by the client, such as network connections or file handles or memory space.
 	 */
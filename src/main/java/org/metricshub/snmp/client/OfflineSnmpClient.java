@@ -95,6 +95,16 @@ public final class OfflineSnmpClient implements ISnmpClient {
 		return val.value;
 	}
 
+	@Override
+	public List<String> get(List<String> oids) {
+		final List<String> values = new ArrayList<>(oids.size());
+		for (String oid : oids) {
+			final SnmpValue val = oidValues.get(stripDot(oid));
+			values.add(val == null ? null : val.value);
+		}
+		return values;
+	}
+
 	@Override
 	public String getNext(String oid) {
 		final Map.Entry<String, SnmpValue> next = oidValues.higherEntry(stripDot(oid));
@@ -200,6 +210,32 @@ public final class OfflineSnmpClient implements ISnmpClient {
 		return walkResult.toString();
 	}
 
+	@Override
+	public void walk(String oid, SnmpWalkVisitor visitor) throws Exception {
+		final String base = stripDot(oid);
+
+		// Find the first OID that is >= base
+		Map.Entry<String, SnmpValue> entry = oidValues.ceilingEntry(base);
+
+		while (entry != null) {
+			final String nextOid = entry.getKey();
+			if (!nextOid.startsWith(base + ".") && !nextOid.equals(base)) {
+				break; // left the subtree
+			}
+
+			final SnmpValue snmpValue = entry.getValue();
+			final SnmpResult result = new SnmpResult();
+			result.oid = nextOid;
+			result.type = snmpValue.type;
+			result.value = snmpValue.value;
+			if (!visitor.visit(result)) {
+				break;
+			}
+
+			entry = oidValues.higherEntry(nextOid);
+		}
+	}
+
 	@Override
 	public void freeResources() {
 		oidValues.clear();
@@ -0,0 +1,232 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import java.util.Properties;
+
+/**
+ * What an SNMP agent was found to support, learned by the {@link SnmpClient}s
+ * from its responses, so that the next requests, and the next clients of the
+ * same agent (see {@link SnmpAgentProfiles}), use the best strategy from the
+ * start.
+ * <p>
+ * An agent found not to support GETBULK, possibly because of a transient
+ * error, is probed with GETBULK again once the re-probe interval is over.
+ * <p>
+ * Instances are thread-safe.
+ */
+public class SnmpAgentProfile {
+
+	// GETBULK: number of varbinds asked for first, and upper bound of the
+	// adaptation
+	private static final int BULK_INITIAL_MAX_VARBINDS = 10;
+	private static final int BULK_MAX_MAX_VARBINDS = 100;
+
+	// Time after which an agent found not to support GETBULK is probed again
+	static final long DEFAULT_BULK_REPROBE_MILLIS = 3600000;
+
+	// Current number of varbinds asked for with GETBULK (max-repetitions times
+	// the number of OIDs), adapted to the responses of the agent, and the highest
+	// value that did not fail
+	private int bulkMaxVarbinds = BULK_INITIAL_MAX_VARBINDS;
+	private int bulkMaxVarbindsLimit = BULK_MAX_MAX_VARBINDS;
+
+	// Highest number of OIDs in a GET request that did not fail
+	private int getMaxOids = Integer.MAX_VALUE;
+
+	private boolean bulkSupported = true;
+
+	// When GETBULK is probed again, in milliseconds since the epoch, so that it
+	// can be saved
+	private final long bulkReprobeMillis;
+	private long bulkReprobeTime;
+
+	// msgMaxSize advertised by the agent (SNMP v3), 0 if unknown
+	private int maxMessageSize;
+
+	/**
+	 * Creates the profile of an agent about which nothing was learned yet.
+	 */
+	public SnmpAgentProfile() {
+		this(DEFAULT_BULK_REPROBE_MILLIS);
+	}
+
+	/**
+	 * Creates the profile of an agent about which nothing was learned yet.
+	 *
+	 * @param bulkReprobeMillis Time after which an agent found not to support
+	 *                          GETBULK is probed again, in milliseconds
+	 */
+	SnmpAgentProfile(long bulkReprobeMillis) {
+		this.bulkReprobeMillis = bulkReprobeMillis;
+	}
+
+	/**
+	 * @return The number of varbinds to ask for with the next GETBULK
+	 */
+	public synchronized int getBulkMaxVarbinds() {
+		return bulkMaxVarbinds;
+	}
+
+	/**
+	 * @return The highest number of varbinds asked for with GETBULK that did not
+	 *         fail
+	 */
+	public synchronized int getBulkMaxVarbindsLimit() {
+		return bulkMaxVarbindsLimit;
+	}
+
+	/**
+	 * Sets the number of varbinds to ask for with the next GETBULK, within the
+	 * limit.
+	 *
+	 * @param varbinds The number of varbinds that should fit in a response
+	 */
+	synchronized void adaptBulkMaxVarbinds(int varbinds) {
+		bulkMaxVarbinds = Math.max(1, Math.min(bulkMaxVarbindsLimit, varbinds));
+	}
+
+	/**
+	 * Records a GETBULK whose response did not fit.
+	 *
+	 * @param failed The number of varbinds asked for
+	 * @param next   The number of varbinds to ask for with the next GETBULK
+	 */
+	synchronized void limitBulkMaxVarbinds(int failed, int next) {
+		bulkMaxVarbindsLimit = Math.max(1, Math.min(bulkMaxVarbindsLimit, failed - 1));
+		bulkMaxVarbinds = Math.max(1, Math.min(bulkMaxVarbinds, next));
+	}
+
+	/**
+	 * @return The highest number of OIDs in a GET request that did not fail
+	 */
+	public synchronized int getGetMaxOids() {
+		return getMaxOids;
+	}
+
+	/**
+	 * Records a GET whose response did not fit.
+	 *
+	 * @param failed The number of OIDs of the request
+	 */
+	synchronized void limitGetMaxOids(int failed) {
+		getMaxOids = Math.max(1, Math.min(getMaxOids, failed - 1));
+	}
+
+	/**
+	 * @return Whether the agent answers GETBULK requests (otherwise, walks and
+	 *         tables use GETNEXT), or is to be probed again
+	 */
+	public synchronized boolean isBulkSupported() {
+		if (!bulkSupported && System.currentTimeMillis() >= bulkReprobeTime) {
+			bulkSupported = true;
+		}
+		return bulkSupported;
+	}
+
+	synchronized void setBulkSupported(boolean bulkSupported) {
+		this.bulkSupported = bulkSupported;
+		bulkReprobeTime = bulkSupported ? 0 : System.currentTimeMillis() + bulkReprobeMillis;
+	}
+
+	/**
+	 * @return The largest message the agent advertised it can handle (SNMP v3
+	 *         msgMaxSize), 0 if unknown
+	 */
+	public synchronized int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+
+	synchronized void setMaxMessageSize(int maxMessageSize) {
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	/**
+	 * Writes the profile to properties.
+	 *
+	 * @param properties Where to write
+	 * @param prefix     Prefix of the property names
+	 */
+	synchronized void save(Properties properties, String prefix) {
+		properties.setProperty(prefix + "bulkMaxVarbinds", Integer.toString(bulkMaxVarbinds));
+		properties.setProperty(prefix + "bulkMaxVarbindsLimit", Integer.toString(bulkMaxVarbindsLimit));
+		properties.setProperty(prefix + "getMaxOids", Integer.toString(getMaxOids));
+		properties.setProperty(prefix + "bulkSupported", Boolean.toString(isBulkSupported()));
+		if (!bulkSupported) {
+			properties.setProperty(prefix + "bulkReprobeTime", Long.toString(bulkReprobeTime));
+		}
+		properties.setProperty(prefix + "maxMessageSize", Integer.toString(maxMessageSize));
+	}
+
+	/**
+	 * Reads the profile from properties. Missing and invalid values are
+	 * ignored.
+	 *
+	 * @param properties Where to read
+	 * @param prefix     Prefix of the property names
+	 */
+	synchronized void load(Properties properties, String prefix) {
+		bulkMaxVarbindsLimit = getPositive(properties, prefix + "bulkMaxVarbindsLimit", bulkMaxVarbindsLimit);
+		bulkMaxVarbinds = Math.min(bulkMaxVarbindsLimit,
+				getPositive(properties, prefix + "bulkMaxVarbinds", bulkMaxVarbinds));
+		getMaxOids = getPositive(properties, prefix + "getMaxOids", getMaxOids);
+		String bulk = properties.getProperty(prefix + "bulkSupported");
+		if (bulk != null) {
+			setBulkSupported(Boolean.parseBoolean(bulk.trim()));
+			if (!bulkSupported) {
+				// Probed again no later than it would have been
+				String reprobe = properties.getProperty(prefix + "bulkReprobeTime");
+				try {
+					if (reprobe != null) {
+						bulkReprobeTime = Math.min(bulkReprobeTime, Long.parseLong(reprobe.trim()));
+					}
+				} catch (NumberFormatException e) {
+					// Ignored
+				}
+			}
+		}
+		maxMessageSize = getPositive(properties, prefix + "maxMessageSize", maxMessageSize);
+	}
+
+	private static int getPositive(Properties properties, String name, int defaultValue) {
+		String value = properties.getProperty(name);
+		if (value != null) {
+			try {
+				int number = Integer.parseInt(value.trim());
+				if (number > 0) {
+					return number;
+				}
+			} catch (NumberFormatException e) {
+				// Ignored
+			}
+		}
+		return defaultValue;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SnmpAgentProfile[bulkMaxVarbinds=" + bulkMaxVarbinds + ", bulkMaxVarbindsLimit=" + bulkMaxVarbindsLimit
+				+ ", getMaxOids=" + getMaxOids + ", bulkSupported=" + bulkSupported + ", maxMessageSize="
+				+ maxMessageSize + "]";
+	}
+}
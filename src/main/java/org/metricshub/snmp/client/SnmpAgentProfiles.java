@@ -0,0 +1,205 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link SnmpAgentProfile}s of the agents, by host, port and SNMP version,
+ * shared by the {@link SnmpClient}s that opt in with
+ * {@link SnmpClient#setAgentProfiles(SnmpAgentProfiles)}, and optionally saved
+ * to a file, to be loaded by the next run.
+ * <p>
+ * The profiles that no client asked for during the idle timeout are forgotten,
+ * so that what was learned about an agent that changed, or is gone, does not
+ * stay forever.
+ * <p>
+ * Instances are thread-safe.
+ */
+public class SnmpAgentProfiles {
+
+	private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 86400000;
+
+	private static final SnmpAgentProfiles SHARED = new SnmpAgentProfiles();
+
+	private final long idleTimeoutMillis;
+	private final long bulkReprobeMillis;
+
+	private final Map<String, SnmpAgentProfile> profiles = new HashMap<>();
+
+	// When the profiles were last asked for, in milliseconds since the epoch
+	private final Map<String, Long> lastUses = new HashMap<>();
+	private long lastEviction = System.currentTimeMillis();
+
+	/**
+	 * Creates profiles that are forgotten after a day without a client, and
+	 * where GETBULK is probed again an hour after failing.
+	 */
+	public SnmpAgentProfiles() {
+		this(DEFAULT_IDLE_TIMEOUT_MILLIS, SnmpAgentProfile.DEFAULT_BULK_REPROBE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Creates profiles.
+	 *
+	 * @param idleTimeout         Time after which a profile that no client asked
+	 *                            for is forgotten
+	 * @param bulkReprobeInterval Time after which an agent found not to support
+	 *                            GETBULK is probed again
+	 * @param unit                Unit of the times
+	 * @throws IllegalArgumentException when a time is not positive
+	 */
+	public SnmpAgentProfiles(long idleTimeout, long bulkReprobeInterval, TimeUnit unit) {
+		if (idleTimeout <= 0 || bulkReprobeInterval <= 0 || unit == null) {
+			throw new IllegalArgumentException("Invalid SNMP agent profiles settings: idle timeout " + idleTimeout
+					+ ", GETBULK re-probe interval " + bulkReprobeInterval + " " + unit);
+		}
+		this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+		this.bulkReprobeMillis = unit.toMillis(bulkReprobeInterval);
+	}
+
+	/**
+	 * @return Profiles that the {@link SnmpClient}s of the whole process can
+	 *         share, when set with
+	 *         {@link SnmpClient#setAgentProfiles(SnmpAgentProfiles)}
+	 */
+	public static SnmpAgentProfiles getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the profile of an agent, created if none was learned yet.
+	 *
+	 * @param host    The host of the agent
+	 * @param port    The port of the agent
+	 * @param version The SNMP version used with the agent
+	 * @return The profile
+	 */
+	public synchronized SnmpAgentProfile getProfile(String host, int port, int version) {
+		long now = System.currentTimeMillis();
+		if (now - lastEviction >= idleTimeoutMillis / 2) {
+			evictIdle();
+		}
+		String key = getKey(host, port, version);
+		lastUses.put(key, now);
+		return profiles.computeIfAbsent(key, k -> new SnmpAgentProfile(bulkReprobeMillis));
+	}
+
+	/**
+	 * Forgets the profiles that no client asked for during the idle timeout. The
+	 * clients that use them keep them. This happens on its own when profiles
+	 * are asked for.
+	 *
+	 * @return The number of profiles forgotten
+	 */
+	public synchronized int evictIdle() {
+		long now = System.currentTimeMillis();
+		lastEviction = now;
+		int evicted = 0;
+		for (Iterator<Map.Entry<String, Long>> iterator = lastUses.entrySet().iterator(); iterator.hasNext();) {
+			Map.Entry<String, Long> lastUse = iterator.next();
+			if (now - lastUse.getValue() >= idleTimeoutMillis) {
+				profiles.remove(lastUse.getKey());
+				iterator.remove();
+				evicted++;
+			}
+		}
+		return evicted;
+	}
+
+	private static String getKey(String host, int port, int version) {
+		return host + ":" + port + ":v" + version;
+	}
+
+	/**
+	 * @return The number of agents with a profile
+	 */
+	public synchronized int size() {
+		return profiles.size();
+	}
+
+	/**
+	 * Forgets all the profiles.
+	 */
+	public synchronized void clear() {
+		profiles.clear();
+		lastUses.clear();
+	}
+
+	/**
+	 * Saves the profiles to a properties file.
+	 *
+	 * @param file The file
+	 * @throws IOException when the file cannot be written
+	 */
+	public synchronized void save(File file) throws IOException {
+		Properties properties = new Properties();
+		for (Map.Entry<String, SnmpAgentProfile> profile : profiles.entrySet()) {
+			profile.getValue().save(properties, profile.getKey() + ".");
+		}
+		try (OutputStream out = new FileOutputStream(file)) {
+			properties.store(out, "SNMP agent profiles");
+		}
+	}
+
+	/**
+	 * Loads the profiles saved to a properties file with {@link #save(File)},
+	 * replacing what was learned about the same agents, for the clients created
+	 * afterwards.
+	 *
+	 * @param file The file
+	 * @throws IOException when the file cannot be read
+	 */
+	public synchronized void load(File file) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			properties.load(in);
+		}
+		Set<String> keys = new HashSet<>();
+		for (String name : properties.stringPropertyNames()) {
+			int dot = name.lastIndexOf('.');
+			if (dot > 0) {
+				keys.add(name.substring(0, dot));
+			}
+		}
+		long now = System.currentTimeMillis();
+		for (String key : keys) {
+			SnmpAgentProfile profile = new SnmpAgentProfile(bulkReprobeMillis);
+			profile.load(properties, key + ".");
+			profiles.put(key, profile);
+			lastUses.put(key, now);
+		}
+	}
+}
@@ -23,23 +23,37 @@
 package org.metricshub.snmp.client;
 
 import uk.co.westhawk.snmp.pdu.BlockPdu;
+import uk.co.westhawk.snmp.pdu.GetNextPdu_vec;
+import uk.co.westhawk.snmp.stack.AbstractSnmpContext;
+import uk.co.westhawk.snmp.stack.AgentException;
 import uk.co.westhawk.snmp.stack.AsnObject;
 import uk.co.westhawk.snmp.stack.AsnObjectId;
 import uk.co.westhawk.snmp.stack.AsnOctets;
+import uk.co.westhawk.snmp.stack.CongestionControl;
+import uk.co.westhawk.snmp.stack.GetBulkPdu;
+import uk.co.westhawk.snmp.stack.Pdu;
 import uk.co.westhawk.snmp.stack.PduException;
 import uk.co.westhawk.snmp.stack.SnmpConstants;
 import uk.co.westhawk.snmp.stack.SnmpContext;
+import uk.co.westhawk.snmp.stack.SnmpContextBasisFace;
 import uk.co.westhawk.snmp.stack.SnmpContextv2c;
 import uk.co.westhawk.snmp.stack.SnmpContextv3;
 import uk.co.westhawk.snmp.stack.SnmpContextv3Face;
 import uk.co.westhawk.snmp.stack.varbind;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class SnmpClient implements ISnmpClient {
 
@@ -84,8 +98,54 @@ public class SnmpClient implements ISnmpClient {
 	private int[] retryIntervals;
 	private String contextName;
 	private byte[] contextEngineID;
+	private SnmpSessionCache sessionCache;
+	private List<Object> sessionKey;
 	public static final String SOCKET_TYPE = "Standard";
 
+	// BER sizes, to compute the bytes of a response that are not varbinds: an
+	// INTEGER of up to 32 bits, the tag and length of a value of up to 65535
+	// bytes, the largest engine ID (RFC 3411), the largest authentication
+	// parameters (HMAC-SHA-512), the privacy parameters and the padding of an
+	// encrypted scoped PDU
+	private static final int BER_INTEGER_SIZE = 6;
+	private static final int BER_HEADER_SIZE = 4;
+	private static final int MAX_ENGINE_ID_SIZE = 32;
+	private static final int MAX_AUTH_PARAMETERS_SIZE = 48;
+	private static final int PRIV_PARAMETERS_SIZE = 8;
+	private static final int MAX_PRIV_PADDING = 8;
+
+	// Retry intervals of the requests when none are specified (the ones of Pdu)
+	private static final int[] DEFAULT_RETRY_INTERVALS = { 500, 1000, 2000, 5000, 5000 };
+
+	// Multi-OID GET: bytes expected for a value, to pack the OIDs in requests
+	private static final int GET_VALUE_SIZE = 32;
+
+	// What the agent was found to support: GETBULK, number of varbinds per
+	// GETBULK and number of OIDs per GET that fit in a response, and message size
+	private SnmpAgentProfile agentProfile;
+
+	// Whether GETNEXT is sent instead of GETBULK, after an error response to a
+	// GETBULK, to check whether the agent supports GETBULK
+	private boolean bulkProbe;
+
+	// Maximum number of requests in flight at the same time in a multi-tree walk
+	private int walkConcurrency = 4;
+
+	// Time budget of each operation, and deadline of all the operations (0 for
+	// none), and the resulting deadline of the current operation
+	private long operationTimeout = 0;
+	private long deadline = 0;
+	private long operationDeadline = 0;
+
+	// Limits of the results of walk(String) and table()
+	private int walkMaxBytes = 10 * 1048576;
+	private int tableMaxRows = 10000;
+
+	// Whether the agent answered a request of the current operation, and whether
+	// the last operation returned partial results
+	private boolean operationAnswered;
+	private boolean truncated;
+
 	/**
 	 * Creates an SNMPClient instance, which connects to the specified SNMP agent
 	 * with the specified credentials
@@ -119,6 +179,46 @@ public class SnmpClient implements ISnmpClient {
 			String authType, String authUsername, String authPassword,
 			String privacyType, String privacyPassword,
 			String contextName, byte[] contextID) throws IOException {
+		this(host, port, version, retryIntervals, community, authType, authUsername, authPassword, privacyType,
+				privacyPassword, contextName, contextID, null);
+	}
+
+	/**
+	 * Creates an SNMPClient instance, which connects to the specified SNMP agent
+	 * with the specified credentials, and shares its SNMP context with the other
+	 * clients of the specified session cache that have the same target and
+	 * credentials
+	 *
+	 * @param host            The hostname/IP address of the SNMP agent we're
+	 *                        querying
+	 * @param port            The port of the SNMP agent (should be 161)
+	 * @param version         The version of SNMP to use (1, 2 or 3)
+	 * @param retryIntervals  Timeout in milliseconds after which the elementary
+	 *                        operations will be retried
+	 * @param community       <i>(SNMP v1 and v2 only)</i> The SNMP community
+	 * @param authType        <i>(SNMP v3 only)</i> The authentication method:
+	 *                        "MD5", "SHA" or ""
+	 * @param authUsername    <i>(SNMP v3 only)</i> The username
+	 * @param authPassword    <i>(SNMP v3 only)</i> The password (in clear)
+	 * @param privacyType     <i>(SNMP v3 only)</i> The encryption type: "DES",
+	 *                        "AES" or ""
+	 * @param privacyPassword <i>(SNMP v3 only)</i> The encryption password
+	 * @param contextName     <i>(SNMP v3 only)</i> The context name
+	 * @param contextID       <i>(SNMP v3 only)</i> The context ID (??)
+	 * @param sessionCache    The session cache, or null to create and destroy
+	 *                        a context of our own
+	 * @throws IllegalArgumentException when specified authType, privType are
+	 *                                  invalid
+	 * @throws IllegalStateException    when the specified properties lead to
+	 *                                  something that cannot work (i.e. privacy
+	 *                                  without authentication)
+	 * @throws IOException              when cannot initialize the SNMP context
+	 */
+	public SnmpClient(String host, int port, int version, int[] retryIntervals,
+			String community,
+			String authType, String authUsername, String authPassword,
+			String privacyType, String privacyPassword,
+			String contextName, byte[] contextID, SnmpSessionCache sessionCache) throws IOException {
 		// First, validate the inputs
 		validate(version, authType, privacyType);
 
@@ -135,6 +235,8 @@ public class SnmpClient implements ISnmpClient {
 		this.privacyPassword = privacyPassword;
 		this.contextName = contextName;
 		this.contextEngineID = contextID;
+		this.sessionCache = sessionCache;
+		this.agentProfile = new SnmpAgentProfile();
 
 		// Properly create the SNMP context, based on these properties
 		initialize();
@@ -191,10 +293,47 @@ public class SnmpClient implements ISnmpClient {
 	 */
 	private void initialize() throws IOException {
 
+		// Borrow the context from the session cache, or create our own
+		SnmpContextBasisFace context;
+		if (sessionCache != null) {
+			sessionKey = getTargetKey();
+			context = sessionCache.acquire(sessionKey, this::createContext);
+		} else {
+			context = createContext();
+		}
+
+		if (snmpVersion == SNMP_V2C) {
+			contextv2c = (SnmpContextv2c) context;
+		} else if (snmpVersion == SNMP_V3) {
+			contextv3 = (SnmpContextv3) context;
+		} else {
+			contextv1 = (SnmpContext) context;
+		}
+
+		// Small thing: set the prefix for hex values (default is "0x" but we're setting
+		// it to empty)
+		AsnOctets.setHexPrefix("");
+
+		// AsnObject.setDebug(15);
+
+	}
+
+	/**
+	 * Creates the context to connect to the SNMP agent, based on the properties
+	 * of this instance
+	 *
+	 * @return The new context
+	 * @throws IOException           when cannot create the SNMP context
+	 * @throws IllegalStateException when there is an inconsistency in the
+	 *                               properties that prevent us from moving forward
+	 */
+	private SnmpContextBasisFace createContext() throws IOException {
+
 		// SNMP v2c
 		if (snmpVersion == SNMP_V2C) {
-			contextv2c = new SnmpContextv2c(host, port, null, SOCKET_TYPE);
+			SnmpContextv2c contextv2c = new SnmpContextv2c(host, port, null, SOCKET_TYPE);
 			contextv2c.setCommunity(community);
+			return contextv2c;
 		}
 
 		// SNMP v3
@@ -271,7 +410,7 @@ public class SnmpClient implements ISnmpClient {
 			}
 
 			// Create the context
-			contextv3 = new SnmpContextv3(host, port, SOCKET_TYPE);
+			SnmpContextv3 contextv3 = new SnmpContextv3(host, port, SOCKET_TYPE);
 			contextv3.setContextEngineId(contextEngineID);
 			contextv3.setContextName(contextName);
 			contextv3.setUserName(authUsername);
@@ -285,20 +424,25 @@ public class SnmpClient implements ISnmpClient {
 					contextv3.setUserPrivacyPassword(privacyPassword);
 				}
 			}
+			return contextv3;
 		}
 
 		// SNMP v1 (default)
 		else {
-			contextv1 = new SnmpContext(host, port, SOCKET_TYPE);
+			SnmpContext contextv1 = new SnmpContext(host, port, SOCKET_TYPE);
 			contextv1.setCommunity(community);
+			return contextv1;
 		}
 
-		// Small thing: set the prefix for hex values (default is "0x" but we're setting
-		// it to empty)
-		AsnOctets.setHexPrefix("");
-
-		// AsnObject.setDebug(15);
+	}
 
+	/**
+	 * @return The target and credentials of this client, which identify its
+	 *         session, and the data it can read
+	 */
+	List<Object> getTargetKey() {
+		return Arrays.asList(snmpVersion, host, port, community, authType, authUsername, authPassword,
+				privacyType, privacyPassword, contextName, Arrays.toString(contextEngineID));
 	}
 
 	/**
@@ -307,6 +451,13 @@ public class SnmpClient implements ISnmpClient {
 	 */
 	@Override
 	public void freeResources() {
+		if (sessionCache != null && sessionKey != null && getContext() != null) {
+			// Shared with the other clients of the cache, which destroys it when idle
+			sessionCache.release(sessionKey);
+			contextv1 = null;
+			contextv2c = null;
+			contextv3 = null;
+		}
 		if (contextv1 != null) {
 			contextv1.destroy();
 			contextv1 = null;
@@ -331,7 +482,7 @@ public class SnmpClient implements ISnmpClient {
 	 * Note: This method has been created just to avoid duplicate code in the get,
 	 * getNext and walk functions
 	 */
-	private void createPdu() {
+	private void createPdu() throws TimeoutException {
 		// Create the PDU based on the proper context
 		if (snmpVersion == SNMP_V2C) {
 			pdu = new BlockPdu(contextv2c);
@@ -342,9 +493,157 @@ public class SnmpClient implements ISnmpClient {
 		}
 
 		// Set the timeout
-		if (retryIntervals != null) {
-			pdu.setRetryIntervals(retryIntervals);
+		int[] intervals = getRetryIntervals();
+		if (intervals != null) {
+			pdu.setRetryIntervals(intervals);
+		}
+	}
+
+	/**
+	 * Starts an operation: sets its deadline, from the operation timeout and the
+	 * deadline of all the operations
+	 */
+	private void startOperation() {
+		operationAnswered = false;
+		truncated = false;
+		operationDeadline = deadline;
+		if (operationTimeout > 0) {
+			long timeoutDeadline = System.currentTimeMillis() + operationTimeout;
+			if (operationDeadline == 0 || timeoutDeadline < operationDeadline) {
+				operationDeadline = timeoutDeadline;
+			}
+		}
+	}
+
+	/**
+	 * Returns the retry intervals of the next request, shortened so that it does
+	 * not wait beyond the deadline of the operation
+	 * 
+	 * @return The retry intervals, or <code>null</code> for the default ones
+	 * @throws TimeoutException when the deadline is already reached
+	 */
+	private int[] getRetryIntervals() throws TimeoutException {
+		if (operationDeadline == 0) {
+			return retryIntervals;
+		}
+		long remaining = operationDeadline - System.currentTimeMillis();
+		if (remaining <= 0) {
+			throw new TimeoutException("SNMP operation deadline reached with " + host + ":" + port);
+		}
+		int[] intervals = retryIntervals != null ? retryIntervals : DEFAULT_RETRY_INTERVALS;
+		int count = 0;
+		long total = 0;
+		while (count < intervals.length && total < remaining) {
+			total += intervals[count++];
+		}
+		if (total <= remaining) {
+			return intervals;
+		}
+		int[] shortened = Arrays.copyOf(intervals, count);
+		shortened[count - 1] -= (int) (total - remaining);
+		return shortened;
+	}
+
+	/**
+	 * Records that the agent answered a request of the operation, and the
+	 * largest message it advertised it can handle (SNMP v3), if any
+	 */
+	private void recordAnswer() {
+		operationAnswered = true;
+		if (snmpVersion == SNMP_V3) {
+			int peerMaxMessageSize = contextv3.getPeerMaxMessageSize();
+			if (peerMaxMessageSize > 0) {
+				agentProfile.setMaxMessageSize(peerMaxMessageSize);
+			}
+		}
+	}
+
+	/**
+	 * @return Whether the deadline of the operation is reached
+	 */
+	private boolean isDeadlineReached() {
+		return operationDeadline != 0 && System.currentTimeMillis() >= operationDeadline;
+	}
+
+	/**
+	 * Tells whether the operation must stop and return what it got so far,
+	 * because it ran out of time after a response of the agent, which may be the
+	 * response to the request that was in flight at the deadline. The operation
+	 * is then truncated.
+	 * 
+	 * @return Whether the operation must stop
+	 */
+	private boolean stopAtDeadline() {
+		if (operationAnswered && isDeadlineReached()) {
+			truncated = true;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Sets the time budget of each operation (get, walk, table, etc.), covering
+	 * all its requests and their retries. The retries of the last request are
+	 * shortened to fit in the budget. An operation that runs out of time after
+	 * its first response returns what it got so far, and
+	 * {@link #isTruncated()} tells so.
+	 * 
+	 * @param timeout The time budget, 0 for none (the default)
+	 * @param unit    The unit of the time budget
+	 * @throws IllegalArgumentException when the time budget is negative
+	 */
+	public void setOperationTimeout(long timeout, TimeUnit unit) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("Invalid SNMP operation timeout: " + timeout);
+		}
+		this.operationTimeout = unit.toMillis(timeout);
+	}
+
+	/**
+	 * Sets a deadline that the operations must not overrun, e.g. the end of a
+	 * collection cycle, like {@link #setOperationTimeout(long, TimeUnit)}
+	 * 
+	 * @param deadline The deadline, in milliseconds since the epoch, 0 for none
+	 *                 (the default)
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = Math.max(0, deadline);
+	}
+
+	/**
+	 * Sets the maximum size of the result of {@link #walk(String)} (10 MB by
+	 * default)
+	 * 
+	 * @param walkMaxBytes The maximum number of characters
+	 * @throws IllegalArgumentException when the limit is not positive
+	 */
+	public void setWalkMaxBytes(int walkMaxBytes) {
+		if (walkMaxBytes < 1) {
+			throw new IllegalArgumentException("Invalid SNMP Walk size limit: " + walkMaxBytes);
 		}
+		this.walkMaxBytes = walkMaxBytes;
+	}
+
+	/**
+	 * Sets the maximum number of rows read by {@link #table(String, String[])}
+	 * (10000 by default)
+	 * 
+	 * @param tableMaxRows The maximum number of rows
+	 * @throws IllegalArgumentException when the limit is not positive
+	 */
+	public void setTableMaxRows(int tableMaxRows) {
+		if (tableMaxRows < 1) {
+			throw new IllegalArgumentException("Invalid SNMP Table row limit: " + tableMaxRows);
+		}
+		this.tableMaxRows = tableMaxRows;
+	}
+
+	/**
+	 * @return Whether the last operation returned partial results, because of its
+	 *         deadline, of a size limit, or of a failure after the first response
+	 */
+	public boolean isTruncated() {
+		return truncated;
 	}
 
 	/**
@@ -355,12 +654,209 @@ public class SnmpClient implements ISnmpClient {
 	 * @throws Exception in case of any problem
 	 */
 	public String get(String oid) throws Exception {
+		startOperation();
 		createPdu();
 		pdu.setPduType(BlockPdu.GET);
 		pdu.addOid(oid);
 		return sendRequest().value;
 	}
 
+	/**
+	 * Perform a GET operation on the specified OID, and return its value as
+	 * received, with no conversion to strings
+	 * 
+	 * @param oid OID on which to perform a GET operation
+	 * @return The OID, type and value
+	 * @throws Exception in case of any problem, including an OID that does not
+	 *                   exist
+	 */
+	public SnmpVarbind getVarbind(String oid) throws Exception {
+		startOperation();
+		createPdu();
+		pdu.setPduType(BlockPdu.GET);
+		pdu.addOid(oid);
+		varbind var = pdu.getResponseVariableBinding();
+		checkValue(var.getValue());
+		return new SnmpVarbind(var);
+	}
+
+	/**
+	 * Perform a GET operation on the specified OIDs, packing them in as few
+	 * requests as <code>maxRecvSize</code> allows.
+	 * <p>
+	 * A request that the agent answers with <code>tooBig</code>, or whose
+	 * response is truncated, is split in two, and the next requests get fewer
+	 * OIDs than the failing one. An OID that does not exist
+	 * (<code>noSuchObject</code>, <code>noSuchInstance</code> or, with SNMP v1,
+	 * <code>noSuchName</code>) gets a <code>null</code> value, and does not fail
+	 * the other ones. A request that is not answered fails the whole operation,
+	 * so that an OID is never reported as missing because of a timeout.
+	 * 
+	 * @param oids OIDs on which to perform a GET operation
+	 * @return Values of the specified OIDs, in the same order, <code>null</code>
+	 *         for the OIDs that do not exist
+	 * @throws IllegalArgumentException for bad specified OIDs
+	 * @throws Exception                in case of a timeout, or any other problem
+	 */
+	@Override
+	public List<String> get(List<String> oids) throws Exception {
+		varbind[] vars = getVariableBindings(oids);
+		String[] values = new String[vars.length];
+		for (int i = 0; i < vars.length; i++) {
+			if (vars[i] != null) {
+				values[i] = getResult(vars[i]).value;
+			}
+		}
+		return Arrays.asList(values);
+	}
+
+	/**
+	 * Perform a GET operation on the specified OIDs, like {@link #get(List)}, and
+	 * return their values as received, with no conversion to strings
+	 * 
+	 * @param oids OIDs on which to perform a GET operation
+	 * @return The OIDs, types and values, in the same order, <code>null</code>
+	 *         for the OIDs that do not exist
+	 * @throws IllegalArgumentException for bad specified OIDs
+	 * @throws Exception                in case of any other problem
+	 */
+	public List<SnmpVarbind> getVarbinds(List<String> oids) throws Exception {
+		varbind[] vars = getVariableBindings(oids);
+		SnmpVarbind[] varbinds = new SnmpVarbind[vars.length];
+		for (int i = 0; i < vars.length; i++) {
+			if (vars[i] != null) {
+				varbinds[i] = new SnmpVarbind(vars[i]);
+			}
+		}
+		return Arrays.asList(varbinds);
+	}
+
+	/**
+	 * Perform a GET operation on the specified OIDs, packing them in as few
+	 * requests as possible
+	 * 
+	 * @param oids OIDs on which to perform a GET operation
+	 * @return The varbinds of the specified OIDs, in the same order,
+	 *         <code>null</code> for the OIDs that do not exist
+	 * @throws Exception in case of any problem
+	 */
+	private varbind[] getVariableBindings(List<String> oids) throws Exception {
+
+		// Sanity check
+		if (oids == null) {
+			throw new IllegalArgumentException("Invalid SNMP Get OIDs: null");
+		}
+
+		startOperation();
+		varbind[] values = new varbind[oids.size()];
+		AsnObjectId[] asnOids = new AsnObjectId[oids.size()];
+		int budget = getGetBudget();
+		List<Integer> request = new ArrayList<>();
+		int requestSize = 0;
+		for (int i = 0; i < asnOids.length; i++) {
+			asnOids[i] = new AsnObjectId(oids.get(i));
+			int size = getEncodedSize(asnOids[i]) + GET_VALUE_SIZE;
+			if (!request.isEmpty()
+					&& (requestSize + size > budget || request.size() >= agentProfile.getGetMaxOids())) {
+				if (!getUntilDeadline(asnOids, request, values)) {
+					return values;
+				}
+				request = new ArrayList<>();
+				requestSize = 0;
+			}
+			request.add(i);
+			requestSize += size;
+		}
+		if (!request.isEmpty()) {
+			getUntilDeadline(asnOids, request, values);
+		}
+
+		return values;
+	}
+
+	/**
+	 * Perform a GET operation on some of the specified OIDs, and stop at the
+	 * deadline of the operation once some OIDs have been received
+	 * 
+	 * @param oids    All the OIDs
+	 * @param request Indexes of the OIDs to get with this request
+	 * @param values  Where to store the varbinds, at the index of their OID
+	 * @return Whether the operation can go on
+	 * @throws Exception in case of any problem
+	 */
+	private boolean getUntilDeadline(AsnObjectId[] oids, List<Integer> request, varbind[] values)
+			throws Exception {
+		try {
+			get(oids, request, values);
+			return true;
+		} catch (Exception e) {
+			if (stopAtDeadline()) {
+				return false;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Perform a GET operation on some of the specified OIDs, splitting it when the
+	 * response does not fit
+	 * 
+	 * @param oids    All the OIDs
+	 * @param request Indexes of the OIDs to get with this request
+	 * @param values  Where to store the varbinds, at the index of their OID
+	 * @throws Exception in case of any problem, including a timeout
+	 */
+	private void get(AsnObjectId[] oids, List<Integer> request, varbind[] values) throws Exception {
+		createPdu();
+		pdu.setPduType(BlockPdu.GET);
+		for (int index : request) {
+			pdu.addOid(oids[index]);
+		}
+
+		varbind[] vars;
+		try {
+			vars = pdu.getResponseVariableBindings();
+		} catch (PduException e) {
+			int errorStatus = pdu.getErrorStatus();
+			int size = request.size();
+			if (size > 1 && (errorStatus == SnmpConstants.SNMP_ERR_TOOBIG
+					|| errorStatus == SnmpConstants.SNMP_ERR_DECODINGPKTLNGTH_EXC)) {
+				agentProfile.limitGetMaxOids(size);
+				get(oids, request.subList(0, size / 2), values);
+				get(oids, request.subList(size / 2, size), values);
+				return;
+			}
+
+			// SNMP v1 fails the whole request on the first missing OID: send the
+			// other ones again
+			int errorIndex = pdu.getErrorIndex();
+			if (errorStatus == SnmpConstants.SNMP_ERR_NOSUCHNAME && errorIndex >= 1 && errorIndex <= size) {
+				recordAnswer();
+				List<Integer> others = new ArrayList<>(request);
+				others.remove(errorIndex - 1);
+				if (!others.isEmpty()) {
+					get(oids, others, values);
+				}
+				return;
+			}
+			throw e;
+		}
+		if (vars == null || vars.length < request.size()) {
+			// Never report the OIDs of a request that was not answered as missing
+			throw new PduException("No response from " + host + ":" + port);
+		}
+		recordAnswer();
+
+		for (int i = 0; i < request.size(); i++) {
+			byte valueType = vars[i].getValue().getRespType();
+			if (valueType != SnmpConstants.SNMP_VAR_NOSUCHOBJECT
+					&& valueType != SnmpConstants.SNMP_VAR_NOSUCHINSTANCE
+					&& valueType != SnmpConstants.SNMP_VAR_ENDOFMIBVIEW) {
+				values[request.get(i)] = vars[i];
+			}
+		}
+	}
+
 	/**
 	 * Perform a GET operation on the specified OID and return the details of the
 	 * result (including the type of the value)
@@ -371,6 +867,7 @@ public class SnmpClient implements ISnmpClient {
 	 * @throws Exception in case of any problem
 	 */
 	public String getWithDetails(String oid) throws Exception {
+		startOperation();
 		createPdu();
 		pdu.setPduType(BlockPdu.GET);
 		pdu.addOid(oid);
@@ -387,6 +884,7 @@ public class SnmpClient implements ISnmpClient {
 	 * @throws Exception in case of any problem
 	 */
 	public String getNext(String oid) throws Exception {
+		startOperation();
 		createPdu();
 		pdu.setPduType(BlockPdu.GETNEXT);
 		pdu.addOid(oid);
@@ -395,8 +893,8 @@ public class SnmpClient implements ISnmpClient {
 	}
 
 	/**
-	 * Perform a WALK, i.e. a series of GETNEXT operations until we fall off the
-	 * tree
+	 * Perform a WALK, i.e. a series of GETBULK operations (SNMP v2c and v3) or
+	 * GETNEXT operations (SNMP v1) until we fall off the tree
 	 * 
 	 * @param oid Root OID of the tree
 	 * @return Result of the WALK operation, as a long String. Each pair of
@@ -407,15 +905,95 @@ public class SnmpClient implements ISnmpClient {
 	public String walk(String oid) throws Exception {
 
 		StringBuilder walkResult = new StringBuilder();
-		String currentOID;
-		SnmpResult getNextResult;
+		walk(oid, result -> {
+			// Append the result
+			walkResult.append(result.oid + "\t" + result.type + "\t" + result.value + "\n");
+
+			// 10 MB by default is the limit for the result of our WALK operation. Should be enough.
+			return walkResult.length() < walkMaxBytes;
+		});
+		if (walkResult.length() >= walkMaxBytes) {
+			truncated = true;
+		}
+
+		// Remove the trailing \n (if any)
+		int resultLength = walkResult.length();
+		if (resultLength > 0) {
+			return walkResult.substring(0, resultLength - 1);
+		}
+
+		// If nothing, return an empty string
+		return "";
+	}
+
+	/**
+	 * Perform a WALK, i.e. a series of GETBULK operations (SNMP v2c and v3) or
+	 * GETNEXT operations (SNMP v1) until we fall off the tree, handing each
+	 * oid/value over to the visitor as the responses arrive. Only one response
+	 * is kept in memory at a time, whatever the size of the tree.
+	 * 
+	 * @param oid     Root OID of the tree
+	 * @param visitor Receives the results, in order, and may stop the walk
+	 * @throws Exception                when the first request fails, or thrown by
+	 *                                  the visitor
+	 * @throws IllegalArgumentException for bad specified OIDs
+	 */
+	@Override
+	public void walk(String oid, SnmpWalkVisitor visitor) throws Exception {
+		walk(Collections.singletonList(oid), visitor);
+	}
+
+	/**
+	 * Perform a WALK of several trees at once, handing each oid/value over to the
+	 * visitor as the responses arrive.
+	 * <p>
+	 * Each tree is walked like with {@link #walk(String, SnmpWalkVisitor)}, but
+	 * up to <code>walkConcurrency</code> requests, each one on a different tree,
+	 * are in flight at the same time on the context. The walk of several trees
+	 * thus takes about as long as the longest of them, rather than the sum.
+	 * The results of a tree come in order, but they are interleaved with the
+	 * results of the other trees. When the walk stops, because the visitor has
+	 * had enough or threw, the requests still in flight are cancelled.
+	 * 
+	 * @param oids    Root OIDs of the trees
+	 * @param visitor Receives the results, and may stop the walk of all the trees
+	 * @throws Exception                when the first request of a tree fails, or
+	 *                                  thrown by the visitor
+	 * @throws IllegalArgumentException for bad specified OIDs
+	 * @see #setWalkConcurrency(int)
+	 */
+	@Override
+	public void walk(List<String> oids, SnmpWalkVisitor visitor) throws Exception {
+		walkVarbinds(oids, var -> visitor.visit(var.toSnmpResult()));
+	}
+
+	/**
+	 * Perform a WALK of several trees at once, like
+	 * {@link #walk(List, SnmpWalkVisitor)}, handing each OID and its value over
+	 * to the visitor as received, with no conversion to strings.
+	 * 
+	 * @param oids    Root OIDs of the trees
+	 * @param visitor Receives the results, and may stop the walk of all the trees
+	 * @throws Exception                when the first request of a tree fails, or
+	 *                                  thrown by the visitor
+	 * @throws IllegalArgumentException for bad specified OIDs
+	 */
+	public void walkVarbinds(List<String> oids, SnmpVarbindVisitor visitor) throws Exception {
 
 		// Sanity check?
-		if (oid == null) {
-			throw new IllegalArgumentException("Invalid SNMP Walk OID: null");
+		if (oids == null) {
+			throw new IllegalArgumentException("Invalid SNMP Walk OIDs: null");
 		}
-		if (oid.length() < 3) {
-			throw new IllegalArgumentException("Invalid SNMP Walk OID: \"" + oid + "\"");
+		startOperation();
+		ArrayDeque<WalkCursor> waiting = new ArrayDeque<>();
+		for (String oid : oids) {
+			if (oid == null) {
+				throw new IllegalArgumentException("Invalid SNMP Walk OID: null");
+			}
+			if (oid.length() < 3) {
+				throw new IllegalArgumentException("Invalid SNMP Walk OID: \"" + oid + "\"");
+			}
+			waiting.add(new WalkCursor(oid));
 		}
 
 		// Now, something special:
@@ -427,46 +1005,163 @@ public class SnmpClient implements ISnmpClient {
 		// intentionally put bad credentials to verify the error message... See
 		// MATSYA-464.
 		//
-		// So, we're going to first run a getNext() for nothing, just so that
-		// this call will throw the proper exception in case of credentials problems.
-		getNext(oid);
+		// So, a failure of the very first request of a tree is thrown, so that the
+		// proper exception is reported in case of credentials problems, unless it
+		// is a timeout at the deadline.
+		ArrayDeque<WalkCursor> inFlight = new ArrayDeque<>();
+		try {
+			while (!waiting.isEmpty() || !inFlight.isEmpty()) {
+
+				// Keep as many requests as allowed in flight
+				while (inFlight.size() < walkConcurrency && !waiting.isEmpty()) {
+					WalkCursor cursor = waiting.poll();
+					try {
+						cursor.request = sendBulk(new AsnObjectId[] { cursor.currentOID });
+					} catch (TimeoutException e) {
+						if (stopAtDeadline()) {
+							// Out of time: return what we have
+							return;
+						}
+						throw e;
+					}
+					inFlight.add(cursor);
+				}
 
-		currentOID = oid;
-		do {
-			createPdu();
-			pdu.setPduType(BlockPdu.GETNEXT);
-			pdu.addOid(currentOID);
-			try {
-				getNextResult = sendRequest();
-			} catch (Exception e) {
-				// Something wrong? Get out of the loop and return what we have
-				break;
-			}
+				// Then handle the responses, in the order of the requests
+				WalkCursor cursor = inFlight.poll();
+				varbind[] vars;
+				try {
+					vars = receiveBulk(cursor.request, 1, cursor.started);
+				} catch (EndOfMibViewException e) {
+					if (!cursor.started) {
+						throw e;
+					}
+					// The tree ends at the end of the MIB view (SNMP v1)
+					continue;
+				} catch (Exception e) {
+					if (stopAtDeadline()) {
+						// Out of time: return what we have
+						return;
+					}
+					if (!cursor.started) {
+						throw e;
+					}
+					// Something wrong? Forget about this tree and return what we have
+					truncated = true;
+					continue;
+				}
+				if (vars == null) {
+					// Send it again, with fewer repetitions
+					waiting.addFirst(cursor);
+					continue;
+				}
+				cursor.started = true;
+				if (vars.length == 0) {
+					continue;
+				}
 
-			currentOID = getNextResult.oid;
-			if (!currentOID.startsWith(oid)) {
-				// We're off the tree, so get out of the loop
-				break;
-			}
+				boolean offTree = false;
+				for (varbind var : vars) {
+					AsnObjectId varOID = var.getOid();
+					if (var.getValue().getRespType() == SnmpConstants.SNMP_VAR_ENDOFMIBVIEW
+							|| varOID.compareTo(cursor.currentOID) <= 0) {
+						// End of the MIB, or an agent that does not move forward
+						offTree = true;
+						break;
+					}
 
-			// Append the result
-			walkResult.append(currentOID + "\t" + getNextResult.type + "\t" + getNextResult.value + "\n");
+					if (!varOID.startsWith(cursor.rootOID)) {
+						// We're off the tree
+						offTree = true;
+						break;
+					}
+					checkValue(var.getValue());
 
-		} while (walkResult.length() < 10 * 1048576); // 10 MB is the limit for the result of our WALK operation. Should
-														// be enough.
+					cursor.currentOID = varOID;
+					if (!visitor.visit(new SnmpVarbind(var))) {
+						// The visitor has had enough
+						return;
+					}
+				}
+				if (!offTree) {
+					waiting.add(cursor);
+				}
+			}
+		} finally {
+			// Whatever the reason to stop, do not keep the requests of the other
+			// trees in flight
+			for (WalkCursor cursor : inFlight) {
+				cursor.request.cancel();
+			}
+		}
+	}
 
-		// Remove the trailing \n (if any)
-		int resultLength = walkResult.length();
-		if (resultLength > 0) {
-			return walkResult.substring(0, resultLength - 1);
+	/**
+	 * Sets the maximum number of requests that a multi-tree walk keeps in flight
+	 * at the same time with this agent (4 by default).
+	 * 
+	 * @param walkConcurrency The number of requests, between 1 and
+	 *                        {@link SnmpContextBasisFace#MAXPDU}
+	 * @throws IllegalArgumentException when the number is out of range
+	 * @see #walk(List, SnmpWalkVisitor)
+	 */
+	public void setWalkConcurrency(int walkConcurrency) {
+		if (walkConcurrency < 1 || walkConcurrency > SnmpContextBasisFace.MAXPDU) {
+			throw new IllegalArgumentException("Invalid SNMP Walk concurrency: " + walkConcurrency
+					+ " (must be between 1 and " + SnmpContextBasisFace.MAXPDU + ")");
 		}
+		this.walkConcurrency = walkConcurrency;
+	}
 
-		// If nothing, return an empty string
-		return "";
+	/**
+	 * @return The maximum number of requests that a multi-tree walk keeps in
+	 *         flight at the same time with this agent
+	 */
+	public int getWalkConcurrency() {
+		return walkConcurrency;
+	}
+
+	/**
+	 * Sets where the profile of the agent, i.e. what it was found to support, is
+	 * shared with other clients, e.g. {@link SnmpAgentProfiles#getShared()}. By
+	 * default, the profile is of this client only.
+	 * 
+	 * @param agentProfiles The profiles, or <code>null</code> for a profile of
+	 *                      this client only
+	 */
+	public void setAgentProfiles(SnmpAgentProfiles agentProfiles) {
+		agentProfile = agentProfiles == null ? new SnmpAgentProfile()
+				: agentProfiles.getProfile(host, port, snmpVersion);
+	}
+
+	/**
+	 * @return What the agent was found to support, learned from its responses
+	 */
+	public SnmpAgentProfile getAgentProfile() {
+		return agentProfile;
+	}
+
+	/**
+	 * Returns the congestion control of the agent, shared by all the contexts
+	 * of the same host and port: it can limit the requests in flight with this
+	 * agent, adapting the limit to its responses, cap their rate, and fail them
+	 * at once while the agent does not respond. All of these are off by
+	 * default.
+	 * 
+	 * @return The congestion control
+	 */
+	public CongestionControl getCongestionControl() {
+		return ((AbstractSnmpContext) getContext()).getCongestionControl();
 	}
 
 	/**
 	 * Read the content of an SNMP table
+	 * <p>
+	 * All the requested columns are read together, in the same requests: a
+	 * GETBULK (SNMP v2c and v3) or GETNEXT (SNMP v1) with one OID per column
+	 * that has not been fully read yet. The rows are the ones found in these
+	 * columns, unless "ID" is requested: then they are the rows of the first
+	 * column of the table, which is read along.
 	 * 
 	 * @param rootOID           Root OID of the SNMP table
 	 * @param selectColumnArray Array of numbers specifying the column numbers of
@@ -476,6 +1171,23 @@ public class SnmpClient implements ISnmpClient {
 	 * @throws Exception                when the underlying SNMP API throws one
 	 */
 	public List<List<String>> table(String rootOID, String[] selectColumnArray) throws Exception {
+		return table(rootOID, selectColumnArray, null);
+	}
+
+	/**
+	 * Read the content of an SNMP table, like {@link #table(String, String[])},
+	 * and the IDs of its rows
+	 * 
+	 * @param rootOID           Root OID of the SNMP table
+	 * @param selectColumnArray Array of numbers specifying the column numbers of
+	 *                          the array to be read. Use "ID" for the row number.
+	 * @param rowIds            Receives the ID of each row of the result, in the
+	 *                          same order, unless <code>null</code>
+	 * @return A semicolon-separated list of values
+	 * @throws IllegalArgumentException when the specified arguments are wrong
+	 * @throws Exception                when the underlying SNMP API throws one
+	 */
+	List<List<String>> table(String rootOID, String[] selectColumnArray, List<String> rowIds) throws Exception {
 
 		// Sanity check
 		if (rootOID == null) {
@@ -490,56 +1202,136 @@ public class SnmpClient implements ISnmpClient {
 		if (selectColumnArray.length < 1) {
 			throw new IllegalArgumentException("Invalid SNMP Table column numbers: none");
 		}
+		startOperation();
+
+		// The columns to read, each one once, and where their values go in the
+		// cells of a row
+		List<AsnObjectId> columnOids = new ArrayList<>();
+		Map<String, Integer> cellIndexes = new HashMap<>();
+		for (String column : selectColumnArray) {
+			if (!column.equals("ID") && !cellIndexes.containsKey(column)) {
+				cellIndexes.put(column, columnOids.size());
+				columnOids.add(new AsnObjectId(rootOID + "." + column));
+			}
+		}
 
-		// First of all, retrieve the list of IDs in the table
-		// To do so, we need to see what is the first column number available (it may
-		// not be 1)
-		createPdu();
-		pdu.setPduType(BlockPdu.GETNEXT);
-		pdu.addOid(rootOID);
-		String firstValueOid = sendRequest().oid;
-		if (firstValueOid.isEmpty() || !firstValueOid.startsWith(rootOID)) {
-			// Empty table
-			return new ArrayList<>();
-		}
-
-		int tempIndex = firstValueOid.indexOf(".", rootOID.length() + 2);
-		if (tempIndex < 0) {
-			// Weird case, there is no "." after the rootOID in the OID of the first value
-			// we successfully got in the table
-			return new ArrayList<>();
-		}
-		String firstColumnOid = firstValueOid.substring(0, tempIndex);
-		int firstColumnOidLength = firstColumnOid.length();
-
-		// Now, find the list of row IDs in this column. We're going to do something
-		// like a walk, except we don't care about the values. Just the OIDs.
-		ArrayList<String> IDArray = new ArrayList<String>(0);
-		String currentOID = firstColumnOid;
-		SnmpResult getNextResult;
-		do {
-			// Get next until we get out of the tree
+		// The row IDs are the ones of the first column available in the table (it may
+		// not be 1). We only need to know which one it is to read it along.
+		int idCellIndex = -1;
+		if (Arrays.asList(selectColumnArray).contains("ID")) {
+			AsnObjectId tableOid = new AsnObjectId(rootOID);
 			createPdu();
 			pdu.setPduType(BlockPdu.GETNEXT);
-			pdu.addOid(currentOID);
-			getNextResult = sendRequest();
+			pdu.addOid(tableOid);
+			AsnObjectId firstValueOid = new AsnObjectId(sendRequest().oid);
+			if (!firstValueOid.startsWith(tableOid) || firstValueOid.getSize() < tableOid.getSize() + 2) {
+				// Empty table, or weird case, there is no "." after the rootOID in the OID
+				// of the first value we successfully got in the table
+				return new ArrayList<>();
+			}
+			AsnObjectId firstColumnOid = new AsnObjectId(firstValueOid.getSubOid(0, tableOid.getSize() + 1));
+			idCellIndex = columnOids.indexOf(firstColumnOid);
+			if (idCellIndex < 0) {
+				idCellIndex = columnOids.size();
+				columnOids.add(firstColumnOid);
+			}
+		}
 
-			currentOID = getNextResult.oid;
+		// Read the columns, row by row, sorted by row ID
+		int columnCount = columnOids.size();
+		Map<AsnObjectId, String[]> cells = new TreeMap<>();
+		AsnObjectId[] currentOids = columnOids.toArray(new AsnObjectId[columnCount]);
+		int[] rowCounts = new int[columnCount];
+		boolean[] done = new boolean[columnCount];
+		int[] readColumns = new int[columnCount];
+		boolean started = false;
+		while (true) {
+			// The columns that still have rows to read
+			int readCount = 0;
+			for (int i = 0; i < columnCount; i++) {
+				if (!done[i]) {
+					readColumns[readCount++] = i;
+				}
+			}
+			if (readCount == 0) {
+				break;
+			}
+			AsnObjectId[] requestOids = new AsnObjectId[readCount];
+			for (int i = 0; i < readCount; i++) {
+				requestOids[i] = currentOids[readColumns[i]];
+			}
 
-			// Outside? Exit!
-			if (!currentOID.startsWith(firstColumnOid)) {
+			varbind[] vars;
+			try {
+				vars = getBulk(requestOids, started);
+			} catch (EndOfMibViewException e) {
+				// This column ends at the end of the MIB view (SNMP v1): read the
+				// other ones again
+				done[readColumns[e.index]] = true;
+				started = true;
+				continue;
+			} catch (Exception e) {
+				if (!stopAtDeadline()) {
+					throw e;
+				}
+				// Out of time: return what we have
+				break;
+			}
+			started = true;
+			if (vars.length == 0) {
 				break;
 			}
 
-			// Add the right part of the OID in the list of IDs (the part to the right of
-			// the column OID)
-			IDArray.add(currentOID.substring(firstColumnOidLength + 1));
+			// The response has the next OID of each requested column, then the one after
+			// that, and so on
+			for (int v = 0; v < vars.length; v++) {
+				int column = readColumns[v % readCount];
+				if (done[column]) {
+					continue;
+				}
+				varbind var = vars[v];
+				AsnObjectId varOid = var.getOid();
+				AsnObjectId columnOid = columnOids.get(column);
+				if (var.getValue().getRespType() == SnmpConstants.SNMP_VAR_ENDOFMIBVIEW
+						|| !varOid.startsWith(columnOid)
+						|| varOid.compareTo(currentOids[column]) <= 0) {
+					// Outside, or an agent that does not move forward? Done with this column
+					done[column] = true;
+					continue;
+				}
 
-		} while (IDArray.size() < 10000); // Not more than 10000 lines, please...
+				// The row ID is the part of the OID to the right of the column OID
+				AsnObjectId rowId = new AsnObjectId(varOid.getSubOid(columnOid.getSize(), varOid.getSize()));
+				String[] rowCells = cells.get(rowId);
+				if (rowCells == null) {
+					rowCells = new String[columnCount];
+					cells.put(rowId, rowCells);
+				}
+				// Keep going, even in case of a failure
+				try {
+					rowCells[column] = getResult(var).value;
+				} catch (Exception e) {
+					rowCells[column] = "";
+				}
+				currentOids[column] = varOid;
+
+				// Not more than 10000 lines (by default), please...
+				if (++rowCounts[column] >= tableMaxRows) {
+					done[column] = true;
+					truncated = true;
+				}
+			}
+		}
 
 		// And finally, build the result table
 		List<List<String>> tableResult = new ArrayList<>();
-		for (String ID : IDArray) {
+		for (Map.Entry<AsnObjectId, String[]> entry : cells.entrySet()) {
+			String[] rowCells = entry.getValue();
+			if (idCellIndex >= 0 && rowCells[idCellIndex] == null) {
+				// Not a row of the first column
+				continue;
+			}
+
 			// For each row...
 			List<String> row = new ArrayList<>();
 			for (String column : selectColumnArray) {
@@ -547,23 +1339,299 @@ public class SnmpClient implements ISnmpClient {
 
 				// If the column has to provide the ID of the row
 				if (column.equals("ID")) {
-					row.add(ID);
+					row.add(entry.getKey().toString());
 				} else {
-					// Keep going, even in case of a failure
-					try {
-						row.add(get(rootOID + "." + column + "." + ID));
-					} catch (Exception e) {
-						row.add("");
-					}
+					String value = rowCells[cellIndexes.get(column)];
+					row.add(value == null ? "" : value);
 				}
 			}
 			tableResult.add(row);
+			if (rowIds != null) {
+				rowIds.add(entry.getKey().toString());
+			}
 		}
 
 		// Return the result
 		return tableResult;
 	}
 
+	/**
+	 * Sends a GETBULK request (a GETNEXT request with SNMP v1) for the successors
+	 * of the specified OIDs.
+	 * <p>
+	 * The number of varbinds asked for follows the size of the largest varbind
+	 * of the last response, so that the responses fit in
+	 * <code>maxRecvSize</code>. It is halved, and never raised again to the
+	 * failing value, when the agent answers <code>tooBig</code> or when the
+	 * response was truncated. A request that gets no answer fails.
+	 * With a max-repetitions of 1, a GETBULK is a GETNEXT.
+	 * 
+	 * @param oids     The OIDs to get the successors of
+	 * @param answered Whether the agent already answered a request of this
+	 *                 exchange
+	 * @return The varbinds of the response: the successor of each OID, then the
+	 *         successor of each of these, and so on
+	 * @throws Exception when the request fails
+	 */
+	private varbind[] getBulk(AsnObjectId[] oids, boolean answered) throws Exception {
+		varbind[] vars;
+		do {
+			vars = receiveBulk(sendBulk(oids), oids.length, answered);
+		} while (vars == null);
+		return vars;
+	}
+
+	/**
+	 * Sends a GETBULK request (a GETNEXT request with SNMP v1) for the successors
+	 * of the specified OIDs, without waiting for the response
+	 * 
+	 * @param oids The OIDs to get the successors of
+	 * @return The request, to wait for with {@link #receiveBulk(Pdu, int, boolean)}
+	 * @throws IOException  when an error occurs at the network layer
+	 * @throws PduException     when the request cannot be sent
+	 * @throws TimeoutException when the deadline of the operation is reached
+	 */
+	private Pdu sendBulk(AsnObjectId[] oids) throws IOException, PduException, TimeoutException {
+		Pdu request;
+		if (snmpVersion == SNMP_V1 || bulkProbe || !agentProfile.isBulkSupported()) {
+			request = new GetNextPdu_vec(getContext(), oids.length);
+		} else {
+			GetBulkPdu bulkRequest = new GetBulkPdu(getContext());
+			bulkRequest.setNonRepeaters(0);
+			bulkRequest.setMaxRepetitions(Math.max(1, agentProfile.getBulkMaxVarbinds() / oids.length));
+			request = bulkRequest;
+		}
+		for (AsnObjectId oid : oids) {
+			request.addOid(oid);
+		}
+		int[] intervals = getRetryIntervals();
+		if (intervals != null) {
+			request.setRetryIntervals(intervals);
+		}
+		if (!request.send()) {
+			throw new PduException("Too many requests in flight with " + host + ":" + port);
+		}
+		return request;
+	}
+
+	/**
+	 * Waits for the response to a request sent with
+	 * {@link #sendBulk(AsnObjectId[])}, and adapts the number of varbinds of the
+	 * next requests (see {@link #getBulk(AsnObjectId[], boolean)}).
+	 * 
+	 * @param request  The request
+	 * @param oidCount The number of OIDs of the request
+	 * @param answered Whether the agent already answered a request of this
+	 *                 exchange
+	 * @return The varbinds of the response, or <code>null</code> when the
+	 *         request has to be sent again, with fewer repetitions
+	 * @throws EndOfMibViewException when an OID has no successor (SNMP v1)
+	 * @throws PduException          when the request fails or times out
+	 */
+	private varbind[] receiveBulk(Pdu request, int oidCount, boolean answered) throws PduException {
+		int repetitions = 1;
+		if (request instanceof GetBulkPdu) {
+			repetitions = ((GetBulkPdu) request).getMaxRepetitions();
+		}
+
+		request.waitForSelf();
+		varbind[] vars;
+		try {
+			vars = request.getResponseVarbinds();
+		} catch (PduException e) {
+			int errorStatus = request.getErrorStatus();
+			if (bulkProbe && !(request instanceof GetBulkPdu)) {
+				// GETNEXT fails too: GETBULK was not the problem
+				bulkProbe = false;
+				throw e;
+			}
+			if (request.isTimedOut()) {
+				// No answer: a walk must not take this for the end of the MIB view
+				throw e;
+			}
+			int errorIndex = request.getErrorIndex();
+			if (snmpVersion == SNMP_V1 && errorStatus == SnmpConstants.SNMP_ERR_NOSUCHNAME
+					&& errorIndex >= 1 && errorIndex <= oidCount) {
+				// SNMP v1 fails the whole GETNEXT when an OID has no successor
+				recordAnswer();
+				throw new EndOfMibViewException(e.getMessage(), errorIndex - 1);
+			}
+			if (repetitions > 1
+					&& (errorStatus == SnmpConstants.SNMP_ERR_TOOBIG
+							|| errorStatus == SnmpConstants.SNMP_ERR_DECODINGPKTLNGTH_EXC)) {
+				// The response did not fit: ask for less, from now on
+				agentProfile.limitBulkMaxVarbinds(repetitions * oidCount, repetitions / 2 * oidCount);
+				return null;
+			}
+			if (request instanceof GetBulkPdu && !answered && e instanceof AgentException
+					&& errorStatus != SnmpConstants.SNMP_ERR_TOOBIG) {
+				// The agent may not support GETBULK: try GETNEXT
+				bulkProbe = true;
+				return null;
+			}
+			throw e;
+		}
+		if (bulkProbe && !(request instanceof GetBulkPdu)) {
+			// GETNEXT works where GETBULK failed
+			bulkProbe = false;
+			agentProfile.setBulkSupported(false);
+		}
+		if (vars == null) {
+			throw new PduException("No response from " + host + ":" + port);
+		}
+		recordAnswer();
+
+		// Fill the next responses up to maxRecvSize, given the size of the largest
+		// varbind in this one
+		if (vars.length > 0) {
+			int varbindSize = 1;
+			for (varbind var : vars) {
+				varbindSize = Math.max(varbindSize, getEncodedSize(var));
+			}
+			int budget = getMaxRecvSize() - getResponseOverhead();
+			agentProfile.adaptBulkMaxVarbinds(budget / varbindSize);
+		}
+		return vars;
+	}
+
+	/**
+	 * @return The context of the agent
+	 */
+	private SnmpContextBasisFace getContext() {
+		if (snmpVersion == SNMP_V2C) {
+			return contextv2c;
+		} else if (snmpVersion == SNMP_V3) {
+			return contextv3;
+		}
+		return contextv1;
+	}
+
+	/**
+	 * @return The maximum size of the responses the context can receive, and
+	 *         the agent can handle, if known
+	 */
+	private int getMaxRecvSize() {
+		int maxRecvSize;
+		if (snmpVersion == SNMP_V2C) {
+			maxRecvSize = contextv2c.getMaxRecvSize();
+		} else if (snmpVersion == SNMP_V3) {
+			maxRecvSize = contextv3.getMaxRecvSize();
+			int peerMaxMessageSize = contextv3.getPeerMaxMessageSize();
+			if (peerMaxMessageSize > 0) {
+				maxRecvSize = Math.min(maxRecvSize, peerMaxMessageSize);
+			}
+		} else {
+			maxRecvSize = contextv1.getMaxRecvSize();
+		}
+		int maxMessageSize = agentProfile.getMaxMessageSize();
+		return maxMessageSize > 0 ? Math.min(maxRecvSize, maxMessageSize) : maxRecvSize;
+	}
+
+	/**
+	 * @return The number of bytes of varbinds that a GET response can hold
+	 */
+	int getGetBudget() {
+		return getMaxRecvSize() - getResponseOverhead();
+	}
+
+	/**
+	 * @return The error status of the last response, e.g.
+	 *         {@link SnmpConstants#SNMP_ERR_GENERR}
+	 */
+	int getErrorStatus() {
+		return pdu == null ? SnmpConstants.SNMP_ERR_NOERROR : pdu.getErrorStatus();
+	}
+
+	/**
+	 * @return The (largest) number of bytes of a response that are not varbinds:
+	 *         the message header, the community or the security parameters and
+	 *         the PDU header
+	 */
+	int getResponseOverhead() {
+		// Message header and version
+		int overhead = BER_HEADER_SIZE + BER_INTEGER_SIZE;
+		if (snmpVersion == SNMP_V3) {
+			// Header data: msgID, msgMaxSize, msgFlags and msgSecurityModel
+			overhead += BER_HEADER_SIZE + 3 * BER_INTEGER_SIZE + 3;
+			// USM security parameters, in an OCTET STRING: engine ID, boots, time,
+			// userName, authentication and privacy parameters
+			overhead += 2 * BER_HEADER_SIZE + BER_HEADER_SIZE + MAX_ENGINE_ID_SIZE + 2 * BER_INTEGER_SIZE
+					+ BER_HEADER_SIZE + getByteCount(authUsername) + BER_HEADER_SIZE + MAX_AUTH_PARAMETERS_SIZE
+					+ BER_HEADER_SIZE + PRIV_PARAMETERS_SIZE;
+			// Scoped PDU, possibly encrypted: context engine ID and name
+			overhead += 2 * BER_HEADER_SIZE + MAX_PRIV_PADDING + BER_HEADER_SIZE + MAX_ENGINE_ID_SIZE
+					+ BER_HEADER_SIZE + getByteCount(contextName);
+		} else {
+			overhead += BER_HEADER_SIZE + getByteCount(community);
+		}
+		// PDU header: request ID, error status, error index and the varbind list
+		// header
+		overhead += BER_HEADER_SIZE + 3 * BER_INTEGER_SIZE + BER_HEADER_SIZE;
+		return overhead;
+	}
+
+	/**
+	 * @param value A string, or null
+	 * @return The number of bytes of the string in a message
+	 */
+	private static int getByteCount(String value) {
+		return value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	/**
+	 * Estimates the number of bytes of the varbind of the specified OID in a GET
+	 * response, as used to pack the OIDs in requests
+	 * 
+	 * @param oid The OID
+	 * @return The estimated size in bytes
+	 */
+	static int getGetSize(String oid) {
+		return getEncodedSize(new AsnObjectId(oid)) + GET_VALUE_SIZE;
+	}
+
+	/**
+	 * Estimates the number of bytes of the specified varbind, BER encoded, in a
+	 * response
+	 * 
+	 * @param var The varbind
+	 * @return The estimated size in bytes
+	 */
+	private static int getEncodedSize(varbind var) {
+		// Varbind sequence, OID and value headers
+		int size = 6 + getEncodedSize(var.getOid());
+
+		AsnObject value = var.getValue();
+		if (value instanceof AsnOctets) {
+			size += ((AsnOctets) value).getBytes().length;
+		} else if (value instanceof AsnObjectId) {
+			size += ((AsnObjectId) value).getSize() * 2;
+		} else {
+			// Integers, counters, timeticks, IP addresses
+			size += 9;
+		}
+		return size;
+	}
+
+	/**
+	 * Estimates the number of bytes of the specified OID, BER encoded, including
+	 * its header
+	 * 
+	 * @param oid The OID
+	 * @return The estimated size in bytes
+	 */
+	private static int getEncodedSize(AsnObjectId oid) {
+		int size = 2;
+		int subIds = oid.getSize();
+		for (int i = 0; i < subIds; i++) {
+			long subId = oid.getElementAt(i);
+			do {
+				size++;
+				subId >>>= 7;
+			} while (subId != 0);
+		}
+		return size;
+	}
+
 	/**
 	 * Sends the SNMP request and perform some minor interpretation of the result
 	 * 
@@ -579,27 +1647,34 @@ public class SnmpClient implements ISnmpClient {
 	 */
 	private SnmpResult sendRequest() throws PduException, IOException, Exception {
 
+		// Send the SNMP request
+		return getResult(pdu.getResponseVariableBinding());
+
+	} // end of sendRequest
+
+	/**
+	 * Performs some minor interpretation of a varbind of a response
+	 * 
+	 * @param var The varbind
+	 * @return Result of the query in the form of a couple {oid;value} (SnmpResult)
+	 * @throws Exception when the varbind reports that the OID does not exist
+	 */
+	static SnmpResult getResult(varbind var) throws Exception {
+
 		// Declarations
 		SnmpResult result = new SnmpResult();
 
-		// Send the SNMP request
-		varbind var = pdu.getResponseVariableBinding();
-
 		// Retrieve the OID and value of the response (a varbind)
 		AsnObjectId oid = var.getOid();
 		AsnObject value = var.getValue();
 
 		// No such OID? Throw an exception (this needs to be caught gracefully by other
 		// functions)
+		checkValue(value);
 		byte valueType = value.getRespType();
-		if (valueType == SnmpConstants.SNMP_VAR_NOSUCHOBJECT ||
-				valueType == SnmpConstants.SNMP_VAR_NOSUCHINSTANCE ||
-				valueType == SnmpConstants.SNMP_VAR_ENDOFMIBVIEW) {
-			throw new Exception(value.getRespTypeString());
-		}
 
 		// Empty?
-		else if (valueType == SnmpConstants.ASN_NULL) {
+		if (valueType == SnmpConstants.ASN_NULL) {
 			result.oid = oid.toString();
 			result.type = "null";
 		}
@@ -660,6 +1735,53 @@ public class SnmpClient implements ISnmpClient {
 
 		return result;
 
-	} // end of sendRequest
+	} // end of getResult
+
+	/**
+	 * Checks that a value of a response is an actual value
+	 * 
+	 * @param value The value
+	 * @throws Exception when the value tells that the OID does not exist
+	 */
+	private static void checkValue(AsnObject value) throws Exception {
+		byte valueType = value.getRespType();
+		if (valueType == SnmpConstants.SNMP_VAR_NOSUCHOBJECT ||
+				valueType == SnmpConstants.SNMP_VAR_NOSUCHINSTANCE ||
+				valueType == SnmpConstants.SNMP_VAR_ENDOFMIBVIEW) {
+			throw new Exception(value.getRespTypeString());
+		}
+	}
+
+	/**
+	 * An SNMP v1 GETNEXT answered with <code>noSuchName</code>: one of its OIDs
+	 * has no successor, as it reached the end of the MIB view
+	 */
+	private static class EndOfMibViewException extends PduException {
+		private static final long serialVersionUID = 1L;
+
+		// Index of the OID in the request
+		private final int index;
+
+		private EndOfMibViewException(String message, int index) {
+			super(message);
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Where the walk of a tree is: its root and the last OID received, with the
+	 * request in flight, if any
+	 */
+	private static class WalkCursor {
+		private final AsnObjectId rootOID;
+		private AsnObjectId currentOID;
+		private Pdu request;
+		private boolean started;
+
+		private WalkCursor(String rootOID) {
+			this.rootOID = new AsnObjectId(rootOID);
+			this.currentOID = this.rootOID;
+		}
+	}
 
 }// end of class - SNMPClient
@@ -0,0 +1,279 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+package org.metricshub.snmp.client;
+
+import uk.co.westhawk.snmp.stack.SnmpConstants;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Merges the single-OID GETs that several callers send to the same agent within
+ * a short delay into multi-OID GETs, and hands each caller the value of its
+ * OID.
+ * <p>
+ * The first OID of a batch starts the delay. The batch is sent once the delay
+ * expires, or as soon as its response would exceed the
+ * <code>maxRecvSize</code> of the clients. The batches are sent with
+ * {@link SnmpClient#get(List)}, by threads of the batcher, which is the only
+ * user of the clients: as many batches as clients are in flight at once, so
+ * that a batch that times out does not hold up the next ones. The clients of a
+ * batcher are meant to share their context, with a {@link SnmpSessionCache}.
+ * <p>
+ * A batch that is not answered fails for all its callers, and so do the OIDs
+ * that it could not read before the deadline of the clients. A batch answered
+ * with <code>genErr</code> is sent again, one OID at a time, so that the OID
+ * the agent fails on does not fail the other ones.
+ */
+public class SnmpGetBatcher implements AutoCloseable {
+
+	private final List<SnmpClient> clients;
+	private final BlockingQueue<SnmpClient> idleClients;
+	private final long delayNanos;
+	private final int budget;
+	private final ScheduledExecutorService sender;
+
+	// The OIDs of the next batch, with the callers waiting for each of them, and
+	// the estimated size of the response
+	private Map<String, List<CompletableFuture<String>>> pending = new LinkedHashMap<>();
+	private int pendingSize;
+	private ScheduledFuture<?> scheduledSend;
+
+	private long requests;
+	private long batches;
+	private boolean closed;
+
+	/**
+	 * Creates a batcher that sends one batch at a time.
+	 *
+	 * @param client The client that sends the batches, used by the batcher only
+	 * @param delay  Time the first OID of a batch waits for other OIDs
+	 * @param unit   Unit of the delay
+	 * @throws IllegalArgumentException when the delay is negative
+	 */
+	public SnmpGetBatcher(SnmpClient client, long delay, TimeUnit unit) {
+		this(client == null ? null : Collections.singletonList(client), delay, unit);
+	}
+
+	/**
+	 * Creates a batcher that sends up to one batch per client at once.
+	 *
+	 * @param clients The clients that send the batches, all to the same agent,
+	 *                used by the batcher only
+	 * @param delay   Time the first OID of a batch waits for other OIDs
+	 * @param unit    Unit of the delay
+	 * @throws IllegalArgumentException when there is no client, or the delay is
+	 *                                  negative
+	 */
+	public SnmpGetBatcher(List<SnmpClient> clients, long delay, TimeUnit unit) {
+		if (clients == null || clients.isEmpty() || clients.contains(null) || delay < 0 || unit == null) {
+			throw new IllegalArgumentException("Invalid SNMP GET batcher settings: " + clients + ", delay " + delay
+					+ " " + unit);
+		}
+		this.clients = new ArrayList<>(clients);
+		this.idleClients = new ArrayBlockingQueue<>(clients.size(), false, clients);
+		this.delayNanos = unit.toNanos(delay);
+		int smallestBudget = Integer.MAX_VALUE;
+		for (SnmpClient client : clients) {
+			smallestBudget = Math.min(smallestBudget, client.getGetBudget());
+		}
+		this.budget = smallestBudget;
+		this.sender = Executors.newScheduledThreadPool(clients.size(), runnable -> {
+			Thread thread = new Thread(runnable, "SnmpGetBatcher-sender");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Performs a GET for the specified OID, as part of the next batch, and waits
+	 * for its value.
+	 *
+	 * @param oid OID on which to perform a GET operation
+	 * @return The value, or <code>null</code> if the OID does not exist
+	 * @throws Exception in case of any problem with the batch
+	 */
+	public String get(String oid) throws Exception {
+		try {
+			return getAsync(oid).get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Performs a GET for the specified OID, as part of the next batch.
+	 *
+	 * @param oid OID on which to perform a GET operation
+	 * @return The value, or <code>null</code> if the OID does not exist, once
+	 *         received
+	 * @throws IllegalStateException when the batcher is closed
+	 */
+	public synchronized CompletableFuture<String> getAsync(String oid) {
+		if (closed) {
+			throw new IllegalStateException("SNMP GET batcher closed");
+		}
+		oid = clients.get(0).stripDot(oid);
+		requests++;
+		CompletableFuture<String> result = new CompletableFuture<>();
+		List<CompletableFuture<String>> callers = pending.get(oid);
+		if (callers == null) {
+			int size = SnmpClient.getGetSize(oid);
+			if (!pending.isEmpty() && pendingSize + size > budget) {
+				sendPending();
+			}
+			callers = new ArrayList<>(1);
+			pending.put(oid, callers);
+			pendingSize += size;
+		}
+		callers.add(result);
+		if (scheduledSend == null) {
+			scheduledSend = sender.schedule(this::sendPending, delayNanos, TimeUnit.NANOSECONDS);
+		}
+		return result;
+	}
+
+	/**
+	 * Hands the pending OIDs over to the sender threads, as a batch.
+	 */
+	private synchronized void sendPending() {
+		if (scheduledSend != null) {
+			scheduledSend.cancel(false);
+			scheduledSend = null;
+		}
+		if (pending.isEmpty()) {
+			return;
+		}
+		Map<String, List<CompletableFuture<String>>> batch = pending;
+		pending = new LinkedHashMap<>();
+		pendingSize = 0;
+		batches++;
+		sender.execute(() -> send(batch));
+	}
+
+	/**
+	 * Sends a batch with an idle client, and hands the values over to the
+	 * callers.
+	 *
+	 * @param batch The OIDs, with the callers waiting for each of them
+	 */
+	private void send(Map<String, List<CompletableFuture<String>>> batch) {
+		SnmpClient client;
+		try {
+			// There are as many sender threads as clients
+			client = idleClients.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(batch.values(), e);
+			return;
+		}
+		try {
+			send(client, batch);
+		} finally {
+			idleClients.add(client);
+		}
+	}
+
+	private static void send(SnmpClient client, Map<String, List<CompletableFuture<String>>> batch) {
+		List<String> oids = new ArrayList<>(batch.keySet());
+		List<String> values;
+		try {
+			values = client.get(oids);
+		} catch (Exception | Error e) {
+			if (oids.size() > 1 && client.getErrorStatus() == SnmpConstants.SNMP_ERR_GENERR) {
+				// Find the OIDs the agent fails on
+				for (Map.Entry<String, List<CompletableFuture<String>>> oid : batch.entrySet()) {
+					send(client, Collections.singletonMap(oid.getKey(), oid.getValue()));
+				}
+			} else {
+				fail(batch.values(), e);
+			}
+			return;
+		}
+
+		// The OIDs not read before the deadline are not missing
+		boolean truncated = client.isTruncated();
+		for (int i = 0; i < oids.size(); i++) {
+			String value = values.get(i);
+			List<CompletableFuture<String>> callers = batch.get(oids.get(i));
+			if (value == null && truncated) {
+				fail(Collections.singletonList(callers),
+						new TimeoutException("No value for " + oids.get(i) + " before the deadline"));
+			} else {
+				callers.forEach(caller -> caller.complete(value));
+			}
+		}
+	}
+
+	private static void fail(Iterable<List<CompletableFuture<String>>> batch, Throwable e) {
+		for (List<CompletableFuture<String>> callers : batch) {
+			callers.forEach(caller -> caller.completeExceptionally(e));
+		}
+	}
+
+	/**
+	 * @return The number of GETs requested from this batcher
+	 */
+	public synchronized long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return The number of batches sent, each with one or more requests,
+	 *         depending on the size of the responses
+	 */
+	public synchronized long getBatches() {
+		return batches;
+	}
+
+	/**
+	 * Sends the pending OIDs, and stops the sender threads once sent. The
+	 * clients are not freed.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		sendPending();
+		sender.shutdown();
+	}
+}
@@ -0,0 +1,127 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A polling job of {@link SnmpPoller}: the OIDs to get and the trees to walk
+ * on a target, every interval.
+ * <p>
+ * The client is created by the specified factory on the first run, with the
+ * credentials of the target, and reused by the next runs until the job is
+ * cancelled. The factory should build the client with a shared
+ * {@link SnmpSessionCache}, so that the jobs of the same target share their
+ * context (see {@link SnmpPoller}).
+ */
+public class SnmpPollJob {
+
+	private final String target;
+	private final Callable<? extends ISnmpClient> clientFactory;
+	private final List<String> getOids;
+	private final List<String> walkOids;
+	private final long intervalMillis;
+
+	// State of the job in the poller: the run in progress reports the runs
+	// skipped meanwhile
+	ISnmpClient client;
+	boolean running;
+	int skipped;
+	volatile boolean cancelled;
+
+	/**
+	 * Creates a polling job.
+	 *
+	 * @param target        Identifies the target, e.g. "host:port", for the
+	 *                      per-target limit of requests in flight
+	 * @param clientFactory Creates the client of the target
+	 * @param getOids       The OIDs to get at each run (may be empty)
+	 * @param walkOids      The trees to walk at each run (may be empty)
+	 * @param interval      Time between two runs
+	 * @param unit          Unit of the interval
+	 * @throws IllegalArgumentException when an argument is missing, or the interval is not positive
+	 */
+	public SnmpPollJob(String target, Callable<? extends ISnmpClient> clientFactory, List<String> getOids,
+			List<String> walkOids, long interval, TimeUnit unit) {
+		if (target == null) {
+			throw new IllegalArgumentException("Invalid SNMP polling target: null");
+		}
+		if (clientFactory == null) {
+			throw new IllegalArgumentException("Invalid SNMP polling client factory: null");
+		}
+		if (unit == null || interval <= 0) {
+			throw new IllegalArgumentException("Invalid SNMP polling interval: " + interval + " " + unit);
+		}
+		this.target = target;
+		this.clientFactory = clientFactory;
+		this.getOids = getOids == null ? Collections.<String>emptyList()
+				: Collections.unmodifiableList(new ArrayList<>(getOids));
+		this.walkOids = walkOids == null ? Collections.<String>emptyList()
+				: Collections.unmodifiableList(new ArrayList<>(walkOids));
+		this.intervalMillis = unit.toMillis(interval);
+	}
+
+	/**
+	 * @return The target
+	 */
+	public String getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return The factory of the client of the target
+	 */
+	public Callable<? extends ISnmpClient> getClientFactory() {
+		return clientFactory;
+	}
+
+	/**
+	 * @return The OIDs to get at each run
+	 */
+	public List<String> getGetOids() {
+		return getOids;
+	}
+
+	/**
+	 * @return The trees to walk at each run
+	 */
+	public List<String> getWalkOids() {
+		return walkOids;
+	}
+
+	/**
+	 * @return Time between two runs, in milliseconds
+	 */
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "SnmpPollJob[" + target + ", get " + getOids + ", walk " + walkOids + ", every " + intervalMillis + " ms]";
+	}
+}
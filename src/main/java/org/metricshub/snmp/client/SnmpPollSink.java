@@ -0,0 +1,69 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import java.util.List;
+
+/**
+ * Receives the results of the jobs of a {@link SnmpPoller}. The methods are
+ * called by the worker threads of the poller, possibly concurrently for
+ * different jobs, but never concurrently for the same job.
+ */
+public interface SnmpPollSink {
+
+	/**
+	 * Called with the values of the OIDs to get of a run.
+	 * @param job The job.
+	 * @param values The values, in the order of {@link SnmpPollJob#getGetOids()}, <code>null</code> for the OIDs that do not exist.
+	 */
+	void onGet(SnmpPollJob job, List<String> values);
+
+	/**
+	 * Called for each result of the trees to walk of a run, as they arrive.
+	 * @param job The job.
+	 * @param result The OID, its type and its value.
+	 */
+	void onWalk(SnmpPollJob job, SnmpResult result);
+
+	/**
+	 * Called when a run fails. The results of the run that were already handed over are valid.
+	 * @param job The job.
+	 * @param exception What went wrong.
+	 */
+	void onFailure(SnmpPollJob job, Exception exception);
+
+	/**
+	 * Called at the end of a successful run.
+	 * @param job The job.
+	 */
+	default void onCompleted(SnmpPollJob job) {
+	}
+
+	/**
+	 * Called when a run is skipped, because the previous one is still waiting or in progress.
+	 * It is called once the previous run is over, by its thread.
+	 * @param job The job.
+	 */
+	default void onSkipped(SnmpPollJob job) {
+	}
+}
@@ -0,0 +1,411 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Polls many targets: runs {@link SnmpPollJob}s at their interval and hands
+ * their results to a {@link SnmpPollSink}.
+ * <p>
+ * The first run of a job happens at a random time within its interval, and
+ * each next run one interval later, give or take a random jitter, so that
+ * thousands of jobs with the same interval load the network and the agents
+ * evenly. At most <code>maxInFlight</code> runs are in progress at the same
+ * time, and at most <code>maxInFlightPerTarget</code> on the same target; the
+ * other ones wait for their turn. A run is skipped when the previous run of
+ * the same job is still waiting or in progress, and the previous run reports
+ * it to the sink once it is over.
+ * <p>
+ * Each job reuses its client from one run to the next. The clients are freed
+ * when their job is cancelled and when the poller is closed.
+ * <p>
+ * The poller does not create the clients: each job has its own, built by the
+ * factory of the job, and a {@link SnmpClient} built without a
+ * {@link SnmpSessionCache} has a context (socket and receiving thread) of its
+ * own. For the jobs of the same target and credentials to share a context,
+ * their factories must build the clients with the same session cache, which
+ * outlives the poller:
+ *
+ * <pre>
+ * SnmpSessionCache sessions = new SnmpSessionCache(5, TimeUnit.MINUTES);
+ * poller.schedule(new SnmpPollJob("host:161",
+ * 		() -&gt; new SnmpClient(host, 161, version, retryIntervals, community, null, null, null, null, null, null, null,
+ * 				sessions),
+ * 		getOids, walkOids, 1, TimeUnit.MINUTES));
+ * </pre>
+ */
+public class SnmpPoller implements AutoCloseable {
+
+	private final SnmpPollSink sink;
+	private final int maxInFlightPerTarget;
+	private final ScheduledExecutorService scheduler;
+	private final ExecutorService workers;
+
+	// Jitter of the runs, as a ratio of the interval
+	private volatile double jitter = 0.05;
+
+	// The scheduled jobs, and their next run
+	private final Map<SnmpPollJob, ScheduledFuture<?>> jobs = new ConcurrentHashMap<>();
+
+	// The runs in progress and the waiting ones, per target
+	private final Map<String, TargetState> targets = new HashMap<>();
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private volatile boolean closed;
+
+	/**
+	 * Creates a poller.
+	 *
+	 * @param sink                 Receives the results of the jobs
+	 * @param maxInFlight          Maximum number of runs in progress at the same
+	 *                             time, i.e. number of threads of the poller
+	 * @param maxInFlightPerTarget Maximum number of runs in progress at the same
+	 *                             time on the same target
+	 * @throws IllegalArgumentException when the sink is missing or a limit is not
+	 *                                  positive
+	 */
+	public SnmpPoller(SnmpPollSink sink, int maxInFlight, int maxInFlightPerTarget) {
+		if (sink == null) {
+			throw new IllegalArgumentException("Invalid SNMP polling sink: null");
+		}
+		if (maxInFlight < 1 || maxInFlightPerTarget < 1) {
+			throw new IllegalArgumentException("Invalid SNMP polling limits: " + maxInFlight + " in flight, "
+					+ maxInFlightPerTarget + " per target");
+		}
+		this.sink = sink;
+		this.maxInFlightPerTarget = maxInFlightPerTarget;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new PollerThreadFactory("SnmpPoller-scheduler"));
+		this.workers = Executors.newFixedThreadPool(maxInFlight, new PollerThreadFactory("SnmpPoller-worker"));
+	}
+
+	/**
+	 * Sets the jitter of the runs: each run happens one interval after the
+	 * previous one, plus or minus up to this ratio of the interval (0.05 by
+	 * default).
+	 *
+	 * @param jitter The ratio, between 0 and 1
+	 * @throws IllegalArgumentException when the ratio is out of range
+	 */
+	public void setJitter(double jitter) {
+		if (jitter < 0 || jitter > 1) {
+			throw new IllegalArgumentException("Invalid SNMP polling jitter: " + jitter);
+		}
+		this.jitter = jitter;
+	}
+
+	/**
+	 * @return The jitter of the runs, as a ratio of the interval
+	 */
+	public double getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * Schedules a job. Its first run happens at a random time within its
+	 * interval.
+	 *
+	 * @param job The job
+	 * @throws IllegalStateException when the poller is closed, or the job is
+	 *                               already scheduled
+	 */
+	public void schedule(SnmpPollJob job) {
+		if (closed) {
+			throw new IllegalStateException("SNMP poller is closed");
+		}
+		synchronized (job) {
+			if (jobs.containsKey(job) || job.cancelled) {
+				throw new IllegalStateException("SNMP polling job is already scheduled: " + job);
+			}
+			long delay = (long) (ThreadLocalRandom.current().nextDouble() * job.getIntervalMillis());
+			jobs.put(job, scheduler.schedule(() -> fire(job), delay, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	/**
+	 * Cancels a job: it will not run anymore, and its client is freed once the
+	 * run in progress, if any, is over.
+	 *
+	 * @param job The job
+	 * @return Whether the job was scheduled
+	 */
+	public boolean cancel(SnmpPollJob job) {
+		synchronized (job) {
+			ScheduledFuture<?> next = jobs.remove(job);
+			if (next == null) {
+				return false;
+			}
+			next.cancel(false);
+			job.cancelled = true;
+			if (!job.running) {
+				freeClient(job);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @return The scheduled jobs
+	 */
+	public Set<SnmpPollJob> getJobs() {
+		return jobs.keySet();
+	}
+
+	/**
+	 * @return The number of runs in progress
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Stops the poller: cancels all the jobs, waits for the runs in progress to
+	 * be over, and frees the clients.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (SnmpPollJob job : jobs.keySet()) {
+			cancel(job);
+		}
+		scheduler.shutdownNow();
+		workers.shutdown();
+		try {
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Time to run the job: schedules the next run, and starts this one, or puts
+	 * it in the waiting line of its target.
+	 *
+	 * @param job The job
+	 */
+	private void fire(SnmpPollJob job) {
+		synchronized (job) {
+			if (job.cancelled) {
+				return;
+			}
+			long interval = job.getIntervalMillis();
+			long delay = interval + (long) ((ThreadLocalRandom.current().nextDouble() * 2 - 1) * jitter * interval);
+			try {
+				jobs.put(job, scheduler.schedule(() -> fire(job), Math.max(1, delay), TimeUnit.MILLISECONDS));
+			} catch (RejectedExecutionException e) {
+				// Closed meanwhile
+				return;
+			}
+
+			if (job.running) {
+				// Still waiting or in progress since the last time: the run will tell
+				job.skipped++;
+				return;
+			}
+			job.running = true;
+		}
+
+		synchronized (targets) {
+			TargetState target = targets.get(job.getTarget());
+			if (target == null) {
+				target = new TargetState();
+				targets.put(job.getTarget(), target);
+			}
+			if (target.inFlight >= maxInFlightPerTarget) {
+				target.waiting.add(job);
+			} else if (start(job)) {
+				target.inFlight++;
+			} else {
+				stop(job);
+				if (target.inFlight == 0 && target.waiting.isEmpty()) {
+					targets.remove(job.getTarget());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts a run of the job, which has a slot on its target.
+	 *
+	 * @param job The job
+	 * @return Whether the run was started, i.e. the poller is not closed
+	 */
+	private boolean start(SnmpPollJob job) {
+		try {
+			workers.execute(() -> {
+				inFlight.incrementAndGet();
+				try {
+					run(job);
+				} finally {
+					inFlight.decrementAndGet();
+					done(job);
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Runs the job: gets its OIDs and walks its trees.
+	 *
+	 * @param job The job
+	 */
+	private void run(SnmpPollJob job) {
+		try {
+			ISnmpClient client = job.client;
+			if (client == null) {
+				client = job.getClientFactory().call();
+				job.client = client;
+			}
+			if (!job.getGetOids().isEmpty()) {
+				sink.onGet(job, client.get(job.getGetOids()));
+			}
+			if (!job.getWalkOids().isEmpty()) {
+				client.walk(job.getWalkOids(), result -> {
+					sink.onWalk(job, result);
+					return !job.cancelled;
+				});
+			}
+			sink.onCompleted(job);
+		} catch (Exception e) {
+			try {
+				sink.onFailure(job, e);
+			} catch (RuntimeException ignored) {
+				// The sink's problem: keep polling
+			}
+		}
+	}
+
+	/**
+	 * A run is over: gives its slot on the target to the next waiting run, if
+	 * any.
+	 *
+	 * @param job The job
+	 */
+	private void done(SnmpPollJob job) {
+		// Report the runs skipped meanwhile, from this thread, so that the sink
+		// is never called concurrently for the same job
+		while (true) {
+			int skipped;
+			synchronized (job) {
+				skipped = job.skipped;
+				job.skipped = 0;
+				if (skipped == 0 || job.cancelled) {
+					stop(job);
+					break;
+				}
+			}
+			for (int i = 0; i < skipped; i++) {
+				notifySkipped(job);
+			}
+		}
+
+		synchronized (targets) {
+			TargetState target = targets.get(job.getTarget());
+			SnmpPollJob next = target.waiting.poll();
+			while (next != null && (next.cancelled || closed || !start(next))) {
+				stop(next);
+				next = target.waiting.poll();
+			}
+			if (next == null) {
+				target.inFlight--;
+				if (target.inFlight == 0 && target.waiting.isEmpty()) {
+					targets.remove(job.getTarget());
+				}
+			}
+		}
+	}
+
+	/**
+	 * A run is over, or will not happen: frees the client of the job if it
+	 * was cancelled.
+	 *
+	 * @param job The job
+	 */
+	private static void stop(SnmpPollJob job) {
+		synchronized (job) {
+			job.running = false;
+			job.skipped = 0;
+			if (job.cancelled) {
+				freeClient(job);
+			}
+		}
+	}
+
+	private void notifySkipped(SnmpPollJob job) {
+		try {
+			sink.onSkipped(job);
+		} catch (RuntimeException ignored) {
+			// The sink's problem: keep polling
+		}
+	}
+
+	private static void freeClient(SnmpPollJob job) {
+		if (job.client != null) {
+			job.client.freeResources();
+			job.client = null;
+		}
+	}
+
+	/**
+	 * The runs of a target: the number in progress, and the waiting ones
+	 */
+	private static class TargetState {
+		private int inFlight;
+		private final ArrayDeque<SnmpPollJob> waiting = new ArrayDeque<>();
+	}
+
+	/**
+	 * Creates the daemon threads of the poller
+	 */
+	private static class PollerThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		private PollerThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,377 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import uk.co.westhawk.snmp.stack.SnmpConstants;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes per-second rates of SNMP counters from successive samples.
+ * <p>
+ * The previous sample of each counter, identified by a target and an OID, is
+ * kept in primitive arrays, indexed by a <code>long</code> key obtained once
+ * with {@link #getKey(String, String)}. Counter32 values wrap at 2^32, and
+ * Counter64 values are handled as unsigned 64-bit integers, which never wrap
+ * in practice: a Counter64 going backwards is always a discontinuity.
+ * <p>
+ * The elapsed time comes from the sysUpTime of the agent, sampled along with
+ * the counters, when available, or from the local clock. A sysUpTime going
+ * backwards means that the agent restarted, and that its counters started
+ * from zero again: this is a discontinuity, and no rate is computed. A
+ * Counter32 going backwards while sysUpTime does not move, or at all with the
+ * local clock, which cannot tell a wrap from a reset, is a discontinuity too.
+ * <p>
+ * The samples of the counters that are no longer polled are dropped with
+ * {@link #remove(long)} or {@link #evictIdle(long)}, along with the targets
+ * and OIDs that no sample uses any more.
+ * <p>
+ * Instances are thread-safe.
+ */
+public class SnmpRateEngine {
+
+	// Longest interval between two samples across the 2^32 wrap of sysUpTime:
+	// a sysUpTime going backwards by more is a restart of the agent. 1 day, in
+	// 1/100 s
+	private static final long MAX_WRAP_INTERVAL = 8640000;
+
+	private static final long COUNTER32_MASK = 0xFFFFFFFFL;
+
+	// Interned targets and OIDs, whose numbers make the keys. Numbers are never
+	// reused, so that the key of a pruned target or OID does not alias another
+	private final Map<String, Integer> targets = new HashMap<>();
+	private final Map<String, Integer> oids = new HashMap<>();
+	private int lastTarget;
+	private int lastOid;
+
+	// Open-addressing hash table of the previous samples, by key (0 for an
+	// empty slot)
+	private long[] keys = new long[64];
+	private long[] values = new long[64];
+	private long[] upTimes = new long[64];
+	private boolean[] discontinuities = new boolean[64];
+	// System.nanoTime() of the last sample, for evictIdle()
+	private long[] lastUpdates = new long[64];
+	private int size;
+
+	/**
+	 * Returns the key of a counter, to use with
+	 * {@link #update(long, byte, long, long)}. Callers are expected to keep it,
+	 * rather than calling this method for each sample, and to get it again
+	 * once the samples of the counter have been removed.
+	 *
+	 * @param target The target, e.g. its host name
+	 * @param oid    The OID of the counter
+	 * @return The key
+	 */
+	public synchronized long getKey(String target, String oid) {
+		Integer targetNumber = targets.get(target);
+		if (targetNumber == null) {
+			// Starting at 1, so that no key is 0
+			targetNumber = ++lastTarget;
+			targets.put(target, targetNumber);
+		}
+		Integer oidNumber = oids.get(oid);
+		if (oidNumber == null) {
+			oidNumber = ++lastOid;
+			oids.put(oid, oidNumber);
+		}
+		return ((long) targetNumber << 32) | (oidNumber & COUNTER32_MASK);
+	}
+
+	/**
+	 * Records a sample of a counter, and returns its rate since the previous
+	 * sample.
+	 *
+	 * @param key       The key of the counter, see {@link #getKey(String, String)}
+	 * @param counter   The value of the counter, as received
+	 * @param sysUpTime The sysUpTime of the agent sampled along, in 1/100 s,
+	 *                  or -1 to use the local clock
+	 * @return The rate per second, or <code>NaN</code> for the first sample, a
+	 *         discontinuity, or no elapsed time
+	 * @throws IllegalArgumentException when the value is not a counter
+	 */
+	public double update(long key, SnmpVarbind counter, long sysUpTime) {
+		return update(key, counter.getType(), counter.getLong(), sysUpTime);
+	}
+
+	/**
+	 * Records a sample of a counter, and returns its rate since the previous
+	 * sample.
+	 *
+	 * @param key       The key of the counter, see {@link #getKey(String, String)}
+	 * @param type      The type of the counter: {@link SnmpConstants#COUNTER} or
+	 *                  {@link SnmpConstants#COUNTER64}
+	 * @param value     The value of the counter, unsigned
+	 * @param sysUpTime The sysUpTime of the agent sampled along, in 1/100 s,
+	 *                  or -1 to use the local clock
+	 * @return The rate per second, or <code>NaN</code> for the first sample, a
+	 *         discontinuity, or no elapsed time
+	 * @throws IllegalArgumentException when the type is not a counter
+	 */
+	public synchronized double update(long key, byte type, long value, long sysUpTime) {
+		if (type != SnmpConstants.COUNTER && type != SnmpConstants.COUNTER64) {
+			throw new IllegalArgumentException("Not a counter type: " + type);
+		}
+
+		// In 1/100 s, like sysUpTime, or in nanoseconds with the local clock
+		long now = System.nanoTime();
+		boolean localClock = sysUpTime < 0;
+		long time = localClock ? now : sysUpTime & COUNTER32_MASK;
+
+		int slot = find(key);
+		if (keys[slot] == 0) {
+			put(slot, key, value, time, now);
+			return Double.NaN;
+		}
+		long previousValue = values[slot];
+		long previousTime = upTimes[slot];
+		values[slot] = value;
+		upTimes[slot] = time;
+		lastUpdates[slot] = now;
+
+		long elapsed;
+		if (localClock) {
+			elapsed = time - previousTime;
+		} else {
+			elapsed = (time - previousTime) & COUNTER32_MASK;
+			if (time < previousTime && elapsed > MAX_WRAP_INTERVAL) {
+				// The agent restarted
+				discontinuities[slot] = true;
+				return Double.NaN;
+			}
+		}
+
+		// Unsigned difference, modulo 2^32 or 2^64
+		long delta = value - previousValue;
+		boolean decreased;
+		if (type == SnmpConstants.COUNTER) {
+			delta &= COUNTER32_MASK;
+			decreased = (value & COUNTER32_MASK) < (previousValue & COUNTER32_MASK);
+		} else {
+			decreased = Long.compareUnsigned(value, previousValue) < 0;
+		}
+		if (decreased && (type == SnmpConstants.COUNTER64 || localClock || elapsed == 0)) {
+			// Not a wrap: the counter was reset, or the local clock cannot tell
+			discontinuities[slot] = true;
+			return Double.NaN;
+		}
+		discontinuities[slot] = false;
+		if (elapsed <= 0) {
+			return Double.NaN;
+		}
+
+		double seconds = localClock ? elapsed / 1e9 : elapsed / 100.0;
+		return unsignedToDouble(delta) / seconds;
+	}
+
+	/**
+	 * @param key The key of a counter
+	 * @return Whether the last sample of the counter came after a restart of
+	 *         the agent, or a reset of the counter
+	 */
+	public synchronized boolean isDiscontinuity(long key) {
+		int slot = find(key);
+		return keys[slot] != 0 && discontinuities[slot];
+	}
+
+	/**
+	 * @return The number of counters with a previous sample
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Forgets the previous sample of a counter. The target and the OID of the
+	 * counter are forgotten too when no other sample uses them.
+	 *
+	 * @param key The key of the counter
+	 * @return Whether the counter had a previous sample
+	 */
+	public synchronized boolean remove(long key) {
+		int slot = find(key);
+		if (keys[slot] == 0) {
+			return false;
+		}
+		removeSlot(slot);
+		prune();
+		return true;
+	}
+
+	/**
+	 * Forgets the previous samples of the counters that have not been updated
+	 * for the given time, and the targets and OIDs that no sample uses any
+	 * more.
+	 *
+	 * @param maxIdleMillis The time since the last sample, in milliseconds
+	 * @return The number of samples forgotten
+	 */
+	public synchronized int evictIdle(long maxIdleMillis) {
+		long now = System.nanoTime();
+		long maxIdle = maxIdleMillis * 1000000L;
+		int evicted = 0;
+		int slot = 0;
+		while (slot < keys.length) {
+			if (keys[slot] != 0 && now - lastUpdates[slot] >= maxIdle) {
+				// The next entries shift back into this slot: look at it again
+				removeSlot(slot);
+				evicted++;
+			} else {
+				slot++;
+			}
+		}
+		prune();
+		return evicted;
+	}
+
+	/**
+	 * Forgets all the samples, and all the targets and OIDs.
+	 */
+	public synchronized void clear() {
+		Arrays.fill(keys, 0);
+		size = 0;
+		targets.clear();
+		oids.clear();
+	}
+
+	/**
+	 * @return The number of targets and OIDs interned, for tests
+	 */
+	synchronized int internedSize() {
+		return targets.size() + oids.size();
+	}
+
+	/**
+	 * Forgets the targets and OIDs that no sample uses.
+	 */
+	private void prune() {
+		Set<Integer> usedTargets = new HashSet<>();
+		Set<Integer> usedOids = new HashSet<>();
+		for (long key : keys) {
+			if (key != 0) {
+				usedTargets.add((int) (key >>> 32));
+				usedOids.add((int) key);
+			}
+		}
+		prune(targets, usedTargets);
+		prune(oids, usedOids);
+	}
+
+	private static void prune(Map<String, Integer> map, Set<Integer> used) {
+		for (Iterator<Integer> it = map.values().iterator(); it.hasNext();) {
+			if (!used.contains(it.next())) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Empties a slot, shifting back the entries of the same probe sequence
+	 * that follow it.
+	 */
+	private void removeSlot(int slot) {
+		int mask = keys.length - 1;
+		int hole = slot;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			if (keys[next] == 0) {
+				break;
+			}
+			int home = (int) (mix(keys[next]) & mask);
+			// Movable when its home slot is not between the hole and itself
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				values[hole] = values[next];
+				upTimes[hole] = upTimes[next];
+				discontinuities[hole] = discontinuities[next];
+				lastUpdates[hole] = lastUpdates[next];
+				hole = next;
+			}
+		}
+		keys[hole] = 0;
+		size--;
+	}
+
+	private static double unsignedToDouble(long value) {
+		double d = (double) (value >>> 1) * 2.0;
+		return d + (value & 1);
+	}
+
+	/**
+	 * @return The slot of the key, or the empty slot where it goes
+	 */
+	private int find(long key) {
+		int mask = keys.length - 1;
+		int slot = (int) (mix(key) & mask);
+		while (keys[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void put(int slot, long key, long value, long time, long now) {
+		keys[slot] = key;
+		values[slot] = value;
+		upTimes[slot] = time;
+		discontinuities[slot] = false;
+		lastUpdates[slot] = now;
+		if (++size * 2 > keys.length) {
+			grow();
+		}
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		long[] oldUpTimes = upTimes;
+		boolean[] oldDiscontinuities = discontinuities;
+		long[] oldLastUpdates = lastUpdates;
+		int capacity = oldKeys.length * 2;
+		keys = new long[capacity];
+		values = new long[capacity];
+		upTimes = new long[capacity];
+		discontinuities = new boolean[capacity];
+		lastUpdates = new long[capacity];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+				upTimes[slot] = oldUpTimes[i];
+				discontinuities[slot] = oldDiscontinuities[i];
+				lastUpdates[slot] = oldLastUpdates[i];
+			}
+		}
+	}
+
+	private static long mix(long key) {
+		key *= 0x9E3779B97F4A7C15L;
+		return key ^ (key >>> 32);
+	}
+}
@@ -0,0 +1,403 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.westhawk.snmp.stack.AsnObjectId;
+
+/**
+ * Keeps the responses of SNMP agents for a short time, so that the consumers
+ * that read the same data from the same agent within a collection window, with
+ * {@link CachingSnmpClient}s that share this cache, send the requests only
+ * once.
+ * <p>
+ * The responses are kept for the TTL of their subtree (see
+ * {@link #setTtl(String, long, TimeUnit)}), or the default TTL, and the least
+ * recently used ones are evicted beyond the maximum size of the cache. The size
+ * of a response is an estimate of the memory it takes, and a response larger
+ * than the whole cache is not kept.
+ * <p>
+ * The clients also share the requests in flight: a client that needs a response
+ * that another one is waiting for waits for the same response, rather than
+ * sending the same request, whatever the TTL.
+ * <p>
+ * Instances are thread-safe.
+ */
+public class SnmpResponseCache {
+
+	// Estimated sizes in memory, in bytes
+	private static final int OBJECT_SIZE = 16;
+	private static final int REFERENCE_SIZE = 8;
+	private static final int ENTRY_SIZE = 5 * OBJECT_SIZE + 8 * REFERENCE_SIZE;
+
+	private final long maxBytes;
+	private final long defaultTtlNanos;
+
+	// TTLs of the subtrees, by OID
+	private final Map<AsnObjectId, Long> subtreeTtls = new HashMap<>();
+
+	// The entries, by target, operation and OID, in access order
+	private final LinkedHashMap<List<Object>, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes;
+
+	// The requests in flight, by target, operation and OID
+	private final Map<List<Object>, FutureTask<?>> inFlight = new HashMap<>();
+
+	private long hits;
+	private long misses;
+	private long coalesced;
+
+	/**
+	 * A response, with the OID it is about, its expiry time, and its estimated
+	 * size
+	 */
+	private static class CachedResponse {
+		private final AsnObjectId oid;
+		private final Object value;
+		private final long expiry;
+		private final long size;
+
+		private CachedResponse(AsnObjectId oid, Object value, long expiry, long size) {
+			this.oid = oid;
+			this.value = value;
+			this.expiry = expiry;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Creates a response cache.
+	 *
+	 * @param maxBytes   Maximum estimated size of the responses kept, in bytes
+	 * @param defaultTtl Time responses are kept, unless their subtree has its
+	 *                   own TTL (0 not to keep them)
+	 * @param unit       Unit of the default TTL
+	 * @throws IllegalArgumentException when the maximum size is not positive,
+	 *                                  or the TTL is negative
+	 */
+	public SnmpResponseCache(long maxBytes, long defaultTtl, TimeUnit unit) {
+		if (maxBytes <= 0 || defaultTtl < 0 || unit == null) {
+			throw new IllegalArgumentException("Invalid SNMP response cache settings: " + maxBytes + " bytes, TTL "
+					+ defaultTtl + " " + unit);
+		}
+		this.maxBytes = maxBytes;
+		this.defaultTtlNanos = unit.toNanos(defaultTtl);
+	}
+
+	/**
+	 * Sets the time the responses about a subtree are kept, instead of the
+	 * default TTL. The TTL of the longest subtree that contains an OID applies.
+	 *
+	 * @param subtree The OID of the subtree, e.g. 1.3.6.1.2.1.1 for the system
+	 *                group
+	 * @param ttl     The time the responses are kept (0 not to keep them)
+	 * @param unit    Unit of the TTL
+	 * @throws IllegalArgumentException when the TTL is negative, or the OID is
+	 *                                  not valid
+	 */
+	public synchronized void setTtl(String subtree, long ttl, TimeUnit unit) {
+		if (ttl < 0 || unit == null) {
+			throw new IllegalArgumentException("Invalid SNMP response cache TTL: " + ttl + " " + unit);
+		}
+		subtreeTtls.put(new AsnObjectId(subtree), unit.toNanos(ttl));
+	}
+
+	/**
+	 * @return The maximum estimated size of the responses kept, in bytes
+	 */
+	long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @param oid An OID
+	 * @return The TTL of the responses about this OID, in nanoseconds
+	 */
+	synchronized long getTtlNanos(String oid) {
+		return getTtlNanos(parse(oid));
+	}
+
+	private long getTtlNanos(AsnObjectId oid) {
+		AsnObjectId matched = null;
+		if (oid != null) {
+			for (AsnObjectId subtree : subtreeTtls.keySet()) {
+				if (isInSubtree(oid, subtree) && (matched == null || subtree.getSize() > matched.getSize())) {
+					matched = subtree;
+				}
+			}
+		}
+		return matched == null ? defaultTtlNanos : subtreeTtls.get(matched);
+	}
+
+	/**
+	 * @param target    The target and credentials, see
+	 *                  {@link CachingSnmpClient}
+	 * @param operation The operation
+	 * @param oid       The OID the operation is about
+	 * @param arguments The other arguments of the operation, if any
+	 * @return The response, or <code>null</code> if there is none or it
+	 *         expired
+	 */
+	synchronized Object get(Object target, String operation, String oid, Object arguments) {
+		List<Object> key = key(target, operation, oid, arguments);
+		CachedResponse entry = entries.get(key);
+		if (entry != null && entry.expiry - System.nanoTime() <= 0) {
+			remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+
+	/**
+	 * Keeps a response for the TTL of its OID.
+	 *
+	 * @param target    The target and credentials
+	 * @param operation The operation
+	 * @param oid       The OID the operation is about
+	 * @param arguments The other arguments of the operation, if any
+	 * @param value     The response, which must not be modified afterwards
+	 */
+	synchronized void put(Object target, String operation, String oid, Object arguments, Object value) {
+		AsnObjectId asnOid = parse(oid);
+		long ttl = getTtlNanos(asnOid);
+		if (ttl <= 0) {
+			return;
+		}
+		List<Object> key = key(target, operation, oid, arguments);
+		remove(key);
+		long size = ENTRY_SIZE + sizeOf(oid) + sizeOf(arguments) + sizeOf(value)
+				+ (asnOid == null ? 0 : OBJECT_SIZE + 8L * asnOid.getSize());
+		if (size > maxBytes) {
+			return;
+		}
+		entries.put(key, new CachedResponse(asnOid, value, System.nanoTime() + ttl, size));
+		bytes += size;
+
+		// Evict the least recently used entries
+		for (Iterator<CachedResponse> iterator = entries.values().iterator(); bytes > maxBytes;) {
+			bytes -= iterator.next().size;
+			iterator.remove();
+		}
+	}
+
+	private void remove(List<Object> key) {
+		CachedResponse entry = entries.remove(key);
+		if (entry != null) {
+			bytes -= entry.size;
+		}
+	}
+
+	/**
+	 * Runs the loader of a response, unless the same response is already being
+	 * loaded, in which case this waits for it instead.
+	 *
+	 * @param <T>       Type of the response
+	 * @param target    The target and credentials
+	 * @param operation The operation
+	 * @param oid       The OID the operation is about
+	 * @param arguments The other arguments of the operation, if any
+	 * @param loader    Sends the request, and caches the response if relevant
+	 * @return The response, shared with the other callers
+	 * @throws Exception thrown by the loader, to all the callers
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T load(Object target, String operation, String oid, Object arguments, Callable<T> loader)
+			throws Exception {
+		List<Object> key = key(target, operation, oid, arguments);
+		FutureTask<T> task;
+		boolean leader = false;
+		synchronized (this) {
+			task = (FutureTask<T>) inFlight.get(key);
+			if (task == null) {
+				task = new FutureTask<>(loader);
+				inFlight.put(key, task);
+				leader = true;
+			} else {
+				coalesced++;
+			}
+		}
+
+		if (leader) {
+			try {
+				task.run();
+			} finally {
+				synchronized (this) {
+					inFlight.remove(key);
+				}
+			}
+		}
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	private static List<Object> key(Object target, String operation, String oid, Object arguments) {
+		List<Object> key = new ArrayList<>(4);
+		key.add(target);
+		key.add(operation);
+		key.add(oid);
+		key.add(arguments);
+		return key;
+	}
+
+	/**
+	 * Forgets the responses of a target, e.g. after a configuration change.
+	 *
+	 * @param target The target and credentials
+	 */
+	public void invalidate(Object target) {
+		invalidate(target, "");
+	}
+
+	/**
+	 * Forgets the responses of a target about a subtree, e.g. after a SET.
+	 *
+	 * @param target  The target and credentials
+	 * @param subtree The OID of the subtree
+	 */
+	public synchronized void invalidate(Object target, String subtree) {
+		AsnObjectId asnSubtree = subtree.isEmpty() ? null : new AsnObjectId(subtree);
+		for (Iterator<Map.Entry<List<Object>, CachedResponse>> iterator = entries.entrySet().iterator(); iterator.hasNext();) {
+			Map.Entry<List<Object>, CachedResponse> entry = iterator.next();
+			CachedResponse response = entry.getValue();
+			if (entry.getKey().get(0).equals(target) && (asnSubtree == null
+					|| response.oid == null || isInSubtree(response.oid, asnSubtree))) {
+				bytes -= response.size;
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Forgets all the responses.
+	 */
+	public synchronized void invalidateAll() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return The number of responses kept, including the expired ones not
+	 *         evicted yet
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The estimated size of the responses kept, in bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return The number of lookups that found a response
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return The number of lookups that found no response
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return The number of requests that were not sent, because the same
+	 *         request was in flight
+	 */
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * @param oid     An OID
+	 * @param subtree The OID of a subtree
+	 * @return Whether the OID is the subtree or one of its descendants
+	 */
+	static boolean isInSubtree(AsnObjectId oid, AsnObjectId subtree) {
+		return oid.startsWith(subtree) || oid.equals(subtree);
+	}
+
+	/**
+	 * @return The OID, or <code>null</code> when it is not numerical, e.g. with
+	 *         a client that accepts names
+	 */
+	private static AsnObjectId parse(String oid) {
+		try {
+			return new AsnObjectId(oid);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return The estimated size in memory of a response, or of the arguments
+	 *         of an operation
+	 */
+	static long sizeOf(Object value) {
+		if (value instanceof String) {
+			return 2 * OBJECT_SIZE + 2L * ((String) value).length();
+		}
+		if (value instanceof SnmpResult) {
+			SnmpResult result = (SnmpResult) value;
+			return OBJECT_SIZE + 3 * REFERENCE_SIZE + sizeOf(result.oid) + sizeOf(result.type)
+					+ sizeOf(result.value);
+		}
+		if (value instanceof Iterable) {
+			long size = 2 * OBJECT_SIZE;
+			for (Object element : (Iterable<?>) value) {
+				size += REFERENCE_SIZE + sizeOf(element);
+			}
+			return size;
+		}
+		return value == null ? 0 : OBJECT_SIZE;
+	}
+}
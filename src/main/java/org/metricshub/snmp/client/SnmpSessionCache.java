@@ -0,0 +1,208 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import uk.co.westhawk.snmp.stack.SnmpContextBasisFace;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the SNMP contexts (socket, receiving thread, SNMP v3 keys and engine
+ * discovery) of the {@link SnmpClient}s that are created with it, and shares
+ * them between the clients that have the same target and credentials.
+ * <p>
+ * A context is created by the first client that needs it, and is kept as long
+ * as a client uses it, i.e. until {@link SnmpClient#freeResources()}. It is
+ * destroyed once it has not been used for the idle timeout, so that clients
+ * created for each collection, one after the other, use the same context.
+ * <p>
+ * All the clients of a context share its limit of requests in flight
+ * ({@link SnmpContextBasisFace#MAXPDU}).
+ */
+public class SnmpSessionCache implements AutoCloseable {
+
+	private final long idleTimeoutMillis;
+
+	// The sessions, by target and credentials
+	private final Map<List<Object>, Session> sessions = new HashMap<>();
+
+	private final ScheduledExecutorService evictor;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a session cache.
+	 *
+	 * @param idleTimeout Time after which a context that no client uses is
+	 *                    destroyed
+	 * @param unit        Unit of the idle timeout
+	 * @throws IllegalArgumentException when the idle timeout is not positive
+	 */
+	public SnmpSessionCache(long idleTimeout, TimeUnit unit) {
+		if (idleTimeout <= 0 || unit == null) {
+			throw new IllegalArgumentException("Invalid SNMP session idle timeout: " + idleTimeout + " " + unit);
+		}
+		this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+		this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "SnmpSessionCache-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(1, idleTimeoutMillis / 2);
+		evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return The number of contexts in the cache, used or idle
+	 */
+	public int size() {
+		synchronized (sessions) {
+			return sessions.size();
+		}
+	}
+
+	/**
+	 * Destroys the contexts that have not been used for the idle timeout. This
+	 * happens periodically on its own.
+	 */
+	public void evictIdle() {
+		long now = System.currentTimeMillis();
+		List<SnmpContextBasisFace> idle = new ArrayList<>();
+		synchronized (sessions) {
+			Iterator<Session> iterator = sessions.values().iterator();
+			while (iterator.hasNext()) {
+				Session session = iterator.next();
+				if (session.references == 0 && now - session.idleSince >= idleTimeoutMillis) {
+					iterator.remove();
+					if (session.context != null) {
+						idle.add(session.context);
+					}
+				}
+			}
+		}
+		for (SnmpContextBasisFace context : idle) {
+			context.destroy();
+		}
+	}
+
+	/**
+	 * Destroys all the contexts, including the ones that clients still use.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		evictor.shutdownNow();
+		List<Session> all;
+		synchronized (sessions) {
+			all = new ArrayList<>(sessions.values());
+			sessions.clear();
+		}
+		for (Session session : all) {
+			synchronized (session) {
+				if (session.context != null) {
+					session.context.destroy();
+					session.context = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the context of the specified target and credentials, created with the
+	 * specified factory if there is none yet. The caller must
+	 * {@link #release(List)} it when done.
+	 *
+	 * @param key     The target and credentials
+	 * @param factory Creates the context
+	 * @return The context
+	 * @throws IOException           when cannot create the SNMP context
+	 * @throws IllegalStateException when the cache is closed
+	 */
+	SnmpContextBasisFace acquire(List<Object> key, ContextFactory factory) throws IOException {
+		Session session;
+		synchronized (sessions) {
+			if (closed) {
+				throw new IllegalStateException("SNMP session cache is closed");
+			}
+			session = sessions.get(key);
+			if (session == null) {
+				session = new Session();
+				sessions.put(key, session);
+			}
+			session.references++;
+		}
+
+		// Created outside of the lock of the cache, as it may take a while (DNS,
+		// SNMP v3 keys)
+		synchronized (session) {
+			if (session.context == null) {
+				try {
+					session.context = factory.create();
+				} catch (IOException | RuntimeException e) {
+					release(key);
+					throw e;
+				}
+			}
+			return session.context;
+		}
+	}
+
+	/**
+	 * Tells that a client does not use the context of the specified target and
+	 * credentials anymore.
+	 *
+	 * @param key The target and credentials
+	 */
+	void release(List<Object> key) {
+		synchronized (sessions) {
+			Session session = sessions.get(key);
+			if (session != null && session.references > 0) {
+				session.references--;
+				session.idleSince = System.currentTimeMillis();
+			}
+		}
+	}
+
+	/**
+	 * Creates a context
+	 */
+	@FunctionalInterface
+	interface ContextFactory {
+		SnmpContextBasisFace create() throws IOException;
+	}
+
+	/**
+	 * A context, and the number of clients using it
+	 */
+	private static class Session {
+		private SnmpContextBasisFace context;
+		private int references;
+		private long idleSince;
+	}
+}
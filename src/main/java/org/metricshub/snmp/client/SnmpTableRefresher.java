@@ -0,0 +1,253 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads an SNMP table again and again, like {@link SnmpClient#table(String, String[])},
+ * but without reading the whole table when it did not change.
+ * <p>
+ * Each refresh first gets the change indicators of the table: sysUpTime, and
+ * the OIDs given by the caller, such as ifNumber and ifTableLastChange for
+ * the ifTable. When one of them moved (sysUpTime going backwards, i.e. the
+ * agent restarted, or another indicator changing at all), the whole table is
+ * read. Otherwise, only the volatile columns of the known rows are read,
+ * with multi-OID GET requests ({@link SnmpClient#get(List)}), and the other
+ * columns are the ones of the last read. A known row that disappeared also
+ * leads to reading the whole table.
+ * <p>
+ * Rows that are added without any indicator moving are only seen at the next
+ * full read: see {@link #setFullReadInterval(long)}.
+ */
+public class SnmpTableRefresher {
+
+	// sysUpTime.0
+	public static final String SYS_UPTIME = "1.3.6.1.2.1.1.3.0";
+
+	// ifNumber.0 and ifTableLastChange.0, the change indicators of the ifTable
+	public static final String IF_NUMBER = "1.3.6.1.2.1.2.1.0";
+	public static final String IF_TABLE_LAST_CHANGE = "1.3.6.1.2.1.31.1.5.0";
+
+	private final SnmpClient client;
+	private final String rootOID;
+	private final String[] selectColumns;
+	private final List<String> changeOids;
+	private final boolean[] volatileColumns;
+
+	// Full read interval in milliseconds (0 for none), time of the last one
+	private long fullReadInterval = 0;
+	private long fullReadTime;
+
+	// The indicators, row IDs and rows of the last read, null before the
+	// first one
+	private List<SnmpVarbind> indicators;
+	private List<String> rowIds;
+	private List<List<String>> rows;
+	private boolean fullRead;
+
+	/**
+	 * Creates a refresher of an SNMP table.
+	 *
+	 * @param client          The client of the agent
+	 * @param rootOID         Root OID of the SNMP table
+	 * @param selectColumns   Numbers of the columns to read, "ID" for the row
+	 *                        number, like {@link SnmpClient#table(String, String[])}
+	 * @param volatileColumns Numbers of the columns whose values change without
+	 *                        the table changing, e.g. counters
+	 * @param changeOids      OIDs of the change indicators of the table, besides
+	 *                        sysUpTime, may be empty
+	 * @throws IllegalArgumentException when an argument is missing
+	 */
+	public SnmpTableRefresher(SnmpClient client, String rootOID, String[] selectColumns,
+			List<String> volatileColumns, List<String> changeOids) {
+		if (client == null || rootOID == null || selectColumns == null || selectColumns.length < 1
+				|| volatileColumns == null || changeOids == null) {
+			throw new IllegalArgumentException("Invalid SNMP table refresher: missing argument");
+		}
+		this.client = client;
+		this.rootOID = rootOID;
+		this.selectColumns = selectColumns.clone();
+		this.volatileColumns = new boolean[selectColumns.length];
+		for (int i = 0; i < selectColumns.length; i++) {
+			this.volatileColumns[i] = !"ID".equals(selectColumns[i]) && volatileColumns.contains(selectColumns[i]);
+		}
+		List<String> oids = new ArrayList<>();
+		oids.add(SYS_UPTIME);
+		oids.addAll(changeOids);
+		this.changeOids = Collections.unmodifiableList(oids);
+	}
+
+	/**
+	 * Sets the time after which the whole table is read again, even if no
+	 * change indicator moved.
+	 *
+	 * @param fullReadInterval The time in milliseconds, 0 for none (the default)
+	 * @throws IllegalArgumentException when the time is negative
+	 */
+	public void setFullReadInterval(long fullReadInterval) {
+		if (fullReadInterval < 0) {
+			throw new IllegalArgumentException("Invalid SNMP table full read interval: " + fullReadInterval);
+		}
+		this.fullReadInterval = fullReadInterval;
+	}
+
+	/**
+	 * Forgets the last read: the next refresh reads the whole table.
+	 */
+	public void reset() {
+		indicators = null;
+		rowIds = null;
+		rows = null;
+	}
+
+	/**
+	 * @return Whether the last refresh read the whole table
+	 */
+	public boolean isFullRead() {
+		return fullRead;
+	}
+
+	/**
+	 * Reads the table, entirely or only its volatile columns.
+	 *
+	 * @return The rows of the table, as {@link SnmpClient#table(String, String[])}
+	 *         returns them
+	 * @throws Exception when the underlying SNMP API throws one
+	 */
+	public List<List<String>> refresh() throws Exception {
+		List<SnmpVarbind> newIndicators = client.getVarbinds(changeOids);
+
+		fullRead = rows == null || hasChanged(indicators, newIndicators)
+				|| (fullReadInterval > 0 && System.currentTimeMillis() - fullReadTime >= fullReadInterval);
+		if (!fullRead) {
+			List<List<String>> newRows = readVolatileColumns();
+			if (newRows != null) {
+				indicators = newIndicators;
+				return newRows;
+			}
+			// A row disappeared
+			fullRead = true;
+		}
+
+		// Not complete? Read it all again next time
+		indicators = readTable() ? newIndicators : null;
+		return rows;
+	}
+
+	/**
+	 * Reads the whole table, with the row IDs
+	 *
+	 * @return Whether the table was read completely
+	 * @throws Exception when the underlying SNMP API throws one
+	 */
+	private boolean readTable() throws Exception {
+		List<String> newRowIds = new ArrayList<>();
+		List<List<String>> newRows = client.table(rootOID, selectColumns, newRowIds);
+		boolean complete = !client.isTruncated();
+		rowIds = newRowIds;
+		rows = newRows;
+		fullReadTime = System.currentTimeMillis();
+		return complete;
+	}
+
+	/**
+	 * Reads the volatile columns of the known rows
+	 *
+	 * @return The rows, or null when a row disappeared (none of its volatile
+	 *         columns has a value anymore, while some had one)
+	 * @throws Exception when the underlying SNMP API throws one
+	 */
+	private List<List<String>> readVolatileColumns() throws Exception {
+		List<String> oids = new ArrayList<>();
+		for (String rowId : rowIds) {
+			for (int i = 0; i < selectColumns.length; i++) {
+				if (volatileColumns[i]) {
+					oids.add(rootOID + "." + selectColumns[i] + "." + rowId);
+				}
+			}
+		}
+		if (oids.isEmpty()) {
+			return rows;
+		}
+
+		List<String> values = client.get(oids);
+		if (client.isTruncated()) {
+			return null;
+		}
+		List<List<String>> newRows = new ArrayList<>(rows.size());
+		int v = 0;
+		for (List<String> row : rows) {
+			String[] cells = row.toArray(new String[row.size()]);
+			boolean had = false;
+			boolean found = false;
+			for (int i = 0; i < cells.length; i++) {
+				if (volatileColumns[i]) {
+					// Empty, like in table(), when the row has no value in this column
+					// (a sparse column)
+					String value = values.get(v++);
+					had |= !cells[i].isEmpty();
+					found |= value != null;
+					cells[i] = value == null ? "" : value;
+				}
+			}
+			if (had && !found) {
+				return null;
+			}
+			newRows.add(Arrays.asList(cells));
+		}
+		rows = newRows;
+		return newRows;
+	}
+
+	/**
+	 * @param previous The change indicators of the last read
+	 * @param current  The change indicators now
+	 * @return Whether the table may have changed since the last read
+	 */
+	private static boolean hasChanged(List<SnmpVarbind> previous, List<SnmpVarbind> current) {
+		if (previous == null) {
+			return true;
+		}
+		for (int i = 0; i < current.size(); i++) {
+			SnmpVarbind before = previous.get(i);
+			SnmpVarbind now = current.get(i);
+			if (before == null || now == null) {
+				if (before != now) {
+					return true;
+				}
+			} else if (i == 0) {
+				// sysUpTime going backwards: the agent restarted
+				if (!now.isNumeric() || !before.isNumeric() || now.getLong() < before.getLong()) {
+					return true;
+				}
+			} else if (!now.toString().equals(before.toString())) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,139 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import uk.co.westhawk.snmp.stack.AsnInteger;
+import uk.co.westhawk.snmp.stack.AsnObject;
+import uk.co.westhawk.snmp.stack.AsnObjectId;
+import uk.co.westhawk.snmp.stack.AsnOctets;
+import uk.co.westhawk.snmp.stack.AsnUnsInteger;
+import uk.co.westhawk.snmp.stack.AsnUnsInteger64;
+import uk.co.westhawk.snmp.stack.SnmpConstants;
+import uk.co.westhawk.snmp.stack.varbind;
+
+/**
+ * An OID and its value, as received from the agent, with no conversion to
+ * strings.
+ * <p>
+ * Numeric values (<code>INTEGER</code>, <code>Counter32</code>,
+ * <code>Gauge32</code>, <code>TimeTicks</code>, <code>Counter64</code>) are
+ * read with {@link #getLong()}, octet strings (<code>OCTET STRING</code>,
+ * <code>IpAddress</code>, <code>Opaque</code>) with {@link #getBytes()}.
+ * {@link #toSnmpResult()} gives the same strings as the String-based methods
+ * of {@link SnmpClient}.
+ */
+public class SnmpVarbind {
+
+	private final varbind var;
+
+	SnmpVarbind(varbind var) {
+		this.var = var;
+	}
+
+	/**
+	 * @return The OID. Must not be modified.
+	 */
+	public AsnObjectId getOid() {
+		return var.getOid();
+	}
+
+	/**
+	 * @return The type of the value, as in {@link SnmpConstants}, e.g.
+	 *         {@link SnmpConstants#COUNTER64}
+	 */
+	public byte getType() {
+		return var.getValue().getRespType();
+	}
+
+	/**
+	 * @return The value, as decoded by the SNMP stack
+	 */
+	public AsnObject getValue() {
+		return var.getValue();
+	}
+
+	/**
+	 * @return Whether the value is a number, readable with {@link #getLong()}
+	 */
+	public boolean isNumeric() {
+		AsnObject value = var.getValue();
+		return value instanceof AsnInteger || value instanceof AsnUnsInteger || value instanceof AsnUnsInteger64;
+	}
+
+	/**
+	 * Returns the numeric value. A <code>Counter64</code> above
+	 * <code>Long.MAX_VALUE</code> comes out negative: it must be read as unsigned
+	 * (see {@link Long#toUnsignedString(long)}).
+	 *
+	 * @return The numeric value
+	 * @throws IllegalStateException when the value is not a number
+	 */
+	public long getLong() {
+		AsnObject value = var.getValue();
+		if (value instanceof AsnInteger) {
+			return ((AsnInteger) value).getValue();
+		}
+		if (value instanceof AsnUnsInteger) {
+			return ((AsnUnsInteger) value).getValue();
+		}
+		if (value instanceof AsnUnsInteger64) {
+			return ((AsnUnsInteger64) value).getValue();
+		}
+		throw new IllegalStateException("Not a numeric value: " + value.getRespTypeString());
+	}
+
+	/**
+	 * @return The bytes of an octet string value. Must not be modified.
+	 * @throws IllegalStateException when the value is not an octet string
+	 */
+	public byte[] getBytes() {
+		AsnObject value = var.getValue();
+		if (value instanceof AsnOctets) {
+			return ((AsnOctets) value).getBytes();
+		}
+		throw new IllegalStateException("Not an octet string value: " + value.getRespTypeString());
+	}
+
+	/**
+	 * @return Whether the value is <code>NULL</code>
+	 */
+	public boolean isNull() {
+		return var.getValue().getRespType() == SnmpConstants.ASN_NULL;
+	}
+
+	/**
+	 * Converts this varbind to strings, like the String-based methods of
+	 * {@link SnmpClient} do
+	 *
+	 * @return The OID, type and value as strings
+	 * @throws Exception when the value tells that the OID does not exist
+	 */
+	public SnmpResult toSnmpResult() throws Exception {
+		return SnmpClient.getResult(var);
+	}
+
+	@Override
+	public String toString() {
+		return var.getOid() + "\t" + var.getValue().getRespTypeString() + "\t" + var.getValue();
+	}
+}
@@ -0,0 +1,41 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+/**
+ * Receives the results of a walk as {@link SnmpVarbind}s, one OID at a time, as
+ * the responses arrive.
+ *
+ * @see SnmpClient#walkVarbinds(java.util.List, SnmpVarbindVisitor)
+ */
+@FunctionalInterface
+public interface SnmpVarbindVisitor {
+
+	/**
+	 * Called for each OID of the walked trees.
+	 * @param varbind The OID, its type and its value.
+	 * @return Whether the walk goes on.
+	 * @throws Exception to stop the walk with this exception.
+	 */
+	boolean visit(SnmpVarbind varbind) throws Exception;
+}
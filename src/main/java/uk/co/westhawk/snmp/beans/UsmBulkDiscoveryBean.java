@@ -0,0 +1,453 @@
+package uk.co.westhawk.snmp.beans;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub, Westhawk
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import uk.co.westhawk.snmp.pdu.DiscoveryPdu;
+import uk.co.westhawk.snmp.stack.AsnObject;
+import uk.co.westhawk.snmp.stack.PduException;
+import uk.co.westhawk.snmp.stack.SnmpContextBasisFace;
+import uk.co.westhawk.snmp.stack.SnmpContextv3Face;
+import uk.co.westhawk.snmp.stack.SnmpContextv3Pool;
+import uk.co.westhawk.snmp.stack.SnmpEngineAddress;
+import uk.co.westhawk.snmp.stack.SnmpEngineId;
+import uk.co.westhawk.snmp.stack.TimeWindow;
+import uk.co.westhawk.snmp.stack.UsmUser;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * This bean performs the SNMPv3 USM discovery of many agents in one go.
+ * When the agents are known in advance, this fills the
+ * <code>TimeWindow</code> before the first real request, so that request
+ * does not wait for the discovery round trips.
+ * </p>
+ *
+ * <p>
+ * The discovery PDUs are sent asynchronously, with at most
+ * <code>getConcurrency()</code> targets in flight at any time; only the
+ * calling thread waits. The PDUs go over one
+ * <code>SnmpContextv3Pool</code> per agent address, which is shared with
+ * the other users of the pool and between the targets of that address.
+ * The credentials of a target travel with its PDUs.
+ * Targets of which the discovery parameters are already known are not
+ * contacted.
+ * </p>
+ *
+ * <pre>
+ * UsmBulkDiscoveryBean bean = new UsmBulkDiscoveryBean();
+ * List&lt;UsmBulkDiscoveryBean.Target&gt; targets = new ArrayList&lt;&gt;();
+ * targets.add(new UsmBulkDiscoveryBean.Target("10.0.0.1", 161)
+ *         .setAuthenticationDetails("user", "password", SnmpContextv3Face.SHA1_PROTOCOL));
+ * List&lt;UsmBulkDiscoveryBean.Result&gt; results = bean.discover(targets);
+ * </pre>
+ *
+ * @see UsmDiscoveryBean
+ * @see uk.co.westhawk.snmp.stack.SnmpContextv3Basis#discoverIfNeeded(int[])
+ * @see TimeWindow
+ */
+public class UsmBulkDiscoveryBean {
+
+    private int concurrency = 32;
+    private int retry_intervals[] = { 500, 1000, 2000, 5000, 5000 };
+    private String bindAddr = null;
+    private String typeSocket = SnmpContextBasisFace.STANDARD_SOCKET;
+
+    /**
+     * Constructor.
+     */
+    public UsmBulkDiscoveryBean() {
+    }
+
+    /**
+     * Sets the maximum number of targets that are discovered at the
+     * same time. The default is 32.
+     *
+     * @param newConcurrency The maximum number of parallel discoveries
+     */
+    public void setConcurrency(int newConcurrency) {
+        if (newConcurrency < 1) {
+            throw new IllegalArgumentException("concurrency should be at least 1");
+        }
+        concurrency = newConcurrency;
+    }
+
+    /**
+     * Returns the maximum number of targets that are discovered at the
+     * same time.
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Sets the retry intervals of the discovery PDUs.
+     *
+     * @param rinterval The interval in msec of each retry
+     * @see uk.co.westhawk.snmp.stack.Pdu#setRetryIntervals(int[])
+     */
+    public void setRetryIntervals(int rinterval[]) {
+        retry_intervals = rinterval;
+    }
+
+    /**
+     * Sets the local bind address of the contexts. The default is null,
+     * any address.
+     *
+     * @param newBindAddr The local address
+     */
+    public void setBindAddress(String newBindAddr) {
+        bindAddr = newBindAddr;
+    }
+
+    /**
+     * Sets the type of socket of the contexts. The default is
+     * <code>SnmpContextBasisFace.STANDARD_SOCKET</code>.
+     *
+     * @param newTypeSocket The type of socket
+     */
+    public void setSocketType(String newTypeSocket) {
+        typeSocket = newTypeSocket;
+    }
+
+    /**
+     * Discovers all targets and waits until all are done. The results are
+     * in the same order as the targets.
+     *
+     * @param targets The agents to discover
+     * @return The result of every target
+     */
+    public List<Result> discover(Collection<Target> targets)
+            throws InterruptedException {
+        if (TimeWindow.getCurrent() == null) {
+            TimeWindow timew = new TimeWindow();
+        }
+        List<Discovery> discoveries = new ArrayList<Discovery>(targets.size());
+        Map<String, SnmpContextv3Pool> contexts = new HashMap<String, SnmpContextv3Pool>();
+        Semaphore inFlight = new Semaphore(concurrency);
+        try {
+            for (Target target : targets) {
+                inFlight.acquire();
+                Discovery discovery = new Discovery(target, inFlight);
+                discoveries.add(discovery);
+                discovery.start(contexts);
+            }
+            for (Discovery discovery : discoveries) {
+                discovery.await();
+            }
+        } finally {
+            for (SnmpContextv3Pool context : contexts.values()) {
+                context.destroy();
+            }
+        }
+
+        List<Result> results = new ArrayList<Result>(discoveries.size());
+        for (Discovery discovery : discoveries) {
+            results.add(discovery.result);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the shared context of the address of the target.
+     */
+    private SnmpContextv3Pool getContext(Map<String, SnmpContextv3Pool> contexts, Target target)
+            throws IOException {
+        String key = target.toString();
+        SnmpContextv3Pool context = contexts.get(key);
+        if (context == null) {
+            context = new SnmpContextv3Pool(target.host, target.port, bindAddr, typeSocket);
+            contexts.put(key, context);
+        }
+        return context;
+    }
+
+    /**
+     * The discovery of one target. It sends the engine ID discovery PDU
+     * and, when needed, the timeline discovery PDU; the latter is sent
+     * from update(), when the answer to the former comes in.
+     */
+    private class Discovery implements Observer {
+        private final Target target;
+        private final Semaphore inFlight;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final long start = System.nanoTime();
+        private SnmpContextv3Pool context;
+        private SnmpEngineAddress address;
+        private UsmUser user;
+        private boolean engineIdSent = false;
+        private boolean timelineSent = false;
+        private volatile Result result;
+
+        Discovery(Target target, Semaphore inFlight) {
+            this.target = target;
+            this.inFlight = inFlight;
+        }
+
+        void start(Map<String, SnmpContextv3Pool> contexts) {
+            try {
+                user = target.getUsmUser();
+                context = getContext(contexts, target);
+                address = new SnmpEngineAddress(InetAddress.getByName(target.host), target.port);
+                next(null);
+            } catch (IOException | PduException | RuntimeException exc) {
+                finish(exc);
+            }
+        }
+
+        public synchronized void update(Observable obs, Object arg) {
+            try {
+                next(arg instanceof Exception ? (Exception) arg : null);
+            } catch (IOException | PduException | RuntimeException exc) {
+                finish(exc);
+            }
+        }
+
+        /**
+         * Sends the next discovery PDU, or finishes if there is none.
+         *
+         * @param answer The exception the answer of the previous PDU
+         *               caused, or null
+         */
+        private void next(Exception answer) throws IOException, PduException {
+            TimeWindow tWindow = TimeWindow.getCurrent();
+            SnmpEngineId engineId = tWindow.getSnmpEngineId(address);
+            if (engineId == null) {
+                if (engineIdSent) {
+                    finish(new PduException("Engine ID discovery: "
+                            + (answer != null ? answer.getMessage() : "no engine ID received")));
+                } else {
+                    // The shared context has no user; the engine ID is
+                    // discovered anonymously.
+                    engineIdSent = true;
+                    send(null);
+                }
+            } else if (user != null && tWindow.isTimeLineKnown(engineId) == false) {
+                if (timelineSent) {
+                    // You can get an exception for authPriv, so only fail
+                    // if the timeline was not discovered.
+                    finish(new PduException("Timeline discovery: "
+                            + (answer != null ? answer.getMessage() : "no time line received")));
+                } else {
+                    timelineSent = true;
+                    send(user);
+                }
+            } else {
+                finish(null);
+            }
+        }
+
+        private void send(UsmUser user) throws IOException, PduException {
+            DiscoveryPdu pdu = new DiscoveryPdu(context);
+            pdu.setRetryIntervals(retry_intervals);
+            pdu.setUsmUser(user);
+            pdu.addObserver(this);
+            pdu.send();
+        }
+
+        private synchronized void finish(Exception failure) {
+            if (result != null) {
+                return;
+            }
+            SnmpEngineId engineId = null;
+            if (address != null) {
+                engineId = TimeWindow.getCurrent().getSnmpEngineId(address);
+            }
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (AsnObject.debug > 4) {
+                System.out.println(UsmBulkDiscoveryBean.this.getClass().getName() + ".discover(): "
+                        + target + " done in " + latency + " ms"
+                        + (failure != null ? ", " + failure.getMessage() : ""));
+            }
+            result = new Result(target, engineId, failure, latency);
+            inFlight.release();
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            done.await();
+        }
+    }
+
+    /**
+     * An agent to discover, with the optional credentials to discover its
+     * timeline.
+     */
+    public static class Target {
+        private final String host;
+        private final int port;
+        private String userName = null;
+        private String userAuthPassword = null;
+        private String userPrivPassword = null;
+        private int authProtocol = SnmpContextv3Face.MD5_PROTOCOL;
+        private int privProtocol = SnmpContextv3Face.DES_ENCRYPT;
+
+        /**
+         * Constructor for a target of which only the engine ID is
+         * discovered.
+         *
+         * @param host The host name or address of the agent
+         * @param port The port of the agent
+         */
+        public Target(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        /**
+         * Sets the authentication details; with these the timeline is
+         * discovered as well.
+         *
+         * @param newUserName     The user name
+         * @param newUserPassword The user authentication password
+         * @param protocol        The authentication protocol
+         * @return This target
+         * @see SnmpContextv3Face#setAuthenticationProtocol(int)
+         */
+        public Target setAuthenticationDetails(String newUserName, String newUserPassword, int protocol) {
+            userName = newUserName;
+            userAuthPassword = newUserPassword;
+            authProtocol = protocol;
+            return this;
+        }
+
+        /**
+         * Sets the privacy details.
+         *
+         * @param newUserPassword The user privacy password
+         * @param protocol        The privacy protocol
+         * @return This target
+         * @see SnmpContextv3Face#setPrivacyProtocol(int)
+         */
+        public Target setPrivacyDetails(String newUserPassword, int protocol) {
+            if (userName == null) {
+                throw new IllegalArgumentException("Privacy needs authentication, "
+                        + "set the authentication details first");
+            }
+            userPrivPassword = newUserPassword;
+            privProtocol = protocol;
+            return this;
+        }
+
+        /**
+         * Returns the user to discover the timeline with, or null when
+         * only the engine ID is discovered.
+         */
+        UsmUser getUsmUser() {
+            UsmUser user = null;
+            if (userName != null) {
+                if (userPrivPassword != null) {
+                    user = new UsmUser(userName, authProtocol, userAuthPassword,
+                            privProtocol, userPrivPassword);
+                } else {
+                    user = new UsmUser(userName, authProtocol, userAuthPassword);
+                }
+            }
+            return user;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    /**
+     * The outcome of the discovery of one target.
+     */
+    public static class Result {
+        private final Target target;
+        private final SnmpEngineId engineId;
+        private final Exception failure;
+        private final long latency;
+
+        Result(Target target, SnmpEngineId engineId, Exception failure, long latency) {
+            this.target = target;
+            this.engineId = engineId;
+            this.failure = failure;
+            this.latency = latency;
+        }
+
+        public Target getTarget() {
+            return target;
+        }
+
+        /**
+         * Returns whether the discovery succeeded.
+         */
+        public boolean isSuccess() {
+            return failure == null;
+        }
+
+        /**
+         * Returns the discovered engine ID, or null if it is unknown.
+         */
+        public SnmpEngineId getEngineId() {
+            return engineId;
+        }
+
+        /**
+         * Returns the reason the discovery failed, or null.
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        /**
+         * Returns how long the discovery of this target took, in msec.
+         */
+        public long getLatency() {
+            return latency;
+        }
+
+        public String toString() {
+            StringBuffer buffer = new StringBuffer(getClass().getName());
+            buffer.append("[target=").append(target);
+            buffer.append(", engineId=").append(engineId);
+            buffer.append(", latency=").append(latency);
+            if (failure != null) {
+                buffer.append(", failure=").append(failure.getMessage());
+            }
+            buffer.append("]");
+            return buffer.toString();
+        }
+    }
+}
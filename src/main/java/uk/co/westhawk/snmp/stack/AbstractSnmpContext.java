@@ -95,6 +95,10 @@ public abstract class AbstractSnmpContext extends Object
     protected boolean anyPduExpectingResponse = false;
     protected RequestPduReceivedSupport pduSupport;
     protected TrapReceivedSupport trapSupport;
+    private CongestionControl congestionControl;
+
+    // Whether the current thread receives the responses of a context
+    private static final ThreadLocal<Boolean> receiving = new ThreadLocal<Boolean>();
 
     /**
      * Processes an incoming response. Has to be overload by each context.
@@ -218,6 +222,7 @@ public abstract class AbstractSnmpContext extends Object
                         + soc.getRemoteSocketAddress());
             }
         }
+        congestionControl = CongestionControl.forAgent(hostname, hostPort);
     }
 
     /**
@@ -462,6 +467,12 @@ public abstract class AbstractSnmpContext extends Object
             soc.close();
             isDestroyed = true;
 
+            // The PDUs in flight will never be answered
+            for (int i = 0; i < MAXPDU; i++) {
+                releaseCongestionControl(pdus[i]);
+            }
+            CongestionControl.unregister(congestionControl);
+
             // If run() has been started, then it will destroy the
             // transmitter threads when it finishes. Otherwise they must be
             // destroyed here.
@@ -475,6 +486,26 @@ public abstract class AbstractSnmpContext extends Object
         return isDestroyed;
     }
 
+    /**
+     * Returns whether the current thread is the thread receiving the
+     * responses of this context. Observers of a PDU are notified on this
+     * thread, so it must never wait for another response of this context;
+     * nobody would be there to read it.
+     */
+    boolean isReceiverThread() {
+        return (me == Thread.currentThread());
+    }
+
+    /**
+     * Returns whether the current thread is the thread receiving the
+     * responses of any context. It must never wait for a slot of a
+     * congestion control, since the responses it would not read meanwhile
+     * are what frees the slots.
+     */
+    static boolean isAnyReceiverThread() {
+        return receiving.get() != null;
+    }
+
     /**
      * This method will stop the thread.
      * All transmitters, PDUs in flight and traplisteners will be removed
@@ -510,6 +541,8 @@ public abstract class AbstractSnmpContext extends Object
      * </p>
      */
     public void run() {
+        receiving.set(Boolean.TRUE);
+
         // while It is visible
         while (!stopRequested) {
             // block for incoming packets
@@ -634,6 +667,7 @@ public abstract class AbstractSnmpContext extends Object
         boolean ret = false;
         for (int i = 0; i < MAXPDU; i++) {
             if ((pdus[i] != null) && (pdus[i].getReqId() == rid)) {
+                releaseCongestionControl(pdus[i]);
                 pdus[i] = null;
                 ret = true;
                 break;
@@ -642,7 +676,70 @@ public abstract class AbstractSnmpContext extends Object
         return ret;
     }
 
-    public synchronized boolean addPdu(Pdu p)
+    /**
+     * Adds a PDU to the context. A PDU that expects a response first waits
+     * until the congestion control of the agent allows one more request in
+     * flight.
+     *
+     * <p>
+     * A PDU sent by the thread receiving the responses, e.g. from the
+     * <code>update()</code> of an observer, never waits: when the limit of
+     * requests in flight is on ({@link CongestionControl#setLimits(int, int)}),
+     * it fails at once if there is no slot for it, and the transmitter waits
+     * for the rate cap instead.
+     * </p>
+     *
+     * @throws AgentUnavailableException when the agent is known to be
+     *                                   unresponsive
+     * @throws PduException              when the limit of requests in flight
+     *                                   is on and a PDU sent by a receiving
+     *                                   thread finds no slot
+     *
+     * @see #getCongestionControl()
+     */
+    public boolean addPdu(Pdu p)
+            throws IOException, PduException {
+        boolean permit = p.isExpectingResponse() && isDestroyed == false;
+        if (permit) {
+            boolean receiver = isAnyReceiverThread();
+            long delay = congestionControl.acquire(p, this, !receiver);
+            if (receiver) {
+                p.setSendDelay(delay);
+            }
+        }
+        boolean done = false;
+        try {
+            done = addPduToSlot(p);
+        } finally {
+            if (permit) {
+                if (done) {
+                    p.setCongestionControl(congestionControl);
+                } else {
+                    congestionControl.release(p, false);
+                }
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Returns the congestion control of the agent, which limits the requests
+     * in flight and their rate. It is shared by all the contexts of the same
+     * host and port.
+     *
+     * @return The congestion control
+     */
+    public CongestionControl getCongestionControl() {
+        return congestionControl;
+    }
+
+    private void releaseCongestionControl(Pdu p) {
+        if (p != null) {
+            p.releaseCongestionControl();
+        }
+    }
+
+    private synchronized boolean addPduToSlot(Pdu p)
             throws IOException, PduException {
         boolean done = false;
         if (isDestroyed == true) {
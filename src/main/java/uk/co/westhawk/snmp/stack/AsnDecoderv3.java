@@ -150,6 +150,29 @@ class AsnDecoderv3 extends AsnDecoderBase implements usmStatsConstants {
 	 */
 	AsnPduSequence processSNMPv3(SnmpContextv3Basis context, AsnSequence asnTopSeq, byte[] message,
 			boolean amIAuthoritative) throws IOException, DecodingException {
+		return processSNMPv3(context, asnTopSeq, message, amIAuthoritative, context.getUsmUser(), false);
+	}
+
+	/**
+	 * Processes the SNMP v3 AsnSequence for the given user, see
+	 * {@link #processSNMPv3(SnmpContextv3Basis, AsnSequence, byte[], boolean)}.
+	 * When <code>engineIdDiscovery</code> is set, the message answers an
+	 * engine ID discovery that was sent without authentication, privacy
+	 * and userName. The matching report is then accepted, whatever the
+	 * user is.
+	 * 
+	 * @param context           The SnmpContextv3Basis instance context
+	 * @param asnTopSeq         The AsnSequence
+	 * @param message           The byte array of the message
+	 * @param amIAuthoritative  boolean to indicate if we are authoritative
+	 * @param user              The USM user the message is for
+	 * @param engineIdDiscovery boolean to indicate if this answers an engine
+	 *                          ID discovery
+	 * @return The AsnPduSequence or null
+	 */
+	AsnPduSequence processSNMPv3(SnmpContextv3Basis context, AsnSequence asnTopSeq, byte[] message,
+			boolean amIAuthoritative, UsmUser user, boolean engineIdDiscovery)
+			throws IOException, DecodingException {
 		AsnPduSequence pduSeq = null;
 
 		// if not correct, I'll just skip a lot of tests.
@@ -157,7 +180,9 @@ class AsnDecoderv3 extends AsnDecoderBase implements usmStatsConstants {
 
 		AsnSequence asnHeaderData = getAsnHeaderData(asnTopSeq);
 		// int msgId = ((AsnInteger)asnHeaderData.getObj(0)).getValue();
-		// int maxSize = ((AsnInteger)asnHeaderData.getObj(1)).getValue();
+		if (!amIAuthoritative && asnHeaderData.getObj(1) instanceof AsnInteger) {
+			context.setPeerMaxMessageSize(((AsnInteger) asnHeaderData.getObj(1)).getValue());
+		}
 		byte[] msgFlags = ((AsnOctets) asnHeaderData.getObj(2)).getBytes();
 		boolean isUseAuthentication = isUseAuthentication(msgFlags[0]);
 		boolean isUsePrivacy = isUsePrivacy(msgFlags[0]);
@@ -165,8 +190,7 @@ class AsnDecoderv3 extends AsnDecoderBase implements usmStatsConstants {
 		AsnOctets asnSecurityParameters = (AsnOctets) asnTopSeq.getObj(2);
 		AsnSequence usmObject = decodeUSM(asnSecurityParameters);
 
-		byte[] engineIdBytes = ((AsnOctets) usmObject.getObj(0)).getBytes();
-		String engineId = SnmpUtilities.toHexString(engineIdBytes);
+		SnmpEngineId engineId = SnmpEngineId.wrap(((AsnOctets) usmObject.getObj(0)).getBytes());
 		int boots = ((AsnInteger) usmObject.getObj(1)).getValue();
 		int time = ((AsnInteger) usmObject.getObj(2)).getValue();
 		String userName = ((AsnOctets) usmObject.getObj(3)).getValue();
@@ -174,15 +198,19 @@ class AsnDecoderv3 extends AsnDecoderBase implements usmStatsConstants {
 		byte[] realFingerPrint = realFingerPrintObject.getBytes();
 		byte[] salt = ((AsnOctets) usmObject.getObj(5)).getBytes();
 
+		// The report on an engine ID discovery comes without security
+		boolean isDiscoveryReport = engineIdDiscovery == true
+				&& isUseAuthentication == false
+				&& userName.length() == 0;
+
 		TimeWindow timeWindow = TimeWindow.getCurrent();
 		if (amIAuthoritative == false) {
 			/*
 			 * engineId should not be empty, however net-snmp 5.3.0.1 has a bug (1427410) in
 			 * their trapsess; it sends an empty engineId
 			 */
-			if (engineId.length() > 0
-					&& timeWindow.isEngineIdOK(context.getReceivedFromHostAddress(), context.getPort(),
-							engineId) == false) {
+			if (engineId.isEmpty() == false
+					&& timeWindow.isEngineIdOK(context.getReceivedFromEngineAddress(), engineId) == false) {
 				String msg = "Received engine Id ('" + engineId + "') is not correct.";
 				msg += " amIAuthoritative == false";
 				throw new DecodingException(msg);
@@ -193,13 +221,11 @@ class AsnDecoderv3 extends AsnDecoderBase implements usmStatsConstants {
 				// has been discovered, else any other request sent to this
 				// address will try to do another discovery and the process
 				// starts again.
-				String sendToHostAddress = context.getSendToHostAddress();
-				String receivedFromHostAddress = context.getReceivedFromHostAddress();
-				if (sendToHostAddress.equals(receivedFromHostAddress) == false) {
-					String storedEngineId;
-					storedEngineId = timeWindow.getSnmpEngineId(sendToHostAddress, context.getPort());
+				SnmpEngineAddress sendToAddress = context.getSendToEngineAddress();
+				if (sendToAddress.equals(context.getReceivedFromEngineAddress()) == false) {
+					SnmpEngineId storedEngineId = timeWindow.getSnmpEngineId(sendToAddress);
 					if (storedEngineId == null) {
-						timeWindow.setSnmpEngineId(sendToHostAddress, context.getPort(), "00");
+						timeWindow.setSnmpEngineId(sendToAddress, SnmpEngineId.PLACEHOLDER);
 					}
 				}
 			}
@@ -207,8 +233,8 @@ class AsnDecoderv3 extends AsnDecoderBase implements usmStatsConstants {
 			// amIAuthoritative == true
 			// Section 3.2 rfc
 			// engineId of length '0' -> discovery.
-			if (engineId.length() > 0
-					&& timeWindow.isEngineIdOK(context.getUsmAgent().MYFAKEHOSTNAME, context.getPort(),
+			if (engineId.isEmpty() == false
+					&& timeWindow.isEngineIdOK(new SnmpEngineAddress(UsmAgent.MYFAKEHOSTNAME, context.getPort()),
 							engineId) == false) {
 				String msg = "Received engine Id ('" + engineId + "') is not correct.";
 				msg += " amIAuthoritative == true";
@@ -216,7 +242,7 @@ class AsnDecoderv3 extends AsnDecoderBase implements usmStatsConstants {
 			}
 		}
 
-		if (userName.equals(context.getUserName()) == false) {
+		if (isDiscoveryReport == false && userName.equals(user.getUserName()) == false) {
 			String msg = "Received userName ('" + userName + "') is not correct";
 			throw new DecodingException(msg);
 		}
@@ -226,14 +252,14 @@ class AsnDecoderv3 extends AsnDecoderBase implements usmStatsConstants {
 		// So, I'll encrypt and save the possible exception.
 		DecodingException encryptionDecodingException = null;
 		IOException encryptionIOException = null;
-		int authenticationProtocol = context.getAuthenticationProtocol();
+		int authenticationProtocol = user.getAuthenticationProtocol();
 		try {
 			AsnObject asnScopedObject = asnTopSeq.getObj(3);
 			AsnSequence asnPlainScopedPdu = null;
 			if (isUsePrivacy == true) {
-				int privacyProtocol = context.getPrivacyProtocol();
+				int privacyProtocol = user.getPrivacyProtocol();
 				// Retrieves the localized privacy key from the derived privacy key
-				byte[] privacyKey = context.generatePrivacyKey(engineId, authenticationProtocol, privacyProtocol);
+				byte[] privacyKey = user.getPrivacyKey(engineId);
 
 				AsnOctets asnEncryptedScopedPdu = (AsnOctets) asnScopedObject;
 				byte[] encryptedText = asnEncryptedScopedPdu.getBytes();
@@ -261,12 +287,13 @@ class AsnDecoderv3 extends AsnDecoderBase implements usmStatsConstants {
 		} catch (IOException exc) {
 			encryptionIOException = exc;
 		}
-		if (pduSeq != null && engineId.length() == 0) {
+		if (pduSeq != null && engineId.isEmpty()) {
 			pduSeq.setSnmpv3Discovery(true);
 		}
 
-		boolean userIsUsingAuthentication = context.isUseAuthentication();
-		if (isCorrect == true && (isUseAuthentication != userIsUsingAuthentication)) {
+		boolean userIsUsingAuthentication = user.isUseAuthentication();
+		if (isCorrect == true && isDiscoveryReport == false
+				&& (isUseAuthentication != userIsUsingAuthentication)) {
 			String msg = "User " + userName + " does ";
 			if (userIsUsingAuthentication == false) {
 				msg += "not ";
@@ -297,8 +324,7 @@ class AsnDecoderv3 extends AsnDecoderBase implements usmStatsConstants {
 			System.arraycopy(dummyFingerPrint, 0, message, fpPos, realFingerPrint.length);
 
 			// Calculate the fingerprint
-			computedFingerprint = context.computeFingerprint(engineId, authenticationProtocol, computedFingerprint,
-					message);
+			computedFingerprint = user.computeFingerprint(engineId, message);
 
 			if (SnmpUtilities.areBytesEqual(realFingerPrint, computedFingerprint) == false) {
 				String msg = "Authentication comparison failed";
@@ -316,8 +342,9 @@ class AsnDecoderv3 extends AsnDecoderBase implements usmStatsConstants {
 		}
 		timeWindow.updateTimeWindow(engineId, boots, time, isAuthentic);
 
-		boolean userIsUsingPrivacy = context.isUsePrivacy();
-		if (isCorrect == true && (isUsePrivacy != userIsUsingPrivacy)) {
+		boolean userIsUsingPrivacy = user.isUsePrivacy();
+		if (isCorrect == true && isDiscoveryReport == false
+				&& (isUsePrivacy != userIsUsingPrivacy)) {
 			String msg = "User " + userName + " does ";
 			if (userIsUsingPrivacy == false) {
 				msg += "not ";
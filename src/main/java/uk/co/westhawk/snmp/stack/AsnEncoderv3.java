@@ -95,145 +95,114 @@ class AsnEncoderv3 extends AsnEncoderBase {
 	 */
 	byte[] EncodeSNMPv3(SnmpContextv3Basis context, int contextMsgId, TimeWindowNode node, byte msg_type, int pduId,
 			int errstat, int errind, Enumeration ve) throws IOException, EncodingException {
+		return EncodeSNMPv3(context, contextMsgId, node, msg_type, pduId, errstat, errind, ve,
+				context.getUsmUser(), false);
+	}
 
-		// Prepare the encoded message output stream to be sent to the SNMP agent
-		ByteArrayOutputStream encodedSnmpMessageOutputStream;
+	/**
+	 * Encode SNMPv3 packet into bytes, as the given user.
+	 * When <code>engineIdDiscovery</code> is set, the message is encoded
+	 * as described in section 4 of RFC 3414: no authentication, no privacy,
+	 * an empty userName and an empty context, whatever the user is.
+	 * 
+	 * @param context           The SNMP context
+	 * @param contextMsgId      The message ID
+	 * @param node              The time window node
+	 * @param msg_type          The message type
+	 * @param pduId             The PDU ID
+	 * @param errstat           The error status
+	 * @param errind            The error index
+	 * @param ve                The enumeration
+	 * @param user              The USM user that sends the message
+	 * @param engineIdDiscovery Whether this message discovers the engine ID
+	 * @return The encoded SNMPv3 packet
+	 */
+	byte[] EncodeSNMPv3(SnmpContextv3Basis context, int contextMsgId, TimeWindowNode node, byte msg_type, int pduId,
+			int errstat, int errind, Enumeration<?> ve, UsmUser user, boolean engineIdDiscovery)
+			throws IOException, EncodingException {
 
-		AsnSequence asnSequence = new AsnSequence();
+		if (engineIdDiscovery) {
+			user = UsmUser.ENGINE_ID_DISCOVERY;
+		}
+		boolean useAuthentication = user.isUseAuthentication();
+		boolean usePrivacy = user.isUsePrivacy();
+		byte msgFlags = getMessageFlags(context, msg_type, useAuthentication, usePrivacy)[0];
 
-		// msgGlobalData = HeaderData
-		AsnSequence asnHeaderData = new AsnSequence();
-		asnHeaderData.add(new AsnInteger(contextMsgId));
-		asnHeaderData.add(new AsnInteger(context.getMaxRecvSize()));
-		asnHeaderData.add(new AsnOctets(getMessageFlags(context, msg_type)));
-		asnHeaderData.add(new AsnInteger(context.USM_Security_Model));
+		// The header data and most of the USM security parameters only
+		// depend on the context and engine; they come encoded from the
+		// template.
+		if (AsnObject.debug > 10) {
+			System.out.println("\nEncode USM: node " + node.toString());
+		}
+		SnmpEngineId engineId = node.getSnmpEngineId();
+		Snmpv3MessageTemplate template = user.getMessageTemplate(engineId, context.getMaxRecvSize(), msgFlags,
+				context.USM_Security_Model);
+		TimeWindowNode.Timeline timeline = node.getTimeline();
+		int boots = timeline.getSnmpEngineBoots();
+		int time = timeline.getSnmpEngineTime();
 
 		// msgData = ScopedPdu (plaintext or encrypted)
 		AsnSequence asnPlainScopedPdu = new AsnSequence();
-		asnPlainScopedPdu.add(new AsnOctets(context.getContextEngineId()));
-		asnPlainScopedPdu.add(new AsnOctets(context.getContextName()));
+		if (engineIdDiscovery) {
+			asnPlainScopedPdu.add(new AsnOctets(new byte[0]));
+			asnPlainScopedPdu.add(new AsnOctets(""));
+		} else {
+			asnPlainScopedPdu.add(new AsnOctets(context.getContextEngineId()));
+			asnPlainScopedPdu.add(new AsnOctets(context.getContextName()));
+		}
 		// PDU sequence.
 		AsnObject asnPduObject = EncodePdu(msg_type, pduId, errstat, errind, ve);
 		asnPlainScopedPdu.add(asnPduObject);
 
-		// asnSecurityParameters
-		if (AsnObject.debug > 10) {
-			System.out.println("\nEncode USM: node " + node.toString());
-		}
-		AsnSequence asnSecurityObject = new AsnSequence();
-		byte[] engineIdBytes = SnmpUtilities.toBytes(node.getSnmpEngineId());
-		asnSecurityObject.add(new AsnOctets(engineIdBytes));
-		asnSecurityObject.add(new AsnInteger(node.getSnmpEngineBoots()));
-		asnSecurityObject.add(new AsnInteger(node.getSnmpEngineTime()));
-		asnSecurityObject.add(new AsnOctets(context.getUserName()));
-		AsnOctets fingerPrintOctets;
-		int authenticationProtocol = context.getAuthenticationProtocol();
-
-		byte[] dummyFingerprint;
-		if (context.isUseAuthentication()) {
-			dummyFingerprint = SnmpUtilities.initFingerprint(authenticationProtocol);
-			fingerPrintOctets = new AsnOctets(dummyFingerprint);
-		} else {
-			fingerPrintOctets = new AsnOctets("");
-		}
-		asnSecurityObject.add(fingerPrintOctets);
-
-		AsnOctets privacyAsnOctets;
-		AsnOctets asnEncryptedScopedPdu = null;
+		ByteArrayOutputStream scopedPduOutputStream = new ByteArrayOutputStream();
+		asnPlainScopedPdu.write(scopedPduOutputStream);
+		byte[] scopedPdu = scopedPduOutputStream.toByteArray();
 
-		if (context.isUsePrivacy()) {
-			int privacyProtocol = context.getPrivacyProtocol();
+		byte[] salt;
+		if (usePrivacy) {
+			int privacyProtocol = user.getPrivacyProtocol();
 			// Retrieves the localized privacy key from the derived privacy key
-			byte[] privacyKey = context.generatePrivacyKey(node.getSnmpEngineId(), authenticationProtocol, privacyProtocol);
-			byte[] salt = null;
+			byte[] privacyKey = user.getPrivacyKey(engineId);
 			if (SnmpContextv3Face.AES_PRIVACY_PROTOCOLS.contains(privacyProtocol)) {
 				salt = SnmpUtilities.getSaltAES();
 			} else {
-				salt = SnmpUtilities.getSaltDES(node.getSnmpEngineBoots());
+				salt = SnmpUtilities.getSaltDES(boots);
 			}
 
-			privacyAsnOctets = new AsnOctets(salt);
-			encodedSnmpMessageOutputStream = new ByteArrayOutputStream();
-			asnPlainScopedPdu.write(encodedSnmpMessageOutputStream);
-
-			byte[] plaintext = encodedSnmpMessageOutputStream.toByteArray();
 			byte[] encryptedText = null;
 			if (SnmpContextv3Face.AES_PRIVACY_PROTOCOLS.contains(privacyProtocol)) {
-				encryptedText = SnmpUtilities.AESencrypt(plaintext, privacyKey, node.getSnmpEngineBoots(),
-						node.getSnmpEngineTime(), salt, privacyProtocol);
+				encryptedText = SnmpUtilities.AESencrypt(scopedPdu, privacyKey, boots, time, salt,
+						privacyProtocol);
 			} else {
-				encryptedText = SnmpUtilities.DESencrypt(plaintext, privacyKey, salt);
+				encryptedText = SnmpUtilities.DESencrypt(scopedPdu, privacyKey, salt);
 			}
 
-			asnEncryptedScopedPdu = new AsnOctets(encryptedText);
+			// the encrypted scoped PDU is an OCTET STRING
+			scopedPdu = new byte[Snmpv3MessageTemplate.tlvSize(encryptedText.length)];
+			int pos = Snmpv3MessageTemplate.putHeader(scopedPdu, 0, AsnObject.ASN_OCTET_STR, encryptedText.length);
+			System.arraycopy(encryptedText, 0, scopedPdu, pos, encryptedText.length);
 			if (AsnObject.debug > 10) {
 				System.out.println("Encrypted body  with " + SnmpContextv3Face.PROTOCOL_NAMES[privacyProtocol]);
 			}
 		} else {
-			privacyAsnOctets = new AsnOctets("");
-		}
-		asnSecurityObject.add(privacyAsnOctets);
-
-		ByteArrayOutputStream secOut = new ByteArrayOutputStream();
-		asnSecurityObject.write(secOut);
-		byte[] bytes = secOut.toByteArray();
-		AsnOctets asnSecurityParameters = new AsnOctets(bytes);
-
-		asnSequence.add(new AsnInteger(SnmpConstants.SNMP_VERSION_3));
-		asnSequence.add(asnHeaderData);
-		asnSequence.add(asnSecurityParameters);
-		if (context.isUsePrivacy()) {
-			asnSequence.add(asnEncryptedScopedPdu);
-		} else {
-			asnSequence.add(asnPlainScopedPdu);
+			salt = new byte[0];
 		}
 
 		if (AsnObject.debug > 10) {
 			System.out.println("\n" + getClass().getName() + ".EncodeSNMPv3(): ");
 		}
-		// Write SNMP object
-		encodedSnmpMessageOutputStream = new ByteArrayOutputStream();
-		asnSequence.write(encodedSnmpMessageOutputStream);
-
-		int sz = encodedSnmpMessageOutputStream.size();
-		if (sz > context.getMaxRecvSize()) {
-			throw new EncodingException(
-					"Packet size (" + sz + ") is > maximum size (" + context.getMaxRecvSize() + ")");
-		}
-		byte[] message = encodedSnmpMessageOutputStream.toByteArray();
-
-		// can only do this at after building the whole message
-		if (context.isUseAuthentication()) {
-			byte[] computedFingerprint = null;
-
-			// Calculate the fingerprint
-			computedFingerprint = context.computeFingerprint(node.getSnmpEngineId(), authenticationProtocol,
-					computedFingerprint, message);
-
-			int usmPos = asnSecurityParameters.getContentsPos();
-			int fpPos = fingerPrintOctets.getContentsPos();
-			fpPos += usmPos;
-			if (AsnObject.debug > 10) {
-				int fpLength = fingerPrintOctets.getContentsLength();
-				String str = "Pos finger print = " + fpPos + ", len = " + fpLength;
-				SnmpUtilities.dumpBytes(str, computedFingerprint);
-			}
-
-			// Copy the fingerprint to the message
-			SnmpUtilities.copyFingerprintToSnmpMessage(authenticationProtocol, computedFingerprint, message, fpPos);
-
-		}
-		return message;
+		return template.encode(contextMsgId, boots, time, salt, scopedPdu);
 	}
 
-	private byte[] getMessageFlags(SnmpContextv3Basis context, byte messageType) throws EncodingException {
+	private byte[] getMessageFlags(SnmpContextv3Basis context, byte messageType, boolean useAuthentication,
+			boolean usePrivacy) throws EncodingException {
 		byte authMask = (byte) (0x0);
-		if (context.isUseAuthentication()) {
+		if (useAuthentication) {
 			authMask = (byte) (0x1);
 		}
 		byte privMask = (byte) (0x0);
-		if (context.isUsePrivacy()) {
-			if (context.isUseAuthentication()) {
+		if (usePrivacy) {
+			if (useAuthentication) {
 				privMask = (byte) (0x2);
 			} else {
 				throw new EncodingException("Encryption without authentication is not allowed");
@@ -111,6 +111,9 @@ public class AsnUnsInteger64 extends AsnObject {
 
     /**
      * Returns the value representation of the AsnUnsInteger64.
+     * Values above <code>Long.MAX_VALUE</code> come out negative: the bits
+     * are the ones of the unsigned value, see
+     * {@link Long#toUnsignedString(long)}.
      *
      * @return The value of the AsnUnsInteger64
      */
@@ -124,7 +127,7 @@ public class AsnUnsInteger64 extends AsnObject {
      * @return The string of the AsnUnsInteger64
      */
     public String toString() {
-        return (String.valueOf(value));
+        return (Long.toUnsignedString(value));
     }
 
     /**
@@ -133,9 +136,9 @@ public class AsnUnsInteger64 extends AsnObject {
     int size() {
         int count, empty = 0x00, sign = 0x00;
 
+        // Unsigned: a value with the top bit set needs a leading 0x00
         if (value < 0) {
-            empty = 0xFF;
-            sign = 0x80;
+            return 9;
         }
 
         // 64-bit integer.. change to 24 to write 32-bit long
@@ -161,11 +164,6 @@ public class AsnUnsInteger64 extends AsnObject {
     void write(OutputStream out, int pos) throws IOException {
         int count, empty = 0x00, sign = 0x00;
 
-        if (value < 0) {
-            empty = 0xFF;
-            sign = 0x80;
-        }
-
         // Get count
         for (count = 56; count > 0; count -= 8) {
             if (((value >> count) & 0xFF) != empty)
@@ -175,11 +173,16 @@ public class AsnUnsInteger64 extends AsnObject {
             count += 8;
 
         // Build header and write value
-        AsnBuildHeader(out, COUNTER64, (count >> 3) + 1);
+        AsnBuildHeader(out, COUNTER64, size());
         if (debug > 10) {
-            System.out.println("\tAsnUnsInteger64(): value = " + value
+            System.out.println("\tAsnUnsInteger64(): value = " + toString()
                     + ", pos = " + pos);
         }
+        if (value < 0) {
+            // Unsigned: a value with the top bit set needs a leading 0x00
+            out.write(0x00);
+            count = 56;
+        }
         for (; count >= 0; count -= 8) {
             out.write((byte) ((value >> count) & 0xFF));
         }
@@ -0,0 +1,493 @@
+package uk.co.westhawk.snmp.stack;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub, Westhawk
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Limits the requests sent to one agent (host and port), shared by all the
+ * contexts of that agent.
+ *
+ * <p>
+ * Its state and settings outlive the contexts: a context created after the
+ * others were destroyed finds the agent as they left it. The agent is
+ * forgotten once it has had no contexts for the idle timeout
+ * ({@link #setIdleTimeout(long)}).
+ * </p>
+ *
+ * <p>
+ * By default, the number of requests in flight is only limited by the slots
+ * of each context ({@link SnmpContextBasisFace#MAXPDU}).
+ * {@link #setLimits(int, int)} turns on a limit shared by the contexts of the
+ * agent, which follows AIMD (additive increase, multiplicative decrease):
+ * the limit grows by one every limit responses,
+ * while the round-trip time stays below twice the lowest one seen, and it is
+ * halved, at most once per round trip, when a request times out or the agent
+ * answers <code>genErr</code> or <code>tooBig</code>. On top of that, the rate
+ * of the requests can be capped.
+ * </p>
+ *
+ * <p>
+ * It can also be a circuit breaker, which is off by default
+ * ({@link #setCircuitBreaker(int, long)}): after a number of consecutive
+ * timeouts, the circuit opens and the requests fail at once with an
+ * {@link AgentUnavailableException}, instead of waiting for all their
+ * retries. Once in a while, a single request goes through as a probe: the
+ * circuit closes again when the agent answers it.
+ * </p>
+ *
+ * <p>
+ * A request waits in {@link AbstractSnmpContext#addPdu(Pdu)}, i.e. in
+ * {@link Pdu#send()}, until it may be sent. Retries of a request are not
+ * counted, neither are the PDUs that do not expect a response (traps,
+ * responses).
+ * </p>
+ *
+ * @see AbstractSnmpContext#getCongestionControl()
+ */
+public final class CongestionControl {
+
+    /**
+     * The number of requests in flight allowed at first, once the limits are
+     * set.
+     */
+    public static final int DEFAULT_INITIAL_LIMIT = 4;
+
+    /**
+     * The time between two probes of an agent whose circuit is open, in
+     * milliseconds, by default.
+     */
+    public static final long DEFAULT_PROBE_INTERVAL = 30000;
+
+    /**
+     * The time after which an agent that has no contexts anymore is
+     * forgotten, in milliseconds, by default.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 600000;
+
+    /**
+     * The states of the circuit.
+     */
+    public enum CircuitState {
+        /** The requests are sent. */
+        CLOSED,
+        /** The requests fail at once, until the next probe. */
+        OPEN,
+        /** A probe is in flight, the other requests fail at once. */
+        HALF_OPEN
+    }
+
+    private static final Map<String, CongestionControl> controls = new HashMap<String, CongestionControl>();
+    private static long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private static long lastEviction;
+
+    private final String key;
+    private int references;
+    private long idleSince;
+
+    private boolean limited;
+    private int minLimit = 1;
+    private int maxLimit = SnmpContextBasisFace.MAXPDU;
+    private double limit = DEFAULT_INITIAL_LIMIT;
+    private int inFlight;
+
+    private long minRtt = Long.MAX_VALUE;
+    private long lastDecrease;
+    private int decreases;
+
+    private double maxRequestRate;
+    private long nextRequestTime;
+
+    private int failureThreshold;
+    private long probeInterval = DEFAULT_PROBE_INTERVAL;
+    private CircuitState circuitState = CircuitState.CLOSED;
+    private int consecutiveTimeouts;
+    private long openTime;
+    private Pdu probe;
+
+    private CongestionControl(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Returns the congestion control of an agent, shared by all its contexts.
+     * Each call must be matched by a call to {@link #unregister(CongestionControl)}.
+     *
+     * @param host The host of the agent
+     * @param port The port of the agent
+     */
+    static CongestionControl forAgent(String host, int port) {
+        String key = host + ":" + port;
+        synchronized (controls) {
+            evictIdle();
+            CongestionControl control = controls.get(key);
+            if (control == null) {
+                control = new CongestionControl(key);
+                controls.put(key, control);
+            }
+            control.references++;
+            return control;
+        }
+    }
+
+    /**
+     * Tells that a context of the agent is destroyed. The congestion control is
+     * forgotten once the agent has had no contexts for the idle timeout.
+     *
+     * @param control The congestion control
+     */
+    static void unregister(CongestionControl control) {
+        synchronized (controls) {
+            if (--control.references == 0) {
+                control.idleSince = System.currentTimeMillis();
+            }
+        }
+        synchronized (control) {
+            control.notifyAll();
+        }
+    }
+
+    /**
+     * Forgets the agents that have had no contexts for the idle timeout.
+     * The caller holds the lock of the registry.
+     */
+    private static void evictIdle() {
+        long now = System.currentTimeMillis();
+        if (now - lastEviction < Math.min(1000, idleTimeout)) {
+            return;
+        }
+        lastEviction = now;
+        Iterator<CongestionControl> iterator = controls.values().iterator();
+        while (iterator.hasNext()) {
+            CongestionControl control = iterator.next();
+            if (control.references == 0 && now - control.idleSince >= idleTimeout) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Sets the time after which an agent that has no contexts anymore is
+     * forgotten, with its state and settings.
+     *
+     * @param idleTimeout The time, in milliseconds ({@link #DEFAULT_IDLE_TIMEOUT}
+     *                    by default)
+     * @throws IllegalArgumentException when the time is not positive
+     */
+    public static void setIdleTimeout(long idleTimeout) {
+        if (idleTimeout <= 0) {
+            throw new IllegalArgumentException("Invalid idle timeout: " + idleTimeout + " ms");
+        }
+        synchronized (controls) {
+            CongestionControl.idleTimeout = idleTimeout;
+            lastEviction = 0;
+        }
+    }
+
+    /**
+     * Tells whether requests may be sent to an agent, i.e. whether its circuit
+     * is not open, or is due for a probe. Schedulers can skip the agents that
+     * are not available, with or without a context of the agent.
+     *
+     * @param host The host of the agent
+     * @param port The port of the agent
+     * @return false if the agent is known to be unresponsive, true otherwise
+     */
+    public static boolean isAvailable(String host, int port) {
+        CongestionControl control;
+        synchronized (controls) {
+            evictIdle();
+            control = controls.get(host + ":" + port);
+        }
+        return control == null || control.isAvailable();
+    }
+
+    /**
+     * Sets the bounds of the number of requests in flight, and turns the limit
+     * on. With equal bounds, the number is fixed.
+     *
+     * @param min The lowest limit, at least 1
+     * @param max The highest limit, at most {@link SnmpContextBasisFace#MAXPDU}
+     * @throws IllegalArgumentException when the bounds are out of range
+     */
+    public synchronized void setLimits(int min, int max) {
+        if (min < 1 || max < min || max > SnmpContextBasisFace.MAXPDU) {
+            throw new IllegalArgumentException("Invalid limits of requests in flight: " + min + ".." + max);
+        }
+        limited = true;
+        minLimit = min;
+        maxLimit = max;
+        limit = Math.max(min, Math.min(max, limit));
+        notifyAll();
+    }
+
+    /**
+     * Caps the rate of the requests.
+     *
+     * @param maxRequestRate The number of requests per second, 0 for no cap (the
+     *                       default)
+     * @throws IllegalArgumentException when the rate is negative
+     */
+    public synchronized void setMaxRequestRate(double maxRequestRate) {
+        if (maxRequestRate < 0) {
+            throw new IllegalArgumentException("Invalid request rate: " + maxRequestRate);
+        }
+        this.maxRequestRate = maxRequestRate;
+    }
+
+    /**
+     * Sets the circuit breaker.
+     *
+     * @param failureThreshold The number of consecutive timeouts that opens the
+     *                         circuit, 0 to never open it (the default)
+     * @param probeInterval    The time between two probes while the circuit is
+     *                         open, in milliseconds
+     * @throws IllegalArgumentException when a value is negative
+     */
+    public synchronized void setCircuitBreaker(int failureThreshold, long probeInterval) {
+        if (failureThreshold < 0 || probeInterval < 0) {
+            throw new IllegalArgumentException("Invalid circuit breaker: " + failureThreshold + " timeouts, "
+                    + probeInterval + " ms");
+        }
+        this.failureThreshold = failureThreshold;
+        this.probeInterval = probeInterval;
+        if (failureThreshold == 0) {
+            circuitState = CircuitState.CLOSED;
+            probe = null;
+        }
+    }
+
+    /**
+     * Returns the state of the circuit.
+     */
+    public synchronized CircuitState getCircuitState() {
+        return circuitState;
+    }
+
+    /**
+     * Returns whether a request may be sent now: the circuit is closed, or it
+     * is open and due for a probe.
+     */
+    public synchronized boolean isAvailable() {
+        return circuitState == CircuitState.CLOSED
+                || (circuitState == CircuitState.OPEN
+                        && System.currentTimeMillis() - openTime >= probeInterval);
+    }
+
+    /**
+     * Returns the number of consecutive timeouts of the agent.
+     */
+    public synchronized int getConsecutiveTimeouts() {
+        return consecutiveTimeouts;
+    }
+
+    /**
+     * Returns whether the number of requests in flight is limited, i.e.
+     * whether {@link #setLimits(int, int)} was called.
+     */
+    public synchronized boolean isLimited() {
+        return limited;
+    }
+
+    /**
+     * Returns the current limit of requests in flight, when it is on.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of requests in flight.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the number of times the limit was decreased.
+     */
+    public synchronized int getDecreases() {
+        return decreases;
+    }
+
+    /**
+     * Returns the lowest round-trip time seen, in milliseconds, or -1 if none.
+     */
+    public synchronized long getMinRtt() {
+        return minRtt == Long.MAX_VALUE ? -1 : minRtt / 1000000;
+    }
+
+    /**
+     * Waits until a request may be sent to the agent.
+     *
+     * @param pdu     The request
+     * @param context The context of the request, which stops the wait when it is
+     *                destroyed
+     * @param wait    Whether to wait for a slot and for the rate cap. Otherwise,
+     *                the request fails at once when there is no slot, and the
+     *                caller has to wait for the rate cap.
+     * @return The time to wait before sending the request, for the rate cap,
+     *         in nanoseconds; always 0 when waiting
+     * @throws AgentUnavailableException when the circuit is open
+     * @throws PduException              when there is no slot and not waiting,
+     *                                   the wait is interrupted, or the
+     *                                   context is destroyed
+     */
+    long acquire(Pdu pdu, SnmpContextBasisFace context, boolean wait) throws PduException {
+        long delay = 0;
+        synchronized (this) {
+            if (circuitState != CircuitState.CLOSED) {
+                if (circuitState == CircuitState.HALF_OPEN
+                        || System.currentTimeMillis() - openTime < probeInterval) {
+                    throw new AgentUnavailableException("Agent " + key + " is not responding ("
+                            + consecutiveTimeouts + " consecutive timeouts)");
+                }
+                // This one is the probe
+                circuitState = CircuitState.HALF_OPEN;
+                probe = pdu;
+            }
+            while (limited && inFlight >= (int) limit) {
+                if (wait == false) {
+                    cancelProbe(pdu);
+                    throw new PduException("Too many requests in flight with agent " + key);
+                }
+                if (context.isDestroyed()) {
+                    cancelProbe(pdu);
+                    throw new PduException("Context can no longer be used, since it is already destroyed");
+                }
+                try {
+                    wait(100);
+                } catch (InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                    cancelProbe(pdu);
+                    throw new PduException("Interrupted while waiting to send a request");
+                }
+            }
+            inFlight++;
+
+            if (maxRequestRate > 0) {
+                long now = System.nanoTime();
+                long requestTime = Math.max(now, nextRequestTime);
+                nextRequestTime = requestTime + (long) (1000000000L / maxRequestRate);
+                delay = requestTime - now;
+            }
+        }
+
+        if (delay > 0 && wait) {
+            try {
+                Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                release(pdu, false);
+                throw new PduException("Interrupted while waiting to send a request");
+            }
+            delay = 0;
+        }
+        return delay;
+    }
+
+    /**
+     * Tells that a probe was not sent: the next request will be the probe.
+     */
+    private void cancelProbe(Pdu pdu) {
+        if (probe == pdu && circuitState == CircuitState.HALF_OPEN) {
+            circuitState = CircuitState.OPEN;
+            probe = null;
+            openTime = 0;
+        }
+    }
+
+    /**
+     * Tells that a request is not in flight anymore, and adapts the limit and
+     * the circuit to its outcome.
+     *
+     * @param pdu  The request
+     * @param sent Whether the request was sent. A request sent that was
+     *             neither answered nor timed out, e.g. because it was
+     *             cancelled or its context was destroyed, has no outcome.
+     */
+    synchronized void release(Pdu pdu, boolean sent) {
+        boolean full = limited && inFlight >= (int) limit;
+        inFlight--;
+
+        boolean outcome = sent && (pdu.isTimedOut() || pdu.isAnswered());
+        if (!outcome) {
+            // Not a probe after all: the next request will be
+            cancelProbe(pdu);
+        } else if (pdu.isTimedOut()) {
+            consecutiveTimeouts++;
+            if (probe == pdu) {
+                // Still not responding: wait for the next probe
+                circuitState = CircuitState.OPEN;
+                openTime = System.currentTimeMillis();
+                probe = null;
+            } else if (failureThreshold > 0 && consecutiveTimeouts >= failureThreshold
+                    && circuitState == CircuitState.CLOSED) {
+                circuitState = CircuitState.OPEN;
+                openTime = System.currentTimeMillis();
+            }
+        } else {
+            consecutiveTimeouts = 0;
+            circuitState = CircuitState.CLOSED;
+            probe = null;
+        }
+
+        if (outcome) {
+            long now = System.nanoTime();
+            int errorStatus = pdu.getErrorStatus();
+            if (pdu.isTimedOut()
+                    || errorStatus == SnmpConstants.SNMP_ERR_GENERR
+                    || errorStatus == SnmpConstants.SNMP_ERR_TOOBIG) {
+                // Once per round trip: the other requests in flight were
+                // sent with the same limit
+                long roundTrip = minRtt == Long.MAX_VALUE ? 0 : 2 * minRtt;
+                if (limited && now - lastDecrease > roundTrip) {
+                    limit = Math.max(minLimit, limit / 2);
+                    lastDecrease = now;
+                    decreases++;
+                }
+            } else if (pdu.getRoundTripTime() > 0) {
+                long rtt = pdu.getRoundTripTime();
+                minRtt = Math.min(minRtt, rtt);
+                if (full && rtt <= 2 * minRtt) {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+        }
+        notifyAll();
+    }
+
+    public String toString() {
+        StringBuffer buffer = new StringBuffer(getClass().getName());
+        buffer.append("[");
+        buffer.append("agent=").append(key);
+        buffer.append(", limit=").append(getLimit());
+        buffer.append(", inFlight=").append(inFlight);
+        buffer.append(", minRtt=").append(getMinRtt());
+        buffer.append(", circuit=").append(circuitState);
+        buffer.append("]");
+        return buffer.toString();
+    }
+}
@@ -91,6 +91,7 @@ public class DefaultUsmAgent implements UsmAgent {
     private String hostname;
     private String hostaddress;
     private int port;
+    private SnmpEngineAddress engineAddress;
 
     public DefaultUsmAgent() {
         try {
@@ -110,8 +111,8 @@ public class DefaultUsmAgent implements UsmAgent {
      */
     public String getSnmpEngineId() {
         TimeWindow tWindow = TimeWindow.getCurrent();
-        String engineId = tWindow.getSnmpEngineId(hostaddress, port);
-        return engineId;
+        SnmpEngineId engineId = tWindow.getSnmpEngineId(getEngineAddress());
+        return (engineId == null) ? null : engineId.toString();
     }
 
     /**
@@ -122,12 +123,8 @@ public class DefaultUsmAgent implements UsmAgent {
      */
     public int getSnmpEngineBoots() {
         int boots = 1;
-        TimeWindowNode node = null;
         TimeWindow tWindow = TimeWindow.getCurrent();
-        String engineId = tWindow.getSnmpEngineId(hostaddress, port);
-        if (engineId != null) {
-            node = tWindow.getTimeLine(engineId);
-        }
+        TimeWindowNode node = tWindow.getTimeLine(tWindow.getSnmpEngineId(getEngineAddress()));
         if (node != null) {
             boots = node.getSnmpEngineBoots();
         }
@@ -142,12 +139,8 @@ public class DefaultUsmAgent implements UsmAgent {
      */
     public int getSnmpEngineTime() {
         int time = 1;
-        TimeWindowNode node = null;
         TimeWindow tWindow = TimeWindow.getCurrent();
-        String engineId = tWindow.getSnmpEngineId(hostaddress, port);
-        if (engineId != null) {
-            node = tWindow.getTimeLine(engineId);
-        }
+        TimeWindowNode node = tWindow.getTimeLine(tWindow.getSnmpEngineId(getEngineAddress()));
         if (node != null) {
             time = node.getSnmpEngineTime();
         }
@@ -189,6 +182,7 @@ public class DefaultUsmAgent implements UsmAgent {
         hostname = host;
         java.net.InetAddress ipAddr = java.net.InetAddress.getByName(hostname);
         hostaddress = ipAddr.getHostAddress();
+        engineAddress = null;
     }
 
     /**
@@ -199,6 +193,16 @@ public class DefaultUsmAgent implements UsmAgent {
      */
     public void setAgentPort(int p) {
         port = p;
+        engineAddress = null;
+    }
+
+    private SnmpEngineAddress getEngineAddress() {
+        SnmpEngineAddress address = engineAddress;
+        if (address == null) {
+            address = new SnmpEngineAddress(hostaddress, port);
+            engineAddress = address;
+        }
+        return address;
     }
 
     /**
@@ -215,7 +219,7 @@ public class DefaultUsmAgent implements UsmAgent {
         boolean isNeeded = false;
 
         TimeWindow tWindow = TimeWindow.getCurrent();
-        String engineId = tWindow.getSnmpEngineId(hostaddress, port);
+        SnmpEngineId engineId = tWindow.getSnmpEngineId(getEngineAddress());
         if (engineId == null) {
             isNeeded = true;
             discBean = new UsmDiscoveryBean(hostname,
@@ -115,6 +115,7 @@ public abstract class Pdu extends Observable {
 
     int req_id;
     protected Integer snmpv3MsgId = null;
+    private UsmUser usmUser = null;
     protected int errstat;
     protected int errind;
 
@@ -123,8 +124,17 @@ public abstract class Pdu extends Observable {
     protected boolean answered;
     private boolean got = false;
     private boolean isTimedOut;
+    private volatile boolean cancelled;
     private PduException respException = null;
 
+    // Round-trip time of the request, in nanoseconds, when it was answered
+    // on the first try (0 otherwise), the congestion control whose slot it
+    // holds, if any, and the time to wait before sending it, for the rate cap
+    private long sentTime;
+    private long roundTripTime;
+    private CongestionControl congestionControl;
+    private long sendDelay;
+
     /**
      * The value of the response is set. This will be called by
      * Pdu.fillin().
@@ -209,6 +219,35 @@ public abstract class Pdu extends Observable {
         return retry_intervals;
     }
 
+    /**
+     * Sets the USM user this PDU is sent as. This is only used by SNMPv3
+     * contexts; by default (null) the PDU is sent as the user of the
+     * context. Setting it allows the PDUs of many users to share one
+     * context, and its socket and threads.
+     *
+     * <p>
+     * If used, please set before sending!
+     * </p>
+     *
+     * @param user The USM user
+     * @see SnmpContextv3Basis#getUsmUser()
+     * @see UsmUserTable
+     */
+    public void setUsmUser(UsmUser user) {
+        usmUser = user;
+    }
+
+    /**
+     * Returns the USM user this PDU is sent as, or null if it is sent as
+     * the user of the context.
+     *
+     * @return The USM user
+     * @see #setUsmUser(UsmUser)
+     */
+    public UsmUser getUsmUser() {
+        return usmUser;
+    }
+
     /**
      * Sends the PDU.
      * Note that all properties of the context have to be set before this
@@ -261,6 +300,9 @@ public abstract class Pdu extends Observable {
      * @see AbstractSnmpContext#sendPacket(byte[] p)
      */
     protected boolean sendme() {
+        if (retries == 0) {
+            sentTime = System.nanoTime();
+        }
         context.sendPacket(encodedPacket);
         retries++;
 
@@ -526,6 +568,81 @@ public abstract class Pdu extends Observable {
         return isTimedOut;
     }
 
+    /**
+     * Returns whether a response was received.
+     *
+     * @return true if the request was answered
+     */
+    boolean isAnswered() {
+        return answered && !isTimedOut && !cancelled;
+    }
+
+    /**
+     * Tells that the request holds a slot of the congestion control.
+     */
+    synchronized void setCongestionControl(CongestionControl control) {
+        congestionControl = control;
+    }
+
+    /**
+     * Gives the slot of the congestion control back, once, as soon as the
+     * request has an outcome.
+     */
+    void releaseCongestionControl() {
+        CongestionControl control;
+        synchronized (this) {
+            control = congestionControl;
+            congestionControl = null;
+        }
+        if (control != null) {
+            control.release(this, true);
+        }
+    }
+
+    /**
+     * Sets the time the transmitter waits before sending the request, in
+     * nanoseconds.
+     */
+    void setSendDelay(long delay) {
+        sendDelay = delay;
+    }
+
+    /**
+     * Returns the round-trip time of the request, in nanoseconds, if it was
+     * answered on the first try, 0 otherwise.
+     *
+     * @return The round-trip time
+     * @see CongestionControl
+     */
+    long getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    /**
+     * Cancels the request: it is not sent again, a response to it is ignored,
+     * and its observers are not notified. The threads waiting for it are
+     * woken up.
+     */
+    public void cancel() {
+        cancelled = true;
+        synchronized (this) {
+            notifyAll();
+            if (trans != null) {
+                trans.interruptMe();
+            }
+        }
+    }
+
+    /**
+     * Returns whether the request was cancelled.
+     *
+     * @return true if the request was cancelled
+     * @see #cancel()
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     /**
      * This method will wait until the answer is received, instead of
      * continue with other stuff.
@@ -533,7 +650,7 @@ public abstract class Pdu extends Observable {
     public boolean waitForSelf() {
         // Add an extra second to the waiting. This gives the PDU a chance
         // to handle the timeout correctly before this thread wakes up.
-        long del = 1000;
+        long del = 1000 + sendDelay / 1000000;
         for (int i = 0; i < retry_intervals.length; i++) {
             del += retry_intervals[i];
         }
@@ -544,7 +661,7 @@ public abstract class Pdu extends Observable {
         }
 
         // Should I??
-        if (!answered) {
+        if (!answered && !cancelled) {
             handleNoAnswer();
         }
 
@@ -613,7 +730,7 @@ public abstract class Pdu extends Observable {
     }
 
     synchronized boolean waitForSelf(long delay) {
-        if (!got) {
+        if (!got && !cancelled) {
             try {
                 wait(delay);
             } catch (InterruptedException ix) {
@@ -632,7 +749,16 @@ public abstract class Pdu extends Observable {
             int n = 0;
             answered = false;
 
-            while ((!context.isDestroyed()) && (!answered) && (n < retry_intervals.length)) {
+            if (sendDelay > 0) {
+                // Paced by the congestion control, for a PDU sent by a
+                // receiving thread
+                try {
+                    Thread.sleep(sendDelay / 1000000, (int) (sendDelay % 1000000));
+                } catch (InterruptedException e) {
+                }
+            }
+
+            while ((!context.isDestroyed()) && (!answered) && (!cancelled) && (n < retry_intervals.length)) {
                 sendme();
 
                 try {
@@ -642,7 +768,7 @@ public abstract class Pdu extends Observable {
                 n++;
             }
 
-            if (!answered) {
+            if (!answered && !cancelled) {
                 handleNoAnswer();
             }
         } else {
@@ -762,6 +888,9 @@ public abstract class Pdu extends Observable {
         setErrorStatus(AsnObject.SNMP_ERR_GENERR);
         setErrorIndex(0);
 
+        // Free the slot before the observers, which may send the next request
+        releaseCongestionControl();
+
         setChanged();
         tell_them();
         clearChanged();
@@ -778,13 +907,18 @@ public abstract class Pdu extends Observable {
      *
      */
     void fillin(AsnPduSequence seq) {
-        if (answered) {
+        if (answered || cancelled) {
             if (AsnObject.debug > 6) {
                 System.out.println(getClass().getName() + ".fillin(): Got a second answer to reqId " + req_id);
             }
             return;
         }
 
+        // Only a response to the first try tells the round-trip time
+        if (retries == 1) {
+            roundTripTime = System.nanoTime() - sentTime;
+        }
+
         // fillin(null) can be called in case of a Decoding exception
         if (seq != null) {
             if (seq.isCorrect == true) {
@@ -841,6 +975,12 @@ public abstract class Pdu extends Observable {
             }
         }
 
+        // Free the slot before the observers, which may send the next
+        // request from the receiving thread. The threads waiting for the
+        // PDU are only woken up once the observers are done.
+        answered = true;
+        releaseCongestionControl();
+
         // always do 'setChanged', even if there are no varbinds.
         setChanged();
         tell_them();
@@ -848,7 +988,6 @@ public abstract class Pdu extends Observable {
 
         synchronized (this) {
             got = true;
-            answered = true;
             notify(); // see also handleNoAnswer()
             if (trans != null) {
                 // free up the transmitter, since
@@ -57,7 +57,8 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Hashtable;
-import java.util.function.BiFunction;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This class contains the basis for the SNMP v3 contexts that is needed 
@@ -65,8 +66,10 @@ import java.util.function.BiFunction;
  *
  * <p>
  * This class will perform the v3 discovery of the SNMP engine ID and
- * time line if necessary. This is done with the classes
- * <code>TimeWindow</code> and <code>UsmDiscoveryBean</code>.
+ * time line if necessary. This is done with the class
+ * <code>TimeWindow</code> and by sending a <code>DiscoveryPdu</code> over
+ * this context. Concurrent discoveries of the same engine are done only
+ * once.
  * </p>
  *
  * <p>
@@ -122,29 +125,68 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
     protected String userName = DEFAULT_USERNAME;
     protected boolean useAuthentication = false;
     protected String userAuthenticationPassword;
+    /** @deprecated Not used anymore, the keys are kept by {@link UsmUser} */
+    @Deprecated
     protected byte[] userAuthKeyMD5 = null;
+    /** @deprecated Not used anymore, the keys are kept by {@link UsmUser} */
+    @Deprecated
     protected byte[] userAuthKeySHA1 = null;
+    /** @deprecated Not used anymore, the keys are kept by {@link UsmUser} */
+    @Deprecated
     protected byte[] userAuthKeySHA256 = null;
+    /** @deprecated Not used anymore, the keys are kept by {@link UsmUser} */
+    @Deprecated
     protected byte[] userAuthKeySHA512 = null;
+    /** @deprecated Not used anymore, the keys are kept by {@link UsmUser} */
+    @Deprecated
     protected byte[] userAuthKeySHA224 = null;
+    /** @deprecated Not used anymore, the keys are kept by {@link UsmUser} */
+    @Deprecated
     protected byte[] userAuthKeySHA384 = null;
     protected int authenticationProtocol = MD5_PROTOCOL;
     protected int privacyProtocol = DES_ENCRYPT;
     protected boolean usePrivacy = false;
     protected String userPrivacyPassword;
+    /** @deprecated Not used anymore, the keys are kept by {@link UsmUser} */
+    @Deprecated
     protected byte[] userPrivKeyMD5 = null;
+    /** @deprecated Not used anymore, the keys are kept by {@link UsmUser} */
+    @Deprecated
     protected byte[] userPrivKeySHA1 = null;
+    /** @deprecated Not used anymore, the keys are kept by {@link UsmUser} */
+    @Deprecated
     protected byte[] userPrivKeySHA256 = null;
+    /** @deprecated Not used anymore, the keys are kept by {@link UsmUser} */
+    @Deprecated
     protected byte[] userPrivKeySHA512 = null;
+    /** @deprecated Not used anymore, the keys are kept by {@link UsmUser} */
+    @Deprecated
     protected byte[] userPrivKeySHA224 = null;
+    /** @deprecated Not used anymore, the keys are kept by {@link UsmUser} */
+    @Deprecated
     protected byte[] userPrivKeySHA384 = null;
     protected byte[] contextEngineId = new byte[0];
     protected String contextName = DEFAULT_CONTEXT_NAME;
     protected UsmAgent usmAgent = null;
 
-    private Hashtable msgIdHash = new Hashtable(MAXPDU);
+    private Hashtable<Integer, Integer> msgIdHash = new Hashtable<>(MAXPDU);
     private static int next_id = 1;
 
+    /**
+     * The discoveries in progress, per engine address, shared by all
+     * contexts.
+     */
+    private static final ConcurrentMap<SnmpEngineAddress, PendingDiscovery> pendingDiscoveries = new ConcurrentHashMap<>();
+
+    private volatile SnmpEngineAddress sendToEngineAddress = null;
+    private volatile UsmUser usmUser = null;
+    private Hashtable<Integer, UsmUser> msgIdUsers = new Hashtable<>(MAXPDU);
+
+    /**
+     * The msgMaxSize of the last message received from the agent, 0 if none.
+     */
+    private volatile int peerMaxMessageSize = 0;
+
     /**
      * Constructor.
      *
@@ -222,6 +264,7 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
      */
     public void setUserName(String newUserName) {
         userName = newUserName;
+        usmUser = null;
     }
 
     /**
@@ -242,6 +285,7 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
      */
     public void setUseAuthentication(boolean newUseAuthentication) {
         useAuthentication = newUseAuthentication;
+        usmUser = null;
     }
 
     /**
@@ -266,12 +310,7 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
                 &&
                 newUserAuthPassword.equals(userAuthenticationPassword) == false) {
             userAuthenticationPassword = newUserAuthPassword;
-            userAuthKeyMD5 = null;
-            userAuthKeySHA1 = null;
-            userAuthKeySHA256 = null;
-            userAuthKeySHA512 = null;
-            userAuthKeySHA224 = null;
-            userAuthKeySHA384 = null;
+            usmUser = null;
         }
     }
 
@@ -289,6 +328,7 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
         if (AUTH_PROTOCOLS.contains(protocol)) {
             if (protocol != authenticationProtocol) {
                 authenticationProtocol = protocol;
+                usmUser = null;
             }
         } else {
             throw new IllegalArgumentException("Authentication Protocol "
@@ -323,6 +363,7 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
         if (PRIVACY_PROTOCOLS.contains(protocol)) {
             if (protocol != privacyProtocol) {
                 privacyProtocol = protocol;
+                usmUser = null;
             }
         } else {
             throw new IllegalArgumentException("Privacy Encryption "
@@ -343,130 +384,6 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
         return privacyProtocol;
     }
 
-    byte[] getAuthenticationPasswordKeyMD5() {
-        if (userAuthKeyMD5 == null) {
-            userAuthKeyMD5 = SnmpUtilities.passwordToKeyMD5(userAuthenticationPassword);
-        }
-        return userAuthKeyMD5;
-    }
-
-    byte[] getAuthenticationPasswordKeySHA1() {
-        if (userAuthKeySHA1 == null) {
-            userAuthKeySHA1 = SnmpUtilities.passwordToKeySHA1(userAuthenticationPassword);
-        }
-        return userAuthKeySHA1;
-    }
-
-    /**
-     * Returns the authentication password key for SHA256.
-     * 
-     * @return the authentication password key for SHA256
-     */
-    byte[] getAuthenticationPasswordKeySHA256() {
-        if (userAuthKeySHA256 == null) {
-            userAuthKeySHA256 = SnmpUtilities.passwordToKeySHA256(userAuthenticationPassword);
-        }
-        return userAuthKeySHA256;
-    }
-
-    /**
-     * Returns the authentication password key for SHA-384.
-     *
-     * @return the authentication password key for SHA-384
-     */
-    byte[] getAuthenticationPasswordKeySHA384() {
-        if (userAuthKeySHA384 == null) {
-            userAuthKeySHA384 = SnmpUtilities.passwordToKeySHA384(userAuthenticationPassword);
-        }
-        return userAuthKeySHA384;
-    }
-
-    /**
-     * Returns the authentication password key for SHA-224.
-     *
-     * @return the authentication password key for SHA-224
-     */
-    byte[] getAuthenticationPasswordKeySHA224() {
-        if (userAuthKeySHA224 == null) {
-            userAuthKeySHA224 = SnmpUtilities.passwordToKeySHA224(userAuthenticationPassword);
-        }
-        return userAuthKeySHA224;
-    }
-
-    /**
-     * Returns the authentication password key for SHa512.
-     *
-     * @return the authentication password key for SHA512
-     */
-    byte[] getAuthenticationPasswordKeySHA512() {
-        if (userAuthKeySHA512 == null) {
-            userAuthKeySHA512 = SnmpUtilities.passwordToKeySHA512(userAuthenticationPassword);
-        }
-        return userAuthKeySHA512;
-    }
-
-    byte[] getPrivacyPasswordKeyMD5() {
-        if (userPrivKeyMD5 == null) {
-            userPrivKeyMD5 = SnmpUtilities.passwordToKeyMD5(userPrivacyPassword);
-        }
-        return userPrivKeyMD5;
-    }
-
-    byte[] getPrivacyPasswordKeySHA1() {
-        if (userPrivKeySHA1 == null) {
-            userPrivKeySHA1 = SnmpUtilities.passwordToKeySHA1(userPrivacyPassword);
-        }
-        return userPrivKeySHA1;
-    }
-
-    /**
-     * Returns the privacy password key for SHA256.
-     * 
-     * @return the privacy password key for SHA256
-     */
-    byte[] getPrivacyPasswordKeySHA256() {
-        if (userPrivKeySHA256 == null) {
-            userPrivKeySHA256 = SnmpUtilities.passwordToKeySHA256(userPrivacyPassword);
-        }
-        return userPrivKeySHA256;
-    }
-
-    /**
-     * Returns the privacy password key for SHA-224.
-     *
-     * @return the privacy password key for SHA-224
-     */
-    byte[] getPrivacyPasswordKeySHA224() {
-        if (userPrivKeySHA224 == null) {
-            userPrivKeySHA224 = SnmpUtilities.passwordToKeySHA224(userPrivacyPassword);
-        }
-        return userPrivKeySHA224;
-    }
-
-    /**
-     * Returns the privacy password key for SHA-384.
-     *
-     * @return the privacy password key for SHA-384
-     */
-    byte[] getPrivacyPasswordKeySHA384() {
-        if (userPrivKeySHA384 == null) {
-            userPrivKeySHA384 = SnmpUtilities.passwordToKeySHA384(userPrivacyPassword);
-        }
-        return userPrivKeySHA384;
-    }
-
-    /**
-     * Returns the privacy password key for SHA512.
-     *
-     * @return the privacy password key for SHA512
-     */
-    byte[] getPrivacyPasswordKeySHA512() {
-        if (userPrivKeySHA512 == null) {
-            userPrivKeySHA512 = SnmpUtilities.passwordToKeySHA512(userPrivacyPassword);
-        }
-        return userPrivKeySHA512;
-    }
-
     /**
      * Returns if privacy is used or not.
      * By default privacy is not used.
@@ -486,6 +403,7 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
      */
     public void setUsePrivacy(boolean newUsePrivacy) {
         usePrivacy = newUsePrivacy;
+        usmUser = null;
     }
 
     /**
@@ -510,15 +428,40 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
                 &&
                 newUserPrivacyPassword.equals(userPrivacyPassword) == false) {
             userPrivacyPassword = newUserPrivacyPassword;
-            userPrivKeyMD5 = null;
-            userPrivKeySHA1 = null;
-            userPrivKeySHA256 = null;
-            userPrivKeySHA512 = null;
-            userPrivKeySHA224 = null;
-            userPrivKeySHA384 = null;
+            usmUser = null;
         }
     }
 
+    /**
+     * Returns the USM user described by the userName, authentication and
+     * privacy properties of this context. PDUs are sent as this user,
+     * unless they have a user of their own.
+     * The user is shared, via the UsmUserTable, with all contexts that
+     * have the same properties.
+     *
+     * @return The user of this context
+     * @exception IllegalArgumentException when the properties do not
+     *                                     describe a valid user
+     * @see Pdu#setUsmUser(UsmUser)
+     * @see UsmUserTable
+     */
+    public UsmUser getUsmUser() {
+        UsmUser user = usmUser;
+        if (user == null) {
+            if (useAuthentication == false) {
+                user = new UsmUser(userName);
+            } else if (usePrivacy == false) {
+                user = new UsmUser(userName, authenticationProtocol, userAuthenticationPassword);
+            } else {
+                user = new UsmUser(userName, authenticationProtocol, userAuthenticationPassword,
+                        privacyProtocol, userPrivacyPassword);
+            }
+            user = UsmUserTable.getCurrent().add(user);
+            usmUser = user;
+        }
+        return user;
+    }
+
     /**
      * Sets the contextEngineID.
      * See <a href="http://www.ietf.org/rfc/rfc3411.txt">RFC 3411</a>.
@@ -584,6 +527,27 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
         return contextName;
     }
 
+    /**
+     * Returns the maximum message size the agent advertised (msgMaxSize) in
+     * the last message received from it. This may be less than
+     * <code>maxRecvSize</code>.
+     *
+     * @return The size in bytes, 0 if no message was received yet
+     * @see #getMaxRecvSize()
+     */
+    public int getPeerMaxMessageSize() {
+        return peerMaxMessageSize;
+    }
+
+    /**
+     * Records the msgMaxSize of a message received from the agent.
+     *
+     * @param size The size in bytes
+     */
+    void setPeerMaxMessageSize(int size) {
+        peerMaxMessageSize = size;
+    }
+
     /**
      * Adds a discovery pdu. This method adds the PDU (without checking if
      * discovery is needed).
@@ -657,6 +621,8 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
      * request id in a Hashtable.
      * Since the encoding only happens once and every retry sends the same
      * encoded packet, only one msgId is used.
+     * When the PDU has a USM user of its own, the user is stored with the
+     * msgId as well, so the response is decoded for that user.
      * </p>
      *
      * @param pdu            the PDU
@@ -671,26 +637,39 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
         // TODO, when sending response or report, the msgId should be set!
         Integer msgId = pdu.snmpv3MsgId;
         if (msgId == null) {
-            msgId = new Integer(next_id++);
+            msgId = Integer.valueOf(next_id++);
         } else if (pdu.isExpectingResponse() == true) {
             // generate a new msgId, even if this is already set. The user
             // could be adding the same PDU more than once to the
             // context.
-            msgId = new Integer(next_id++);
+            msgId = Integer.valueOf(next_id++);
         }
         pdu.snmpv3MsgId = msgId;
 
-        msgIdHash.put(msgId, new Integer(pdu.req_id));
+        msgIdHash.put(msgId, Integer.valueOf(pdu.req_id));
+        UsmUser user = pdu.getUsmUser();
+        if (user != null) {
+            msgIdUsers.put(msgId, user);
+        }
         if (AsnObject.debug > 6) {
             System.out.println(getClass().getName() + ".addPdu(): msgId="
                     + msgId.toString() + ", Pdu reqId=" + pdu.req_id);
         }
 
-        if (checkDiscovery == true && isAuthoritative(pdu.getMsgType()) == false) {
-            discoverIfNeeded(pdu);
-        }
+        boolean added = false;
+        try {
+            if (checkDiscovery == true && isAuthoritative(pdu.getMsgType()) == false) {
+                discoverIfNeeded(pdu);
+            }
 
-        boolean added = super.addPdu(pdu);
+            added = super.addPdu(pdu);
+        } finally {
+            if (added == false) {
+                // Will never be answered
+                msgIdHash.remove(msgId);
+                msgIdUsers.remove(msgId);
+            }
+        }
         return added;
     }
 
@@ -705,37 +684,76 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
     public synchronized boolean removePdu(int rid) {
         boolean removed = super.removePdu(rid);
         if (removed) {
-            Enumeration keys = msgIdHash.keys();
+            Enumeration<Integer> keys = msgIdHash.keys();
             Integer msgIdI = null;
             boolean found = false;
             while (keys.hasMoreElements() && found == false) {
-                msgIdI = (Integer) keys.nextElement();
-                Integer pduIdI = (Integer) msgIdHash.get(msgIdI);
+                msgIdI = keys.nextElement();
+                Integer pduIdI = msgIdHash.get(msgIdI);
                 found = (pduIdI.intValue() == rid);
             }
             if (found) {
                 msgIdHash.remove(msgIdI);
+                msgIdUsers.remove(msgIdI);
             }
         }
         return removed;
     }
 
+    /**
+     * Returns the TimeWindow key of the engine the PDUs are sent to.
+     * The key is built once and reused for every message.
+     *
+     * @return The address and port of the engine
+     * @see TimeWindow#getSnmpEngineId(SnmpEngineAddress)
+     */
+    public SnmpEngineAddress getSendToEngineAddress() {
+        SnmpEngineAddress address = sendToEngineAddress;
+        if (address == null) {
+            address = new SnmpEngineAddress(getSendToHostAddress(), hostPort);
+            sendToEngineAddress = address;
+        }
+        return address;
+    }
+
+    /**
+     * Returns the TimeWindow key of the engine the latest packet was
+     * received from. This is usually the same as
+     * <code>getSendToEngineAddress()</code>, in which case that key is
+     * returned.
+     *
+     * @return The address and port of the engine
+     * @see #getSendToEngineAddress()
+     */
+    public SnmpEngineAddress getReceivedFromEngineAddress() {
+        SnmpEngineAddress address = getSendToEngineAddress();
+        String receivedFromHostAddress = getReceivedFromHostAddress();
+        if (address.matches(receivedFromHostAddress, hostPort) == false) {
+            address = new SnmpEngineAddress(receivedFromHostAddress, hostPort);
+        }
+        return address;
+    }
+
     /**
      * Encodes a discovery PDU packet. This methods encodes without checking
      * if the discovery parameters are all known.
+     * As long as the engine ID is unknown, the packet is encoded without
+     * authentication, privacy and userName, so that any context can use
+     * its own transport to discover the engine ID.
      */
     public byte[] encodeDiscoveryPacket(byte msg_type, int rId, int errstat,
             int errind, Enumeration ve, Object obj)
             throws IOException, EncodingException {
-        String engineId = "";
         TimeWindow tWindow = TimeWindow.getCurrent();
-        if (tWindow.isSnmpEngineIdKnown(getSendToHostAddress(), hostPort) == true) {
-            engineId = tWindow.getSnmpEngineId(getSendToHostAddress(), hostPort);
+        SnmpEngineId engineId = tWindow.getSnmpEngineId(getSendToEngineAddress());
+        boolean engineIdDiscovery = (engineId == null);
+        if (engineIdDiscovery) {
+            engineId = SnmpEngineId.EMPTY;
         }
         TimeWindowNode node = new TimeWindowNode(engineId, 0, 0);
 
         return actualEncodePacket(msg_type, rId, errstat, errind, ve, node,
-                obj);
+                obj, engineIdDiscovery);
     }
 
     /**
@@ -789,24 +807,26 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
                             + usmAgent.getClass().getName()
                             + " should provide Engine ID!");
                 }
-                tWindow.updateTimeWindow(usmAgent.getSnmpEngineId(),
+                SnmpEngineId agentEngineId = SnmpEngineId.fromHexString(usmAgent.getSnmpEngineId());
+                tWindow.updateTimeWindow(agentEngineId,
                         usmAgent.getSnmpEngineBoots(), usmAgent.getSnmpEngineTime(),
                         this.isUseAuthentication());
-                node = tWindow.getTimeLine(usmAgent.getSnmpEngineId());
+                node = tWindow.getTimeLine(agentEngineId);
             } else {
-                if (tWindow.isSnmpEngineIdKnown(getSendToHostAddress(), hostPort) == false) {
+                SnmpEngineId engineId = tWindow.getSnmpEngineId(getSendToEngineAddress());
+                if (engineId == null) {
                     throw new EncodingException("Engine ID of host "
                             + getSendToHostAddress()
                             + ", port " + hostPort
                             + " is unknown (rId="
                             + rId + "). Perform discovery.");
                 }
-                String engineId = tWindow.getSnmpEngineId(getSendToHostAddress(), hostPort);
                 node = new TimeWindowNode(engineId, 0, 0);
 
-                if (isUseAuthentication()) {
-                    if (tWindow.isTimeLineKnown(engineId) == true) {
-                        node = tWindow.getTimeLine(engineId);
+                if (getMsgUser(obj).isUseAuthentication()) {
+                    TimeWindowNode timeLine = tWindow.getTimeLine(engineId);
+                    if (timeLine != null) {
+                        node = timeLine;
                     } else {
                         throw new EncodingException("Time Line of Engine ID of host "
                                 + getSendToHostAddress() + ", port " + hostPort + " is unknown. "
@@ -854,11 +874,23 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
     protected byte[] actualEncodePacket(byte msg_type, int rId, int errstat,
             int errind, Enumeration ve, TimeWindowNode node, Object obj)
             throws IOException, EncodingException {
+        return actualEncodePacket(msg_type, rId, errstat, errind, ve, node,
+                obj, false);
+    }
+
+    /**
+     * Does the actual encoding, optionally as an engine ID discovery
+     * message.
+     *
+     * @see #actualEncodePacket(byte, int, int, int, Enumeration, TimeWindowNode, Object)
+     * @see AsnEncoderv3#EncodeSNMPv3(SnmpContextv3Basis, int, TimeWindowNode, byte, int, int, int, Enumeration, UsmUser, boolean)
+     */
+    byte[] actualEncodePacket(byte msg_type, int rId, int errstat,
+            int errind, Enumeration ve, TimeWindowNode node, Object obj,
+            boolean engineIdDiscovery)
+            throws IOException, EncodingException {
         AsnEncoderv3 enc = new AsnEncoderv3();
-        String msg = checkContextSanity();
-        if (msg != null) {
-            throw new EncodingException(msg);
-        }
+        UsmUser user = getMsgUser(obj);
 
         int msgId = ((Integer) obj).intValue();
         if (AsnObject.debug > 6) {
@@ -866,11 +898,31 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
                     + msgId + ", Pdu reqId=" + rId);
         }
         byte[] packet = enc.EncodeSNMPv3(this, msgId, node,
-                msg_type, rId, errstat, errind, ve);
+                msg_type, rId, errstat, errind, ve, user, engineIdDiscovery);
 
         return packet;
     }
 
+    /**
+     * Returns the USM user of the message with the given msgId: the user of
+     * its PDU, or the user of this context.
+     *
+     * @see Pdu#setUsmUser(UsmUser)
+     * @see #getUsmUser()
+     */
+    private UsmUser getMsgUser(Object msgId)
+            throws EncodingException {
+        UsmUser user = (msgId != null ? msgIdUsers.get(msgId) : null);
+        if (user == null) {
+            String msg = checkContextSanity();
+            if (msg != null) {
+                throw new EncodingException(msg);
+            }
+            user = getUsmUser();
+        }
+        return user;
+    }
+
     /**
      * Processes an incoming SNMP v3 response.
      */
@@ -888,15 +940,21 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
 
         AsnSequence asnTopSeq = rpdu.DecodeSNMPv3(in);
         int msgId = rpdu.getMessageId(asnTopSeq);
-        Integer rid = (Integer) msgIdHash.get(new Integer(msgId));
+        Integer rid = msgIdHash.get(Integer.valueOf(msgId));
         if (rid != null) {
             if (AsnObject.debug > 6) {
                 System.out.println(getClass().getName() + ".processIncomingResponse(): msgId="
                         + msgId + ", Pdu reqId=" + rid);
             }
             Pdu pdu = getPdu(rid);
+            UsmUser user = msgIdUsers.get(Integer.valueOf(msgId));
+            if (user == null) {
+                user = getUsmUser();
+            }
             try {
-                AsnPduSequence pduSeq = rpdu.processSNMPv3(this, asnTopSeq, bu, false);
+                boolean engineIdDiscovery = (pdu instanceof DiscoveryPdu);
+                AsnPduSequence pduSeq = rpdu.processSNMPv3(this, asnTopSeq, bu, false,
+                        user, engineIdDiscovery);
                 if (pduSeq != null) {
                     // got a message
                     Integer rid2 = new Integer(pduSeq.getReqId());
@@ -976,48 +1034,241 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
                 msg_type == AsnObject.GET_RPRT_MSG);
     }
 
+    /**
+     * Makes sure the engine ID and, when using authentication, the time
+     * line of the engine this context sends to are known.
+     *
+     * <p>
+     * The discovery PDUs are sent over this context's own transport.
+     * Concurrent discoveries of the same engine address are coalesced: the
+     * first caller does the discovery, the others wait for it to finish
+     * and share its outcome.
+     * </p>
+     *
+     * @param pdu the PDU that needs the discovery parameters
+     */
     void discoverIfNeeded(Pdu pdu)
             throws IOException, PduException {
-        UsmDiscoveryBean discBean = null;
-        boolean isNeeded = false;
+        discoverIfNeeded(pdu.getRetryIntervals(), pdu.getUsmUser());
+    }
+
+    /**
+     * Makes sure the engine ID and, when using authentication, the time
+     * line of the engine this context sends to are known, without sending
+     * any other PDU. This allows the discovery to be done in advance, so
+     * that the first request does not wait for it.
+     * It returns immediately when the discovery parameters are already
+     * known.
+     *
+     * @param retryIntervals The retry intervals of the discovery PDUs
+     * @exception PduException when the engine ID or time line could not
+     *                         be discovered
+     * @see Pdu#setRetryIntervals(int[])
+     * @see TimeWindow
+     */
+    public void discoverIfNeeded(int[] retryIntervals)
+            throws IOException, PduException {
+        discoverIfNeeded(retryIntervals, null);
+    }
 
+    /**
+     * Makes sure the engine ID and, when the user uses authentication, the
+     * time line of the engine this context sends to are known.
+     *
+     * @param retryIntervals The retry intervals of the discovery PDUs
+     * @param user           The user to discover the time line with, or
+     *                       null for the user of this context
+     * @see #discoverIfNeeded(int[])
+     */
+    public void discoverIfNeeded(int[] retryIntervals, UsmUser user)
+            throws IOException, PduException {
         TimeWindow tWindow = TimeWindow.getCurrent();
-        String engineId = tWindow.getSnmpEngineId(getSendToHostAddress(), hostPort);
+        SnmpEngineAddress address = getSendToEngineAddress();
+        boolean useAuthentication = (user != null ? user.isUseAuthentication() : isUseAuthentication());
+
+        if (isReceiverThread() == true) {
+            // Called from an observer of one of our own PDUs: this thread
+            // reads the responses of this context, so it can neither wait
+            // for a discovery in flight over this context nor for its own.
+            // Discover over a context of its own instead.
+            if (isDiscoveryNeeded(tWindow, address, useAuthentication)) {
+                discover(tWindow, address, retryIntervals, user, useAuthentication);
+            }
+        }
+
+        while (isDiscoveryNeeded(tWindow, address, useAuthentication)) {
+            PendingDiscovery discovery = new PendingDiscovery();
+            PendingDiscovery inFlight = pendingDiscoveries.putIfAbsent(address, discovery);
+            if (inFlight == null) {
+                Exception failure = new PduException("Discovery of " + address + " failed");
+                try {
+                    discover(tWindow, address, retryIntervals, user, useAuthentication);
+                    failure = null;
+                } catch (IOException | PduException exc) {
+                    failure = exc;
+                    throw exc;
+                } finally {
+                    // Also on a RuntimeException, or the waiters never wake up
+                    discovery.finish(failure);
+                    pendingDiscoveries.remove(address, discovery);
+                }
+            } else {
+                if (AsnObject.debug > 4) {
+                    System.out.println(getClass().getName() + ".discoverIfNeeded(): "
+                            + "waiting for discovery of " + address + " in progress");
+                }
+                // The discovery in flight may have been done by a context
+                // without authentication; if so, the loop does the time line
+                // discovery next.
+                inFlight.await(getDiscoveryTimeout(retryIntervals, useAuthentication), address);
+            }
+        }
+
+        // If contextEngineId is null or of length zero, set
+        // it to the snmpEngineId.
+        if (contextEngineId == null || contextEngineId.length == 0) {
+            SnmpEngineId engineId = tWindow.getSnmpEngineId(address);
+            if (engineId != null) {
+                setContextEngineId(engineId.getBytes());
+            }
+        }
+    }
+
+    /**
+     * Returns whether the engine ID, or when using authentication the time
+     * line, of the engine address is still unknown.
+     */
+    private boolean isDiscoveryNeeded(TimeWindow tWindow, SnmpEngineAddress address,
+            boolean useAuthentication) {
+        SnmpEngineId engineId = tWindow.getSnmpEngineId(address);
+        return (engineId == null
+                || (useAuthentication && tWindow.isTimeLineKnown(engineId) == false));
+    }
+
+    /**
+     * Does the engine ID and time line discovery as described in section 4
+     * of RFC 3414, by sending DiscoveryPdus over this context.
+     */
+    private void discover(TimeWindow tWindow, SnmpEngineAddress address, int[] retryIntervals,
+            UsmUser user, boolean useAuthentication)
+            throws IOException, PduException {
+        SnmpEngineId engineId = tWindow.getSnmpEngineId(address);
         if (engineId == null) {
-            isNeeded = true;
-            discBean = new UsmDiscoveryBean(
-                    getSendToHostAddress(), hostPort, bindAddr, typeSocket);
-            discBean.setRetryIntervals(pdu.getRetryIntervals());
+            if (AsnObject.debug > 4) {
+                System.out.println(getClass().getName() + ".discover(): "
+                        + "Starting discovery Engine ID of " + address + " ...");
+            }
+            PduException exc = sendDiscoveryPdu(retryIntervals, user);
+            engineId = tWindow.getSnmpEngineId(address);
+            if (engineId == null) {
+                throw new PduException("Engine ID discovery: "
+                        + (exc != null ? exc.getMessage() : "no engine ID received"));
+            }
         }
 
-        if (isUseAuthentication()) {
-            if (isNeeded) {
-                discBean.setAuthenticationDetails(userName,
-                        userAuthenticationPassword, authenticationProtocol);
-            } else if (tWindow.isTimeLineKnown(engineId) == false) {
-                isNeeded = true;
-                discBean = new UsmDiscoveryBean(
-                        getSendToHostAddress(), hostPort, bindAddr, typeSocket);
-                discBean.setAuthenticationDetails(userName,
-                        userAuthenticationPassword, authenticationProtocol);
-                discBean.setRetryIntervals(pdu.getRetryIntervals());
+        if (useAuthentication && tWindow.isTimeLineKnown(engineId) == false) {
+            if (AsnObject.debug > 4) {
+                System.out.println(getClass().getName() + ".discover(): "
+                        + "Starting discovery Timeline of " + address + " ...");
+            }
+            // You can get an exception for authPriv, so only throw the
+            // exception if the timeline was not discovered.
+            PduException exc = sendDiscoveryPdu(retryIntervals, user);
+            if (tWindow.isTimeLineKnown(engineId) == false) {
+                throw new PduException("Timeline discovery: "
+                        + (exc != null ? exc.getMessage() : "no time line received"));
             }
+        }
+    }
 
-            if (isNeeded && isUsePrivacy()) {
-                discBean.setPrivacyDetails(userPrivacyPassword, privacyProtocol);
+    /**
+     * Sends a DiscoveryPdu and waits for the answer.
+     * On the receiver thread of this context the DiscoveryPdu is sent over
+     * a temporary SnmpContextv3Discovery with the same parameters, since
+     * the answer could not be read otherwise.
+     *
+     * @return The exception the answer (or the lack of it) caused, or null
+     */
+    private PduException sendDiscoveryPdu(int[] retryIntervals, UsmUser user)
+            throws IOException, PduException {
+        SnmpContextv3Basis discContext = this;
+        if (isReceiverThread() == true) {
+            discContext = new SnmpContextv3Discovery(hostname, hostPort, bindAddr, typeSocket);
+            cloneParameters(discContext);
+        }
+        try {
+            DiscoveryPdu discPdu = new DiscoveryPdu(discContext);
+            discPdu.setRetryIntervals(retryIntervals);
+            discPdu.setUsmUser(user);
+            discPdu.send();
+            discPdu.waitForSelf();
+            try {
+                discPdu.getResponseVarbinds();
+            } catch (PduException exc) {
+                return exc;
+            }
+            return null;
+        } finally {
+            if (discContext != this) {
+                discContext.destroy();
             }
         }
+    }
 
-        if (isNeeded) {
-            discBean.startDiscovery();
+    /**
+     * Returns how long to wait for a discovery in progress: the time of
+     * the DiscoveryPdus it needs, with the retry intervals of the waiter.
+     */
+    private static long getDiscoveryTimeout(int[] retryIntervals, boolean useAuthentication) {
+        long timeout = 0;
+        if (retryIntervals != null) {
+            for (int interval : retryIntervals) {
+                timeout += interval;
+            }
+        }
+        if (useAuthentication) {
+            timeout *= 2;
+        }
+        return Math.max(timeout, 1);
+    }
 
+    /**
+     * A discovery in progress, that other threads can wait on.
+     */
+    private static final class PendingDiscovery {
+        private boolean done = false;
+        private Exception failure = null;
+
+        synchronized void finish(Exception exc) {
+            failure = exc;
+            done = true;
+            notifyAll();
         }
 
-        // If contextEngineId is null or of length zero, set
-        // it to the snmpEngineId.
-        if (contextEngineId == null || contextEngineId.length == 0) {
-            engineId = tWindow.getSnmpEngineId(getSendToHostAddress(), hostPort);
-            setContextEngineId(SnmpUtilities.toBytes(engineId));
+        /**
+         * Waits at most timeout milliseconds for the discovery to finish and
+         * rethrows its failure.
+         */
+        synchronized void await(long timeout, SnmpEngineAddress address)
+                throws IOException, PduException {
+            long deadline = System.nanoTime() + timeout * 1000000L;
+            while (done == false) {
+                long left = (deadline - System.nanoTime()) / 1000000L;
+                if (left <= 0) {
+                    throw new PduException("Timed out waiting for the discovery of " + address);
+                }
+                try {
+                    wait(left);
+                } catch (InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                    throw new PduException("Interrupted while waiting for discovery");
+                }
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure != null) {
+                throw (PduException) failure;
+            }
         }
     }
 
@@ -1048,8 +1299,9 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
                     + usmAgent.getClass().getName()
                     + " should provide Engine ID!");
         }
-        tWindow.setSnmpEngineId(usmAgent.MYFAKEHOSTNAME, hostPort, usmAgent.getSnmpEngineId());
-        tWindow.updateTimeWindow(usmAgent.getSnmpEngineId(),
+        SnmpEngineId agentEngineId = SnmpEngineId.fromHexString(usmAgent.getSnmpEngineId());
+        tWindow.setSnmpEngineId(new SnmpEngineAddress(usmAgent.MYFAKEHOSTNAME, hostPort), agentEngineId);
+        tWindow.updateTimeWindow(agentEngineId,
                 usmAgent.getSnmpEngineBoots(), usmAgent.getSnmpEngineTime(),
                 this.isUseAuthentication());
     }
@@ -1144,122 +1396,70 @@ public abstract class SnmpContextv3Basis extends AbstractSnmpContext
      * @param authenticationProtocol The authentication protocol.
      * @param privacyProtocol        The privacyProtocol.
      * @return The generated privacy key.
+     * @deprecated The keys are computed by {@link UsmUser}, see
+     *             {@link #getUsmUser()}
      */
-	protected byte[] generatePrivacyKey(String engineId, int authenticationProtocol, int privacyProtocol) {
-		byte[] derivedPrivacyKey;
-		byte[] localizedPrivacyKey = null;
-		switch (authenticationProtocol) {
-			case MD5_PROTOCOL:
-				if (privacyProtocol != AES_ENCRYPT && privacyProtocol != DES_ENCRYPT) {
-					throw new IllegalArgumentException(
-							"Unsupported privacy protocol for MD5: " + PROTOCOL_NAMES[privacyProtocol]);
-				}
-				derivedPrivacyKey = getPrivacyPasswordKeyMD5();
-				return SnmpUtilities.getLocalizedKeyMD5(derivedPrivacyKey, engineId);
-			case SHA1_PROTOCOL:
-				if (privacyProtocol != AES_ENCRYPT && privacyProtocol != DES_ENCRYPT) {
-					throw new IllegalArgumentException(
-							"Unsupported privacy protocol for SHA1: " + PROTOCOL_NAMES[privacyProtocol]);
-				}
-				derivedPrivacyKey = getPrivacyPasswordKeySHA1();
-				return SnmpUtilities.getLocalizedKeySHA1(derivedPrivacyKey, engineId);
-			case SHA224_PROTOCOL: {
-				if (privacyProtocol != AES_ENCRYPT && privacyProtocol != DES_ENCRYPT
-						&& privacyProtocol != AES192_ENCRYPT) {
-					throw new IllegalArgumentException(
-							"Unsupported privacy protocol for SHA224: " + PROTOCOL_NAMES[privacyProtocol]);
-				}
-				derivedPrivacyKey = getPrivacyPasswordKeySHA224();
-				return SnmpUtilities.getLocalizedKeySHA224(derivedPrivacyKey, engineId);
-			}
-			case SHA256_PROTOCOL: {
-				derivedPrivacyKey = getPrivacyPasswordKeySHA256();
-				localizedPrivacyKey = deriveKey(engineId, derivedPrivacyKey, SnmpUtilities::getLocalizedKeySHA256,
-						privacyProtocol);
-				return localizedPrivacyKey;
-			}
-			case SHA384_PROTOCOL: {
-				derivedPrivacyKey = getPrivacyPasswordKeySHA384();
-				localizedPrivacyKey = deriveKey(engineId, derivedPrivacyKey, SnmpUtilities::getLocalizedKeySHA384,
-						privacyProtocol);
-				return localizedPrivacyKey;
-			}
-			case SHA512_PROTOCOL: {
-				derivedPrivacyKey = getPrivacyPasswordKeySHA512();
-				localizedPrivacyKey = deriveKey(engineId, derivedPrivacyKey, SnmpUtilities::getLocalizedKeySHA512,
-						privacyProtocol);
-				return localizedPrivacyKey;
-			}
-			default:
-				throw new IllegalArgumentException("Unsupported authentication protocol: " + authenticationProtocol);
-			}
-	}
-    
+    @Deprecated
+    protected byte[] generatePrivacyKey(String engineId, int authenticationProtocol, int privacyProtocol) {
+        return generatePrivacyKey(SnmpEngineId.fromHexString(engineId), authenticationProtocol, privacyProtocol);
+    }
+
     /**
-     * Derives a final privacy key
+     * Generates the privacy key based on the authentication protocol.
      *
-     * @param engineId          The SNMP engine ID.
-     * @param derivedPrivacyKey The SNMP engine ID.
-     * @param localizeKey         A function that localizes the key using the derived key and engine ID.
-     * @param privacyProtocol   The privacyProtocol
-     * @return The derived privacy key.
+     * @param engineId               The SNMP engine ID.
+     * @param authenticationProtocol The authentication protocol.
+     * @param privacyProtocol        The privacyProtocol.
+     * @return The generated privacy key.
+     * @deprecated The keys are computed by {@link UsmUser}, see
+     *             {@link #getUsmUser()}
      */
-    private static byte[] deriveKey(
-    		String engineId,
-    		byte[] derivedPrivacyKey,
-    		BiFunction<byte[],
-    		String, byte[]> localizeKey,
-    		int privacyProtocol) {
-        byte[] localizedPrivacyKeyBase = localizeKey.apply(derivedPrivacyKey, engineId);
-        switch (privacyProtocol) {
-            case AES_ENCRYPT:
-            case AES192_ENCRYPT:
-            case AES256_ENCRYPT:
-            case DES_ENCRYPT:
-				return localizedPrivacyKeyBase;
-            default:
-                throw new IllegalArgumentException("Unsupported privacy protocol: " + PROTOCOL_NAMES[privacyProtocol]);
-        }
-     }
- 
+    @Deprecated
+    protected byte[] generatePrivacyKey(SnmpEngineId engineId, int authenticationProtocol, int privacyProtocol) {
+        UsmUser user = new UsmUser(userName, authenticationProtocol, userAuthenticationPassword,
+                privacyProtocol, userPrivacyPassword);
+        return UsmUserTable.getCurrent().add(user).getPrivacyKey(engineId);
+    }
 
     /**
      * Computes the fingerprint for the given SNMP message.
      *
      * @param snmpEngineId           The SNMP engine ID.
      * @param authenticationProtocol The authentication protocol.
-     * @param computedFingerprint    The computed fingerprint.
+     * @param computedFingerprint    The fingerprint returned for an unknown
+     *                               authentication protocol.
      * @param message                The SNMP message.
      * @return The computed fingerprint.
+     * @deprecated The fingerprints are computed by {@link UsmUser}, see
+     *             {@link #getUsmUser()}
      */
+    @Deprecated
     protected byte[] computeFingerprint(String snmpEngineId, int authenticationProtocol, byte[] computedFingerprint,
             byte[] message) {
-        if (authenticationProtocol == MD5_PROTOCOL) {
-            byte[] passwKey = getAuthenticationPasswordKeyMD5();
-            byte[] authkey = SnmpUtilities.getLocalizedKeyMD5(passwKey, snmpEngineId);
-            computedFingerprint = SnmpUtilities.getFingerPrintMD5(authkey, message);
-        } else if (authenticationProtocol == SHA1_PROTOCOL) {
-            byte[] passwKey = getAuthenticationPasswordKeySHA1();
-            byte[] authkey = SnmpUtilities.getLocalizedKeySHA1(passwKey, snmpEngineId);
-            computedFingerprint = SnmpUtilities.getFingerPrintSHA1(authkey, message);
-        } else if (authenticationProtocol == SHA256_PROTOCOL) {
-            byte[] passwKey = getAuthenticationPasswordKeySHA256();
-            byte[] authkey = SnmpUtilities.getLocalizedKeySHA256(passwKey, snmpEngineId);
-            computedFingerprint = SnmpUtilities.getFingerPrintSHA256(authkey, message);
-        } else if (authenticationProtocol == SHA512_PROTOCOL) {
-            byte[] passwKey = getAuthenticationPasswordKeySHA512();
-            byte[] authkey = SnmpUtilities.getLocalizedKeySHA512(passwKey, snmpEngineId);
-            computedFingerprint = SnmpUtilities.getFingerPrintSHA512(authkey, message);
-        } else if (authenticationProtocol == SHA224_PROTOCOL) {
-            byte[] passwKey = getAuthenticationPasswordKeySHA224();
-            byte[] authkey = SnmpUtilities.getLocalizedKeySHA224(passwKey, snmpEngineId);
-            computedFingerprint = SnmpUtilities.getFingerPrintSHA224(authkey, message);
-        } else if (authenticationProtocol == SHA384_PROTOCOL) {
-            byte[] passwKey = getAuthenticationPasswordKeySHA384();
-            byte[] authkey = SnmpUtilities.getLocalizedKeySHA384(passwKey, snmpEngineId);
-            computedFingerprint = SnmpUtilities.getFingerPrintSHA384(authkey, message);
+        return computeFingerprint(SnmpEngineId.fromHexString(snmpEngineId), authenticationProtocol,
+                computedFingerprint, message);
+    }
+
+    /**
+     * Computes the fingerprint for the given SNMP message.
+     *
+     * @param engineId               The SNMP engine ID.
+     * @param authenticationProtocol The authentication protocol.
+     * @param computedFingerprint    The fingerprint returned for an unknown
+     *                               authentication protocol.
+     * @param message                The SNMP message.
+     * @return The computed fingerprint.
+     * @deprecated The fingerprints are computed by {@link UsmUser}, see
+     *             {@link #getUsmUser()}
+     */
+    @Deprecated
+    protected byte[] computeFingerprint(SnmpEngineId engineId, int authenticationProtocol, byte[] computedFingerprint,
+            byte[] message) {
+        if (AUTH_PROTOCOLS.contains(authenticationProtocol) == false) {
+            return computedFingerprint;
         }
-        return computedFingerprint;
+        UsmUser user = new UsmUser(userName, authenticationProtocol, userAuthenticationPassword);
+        return UsmUserTable.getCurrent().add(user).computeFingerprint(engineId, message);
     }
 
 }
@@ -0,0 +1,119 @@
+package uk.co.westhawk.snmp.stack;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub, Westhawk
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.net.InetAddress;
+
+/**
+ * Immutable (host address, port) pair, used as key in the TimeWindow
+ * lookup table that maps an SNMP engine onto its engine ID.
+ *
+ * <p>
+ * The host address is kept in its textual IP form (as returned by
+ * <code>InetAddress.getHostAddress()</code>), since that is what the
+ * sockets report. The address can also be a symbolic name, like
+ * {@link UsmAgent#MYFAKEHOSTNAME}. The hash code is calculated only once,
+ * so a context can build its key once and reuse it for every message.
+ * </p>
+ *
+ * @see TimeWindow
+ * @see SnmpEngineId
+ */
+public final class SnmpEngineAddress {
+
+    private final String hostAddress;
+    private final int port;
+    private final int hash;
+
+    /**
+     * Constructor.
+     *
+     * @param address The address of the engine
+     * @param port    The port number of the engine
+     */
+    public SnmpEngineAddress(InetAddress address, int port) {
+        this(address.getHostAddress(), port);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param hostAddress The host address of the engine
+     * @param port        The port number of the engine
+     */
+    public SnmpEngineAddress(String hostAddress, int port) {
+        this.hostAddress = hostAddress;
+        this.port = port;
+        this.hash = 31 * (hostAddress == null ? 0 : hostAddress.hashCode()) + port;
+    }
+
+    /**
+     * Returns the host address.
+     *
+     * @return The host address
+     */
+    public String getHostAddress() {
+        return hostAddress;
+    }
+
+    /**
+     * Returns the port number.
+     *
+     * @return The port number
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns if this key is about the specified host address and port.
+     *
+     * @param hostaddr The host address
+     * @param p        The port number
+     * @return true if both match
+     */
+    public boolean matches(String hostaddr, int p) {
+        return port == p
+                && (hostAddress == null ? hostaddr == null : hostAddress.equals(hostaddr));
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof SnmpEngineAddress) {
+            SnmpEngineAddress other = (SnmpEngineAddress) obj;
+            return hash == other.hash && other.matches(hostAddress, port);
+        }
+        return false;
+    }
+
+    public String toString() {
+        return hostAddress + ":" + port;
+    }
+
+}
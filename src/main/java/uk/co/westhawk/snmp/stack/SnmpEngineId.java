@@ -0,0 +1,176 @@
+package uk.co.westhawk.snmp.stack;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub, Westhawk
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.Arrays;
+
+import uk.co.westhawk.snmp.util.SnmpUtilities;
+
+/**
+ * Immutable SNMP engine ID.
+ * It keeps the raw bytes of the engine ID as they appear in the
+ * msgAuthoritativeEngineID field, together with a cached hash code, so it
+ * can be used as key in the lookup tables without converting it to and
+ * from its hexadecimal representation on every message.
+ *
+ * <p>
+ * The hexadecimal representation (as returned by
+ * {@link UsmAgent#getSnmpEngineId()}) is only built when asked for, and
+ * then remembered.
+ * </p>
+ *
+ * @see TimeWindow
+ * @see SnmpEngineAddress
+ */
+public final class SnmpEngineId {
+
+    /**
+     * The empty engine ID, as sent in a discovery request.
+     */
+    public final static SnmpEngineId EMPTY = new SnmpEngineId(new byte[0], "");
+
+    /**
+     * The engine ID stored for a send-to address that answers from another
+     * address, as if it was discovered. It is not a real engine ID.
+     */
+    final static SnmpEngineId PLACEHOLDER = new SnmpEngineId(new byte[] { 0 }, "00");
+
+    private final byte[] value;
+    private final int hash;
+    private volatile String hexString;
+
+    /**
+     * Constructor. The bytes are copied.
+     *
+     * @param bytes The engine ID bytes
+     */
+    public SnmpEngineId(byte[] bytes) {
+        this(bytes.clone(), null);
+    }
+
+    private SnmpEngineId(byte[] bytes, String hexStr) {
+        value = bytes;
+        hash = Arrays.hashCode(bytes);
+        hexString = hexStr;
+    }
+
+    /**
+     * Returns the engine ID that takes ownership of the bytes, without
+     * copying them. The stack uses this for arrays that are not shared
+     * with anybody else, like freshly decoded ones.
+     */
+    static SnmpEngineId wrap(byte[] bytes) {
+        return new SnmpEngineId(bytes, null);
+    }
+
+    /**
+     * Returns the engine ID that belongs to the hexadecimal string.
+     *
+     * @param hexStr The engine ID as hexadecimal string, without '0x'
+     * @return The engine ID, or null when hexStr is null
+     * @see SnmpUtilities#toBytes(String)
+     */
+    public static SnmpEngineId fromHexString(String hexStr) {
+        SnmpEngineId engineId = null;
+        if (hexStr != null) {
+            engineId = new SnmpEngineId(SnmpUtilities.toBytes(hexStr), hexStr.toUpperCase());
+        }
+        return engineId;
+    }
+
+    /**
+     * Returns a copy of the engine ID bytes.
+     *
+     * @return The engine ID bytes
+     */
+    public byte[] getBytes() {
+        return value.clone();
+    }
+
+    /**
+     * Returns the engine ID bytes without copying them. The stack uses
+     * this when encoding; the array must not be modified.
+     */
+    byte[] bytes() {
+        return value;
+    }
+
+    /**
+     * Returns the number of bytes of the engine ID.
+     *
+     * @return The length
+     */
+    public int length() {
+        return value.length;
+    }
+
+    /**
+     * Returns if this engine ID is empty (of length zero).
+     *
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return value.length == 0;
+    }
+
+    /**
+     * Returns if this engine ID is an actual engine ID, i.e. not empty and
+     * not the placeholder of an address that answers from another one.
+     *
+     * @return true if the engine ID was received from an engine
+     */
+    boolean isReal() {
+        return isEmpty() == false && equals(PLACEHOLDER) == false;
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof SnmpEngineId) {
+            SnmpEngineId other = (SnmpEngineId) obj;
+            return hash == other.hash && Arrays.equals(value, other.value);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the engine ID as (upper case) hexadecimal string.
+     *
+     * @return The hexadecimal string
+     * @see SnmpUtilities#toHexString(byte[])
+     */
+    public String toString() {
+        String str = hexString;
+        if (str == null) {
+            str = SnmpUtilities.toHexString(value);
+            hexString = str;
+        }
+        return str;
+    }
+
+}
@@ -0,0 +1,248 @@
+package uk.co.westhawk.snmp.stack;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub, Westhawk
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import uk.co.westhawk.snmp.util.SnmpUtilities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * The constant parts of the SNMPv3 messages of one USM user to one
+ * engine, already encoded.
+ *
+ * <p>
+ * The header data (apart from the msgId) and the engine ID, userName and
+ * dummy fingerprint of the USM security parameters are the same for every
+ * message with the same security settings. They are encoded once, and
+ * every message only encodes the msgId, engine boots and time, the salt
+ * and the scoped PDU, before the fingerprint is computed over the result.
+ * The encoding is byte for byte the same as building the whole message out
+ * of AsnObjects.
+ * </p>
+ *
+ * <p>
+ * A template is immutable. The user keeps one per engine and replaces it
+ * when the maximum size or the flags of the messages change.
+ * </p>
+ *
+ * @see AsnEncoderv3
+ * @see UsmUser#getMessageTemplate
+ */
+final class Snmpv3MessageTemplate {
+
+    private static final byte[] VERSION = { AsnObject.ASN_INTEGER, 1, SnmpConstants.SNMP_VERSION_3 };
+
+    private final UsmUser user;
+    private final SnmpEngineId engineId;
+    private final int maxRecvSize;
+    private final byte msgFlags;
+
+    /** maxRecvSize, msgFlags and securityModel of the header data */
+    private final byte[] headerTail;
+    /** msgAuthoritativeEngineID of the USM */
+    private final byte[] engineIdPart;
+    /** msgUserName and the dummy msgAuthenticationParameters of the USM */
+    private final byte[] userPart;
+    /** the position of the fingerprint in userPart */
+    private final int fingerprintOffset;
+
+    Snmpv3MessageTemplate(UsmUser user, SnmpEngineId engineId, int maxRecvSize,
+            byte msgFlags, int securityModel)
+            throws IOException, EncodingException {
+        this.user = user;
+        this.engineId = engineId;
+        this.maxRecvSize = maxRecvSize;
+        this.msgFlags = msgFlags;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new AsnInteger(maxRecvSize).write(out, 0);
+        new AsnOctets(new byte[] { msgFlags }).write(out, 0);
+        new AsnInteger(securityModel).write(out, 0);
+        headerTail = out.toByteArray();
+
+        out = new ByteArrayOutputStream();
+        new AsnOctets(engineId.bytes()).write(out, 0);
+        engineIdPart = out.toByteArray();
+
+        out = new ByteArrayOutputStream();
+        new AsnOctets(user.getUserName()).write(out, 0);
+        byte[] fingerprint;
+        if (isUseAuthentication()) {
+            fingerprint = SnmpUtilities.initFingerprint(user.getAuthenticationProtocol());
+        } else {
+            fingerprint = new byte[0];
+        }
+        AsnOctets fingerprintOctets = new AsnOctets(fingerprint);
+        int userLength = out.size();
+        fingerprintOctets.write(out, 0);
+        fingerprintOffset = userLength + fingerprintOctets.headerLength;
+        userPart = out.toByteArray();
+    }
+
+    /**
+     * Returns whether this template was built for the same maximum size
+     * and flags.
+     */
+    boolean matches(int otherMaxRecvSize, byte otherMsgFlags) {
+        return msgFlags == otherMsgFlags
+                && maxRecvSize == otherMaxRecvSize;
+    }
+
+    boolean isUseAuthentication() {
+        return (msgFlags & 0x01) != 0;
+    }
+
+    /**
+     * Encodes a message and, when using authentication, fills in its
+     * fingerprint.
+     *
+     * @param msgId     The message ID
+     * @param boots     The engine boots
+     * @param time      The engine time
+     * @param salt      The msgPrivacyParameters
+     * @param scopedPdu The encoded scoped PDU, either plain or encrypted
+     * @return The encoded message
+     */
+    byte[] encode(int msgId, int boots, int time,
+            byte[] salt, byte[] scopedPdu) throws EncodingException {
+        int headerContents = integerSize(msgId) + headerTail.length;
+        int usmContents = engineIdPart.length + integerSize(boots) + integerSize(time)
+                + userPart.length + tlvSize(salt.length);
+        int usmSequence = tlvSize(usmContents);
+        int messageContents = VERSION.length + tlvSize(headerContents)
+                + tlvSize(usmSequence) + scopedPdu.length;
+        int sz = tlvSize(messageContents);
+        if (sz > maxRecvSize) {
+            throw new EncodingException(
+                    "Packet size (" + sz + ") is > maximum size (" + maxRecvSize + ")");
+        }
+
+        byte[] message = new byte[sz];
+        int pos = putHeader(message, 0, AsnObject.CONS_SEQ, messageContents);
+        pos = put(message, pos, VERSION);
+
+        pos = putHeader(message, pos, AsnObject.CONS_SEQ, headerContents);
+        pos = putInteger(message, pos, msgId);
+        pos = put(message, pos, headerTail);
+
+        pos = putHeader(message, pos, AsnObject.ASN_OCTET_STR, usmSequence);
+        pos = putHeader(message, pos, AsnObject.CONS_SEQ, usmContents);
+        pos = put(message, pos, engineIdPart);
+        pos = putInteger(message, pos, boots);
+        pos = putInteger(message, pos, time);
+        int fpPos = pos + fingerprintOffset;
+        pos = put(message, pos, userPart);
+        pos = putHeader(message, pos, AsnObject.ASN_OCTET_STR, salt.length);
+        pos = put(message, pos, salt);
+
+        put(message, pos, scopedPdu);
+
+        // can only do this at after building the whole message
+        if (isUseAuthentication()) {
+            byte[] computedFingerprint = user.computeFingerprint(engineId, message);
+            if (AsnObject.debug > 10) {
+                String str = "Pos finger print = " + fpPos;
+                SnmpUtilities.dumpBytes(str, computedFingerprint);
+            }
+            SnmpUtilities.copyFingerprintToSnmpMessage(user.getAuthenticationProtocol(), computedFingerprint,
+                    message, fpPos);
+        }
+        return message;
+    }
+
+    /**
+     * Returns the size of a TLV with contents of the given length, in the
+     * same way as AsnObject.AsnBuildHeader() encodes it.
+     */
+    static int tlvSize(int length) {
+        return 1 + lengthSize(length) + length;
+    }
+
+    private static int lengthSize(int length) {
+        if (length < 0x80) {
+            return 1;
+        }
+        int count = 4;
+        for (int mask = 0xFF000000; (length & mask) == 0; mask >>>= 8) {
+            count--;
+        }
+        return count + 1;
+    }
+
+    /**
+     * Writes the type and length of a TLV and returns the next position.
+     */
+    static int putHeader(byte[] buffer, int pos, byte type, int length) {
+        buffer[pos++] = type;
+        int count = lengthSize(length);
+        if (count > 1) {
+            --count;
+            buffer[pos++] = (byte) (0x80 | count);
+        }
+        while (count != 0) {
+            buffer[pos++] = (byte) ((length >> (--count << 3)) & 0xFF);
+        }
+        return pos;
+    }
+
+    private static int put(byte[] buffer, int pos, byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+        return pos + bytes.length;
+    }
+
+    /**
+     * Returns the number of contents bytes of an integer, the same way as
+     * AsnInteger does.
+     */
+    private static int integerLength(int value) {
+        int count, empty = 0x00, sign = 0x00;
+        if (value < 0) {
+            empty = 0xFF;
+            sign = 0x80;
+        }
+        for (count = 24; count > 0; count -= 8) {
+            if (((value >> count) & 0xFF) != empty) {
+                break;
+            }
+        }
+        if (((value >> count) & 0x80) != sign) {
+            count += 8;
+        }
+        return (count >> 3) + 1;
+    }
+
+    private static int integerSize(int value) {
+        return 2 + integerLength(value);
+    }
+
+    private static int putInteger(byte[] buffer, int pos, int value) {
+        int length = integerLength(value);
+        buffer[pos++] = AsnObject.ASN_INTEGER;
+        buffer[pos++] = (byte) length;
+        for (int shift = (length - 1) << 3; shift >= 0; shift -= 8) {
+            buffer[pos++] = (byte) ((value >> shift) & 0xFF);
+        }
+        return pos;
+    }
+}
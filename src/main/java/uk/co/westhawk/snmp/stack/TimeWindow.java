@@ -46,7 +46,11 @@ package uk.co.westhawk.snmp.stack;
  * <http://www.gnu.org/licenses/lgpl-3.0.html>.
  * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
  */
-import java.util.*;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * TimeWindow contains the lookup tables for the engine Id information.
@@ -65,6 +69,17 @@ import java.util.*;
  * This class contains two lookup tables. One that maps the
  * host address+port onto the SNMP engine ID and one that keeps the SNMP
  * engine ID with the timeline details about this engine.
+ * The tables are keyed on {@link SnmpEngineAddress} and {@link SnmpEngineId}
+ * objects, so no key strings or hexadecimal conversions are needed per
+ * message. The methods that take strings are kept for existing users
+ * of this class.
+ * Both tables are concurrent maps, so lookups from the encoding and
+ * decoding threads do not block each other.
+ * </p>
+ *
+ * <p>
+ * The estimated engine time is calculated by the nodes on demand, so a
+ * lookup costs the same, no matter how many engines are known.
  * </p>
  *
  * @see #getCurrent()
@@ -80,25 +95,28 @@ public class TimeWindow {
      */
     public final static int MaxTimeDifference = 150;
 
-    private static TimeWindow current = null;
+    private static volatile TimeWindow current = null;
 
     // lookup table hostaddr:port -> engine id
-    private Hashtable hostLookup;
+    private Map<SnmpEngineAddress, SnmpEngineId> hostLookup;
 
     // lookup table engine id -> TimeWindowNode
-    private Hashtable engineLookup;
+    private Map<SnmpEngineId, TimeWindowNode> engineLookup;
 
-    private long startTime;
+    // host addresses whose engine id was restored and not yet confirmed
+    private Set<SnmpEngineAddress> restoredHosts;
 
     /**
      * Constructor.
      */
     public TimeWindow() {
-        if (current == null) {
-            current = this;
-
-            hostLookup = new Hashtable(5);
-            engineLookup = new Hashtable(5);
+        synchronized (TimeWindow.class) {
+            if (current == null) {
+                hostLookup = new ConcurrentHashMap<SnmpEngineAddress, SnmpEngineId>();
+                engineLookup = new ConcurrentHashMap<SnmpEngineId, TimeWindowNode>();
+                restoredHosts = Collections.newSetFromMap(new ConcurrentHashMap<SnmpEngineAddress, Boolean>());
+                current = this;
+            }
         }
     }
 
@@ -129,11 +147,22 @@ public class TimeWindow {
      * @param port     The port number of the engine ID
      * @return the snmp engine ID
      * @see #isSnmpEngineIdKnown(String, int)
+     * @see #getSnmpEngineId(SnmpEngineAddress)
      */
     public String getSnmpEngineId(String hostaddr, int port) {
-        String key = getKey(hostaddr, port);
-        String snmpEngineId = (String) hostLookup.get(key);
-        return snmpEngineId;
+        SnmpEngineId snmpEngineId = getSnmpEngineId(getAddressKey(hostaddr, port));
+        return (snmpEngineId == null) ? null : snmpEngineId.toString();
+    }
+
+    /**
+     * Returns the snmp engine ID of the engine at the specified address.
+     * If it the engine ID is not known, null will be returned.
+     *
+     * @param address The address and port of the engine
+     * @return the snmp engine ID
+     */
+    public SnmpEngineId getSnmpEngineId(SnmpEngineAddress address) {
+        return hostLookup.get(address);
     }
 
     /**
@@ -150,8 +179,19 @@ public class TimeWindow {
      * @return whether the snmp engine ID is known
      */
     public boolean isSnmpEngineIdKnown(String hostaddr, int port) {
-        String key = getKey(hostaddr, port);
-        return hostLookup.containsKey(key);
+        return isSnmpEngineIdKnown(getAddressKey(hostaddr, port));
+    }
+
+    /**
+     * Returns if the snmp engine ID of the engine at the specified address
+     * is known.
+     *
+     * @param address The address and port of the engine
+     * @return whether the snmp engine ID is known
+     * @see #isSnmpEngineIdKnown(String, int)
+     */
+    public boolean isSnmpEngineIdKnown(SnmpEngineAddress address) {
+        return hostLookup.containsKey(address);
     }
 
     /**
@@ -163,15 +203,24 @@ public class TimeWindow {
      * @param snmpEngineId The engine ID
      */
     public void setSnmpEngineId(String hostaddr, int port, String snmpEngineId) {
-        String key = getKey(hostaddr, port);
+        setSnmpEngineId(getAddressKey(hostaddr, port), SnmpEngineId.fromHexString(snmpEngineId));
+    }
+
+    /**
+     * Sets the SNMP engine ID that belongs to the specified address.
+     * The old SNMP engine ID (if any) will be overwritten.
+     *
+     * @param address      The address and port of the engine
+     * @param snmpEngineId The engine ID
+     */
+    public void setSnmpEngineId(SnmpEngineAddress address, SnmpEngineId snmpEngineId) {
         if (AsnObject.debug > 4) {
             System.out.println();
-            System.out.println(getClass().getName() + ".setSnmpEngineId(): hostaddr '"
-                    + hostaddr + "', port '" + port
-                    + "', snmpEngineId '" + snmpEngineId
-                    + "', key '" + key + "'");
+            System.out.println(getClass().getName() + ".setSnmpEngineId(): address '"
+                    + address
+                    + "', snmpEngineId '" + snmpEngineId + "'");
         }
-        hostLookup.put(key, snmpEngineId);
+        hostLookup.put(address, snmpEngineId);
     }
 
     /**
@@ -192,21 +241,41 @@ public class TimeWindow {
      * @see #setSnmpEngineId(String, int, String)
      */
     public boolean isEngineIdOK(String hostaddr, int port, String snmpEngineId) {
+        return isEngineIdOK(getAddressKey(hostaddr, port), SnmpEngineId.fromHexString(snmpEngineId));
+    }
+
+    /**
+     * Checks if the engine ID is OK. If there is no engine ID known for
+     * this address, the specified engine ID is added to the table.
+     *
+     * <p>
+     * If the known engine ID was restored from a snapshot and not yet
+     * confirmed, a different engine ID replaces it, since the agent may
+     * have been replaced or reconfigured in the meantime.
+     * </p>
+     *
+     * @param address      The address and port of the engine
+     * @param snmpEngineId The engine ID
+     * @return whether the engine ID matches the stored engine ID
+     * @see #isEngineIdOK(String, int, String)
+     */
+    public boolean isEngineIdOK(SnmpEngineAddress address, SnmpEngineId snmpEngineId) {
         boolean ok = true;
-        String key = getKey(hostaddr, port);
-        if (hostLookup.containsKey(key) == false) {
-            setSnmpEngineId(hostaddr, port, snmpEngineId);
-        } else {
-            String myEngineId = getSnmpEngineId(hostaddr, port);
-            if (myEngineId.equalsIgnoreCase(snmpEngineId) == false) {
+        SnmpEngineId myEngineId = hostLookup.putIfAbsent(address, snmpEngineId);
+        if (myEngineId != null && myEngineId.equals(snmpEngineId) == false) {
+            if (restoredHosts.remove(address)) {
+                hostLookup.put(address, snmpEngineId);
+            } else {
                 ok = false;
             }
+        } else if (restoredHosts.isEmpty() == false) {
+            restoredHosts.remove(address);
         }
 
         if (AsnObject.debug > 4) {
             System.out.println();
-            System.out.println(getClass().getName() + ".isEngineIdOK(): hostaddr '"
-                    + hostaddr + "', port '" + port
+            System.out.println(getClass().getName() + ".isEngineIdOK(): address '"
+                    + address
                     + "', snmpEngineId '" + snmpEngineId
                     + "', ok " + ok);
         }
@@ -220,7 +289,17 @@ public class TimeWindow {
      * @return whether the timeline details are known
      */
     public boolean isTimeLineKnown(String snmpEngineId) {
-        return engineLookup.containsKey(snmpEngineId);
+        return isTimeLineKnown(SnmpEngineId.fromHexString(snmpEngineId));
+    }
+
+    /**
+     * Returns if the timeline details of this snmp engine ID are known.
+     *
+     * @param snmpEngineId The engine ID
+     * @return whether the timeline details are known
+     */
+    public boolean isTimeLineKnown(SnmpEngineId snmpEngineId) {
+        return snmpEngineId != null && engineLookup.containsKey(snmpEngineId);
     }
 
     /**
@@ -238,12 +317,28 @@ public class TimeWindow {
      */
     public boolean isOutsideTimeWindow(String snmpEngineId, int bootsA,
             int timeA) {
+        return isOutsideTimeWindow(SnmpEngineId.fromHexString(snmpEngineId), bootsA, timeA);
+    }
+
+    /**
+     * Returns if the time details are outside the time window.
+     *
+     * @param snmpEngineId The SNMP engine ID
+     * @param bootsA       The SNMP engine boots
+     * @param timeA        The SNMP engine time
+     * @return true if outside, false if inside time window or when no
+     *         details can be found
+     * @see #isOutsideTimeWindow(String, int, int)
+     */
+    public boolean isOutsideTimeWindow(SnmpEngineId snmpEngineId, int bootsA,
+            int timeA) {
         boolean isOut = false;
 
         TimeWindowNode node = getTimeLine(snmpEngineId);
-        if (node != null) {
-            int bootsL = node.getSnmpEngineBoots();
-            int timeL = node.getSnmpEngineTime();
+        TimeWindowNode.Timeline timeline = (node != null) ? node.getTimeline() : null;
+        if (timeline != null && timeline.isRestored() == false) {
+            int bootsL = timeline.getSnmpEngineBoots();
+            int timeL = timeline.getSnmpEngineTime();
             if (bootsA == TimeWindowNode.maxTime
                     ||
                     bootsA < bootsL
@@ -252,7 +347,8 @@ public class TimeWindow {
                 isOut = true;
             }
         } else {
-            // We don't have any info, so by definition it is not out.
+            // We don't have any (confirmed) info, so by definition it is
+            // not out.
             isOut = false;
         }
         return isOut;
@@ -278,23 +374,26 @@ public class TimeWindow {
      * @see #isOutsideTimeWindow(String, int, int)
      */
     public boolean updateTimeWindow(String snmpEngineId, int bootsA, int timeA, boolean isAuthentic) {
+        return updateTimeWindow(SnmpEngineId.fromHexString(snmpEngineId), bootsA, timeA, isAuthentic);
+    }
+
+    /**
+     * Tries to update the time window and returns if succeeded.
+     *
+     * @param snmpEngineId The SNMP engine ID
+     * @param bootsA       The SNMP engine boots
+     * @param timeA        The SNMP engine time
+     * @return true if update succeeded, or false when not succeeded or when
+     *         no details could be found.
+     * @see #updateTimeWindow(String, int, int, boolean)
+     */
+    public boolean updateTimeWindow(SnmpEngineId snmpEngineId, int bootsA, int timeA, boolean isAuthentic) {
         boolean updated = false;
 
         TimeWindowNode node = getTimeLine(snmpEngineId);
         if (node != null) {
             if (isAuthentic) {
-                int bootsL = node.getSnmpEngineBoots();
-                int latestL = node.getLatestReceivedEngineTime();
-
-                if (bootsA > bootsL
-                        ||
-                        (bootsA == bootsL && timeA > latestL)) {
-                    synchronized (this) {
-                        node.setSnmpEngineBoots(bootsA);
-                        node.setSnmpEngineTime(timeA);
-                        updated = true;
-                    }
-                }
+                updated = node.updateIfNewer(bootsA, timeA);
             }
         } else if (bootsA > 0 || timeA > 0) {
             // @since 5_2, initially it didn't save when bootsA equals zero
@@ -328,55 +427,75 @@ public class TimeWindow {
      * @since 5_2
      */
     public void clearTimeWindow(String snmpEngineId) {
-        if (engineLookup.containsKey(snmpEngineId)) {
-            // Remove from engine lookup table
-            engineLookup.remove(snmpEngineId);
+        clearTimeWindow(SnmpEngineId.fromHexString(snmpEngineId));
+    }
 
+    /**
+     * Clear all timing information for the given engine ID, and the keys
+     * the users of the UsmUserTable localized to it.
+     *
+     * @param snmpEngineId The engine to clear
+     * @see #clearTimeWindow(String)
+     * @see UsmUserTable#clearEngine(SnmpEngineId)
+     */
+    public void clearTimeWindow(SnmpEngineId snmpEngineId) {
+        if (snmpEngineId == null) {
+            return;
+        }
+        UsmUserTable.getCurrent().clearEngine(snmpEngineId);
+        if (engineLookup.remove(snmpEngineId) != null) {
             // Remove any entries in the hostLookup table that point to
             // this snmpEngineId
-            Vector v = new Vector();
-            Iterator i = hostLookup.keySet().iterator();
+            Iterator<Map.Entry<SnmpEngineAddress, SnmpEngineId>> i = hostLookup.entrySet().iterator();
             while (i.hasNext()) {
-                String key = (String) (i.next());
-                if ((hostLookup.get(key)).equals(snmpEngineId)) {
-                    v.add(key);
+                Map.Entry<SnmpEngineAddress, SnmpEngineId> entry = i.next();
+                if (entry.getValue().equals(snmpEngineId)) {
+                    restoredHosts.remove(entry.getKey());
+                    i.remove();
                 }
             }
-            i = v.iterator();
-            while (i.hasNext()) {
-                hostLookup.remove(i.next());
-            }
         }
     }
 
     /**
-     * Updates the estimated engine time of all gathered time details.
-     * It calculates the seconds that passed since the last call and
-     * updates all time window nodes accordingly.
+     * Restores the details of one engine, as saved in a snapshot.
+     * Nothing is overwritten; details that are already known take
+     * precedence. The restored details are trusted until the engine
+     * answers: a different engine ID or timeline received then replaces
+     * them.
      *
-     * @see #setTimeLine(String, TimeWindowNode)
-     * @see #getTimeLine(String)
+     * @param address      The address and port of the engine
+     * @param snmpEngineId The engine ID
+     * @param boots        The engine boots
+     * @param time         The estimated engine time, or -1 when the
+     *                     timeline was not known
+     * @return true if anything was restored
+     * @see TimeWindowStore#load()
      */
-    protected void updateTimeWindows() {
-        if (engineLookup.size() > 0) {
-            long now = System.currentTimeMillis();
-            long milli = now - startTime;
-            int sec = (int) (milli / 1000L);
-
-            long lostMillis = milli - (sec * 1000L);
-            if (lostMillis < 0L) {
-                lostMillis = 0L;
-            }
-            startTime = now - lostMillis;
-
-            Enumeration nodes = engineLookup.elements();
-            while (nodes.hasMoreElements()) {
-                TimeWindowNode node = (TimeWindowNode) nodes.nextElement();
-                node.incrementSnmpEngineTime(sec);
+    boolean restore(SnmpEngineAddress address, SnmpEngineId snmpEngineId, int boots, int time) {
+        boolean restored = false;
+        if (hostLookup.putIfAbsent(address, snmpEngineId) == null) {
+            restoredHosts.add(address);
+            restored = true;
+        }
+        if (time >= 0 && engineLookup.containsKey(snmpEngineId) == false) {
+            TimeWindowNode node = new TimeWindowNode(snmpEngineId, boots, time);
+            node.setRestored(true);
+            if (engineLookup.putIfAbsent(snmpEngineId, node) == null) {
+                restored = true;
             }
-        } else {
-            startTime = System.currentTimeMillis();
         }
+        return restored;
+    }
+
+    /**
+     * Returns the entries of the host address to engine ID lookup table.
+     * The iterator is weakly consistent.
+     *
+     * @see TimeWindowStore#save()
+     */
+    Iterator<Map.Entry<SnmpEngineAddress, SnmpEngineId>> hostEntries() {
+        return hostLookup.entrySet().iterator();
     }
 
     /**
@@ -387,40 +506,89 @@ public class TimeWindow {
      * @param port     The port
      * @return the key
      */
+    protected SnmpEngineAddress getAddressKey(String hostaddr, int port) {
+        return new SnmpEngineAddress(hostaddr, port);
+    }
+
+    /**
+     * Returns the key the engine ID lookup table used to be indexed with,
+     * based on the specified host address and port.
+     *
+     * @param hostaddr The host address
+     * @param port     The port
+     * @return the key
+     * @deprecated The table is indexed with {@link SnmpEngineAddress}, see
+     *             {@link #getAddressKey(String, int)}
+     */
+    @Deprecated
     protected String getKey(String hostaddr, int port) {
         return hostaddr + ":" + port;
     }
 
+    /**
+     * Used to update the estimated engine time of all gathered time
+     * details. The nodes now estimate their engine time whenever it is
+     * asked for, so there is nothing left to update.
+     *
+     * @deprecated Not needed anymore, does nothing
+     */
+    @Deprecated
+    protected void updateTimeWindows() {
+    }
+
     /**
      * Returns the timeline details of the snmp engine ID.
      * If there are no matching timeline details for this engine ID, null
      * will be returned.
-     * The timeline details will be updated before the node is retrieved
-     * from the table.
+     * The node estimates the current engine time itself, so no other
+     * node is touched by this lookup.
      *
      * @param snmpEngineId The engine ID
      * @return The timeline details
-     * @see #updateTimeWindows()
      */
-    protected TimeWindowNode getTimeLine(String snmpEngineId) {
-        updateTimeWindows();
-        TimeWindowNode node = (TimeWindowNode) engineLookup.get(snmpEngineId);
+    protected TimeWindowNode getTimeLine(SnmpEngineId snmpEngineId) {
+        TimeWindowNode node = null;
+        if (snmpEngineId != null) {
+            node = engineLookup.get(snmpEngineId);
+        }
         return node;
     }
 
+    /**
+     * Returns the timeline details of the snmp engine ID.
+     *
+     * @param snmpEngineId The engine ID, as a hexadecimal string
+     * @return The timeline details
+     * @deprecated Use {@link #getTimeLine(SnmpEngineId)}
+     */
+    @Deprecated
+    protected TimeWindowNode getTimeLine(String snmpEngineId) {
+        return snmpEngineId == null ? null : getTimeLine(SnmpEngineId.fromHexString(snmpEngineId));
+    }
+
     /**
      * Sets the timeline details of the snmp engine ID.
-     * The timeline details will be updated before the node is put
-     * in the table.
      *
-     * @param snmpEngineId The engine ID
+     * @param snmpEngineId The engine ID, as a hexadecimal string
      * @param newNode      The added time window node node
      * @return The timeline details
-     * @see #updateTimeWindows()
+     * @deprecated Use {@link #setTimeLine(SnmpEngineId, TimeWindowNode)}
      */
+    @Deprecated
     protected TimeWindowNode setTimeLine(String snmpEngineId,
             TimeWindowNode newNode) {
-        updateTimeWindows();
+        return setTimeLine(SnmpEngineId.fromHexString(snmpEngineId), newNode);
+    }
+
+    /**
+     * Sets the timeline details of the snmp engine ID.
+     *
+     * @param snmpEngineId The engine ID
+     * @param newNode      The added time window node node
+     * @return The timeline details
+     */
+    protected TimeWindowNode setTimeLine(SnmpEngineId snmpEngineId,
+            TimeWindowNode newNode) {
         engineLookup.put(snmpEngineId, newNode);
         if (AsnObject.debug > 4) {
             System.out.println();
@@ -440,11 +608,12 @@ public class TimeWindow {
         StringBuffer buffer = new StringBuffer(this.getClass().getName());
         buffer.append("[");
 
-        Enumeration enum1 = hostLookup.keys();
-        while (enum1.hasMoreElements()) {
-            String key = (String) enum1.nextElement();
-            String snmpEngineId = (String) hostLookup.get(key);
-            TimeWindowNode node = (TimeWindowNode) engineLookup.get(snmpEngineId);
+        Iterator<Map.Entry<SnmpEngineAddress, SnmpEngineId>> entries = hostLookup.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<SnmpEngineAddress, SnmpEngineId> entry = entries.next();
+            SnmpEngineAddress key = entry.getKey();
+            SnmpEngineId snmpEngineId = entry.getValue();
+            TimeWindowNode node = engineLookup.get(snmpEngineId);
             buffer.append("\n\t(");
             if (node == null) {
                 buffer.append("key=").append(key);
@@ -52,6 +52,13 @@ package uk.co.westhawk.snmp.stack;
  * This entry has to be filled in via Discovery. 
  * The node will serve as entry in a lookup table.
  *
+ * <p>
+ * The node remembers the boots and time last received from the engine,
+ * together with the (monotonic) local moment they were received. The
+ * estimated engine time is calculated from that reference whenever it is
+ * asked for, so the node never has to be advanced by a clock.
+ * </p>
+ *
  * @author <a href="mailto:snmp@westhawk.co.uk">Birgit Arkesteijn</a>
  * @version $Revision: 3.10 $ $Date: 2006/01/17 17:43:54 $
  */
@@ -60,18 +67,83 @@ class TimeWindowNode {
 
     public final static int maxTime = 2147483647; // 2^31 -1
 
-    private String snmpEngineId;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private SnmpEngineId snmpEngineId;
 
-    private int snmpEngineBoots = 0;
-    private int snmpEngineTime = 0;
-    private int latestReceivedEngineTime = 0;
+    private volatile Timeline timeline;
+
+    /**
+     * The boots and time last received from the engine, with the local
+     * moment they were received, published together so that readers never
+     * see a mix of old and new values.
+     */
+    static final class Timeline {
+        private final int snmpEngineBoots;
+        private final int snmpEngineTime;
+        private final int latestReceivedEngineTime;
+        private final long referenceNanos;
+        private final boolean restored;
+
+        private Timeline(int boots, int time, int latestReceived, long reference, boolean isRestored) {
+            snmpEngineBoots = boots;
+            snmpEngineTime = time;
+            latestReceivedEngineTime = latestReceived;
+            referenceNanos = reference;
+            restored = isRestored;
+        }
+
+        /**
+         * Returns the (estimated) SNMP engine boots. This is the received
+         * boots, plus the number of times the estimated engine time went
+         * past <code>maxTime</code> since.
+         *
+         * @return The SNMP engine boots
+         */
+        int getSnmpEngineBoots() {
+            long time = getEstimatedEngineTime();
+            int boots = snmpEngineBoots;
+            if (time > maxTime) {
+                boots += (int) (time / maxTime);
+            }
+            return boots;
+        }
+
+        /**
+         * Returns the (estimated) SNMP engine time, i.e. the latest received
+         * engine time plus the seconds that passed locally since it was
+         * received.
+         *
+         * @return The SNMP engine time
+         */
+        int getSnmpEngineTime() {
+            long time = getEstimatedEngineTime();
+            if (time > maxTime) {
+                time = time % maxTime;
+            }
+            return (int) time;
+        }
+
+        int getLatestReceivedEngineTime() {
+            return latestReceivedEngineTime;
+        }
+
+        boolean isRestored() {
+            return restored;
+        }
+
+        private long getEstimatedEngineTime() {
+            long elapsed = (System.nanoTime() - referenceNanos) / NANOS_PER_SECOND;
+            return snmpEngineTime + elapsed;
+        }
+    }
 
     /**
      * Constructor.
      *
      * @param engId The engine ID
      */
-    public TimeWindowNode(String engId) {
+    public TimeWindowNode(SnmpEngineId engId) {
         this(engId, 0, 0);
     }
 
@@ -82,11 +154,9 @@ class TimeWindowNode {
      * @param boots The engine boots
      * @param time  The engine time
      */
-    public TimeWindowNode(String engId, int boots, int time) {
+    public TimeWindowNode(SnmpEngineId engId, int boots, int time) {
         snmpEngineId = engId;
-        snmpEngineBoots = boots;
-        snmpEngineTime = time;
-        latestReceivedEngineTime = time;
+        timeline = new Timeline(boots, time, time, System.nanoTime(), false);
     }
 
     /**
@@ -94,58 +164,106 @@ class TimeWindowNode {
      *
      * @return the snmp engine ID
      */
-    public String getSnmpEngineId() {
+    public SnmpEngineId getSnmpEngineId() {
         return snmpEngineId;
     }
 
+    /**
+     * Returns the boots and time of the engine, as one consistent snapshot.
+     * Callers that need both should use this rather than
+     * {@link #getSnmpEngineBoots()} and {@link #getSnmpEngineTime()}.
+     *
+     * @return The timeline
+     */
+    Timeline getTimeline() {
+        return timeline;
+    }
+
     /**
      * Sets the SNMP engine boots
      *
      * @param newSnmpEngineBoots The SNMP engine boots
      */
-    public void setSnmpEngineBoots(int newSnmpEngineBoots) {
-        snmpEngineBoots = newSnmpEngineBoots;
+    public synchronized void setSnmpEngineBoots(int newSnmpEngineBoots) {
+        Timeline current = timeline;
+        timeline = new Timeline(newSnmpEngineBoots, current.snmpEngineTime,
+                current.latestReceivedEngineTime, current.referenceNanos, current.restored);
     }
 
     /**
-     * Returns the SNMP engine boots
+     * Returns the (estimated) SNMP engine boots. This is the received
+     * boots, plus the number of times the estimated engine time went past
+     * <code>maxTime</code> since.
      *
      * @return The SNMP engine boots
      */
     public int getSnmpEngineBoots() {
-        return snmpEngineBoots;
+        return timeline.getSnmpEngineBoots();
     }
 
     /**
      * Sets the SNMP engine time. It also sets the latest received engine
-     * time.
+     * time and restarts the local reference clock.
      *
      * @param newSnmpEngineTime The SNMP engine time
      */
-    public void setSnmpEngineTime(int newSnmpEngineTime) {
-        snmpEngineTime = newSnmpEngineTime;
-        latestReceivedEngineTime = newSnmpEngineTime;
+    public synchronized void setSnmpEngineTime(int newSnmpEngineTime) {
+        Timeline current = timeline;
+        timeline = new Timeline(current.snmpEngineBoots, newSnmpEngineTime, newSnmpEngineTime,
+                System.nanoTime(), current.restored);
+    }
+
+    /**
+     * Sets the SNMP engine boots and time received from the engine, at once,
+     * if they are newer than the latest received ones, or if the node was
+     * restored. The node is then no longer restored.
+     *
+     * @param boots The SNMP engine boots
+     * @param time  The SNMP engine time
+     * @return true if updated
+     */
+    synchronized boolean updateIfNewer(int boots, int time) {
+        Timeline current = timeline;
+        if (current.restored
+                || boots > current.snmpEngineBoots
+                || (boots == current.snmpEngineBoots && time > current.latestReceivedEngineTime)) {
+            timeline = new Timeline(boots, time, time, System.nanoTime(), false);
+            return true;
+        }
+        return false;
     }
 
     /**
-     * Returns the (estimated) SNMP engine time
+     * Returns the (estimated) SNMP engine time, i.e. the latest received
+     * engine time plus the seconds that passed locally since it was
+     * received.
      *
      * @return The SNMP engine time
      */
     public int getSnmpEngineTime() {
-        return snmpEngineTime;
+        return timeline.getSnmpEngineTime();
     }
 
     /**
-     * Increments the engine time. This mechanisme maintains the loosely
-     * time synchronisation.
+     * Returns if this node was restored from a saved snapshot and has not
+     * yet been confirmed by an authentic message from the engine.
+     *
+     * @return true if restored and not confirmed
+     * @see TimeWindowStore
      */
-    public synchronized void incrementSnmpEngineTime(int incr) {
-        snmpEngineTime += incr;
-        if (snmpEngineTime > maxTime) {
-            snmpEngineBoots++;
-            snmpEngineTime -= maxTime;
-        }
+    public boolean isRestored() {
+        return timeline.restored;
+    }
+
+    /**
+     * Sets if this node was restored from a saved snapshot.
+     *
+     * @param newRestored Whether the node is restored
+     */
+    public synchronized void setRestored(boolean newRestored) {
+        Timeline current = timeline;
+        timeline = new Timeline(current.snmpEngineBoots, current.snmpEngineTime,
+                current.latestReceivedEngineTime, current.referenceNanos, newRestored);
     }
 
     /**
@@ -154,7 +272,7 @@ class TimeWindowNode {
      * @return The latest received engine time
      */
     public int getLatestReceivedEngineTime() {
-        return latestReceivedEngineTime;
+        return timeline.latestReceivedEngineTime;
     }
 
     /**
@@ -165,10 +283,14 @@ class TimeWindowNode {
     public String toString() {
         StringBuffer buffer = new StringBuffer(this.getClass().getName());
         buffer.append("[");
+        Timeline current = timeline;
         buffer.append("engineId=").append(snmpEngineId);
-        buffer.append(", engineBoots=").append(snmpEngineBoots);
-        buffer.append(", engineTime=").append(snmpEngineTime);
-        buffer.append(", latestReceivedEngineTime=").append(latestReceivedEngineTime);
+        buffer.append(", engineBoots=").append(current.getSnmpEngineBoots());
+        buffer.append(", engineTime=").append(current.getSnmpEngineTime());
+        buffer.append(", latestReceivedEngineTime=").append(current.latestReceivedEngineTime);
+        if (current.restored) {
+            buffer.append(", restored");
+        }
         buffer.append("]");
         return buffer.toString();
     }
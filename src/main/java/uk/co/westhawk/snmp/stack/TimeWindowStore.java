@@ -0,0 +1,326 @@
+package uk.co.westhawk.snmp.stack;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub, Westhawk
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Saves the discovered SNMPv3 engine details of the
+ * {@link TimeWindow} to a file, and restores them at startup.
+ * After a restart the first requests to a known agent can then skip the
+ * discovery round trips.
+ *
+ * <p>
+ * For every engine the file contains the host address and port, the engine
+ * ID, the engine boots and time and the (wall clock) moment these were
+ * saved. When loading, the engine time is advanced with the time that
+ * passed since. Loaded details never overwrite details that are already
+ * known, and they are only trusted until the agent answers: if the agent
+ * reports another engine ID or timeline, the stack picks that up.
+ * </p>
+ *
+ * <pre>
+ * TimeWindowStore store = new TimeWindowStore(new File("engines.txt"));
+ * store.load();
+ * store.startAutoSave(300000);
+ * store.saveOnShutdown();
+ * </pre>
+ *
+ * <p>
+ * The file contains engine IDs and host addresses, but no credentials.
+ * </p>
+ *
+ * @see TimeWindow
+ */
+public class TimeWindowStore {
+
+    private static final String HEADER = "# SNMPv3 engines: hostAddress port engineId boots time savedAtMillis";
+    private static final String SEPARATOR = "\t";
+    private static final String UNKNOWN = "-";
+
+    private final File file;
+    private long maxAge = 0;
+    private Timer timer = null;
+    private Thread shutdownHook = null;
+
+    /**
+     * Constructor.
+     *
+     * @param file The file to save to and load from
+     */
+    public TimeWindowStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the file to save to and load from.
+     *
+     * @return The file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Sets the maximum age (in milliseconds) of the saved details. Older
+     * details are ignored when loading. By default (0) all details are
+     * loaded.
+     *
+     * @param newMaxAge The maximum age in milliseconds, 0 for no maximum
+     */
+    public void setMaxAge(long newMaxAge) {
+        maxAge = newMaxAge;
+    }
+
+    /**
+     * Returns the maximum age (in milliseconds) of the saved details.
+     *
+     * @return The maximum age in milliseconds, 0 for no maximum
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Loads the saved details into the TimeWindow, creating the TimeWindow
+     * if needed. A missing file is not an error.
+     *
+     * @return The number of engines restored
+     * @throws IOException when the file cannot be read
+     */
+    public int load() throws IOException {
+        int count = 0;
+        if (file.exists() == false) {
+            return count;
+        }
+
+        TimeWindow tWindow = getTimeWindow();
+        long now = System.currentTimeMillis();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    if (restore(tWindow, line, now)) {
+                        count++;
+                    }
+                } catch (IllegalArgumentException exc) {
+                    if (AsnObject.debug > 2) {
+                        System.out.println(getClass().getName() + ".load(): ignoring line '"
+                                + line + "': " + exc.getMessage());
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (AsnObject.debug > 4) {
+            System.out.println(getClass().getName() + ".load(): restored "
+                    + count + " engines from " + file);
+        }
+        return count;
+    }
+
+    private boolean restore(TimeWindow tWindow, String line, long now) {
+        String[] fields = line.split(SEPARATOR);
+        if (fields.length != 6) {
+            throw new IllegalArgumentException("expected 6 fields, got " + fields.length);
+        }
+        long savedAt = Long.parseLong(fields[5]);
+        long age = Math.max(0L, now - savedAt);
+        if (maxAge > 0 && age > maxAge) {
+            return false;
+        }
+
+        SnmpEngineAddress address = new SnmpEngineAddress(fields[0], Integer.parseInt(fields[1]));
+        SnmpEngineId engineId = SnmpEngineId.fromHexString(fields[2]);
+        if (engineId.isReal() == false) {
+            // unfinished discovery, saved by an older version
+            return false;
+        }
+        int boots = 0;
+        int time = -1;
+        if (UNKNOWN.equals(fields[3]) == false) {
+            boots = Integer.parseInt(fields[3]);
+            long estimate = Long.parseLong(fields[4]) + (age / 1000L);
+            if (estimate > TimeWindowNode.maxTime) {
+                boots += (int) (estimate / TimeWindowNode.maxTime);
+                estimate = estimate % TimeWindowNode.maxTime;
+            }
+            time = (int) estimate;
+        }
+        return tWindow.restore(address, engineId, boots, time);
+    }
+
+    /**
+     * Saves the details of all engines known by the TimeWindow. The file is
+     * written to a temporary file first, and then moved in place.
+     * The details of the stack itself (acting as authoritative engine), and
+     * the addresses whose discovery did not return an actual engine ID, are
+     * not saved.
+     *
+     * @return The number of engines saved
+     * @throws IOException when the file cannot be written
+     */
+    public synchronized int save() throws IOException {
+        int count = 0;
+        TimeWindow tWindow = getTimeWindow();
+        long now = System.currentTimeMillis();
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        File tmpFile = new File(parent, file.getName() + ".tmp");
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmpFile), StandardCharsets.UTF_8));
+        try {
+            writer.write(HEADER);
+            writer.newLine();
+
+            Iterator<Map.Entry<SnmpEngineAddress, SnmpEngineId>> entries = tWindow.hostEntries();
+            while (entries.hasNext()) {
+                Map.Entry<SnmpEngineAddress, SnmpEngineId> entry = entries.next();
+                SnmpEngineAddress address = entry.getKey();
+                SnmpEngineId engineId = entry.getValue();
+                if (UsmAgent.MYFAKEHOSTNAME.equals(address.getHostAddress())
+                        || engineId.isReal() == false) {
+                    continue;
+                }
+
+                StringBuilder buffer = new StringBuilder();
+                buffer.append(address.getHostAddress());
+                buffer.append(SEPARATOR).append(address.getPort());
+                buffer.append(SEPARATOR).append(engineId);
+                TimeWindowNode node = tWindow.getTimeLine(engineId);
+                if (node != null) {
+                    TimeWindowNode.Timeline timeline = node.getTimeline();
+                    buffer.append(SEPARATOR).append(timeline.getSnmpEngineBoots());
+                    buffer.append(SEPARATOR).append(timeline.getSnmpEngineTime());
+                } else {
+                    buffer.append(SEPARATOR).append(UNKNOWN);
+                    buffer.append(SEPARATOR).append(UNKNOWN);
+                }
+                buffer.append(SEPARATOR).append(now);
+                writer.write(buffer.toString());
+                writer.newLine();
+                count++;
+            }
+        } finally {
+            writer.close();
+        }
+
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exc) {
+            // not every file system supports an atomic move
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (AsnObject.debug > 4) {
+            System.out.println(getClass().getName() + ".save(): saved "
+                    + count + " engines to " + file);
+        }
+        return count;
+    }
+
+    /**
+     * Starts saving the details periodically, in a daemon thread.
+     * Any previous periodic save is stopped first.
+     *
+     * @param period The time between two saves in milliseconds
+     * @see #stopAutoSave()
+     */
+    public synchronized void startAutoSave(long period) {
+        stopAutoSave();
+        timer = new Timer(getClass().getName() + "_AutoSave", true);
+        timer.schedule(new TimerTask() {
+            public void run() {
+                saveQuietly();
+            }
+        }, period, period);
+    }
+
+    /**
+     * Stops saving the details periodically.
+     *
+     * @see #startAutoSave(long)
+     */
+    public synchronized void stopAutoSave() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    /**
+     * Saves the details when the JVM shuts down. Calling this method more
+     * than once has no further effect.
+     */
+    public synchronized void saveOnShutdown() {
+        if (shutdownHook == null) {
+            shutdownHook = new Thread(getClass().getName() + "_Shutdown") {
+                public void run() {
+                    saveQuietly();
+                }
+            };
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException exc) {
+            if (AsnObject.debug > 0) {
+                System.out.println(getClass().getName() + ".save(): "
+                        + exc.getClass().getName() + " " + exc.getMessage());
+            }
+        }
+    }
+
+    private static TimeWindow getTimeWindow() {
+        if (TimeWindow.getCurrent() == null) {
+            TimeWindow timew = new TimeWindow();
+        }
+        return TimeWindow.getCurrent();
+    }
+
+}
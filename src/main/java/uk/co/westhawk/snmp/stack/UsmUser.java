@@ -0,0 +1,382 @@
+package uk.co.westhawk.snmp.stack;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub, Westhawk
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import uk.co.westhawk.snmp.util.SnmpUtilities;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A User-based Security Model (USM) user: the userName and the
+ * authentication and privacy details of a principal, see
+ * <a href="http://www.ietf.org/rfc/rfc3414.txt">SNMP-USER-BASED-SM-MIB</a>.
+ *
+ * <p>
+ * A user is immutable. Besides its credentials it keeps the security state
+ * it builds up per SNMP engine: the password keys, the keys localized to
+ * every engine and the encoded message templates. Sharing one instance
+ * between contexts and PDUs (see {@link UsmUserTable}) means this work is
+ * done once per (user, engine) pair.
+ * </p>
+ *
+ * <p>
+ * By default a context sends its PDUs as the user described by its own
+ * properties. A PDU can be sent as another user with
+ * {@link Pdu#setUsmUser(UsmUser)}, so PDUs of many users can share the
+ * transport of one context.
+ * </p>
+ *
+ * @see SnmpContextv3Basis#getUsmUser()
+ * @see Pdu#setUsmUser(UsmUser)
+ * @see UsmUserTable
+ */
+public final class UsmUser {
+
+    /**
+     * The user of the engine ID discovery messages: no authentication, no
+     * privacy and an empty userName.
+     */
+    static final UsmUser ENGINE_ID_DISCOVERY = new UsmUser("");
+
+    private final String userName;
+    private final boolean useAuthentication;
+    private final int authenticationProtocol;
+    private final String authenticationPassword;
+    private final boolean usePrivacy;
+    private final int privacyProtocol;
+    private final String privacyPassword;
+    private final int hashCode;
+
+    private volatile byte[] authenticationPasswordKey = null;
+    private volatile byte[] privacyPasswordKey = null;
+    private final ConcurrentMap<SnmpEngineId, byte[]> authenticationKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SnmpEngineId, byte[]> privacyKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SnmpEngineId, Snmpv3MessageTemplate> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor of a user without authentication and privacy.
+     *
+     * @param userName The userName
+     */
+    public UsmUser(String userName) {
+        this(userName, false, SnmpContextv3Face.MD5_PROTOCOL, null, false, SnmpContextv3Face.DES_ENCRYPT, null);
+    }
+
+    /**
+     * Constructor of a user with authentication, but without privacy.
+     *
+     * @param userName               The userName
+     * @param authenticationProtocol The authentication protocol
+     * @param authenticationPassword The authentication password
+     * @see SnmpContextv3Face#AUTH_PROTOCOLS
+     */
+    public UsmUser(String userName, int authenticationProtocol, String authenticationPassword) {
+        this(userName, true, authenticationProtocol, authenticationPassword, false,
+                SnmpContextv3Face.DES_ENCRYPT, null);
+    }
+
+    /**
+     * Constructor of a user with authentication and privacy.
+     *
+     * @param userName               The userName
+     * @param authenticationProtocol The authentication protocol
+     * @param authenticationPassword The authentication password
+     * @param privacyProtocol        The privacy protocol
+     * @param privacyPassword        The privacy password
+     * @see SnmpContextv3Face#AUTH_PROTOCOLS
+     * @see SnmpContextv3Face#PRIVACY_PROTOCOLS
+     */
+    public UsmUser(String userName, int authenticationProtocol, String authenticationPassword,
+            int privacyProtocol, String privacyPassword) {
+        this(userName, true, authenticationProtocol, authenticationPassword, true,
+                privacyProtocol, privacyPassword);
+    }
+
+    private UsmUser(String userName, boolean useAuthentication, int authenticationProtocol,
+            String authenticationPassword, boolean usePrivacy, int privacyProtocol,
+            String privacyPassword) {
+        if (userName == null) {
+            throw new IllegalArgumentException("userName is null");
+        }
+        if (SnmpContextv3Face.AUTH_PROTOCOLS.contains(authenticationProtocol) == false) {
+            throw new IllegalArgumentException("Authentication Protocol "
+                    + "should be MD5 or SHA1 or SHA256 or SHA512 or SHA224 or SHA384");
+        }
+        if (SnmpContextv3Face.PRIVACY_PROTOCOLS.contains(privacyProtocol) == false) {
+            throw new IllegalArgumentException("Privacy Encryption "
+                    + "should be AES, AES192, AES256 or DES");
+        }
+        if (useAuthentication == true
+                && (authenticationPassword == null || authenticationPassword.length() == 0)) {
+            throw new IllegalArgumentException("authenticationPassword is empty, but useAuthentication is true");
+        }
+        if (usePrivacy == true
+                && (privacyPassword == null || privacyPassword.length() == 0)) {
+            throw new IllegalArgumentException("privacyPassword is empty, but usePrivacy is true");
+        }
+
+        this.userName = userName;
+        this.useAuthentication = useAuthentication;
+        this.authenticationProtocol = authenticationProtocol;
+        this.authenticationPassword = useAuthentication ? authenticationPassword : null;
+        this.usePrivacy = usePrivacy;
+        this.privacyProtocol = privacyProtocol;
+        this.privacyPassword = usePrivacy ? privacyPassword : null;
+
+        int h = userName.hashCode();
+        if (useAuthentication) {
+            h = 31 * h + authenticationProtocol;
+            h = 31 * h + authenticationPassword.hashCode();
+        }
+        if (usePrivacy) {
+            h = 31 * h + privacyProtocol;
+            h = 31 * h + privacyPassword.hashCode();
+        }
+        hashCode = h;
+    }
+
+    /**
+     * Returns the userName.
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Returns if authentication is used or not.
+     */
+    public boolean isUseAuthentication() {
+        return useAuthentication;
+    }
+
+    /**
+     * Returns the authentication protocol.
+     */
+    public int getAuthenticationProtocol() {
+        return authenticationProtocol;
+    }
+
+    /**
+     * Returns if privacy is used or not.
+     */
+    public boolean isUsePrivacy() {
+        return usePrivacy;
+    }
+
+    /**
+     * Returns the privacy protocol.
+     */
+    public int getPrivacyProtocol() {
+        return privacyProtocol;
+    }
+
+    /**
+     * Computes the fingerprint of a message to or from an engine.
+     *
+     * @param engineId The authoritative engine ID
+     * @param message  The message, with the dummy fingerprint in place
+     * @return The fingerprint
+     */
+    byte[] computeFingerprint(SnmpEngineId engineId, byte[] message) {
+        byte[] authKey = authenticationKeys.get(engineId);
+        if (authKey == null) {
+            authKey = localizeKey(getAuthenticationPasswordKey(), engineId.bytes());
+            authenticationKeys.put(engineId, authKey);
+        }
+        switch (authenticationProtocol) {
+            case SnmpContextv3Face.MD5_PROTOCOL:
+                return SnmpUtilities.getFingerPrintMD5(authKey, message);
+            case SnmpContextv3Face.SHA1_PROTOCOL:
+                return SnmpUtilities.getFingerPrintSHA1(authKey, message);
+            case SnmpContextv3Face.SHA256_PROTOCOL:
+                return SnmpUtilities.getFingerPrintSHA256(authKey, message);
+            case SnmpContextv3Face.SHA512_PROTOCOL:
+                return SnmpUtilities.getFingerPrintSHA512(authKey, message);
+            case SnmpContextv3Face.SHA224_PROTOCOL:
+                return SnmpUtilities.getFingerPrintSHA224(authKey, message);
+            default:
+                return SnmpUtilities.getFingerPrintSHA384(authKey, message);
+        }
+    }
+
+    /**
+     * Returns the privacy key localized to an engine. The key is derived
+     * with the hash of the authentication protocol.
+     *
+     * @param engineId The authoritative engine ID
+     * @return The localized privacy key
+     */
+    byte[] getPrivacyKey(SnmpEngineId engineId) {
+        byte[] privKey = privacyKeys.get(engineId);
+        if (privKey == null) {
+            checkPrivacyProtocol();
+            privKey = localizeKey(getPrivacyPasswordKey(), engineId.bytes());
+            privacyKeys.put(engineId, privKey);
+        }
+        return privKey;
+    }
+
+    /**
+     * Returns the message template for an engine, building it if needed.
+     *
+     * @see Snmpv3MessageTemplate
+     */
+    Snmpv3MessageTemplate getMessageTemplate(SnmpEngineId engineId, int maxRecvSize, byte msgFlags,
+            int securityModel) throws IOException, EncodingException {
+        Snmpv3MessageTemplate template = templates.get(engineId);
+        if (template == null || template.matches(maxRecvSize, msgFlags) == false) {
+            template = new Snmpv3MessageTemplate(this, engineId, maxRecvSize, msgFlags, securityModel);
+            templates.put(engineId, template);
+        }
+        return template;
+    }
+
+    /**
+     * Forgets the security state built up for an engine, for example
+     * after its engine ID changed.
+     *
+     * @param engineId The engine ID
+     */
+    public void clearEngine(SnmpEngineId engineId) {
+        authenticationKeys.remove(engineId);
+        privacyKeys.remove(engineId);
+        templates.remove(engineId);
+    }
+
+    private byte[] getAuthenticationPasswordKey() {
+        byte[] key = authenticationPasswordKey;
+        if (key == null) {
+            key = passwordToKey(authenticationPassword);
+            authenticationPasswordKey = key;
+        }
+        return key;
+    }
+
+    private byte[] getPrivacyPasswordKey() {
+        byte[] key = privacyPasswordKey;
+        if (key == null) {
+            key = passwordToKey(privacyPassword);
+            privacyPasswordKey = key;
+        }
+        return key;
+    }
+
+    private byte[] passwordToKey(String password) {
+        switch (authenticationProtocol) {
+            case SnmpContextv3Face.MD5_PROTOCOL:
+                return SnmpUtilities.passwordToKeyMD5(password);
+            case SnmpContextv3Face.SHA1_PROTOCOL:
+                return SnmpUtilities.passwordToKeySHA1(password);
+            case SnmpContextv3Face.SHA256_PROTOCOL:
+                return SnmpUtilities.passwordToKeySHA256(password);
+            case SnmpContextv3Face.SHA512_PROTOCOL:
+                return SnmpUtilities.passwordToKeySHA512(password);
+            case SnmpContextv3Face.SHA224_PROTOCOL:
+                return SnmpUtilities.passwordToKeySHA224(password);
+            default:
+                return SnmpUtilities.passwordToKeySHA384(password);
+        }
+    }
+
+    private byte[] localizeKey(byte[] passwordKey, byte[] engineId) {
+        switch (authenticationProtocol) {
+            case SnmpContextv3Face.MD5_PROTOCOL:
+                return SnmpUtilities.getLocalizedKeyMD5(passwordKey, engineId);
+            case SnmpContextv3Face.SHA1_PROTOCOL:
+                return SnmpUtilities.getLocalizedKeySHA1(passwordKey, engineId);
+            case SnmpContextv3Face.SHA256_PROTOCOL:
+                return SnmpUtilities.getLocalizedKeySHA256(passwordKey, engineId);
+            case SnmpContextv3Face.SHA512_PROTOCOL:
+                return SnmpUtilities.getLocalizedKeySHA512(passwordKey, engineId);
+            case SnmpContextv3Face.SHA224_PROTOCOL:
+                return SnmpUtilities.getLocalizedKeySHA224(passwordKey, engineId);
+            default:
+                return SnmpUtilities.getLocalizedKeySHA384(passwordKey, engineId);
+        }
+    }
+
+    /**
+     * Checks the privacy protocol against the length of the key the
+     * authentication protocol produces.
+     */
+    private void checkPrivacyProtocol() {
+        boolean supported = true;
+        switch (authenticationProtocol) {
+            case SnmpContextv3Face.MD5_PROTOCOL:
+            case SnmpContextv3Face.SHA1_PROTOCOL:
+                supported = (privacyProtocol == SnmpContextv3Face.AES_ENCRYPT
+                        || privacyProtocol == SnmpContextv3Face.DES_ENCRYPT);
+                break;
+            case SnmpContextv3Face.SHA224_PROTOCOL:
+                supported = (privacyProtocol != SnmpContextv3Face.AES256_ENCRYPT);
+                break;
+            default:
+                break;
+        }
+        if (supported == false) {
+            throw new IllegalArgumentException("Unsupported privacy protocol for "
+                    + SnmpContextv3Face.PROTOCOL_NAMES[authenticationProtocol] + ": "
+                    + SnmpContextv3Face.PROTOCOL_NAMES[privacyProtocol]);
+        }
+    }
+
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof UsmUser == false) {
+            return false;
+        }
+        UsmUser other = (UsmUser) obj;
+        return hashCode == other.hashCode
+                && userName.equals(other.userName)
+                && useAuthentication == other.useAuthentication
+                && usePrivacy == other.usePrivacy
+                && (useAuthentication == false
+                        || (authenticationProtocol == other.authenticationProtocol
+                                && authenticationPassword.equals(other.authenticationPassword)))
+                && (usePrivacy == false
+                        || (privacyProtocol == other.privacyProtocol
+                                && privacyPassword.equals(other.privacyPassword)));
+    }
+
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /**
+     * Returns a string representation of the user, without the passwords.
+     */
+    public String toString() {
+        StringBuffer buffer = new StringBuffer(getClass().getName() + "[");
+        buffer.append("userName=").append(userName);
+        buffer.append(", authenticationProtocol=");
+        buffer.append(useAuthentication ? SnmpContextv3Face.PROTOCOL_NAMES[authenticationProtocol] : "none");
+        buffer.append(", privacyProtocol=");
+        buffer.append(usePrivacy ? SnmpContextv3Face.PROTOCOL_NAMES[privacyProtocol] : "none");
+        buffer.append("]");
+        return buffer.toString();
+    }
+}
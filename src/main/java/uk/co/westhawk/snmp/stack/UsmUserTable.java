@@ -0,0 +1,168 @@
+package uk.co.westhawk.snmp.stack;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub, Westhawk
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The table of USM users of the stack. It makes sure that every set of
+ * credentials is represented by one shared {@link UsmUser}, so that the
+ * password keys and the keys localized per engine are computed once, no
+ * matter how many contexts and PDUs use them.
+ *
+ * <p>
+ * The contexts register the user described by their own properties. An
+ * application that sends PDUs as many users over a few contexts should
+ * register its users as well:
+ * </p>
+ *
+ * <pre>
+ * UsmUser user = UsmUserTable.getCurrent().add(
+ *         new UsmUser("tenant1", SnmpContextv3Face.SHA1_PROTOCOL, "authPassword"));
+ * GetPdu pdu = new GetPdu(context);
+ * pdu.setUsmUser(user);
+ * </pre>
+ *
+ * <p>
+ * The table is bounded, since every user holds its passwords and keys.
+ * When it is full, the user that was least recently added or looked up is
+ * dropped. The contexts and PDUs using a dropped user keep working; the
+ * next context that registers the same credentials gets a new instance,
+ * and its keys are computed again.
+ * </p>
+ *
+ * @see UsmUser
+ * @see Pdu#setUsmUser(UsmUser)
+ */
+public class UsmUserTable {
+
+    /**
+     * The default maximum number of users in a table.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+    private static final UsmUserTable current = new UsmUserTable();
+
+    private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    // Access ordered, so the eldest entry is the least recently used one
+    private final LinkedHashMap<UsmUser, UsmUser> users = new LinkedHashMap<UsmUser, UsmUser>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<UsmUser, UsmUser> eldest) {
+            return size() > maximumSize;
+        }
+    };
+
+    /**
+     * Returns the table shared by the stack.
+     */
+    public static UsmUserTable getCurrent() {
+        return current;
+    }
+
+    /**
+     * Constructor. Usually the shared table is used.
+     *
+     * @see #getCurrent()
+     */
+    public UsmUserTable() {
+    }
+
+    /**
+     * Adds a user, unless a user with the same credentials is already in
+     * the table.
+     *
+     * @param user The user
+     * @return The user in the table with these credentials; use this one
+     */
+    public synchronized UsmUser add(UsmUser user) {
+        UsmUser existing = users.get(user);
+        if (existing != null) {
+            return existing;
+        }
+        users.put(user, user);
+        return user;
+    }
+
+    /**
+     * Removes the user with the same credentials, with its security state.
+     *
+     * @param user The user
+     * @return true if the user was in the table
+     */
+    public synchronized boolean remove(UsmUser user) {
+        return (users.remove(user) != null);
+    }
+
+    /**
+     * Forgets the security state of all users for an engine, for example
+     * after its engine ID changed.
+     *
+     * @param engineId The engine ID
+     * @see UsmUser#clearEngine(SnmpEngineId)
+     */
+    public void clearEngine(SnmpEngineId engineId) {
+        List<UsmUser> copy;
+        synchronized (this) {
+            copy = new ArrayList<UsmUser>(users.keySet());
+        }
+        for (UsmUser user : copy) {
+            user.clearEngine(engineId);
+        }
+    }
+
+    /**
+     * Sets the maximum number of users in the table. The default is
+     * <code>DEFAULT_MAXIMUM_SIZE</code>.
+     *
+     * @param newMaximumSize The maximum number of users
+     */
+    public synchronized void setMaximumSize(int newMaximumSize) {
+        if (newMaximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize should be at least 1");
+        }
+        maximumSize = newMaximumSize;
+        Iterator<UsmUser> i = users.keySet().iterator();
+        while (users.size() > maximumSize && i.hasNext()) {
+            i.next();
+            i.remove();
+        }
+    }
+
+    /**
+     * Returns the maximum number of users in the table.
+     */
+    public synchronized int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Returns the number of users in the table.
+     */
+    public synchronized int size() {
+        return users.size();
+    }
+}
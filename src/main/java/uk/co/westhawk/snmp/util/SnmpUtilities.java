@@ -326,11 +326,24 @@ public class SnmpUtilities extends Object {
      * @see #passwordToKeyMD5(String)
      */
     public static byte[] getLocalizedKeyMD5(byte[] passwKey, String engineId) {
+        return getLocalizedKeyMD5(passwKey, toBytes(engineId));
+    }
+
+    /**
+     * Converts the user's password and the SNMP Engine Id to the localized key
+     * using the MD5 protocol.
+     * Described in
+     * <a href="http://www.ietf.org/rfc/rfc3414.txt">SNMP-USER-BASED-SM-MIB</a>.
+     *
+     * @param passwKey The password key
+     * @param beid     The SNMP engine Id bytes
+     * @see SnmpContextv3#setUserAuthenticationPassword(String)
+     */
+    public static byte[] getLocalizedKeyMD5(byte[] passwKey, byte[] beid) {
         byte[] ret = null;
         MD5Digest mdc = new MD5Digest();
         mdc.reset();
 
-        byte[] beid = toBytes(engineId);
         if ((beid != null) && (passwKey != null)) {
             // see page 169 of 0-13-021453-1 A Practical Guide to SNMP
             mdc.update(passwKey, 0, passwKey.length);
@@ -351,11 +364,22 @@ public class SnmpUtilities extends Object {
      * @see SnmpContextv3#setUserAuthenticationPassword(String)
      */
     public static byte[] getLocalizedKeySHA1(byte[] passwKey, String engineId) {
+        return getLocalizedKeySHA1(passwKey, toBytes(engineId));
+    }
+
+    /**
+     * Converts the user's password and the SNMP Engine Id to the localized key
+     * using the SHA protocol.
+     *
+     * @param passwKey The printable user password
+     * @param beid     The SNMP engine Id bytes
+     * @see SnmpContextv3#setUserAuthenticationPassword(String)
+     */
+    public static byte[] getLocalizedKeySHA1(byte[] passwKey, byte[] beid) {
         byte[] ret = null;
         SHA1Digest mdc = new SHA1Digest();
         mdc.reset();
 
-        byte[] beid = toBytes(engineId);
         if ((beid != null) && (passwKey != null)) {
             // see page 169 of 0-13-021453-1 A Practical Guide to SNMP
             mdc.update(passwKey, 0, passwKey.length);
@@ -1306,8 +1330,18 @@ public class SnmpUtilities extends Object {
      * @return localized key using the SHA-256 protocol
      */
     public static byte[] getLocalizedKeySHA256(final byte[] passwKey, final String snmpEngineId) {
+        return getLocalizedKeySHA256(passwKey, toBytes(snmpEngineId));
+    }
+
+    /**
+     * Converts the user's password and the SNMP Engine Id to the localized key
+     * 
+     * @param passwKey     The password key
+     * @param beid         The SNMP engine Id bytes
+     * @return localized key using the SHA-256 protocol
+     */
+    public static byte[] getLocalizedKeySHA256(final byte[] passwKey, final byte[] beid) {
         byte[] ret = null;
-        byte[] beid = toBytes(snmpEngineId); // Convert engineId (Hex string?) to raw bytes
 
         if (passwKey == null) {
             return null;
@@ -1334,8 +1368,18 @@ public class SnmpUtilities extends Object {
      * @return localized key using the SHA-384 protocol
      */
     public static byte[] getLocalizedKeySHA384(final byte[] passwKey, final String snmpEngineId) {
+        return getLocalizedKeySHA384(passwKey, toBytes(snmpEngineId));
+    }
+
+    /**
+     * Converts the user's password and the SNMP Engine Id to the localized key
+     *
+     * @param passwKey     The password key
+     * @param beid         The SNMP engine Id bytes
+     * @return localized key using the SHA-384 protocol
+     */
+    public static byte[] getLocalizedKeySHA384(final byte[] passwKey, final byte[] beid) {
         byte[] ret = null;
-        byte[] beid = toBytes(snmpEngineId); // Convert engineId (Hex string?) to raw bytes
 
         if (passwKey == null) {
             return null;
@@ -1362,8 +1406,18 @@ public class SnmpUtilities extends Object {
      * @return localized key using the SHA-224 protocol
      */
     public static byte[] getLocalizedKeySHA224(final byte[] passwKey, final String snmpEngineId) {
+        return getLocalizedKeySHA224(passwKey, toBytes(snmpEngineId));
+    }
+
+    /**
+     * Converts the user's password and the SNMP Engine Id to the localized key
+     *
+     * @param passwKey     The password key
+     * @param beid         The SNMP engine Id bytes
+     * @return localized key using the SHA-224 protocol
+     */
+    public static byte[] getLocalizedKeySHA224(final byte[] passwKey, final byte[] beid) {
         byte[] ret = null;
-        byte[] beid = toBytes(snmpEngineId); // Convert engineId (Hex string?) to raw bytes
 
         if (passwKey == null) {
             return null;
@@ -1409,8 +1463,19 @@ public class SnmpUtilities extends Object {
      * @return localized key using the SHA-512 protocol
      */
     public static byte[] getLocalizedKeySHA512(final byte[] passwKey, final String snmpEngineId) {
+        return getLocalizedKeySHA512(passwKey, toBytes(snmpEngineId));
+    }
+
+    /**
+     * Converts the user's password and the SNMP Engine Id to the localized key
+     * using the SHA-512 protocol.
+     *
+     * @param passwKey     The password key
+     * @param beid         The SNMP engine Id bytes
+     * @return localized key using the SHA-512 protocol
+     */
+    public static byte[] getLocalizedKeySHA512(final byte[] passwKey, final byte[] beid) {
         byte[] ret = null;
-        byte[] beid = toBytes(snmpEngineId); // Convert engineId (Hex string?) to raw bytes
 
         if (passwKey == null) {
             return null;
@@ -0,0 +1,301 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingSnmpClientTest {
+
+	private static final String SYS_DESCR = "1.3.6.1.2.1.1.1.0";
+	private static final String SYS_NAME = "1.3.6.1.2.1.1.5.0";
+	private static final String MISSING = "1.3.6.1.2.1.1.99.0";
+	private static final String IF_DESCR = "1.3.6.1.2.1.2.2.1.2";
+
+	private FakeSnmpAgent agent;
+	private SnmpClient client;
+	private SnmpResponseCache cache;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		agent = new FakeSnmpAgent("public");
+		agent.put(SYS_DESCR, "Linux");
+		agent.put(SYS_NAME, "server1");
+		for (int i = 1; i <= 20; i++) {
+			agent.put(IF_DESCR + "." + i, "eth" + i);
+		}
+		cache = new SnmpResponseCache(1000000, 1, TimeUnit.HOURS);
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (client != null) {
+			client.freeResources();
+		}
+		agent.close();
+	}
+
+	private CachingSnmpClient createClient() throws IOException {
+		client = new SnmpClient("127.0.0.1", agent.getPort(), SnmpClient.SNMP_V2C, new int[] { 200, 200 }, "public",
+				null, null, null, null, null, null, null);
+		return new CachingSnmpClient(client, cache);
+	}
+
+	@Test
+	void testGetListCachesValuesAndMissingOids() throws Exception {
+		CachingSnmpClient caching = createClient();
+		List<String> oids = Arrays.asList(SYS_DESCR, "." + SYS_NAME, MISSING);
+		assertEquals(Arrays.asList("Linux", "server1", null), caching.get(oids));
+		int requests = agent.getRequestCount(FakeSnmpAgent.GET);
+
+		assertEquals(Arrays.asList("Linux", "server1", null), caching.get(oids));
+		assertEquals("Linux", caching.get(SYS_DESCR));
+		assertEquals(requests, agent.getRequestCount(FakeSnmpAgent.GET));
+	}
+
+	@Test
+	void testTimeoutNotCachedAsMissing() throws Exception {
+		CachingSnmpClient caching = createClient();
+		agent.setSilent(true);
+		assertThrows(Exception.class, () -> caching.get(Arrays.asList(SYS_DESCR, SYS_NAME)));
+		assertEquals(0, cache.size());
+
+		agent.setSilent(false);
+		assertEquals(Arrays.asList("Linux", "server1"), caching.get(Arrays.asList(SYS_DESCR, SYS_NAME)));
+	}
+
+	@Test
+	void testMissingOidsOfOtherClientsNotCached() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		ISnmpClient other = new ISnmpClient() {
+			@Override
+			public List<String> get(List<String> oids) {
+				calls.incrementAndGet();
+				// Missing, or maybe not read
+				List<String> values = new ArrayList<>();
+				for (String oid : oids) {
+					values.add(SYS_DESCR.equals(oid) ? "Linux" : null);
+				}
+				return values;
+			}
+
+			@Override
+			public String get(String oid) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public String getNext(String oid) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public List<List<String>> table(String rootOID, String[] selectColumns) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public String walk(String oid) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void walk(String oid, SnmpWalkVisitor visitor) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void walk(List<String> oids, SnmpWalkVisitor visitor) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void freeResources() {
+			}
+		};
+		CachingSnmpClient caching = new CachingSnmpClient(other, "other", cache);
+		assertEquals(Arrays.asList("Linux", null), caching.get(Arrays.asList(SYS_DESCR, MISSING)));
+		assertEquals(Arrays.asList("Linux", null), caching.get(Arrays.asList(SYS_DESCR, MISSING)));
+		assertEquals(2, calls.get());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void testWalkReplayed() throws Exception {
+		CachingSnmpClient caching = createClient();
+		List<String> first = new ArrayList<>();
+		caching.walk(IF_DESCR, result -> first.add(result.oid + "=" + result.value));
+		assertEquals(20, first.size());
+		int requests = agent.getRequests().size();
+
+		List<String> second = new ArrayList<>();
+		caching.walk("." + IF_DESCR, result -> second.add(result.oid + "=" + result.value));
+		assertEquals(first, second);
+		assertEquals(requests, agent.getRequests().size());
+	}
+
+	@Test
+	void testConcurrentWalkCoalesced() throws Exception {
+		CachingSnmpClient leader = createClient();
+		SnmpClient followerClient = new SnmpClient("127.0.0.1", agent.getPort(), SnmpClient.SNMP_V2C,
+				new int[] { 200, 200 }, "public", null, null, null, null, null, null, null);
+		CachingSnmpClient follower = new CachingSnmpClient(followerClient, cache);
+		agent.setLatency(50);
+		try {
+			// The leader waits for the follower to join its walk after its first result
+			List<String> leaderResults = Collections.synchronizedList(new ArrayList<>());
+			AtomicLong leaderLastResult = new AtomicLong();
+			CountDownLatch started = new CountDownLatch(1);
+			Exception[] leaderException = new Exception[1];
+			Thread leaderThread = new Thread(() -> {
+				try {
+					leader.walk(IF_DESCR, result -> {
+						started.countDown();
+						long deadline = System.currentTimeMillis() + 5000;
+						while (cache.getCoalesced() == 0 && System.currentTimeMillis() < deadline) {
+							Thread.sleep(5);
+						}
+						leaderResults.add(result.oid + "=" + result.value);
+						leaderLastResult.set(System.nanoTime());
+						return true;
+					});
+				} catch (Exception e) {
+					leaderException[0] = e;
+				}
+			});
+			leaderThread.start();
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			List<String> followerResults = new ArrayList<>();
+			AtomicLong followerStart = new AtomicLong();
+			follower.walk(IF_DESCR, result -> {
+				followerStart.compareAndSet(0, System.nanoTime());
+				return followerResults.add(result.oid + "=" + result.value);
+			});
+			leaderThread.join(5000);
+			assertNull(leaderException[0]);
+
+			// One walk sent, whose results the follower gets once it is over
+			assertEquals(1, cache.getCoalesced());
+			assertEquals(20, leaderResults.size());
+			assertEquals(leaderResults, followerResults);
+			assertTrue(followerStart.get() - leaderLastResult.get() >= 0, "follower streamed before the end of the walk");
+			int requests = agent.getRequests().size();
+			follower.walk(IF_DESCR, result -> true);
+			assertEquals(requests, agent.getRequests().size());
+		} finally {
+			followerClient.freeResources();
+		}
+	}
+
+	@Test
+	void testFollowerOfStoppedWalkWalksAgain() throws Exception {
+		CachingSnmpClient leader = createClient();
+		SnmpClient followerClient = new SnmpClient("127.0.0.1", agent.getPort(), SnmpClient.SNMP_V2C,
+				new int[] { 200, 200 }, "public", null, null, null, null, null, null, null);
+		CachingSnmpClient follower = new CachingSnmpClient(followerClient, cache);
+		try {
+			// The leader stops after its first result, once the follower has joined
+			Thread leaderThread = new Thread(() -> {
+				try {
+					leader.walk(IF_DESCR, result -> {
+						long deadline = System.currentTimeMillis() + 5000;
+						while (cache.getCoalesced() == 0 && System.currentTimeMillis() < deadline) {
+							Thread.sleep(5);
+						}
+						return false;
+					});
+				} catch (Exception e) {
+					// Checked by the results of the follower
+				}
+			});
+			leaderThread.start();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (agent.getRequests().isEmpty() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+
+			List<String> followerResults = new ArrayList<>();
+			follower.walk(IF_DESCR, result -> followerResults.add(result.oid));
+			leaderThread.join(5000);
+			assertEquals(20, followerResults.size());
+		} finally {
+			followerClient.freeResources();
+		}
+	}
+
+	@Test
+	void testStoppedWalkNotCached() throws Exception {
+		CachingSnmpClient caching = createClient();
+		AtomicInteger visited = new AtomicInteger();
+		caching.walk(IF_DESCR, result -> visited.incrementAndGet() < 5);
+		assertEquals(5, visited.get());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void testWalkLargerThanTheCacheNotRecorded() throws Exception {
+		cache = new SnmpResponseCache(1000, 1, TimeUnit.HOURS);
+		CachingSnmpClient caching = createClient();
+		List<String> results = new ArrayList<>();
+		caching.walk(Arrays.asList(IF_DESCR, "1.3.6.1.2.1.1"), result -> results.add(result.oid));
+		assertEquals(22, results.size());
+
+		// Only the small tree is cached
+		assertEquals(1, cache.size());
+		int requests = agent.getRequests().size();
+		caching.walk("1.3.6.1.2.1.1", result -> true);
+		assertEquals(requests, agent.getRequests().size());
+		AtomicInteger visited = new AtomicInteger();
+		caching.walk(IF_DESCR, result -> visited.incrementAndGet() > 0);
+		assertEquals(20, visited.get());
+		assertTrue(agent.getRequests().size() > requests);
+	}
+
+	@Test
+	void testWalkWithoutTtlNotRecorded() throws Exception {
+		cache.setTtl(IF_DESCR, 0, TimeUnit.SECONDS);
+		CachingSnmpClient caching = createClient();
+		AtomicInteger visited = new AtomicInteger();
+		caching.walk(IF_DESCR, result -> visited.incrementAndGet() > 0);
+		assertEquals(20, visited.get());
+		assertEquals(0, cache.size());
+		int requests = agent.getRequests().size();
+		caching.walk(IF_DESCR, result -> visited.incrementAndGet() > 0);
+		assertEquals(40, visited.get());
+		assertTrue(agent.getRequests().size() > requests);
+	}
+}
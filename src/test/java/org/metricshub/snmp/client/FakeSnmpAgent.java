@@ -0,0 +1,478 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A minimal SNMP v1/v2c agent on the loopback address, for tests. It answers
+ * GET, GETNEXT and GETBULK requests from a sorted map of OIDs, and can be
+ * told to answer slowly, to answer <code>tooBig</code> or <code>genErr</code>,
+ * or not to answer at all. Requests with another community are ignored, like
+ * a real agent does.
+ */
+class FakeSnmpAgent implements AutoCloseable {
+
+	static final int GET = 0xa0;
+	static final int GETNEXT = 0xa1;
+	static final int GETBULK = 0xa5;
+
+	private static final int RESPONSE = 0xa2;
+	private static final int OCTET_STRING = 0x04;
+	private static final int COUNTER32 = 0x41;
+	private static final int TIMETICKS = 0x43;
+	private static final int COUNTER64 = 0x46;
+	private static final int NO_SUCH_OBJECT = 0x80;
+	private static final int END_OF_MIB_VIEW = 0x82;
+	private static final int TOO_BIG = 1;
+	private static final int NO_SUCH_NAME = 2;
+	private static final int GEN_ERR = 5;
+
+	private final String community;
+	private final DatagramSocket socket;
+	private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(4, r -> {
+		final Thread thread = new Thread(r, "FakeSnmpAgent");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final ConcurrentSkipListMap<int[], byte[]> mib = new ConcurrentSkipListMap<>(FakeSnmpAgent::compare);
+	private final Set<String> genErrOids = ConcurrentHashMap.newKeySet();
+	private final Set<String> silentOids = ConcurrentHashMap.newKeySet();
+	private final List<int[]> requests = new CopyOnWriteArrayList<>();
+
+	private volatile long latency = 0;
+	private volatile int maxGetVarbinds = Integer.MAX_VALUE;
+	private volatile int maxResponseSize = 65507;
+	private volatile boolean bulkSupported = true;
+	private volatile boolean silent = false;
+
+	FakeSnmpAgent(String community) throws IOException {
+		this.community = community;
+		socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+		final Thread thread = new Thread(this::receive, "FakeSnmpAgent-receive");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	int getPort() {
+		return socket.getLocalPort();
+	}
+
+	@Override
+	public void close() {
+		socket.close();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Adds an OCTET STRING value.
+	 */
+	FakeSnmpAgent put(String oid, String value) {
+		mib.put(parseOid(oid), tlv(OCTET_STRING, value.getBytes(StandardCharsets.UTF_8)));
+		return this;
+	}
+
+	/**
+	 * Adds an OCTET STRING value, as bytes.
+	 */
+	FakeSnmpAgent put(String oid, byte[] value) {
+		mib.put(parseOid(oid), tlv(OCTET_STRING, value));
+		return this;
+	}
+
+	/**
+	 * Adds a Counter32 value.
+	 */
+	FakeSnmpAgent putCounter32(String oid, long value) {
+		mib.put(parseOid(oid), tlv(COUNTER32, BigInteger.valueOf(value).toByteArray()));
+		return this;
+	}
+
+	/**
+	 * Adds a TimeTicks value.
+	 */
+	FakeSnmpAgent putTimeTicks(String oid, long value) {
+		mib.put(parseOid(oid), tlv(TIMETICKS, BigInteger.valueOf(value).toByteArray()));
+		return this;
+	}
+
+	/**
+	 * Removes a value.
+	 */
+	void remove(String oid) {
+		mib.remove(parseOid(oid));
+	}
+
+	/**
+	 * Adds a Counter64 value, read as unsigned.
+	 */
+	FakeSnmpAgent putCounter64(String oid, long value) {
+		mib.put(parseOid(oid), tlv(COUNTER64, new BigInteger(Long.toUnsignedString(value)).toByteArray()));
+		return this;
+	}
+
+	/**
+	 * Sets how long the agent waits before answering, in milliseconds.
+	 */
+	void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Sets the number of varbinds above which a GET is answered with tooBig.
+	 */
+	void setMaxGetVarbinds(int maxGetVarbinds) {
+		this.maxGetVarbinds = maxGetVarbinds;
+	}
+
+	/**
+	 * Sets the size above which a response is replaced with tooBig.
+	 */
+	void setMaxResponseSize(int maxResponseSize) {
+		this.maxResponseSize = maxResponseSize;
+	}
+
+	/**
+	 * Makes the agent answer GETBULK with genErr.
+	 */
+	void setBulkSupported(boolean bulkSupported) {
+		this.bulkSupported = bulkSupported;
+	}
+
+	/**
+	 * Makes the agent answer a GET of any of these OIDs with genErr.
+	 */
+	void addGenErrOid(String oid) {
+		genErrOids.add(oid);
+	}
+
+	/**
+	 * Makes the agent ignore the requests of any of these OIDs.
+	 */
+	void addSilentOid(String oid) {
+		silentOids.add(oid);
+	}
+
+	/**
+	 * Makes the agent stop answering.
+	 */
+	void setSilent(boolean silent) {
+		this.silent = silent;
+	}
+
+	/**
+	 * Returns the PDU type and the number of varbinds of every request received.
+	 */
+	List<int[]> getRequests() {
+		return Collections.unmodifiableList(new ArrayList<>(requests));
+	}
+
+	/**
+	 * Returns the number of requests of the given PDU type received.
+	 */
+	int getRequestCount(int type) {
+		int count = 0;
+		for (int[] request : requests) {
+			if (request[0] == type) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void receive() {
+		final byte[] buffer = new byte[65535];
+		while (!socket.isClosed()) {
+			try {
+				final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+				socket.receive(packet);
+				final byte[] message = new byte[packet.getLength()];
+				System.arraycopy(buffer, 0, message, 0, message.length);
+				final SocketAddress sender = packet.getSocketAddress();
+				final byte[] reply = answer(message);
+				if (reply == null) {
+					continue;
+				}
+				if (latency > 0) {
+					executor.schedule(() -> send(reply, sender), latency, TimeUnit.MILLISECONDS);
+				} else {
+					send(reply, sender);
+				}
+			} catch (IOException e) {
+				// Closed
+			}
+		}
+	}
+
+	private void send(byte[] reply, SocketAddress sender) {
+		try {
+			socket.send(new DatagramPacket(reply, reply.length, sender));
+		} catch (IOException e) {
+			// Closed
+		}
+	}
+
+	private byte[] answer(byte[] message) {
+		final int[] top = tlv(message, 0);
+		final int[] version = tlv(message, top[1]);
+		final int[] communityTlv = tlv(message, next(version));
+		final int[] pdu = tlv(message, next(communityTlv));
+		final int[] reqId = tlv(message, pdu[1]);
+		final int[] first = tlv(message, next(reqId));
+		final int[] second = tlv(message, next(first));
+		final int[] varbindList = tlv(message, next(second));
+		final List<int[]> oids = new ArrayList<>();
+		for (int i = varbindList[1]; i < next(varbindList);) {
+			final int[] varbind = tlv(message, i);
+			final int[] oid = tlv(message, varbind[1]);
+			oids.add(decodeOid(message, oid[1], oid[2]));
+			i = next(varbind);
+		}
+		final int type = pdu[0];
+		requests.add(new int[] { type, oids.size() });
+
+		for (int[] oid : oids) {
+			if (silentOids.contains(toString(oid))) {
+				return null;
+			}
+		}
+		if (silent || !community.equals(new String(message, communityTlv[1], communityTlv[2], StandardCharsets.UTF_8))) {
+			return null;
+		}
+		final boolean v1 = intValue(message, version) == 0;
+
+		int errorStatus = 0;
+		int errorIndex = 0;
+		final ByteArrayOutputStream varbinds = new ByteArrayOutputStream();
+		if (type == GET) {
+			if (oids.size() > maxGetVarbinds) {
+				errorStatus = TOO_BIG;
+			}
+			for (int i = 0; i < oids.size() && errorStatus == 0; i++) {
+				final byte[] value = mib.get(oids.get(i));
+				if (genErrOids.contains(toString(oids.get(i)))) {
+					errorStatus = GEN_ERR;
+					errorIndex = i + 1;
+				} else if (value == null && v1) {
+					errorStatus = NO_SUCH_NAME;
+					errorIndex = i + 1;
+				} else {
+					write(varbinds, varbind(oids.get(i), value != null ? value : tlv(NO_SUCH_OBJECT)));
+				}
+			}
+		} else if (type == GETNEXT || type == GETBULK) {
+			if (type == GETBULK && !bulkSupported) {
+				errorStatus = GEN_ERR;
+				errorIndex = 1;
+			}
+			final int repetitions = type == GETBULK ? intValue(message, second) : 1;
+			final List<int[]> cursors = new ArrayList<>(oids);
+			for (int r = 0; r < repetitions && errorStatus == 0; r++) {
+				for (int i = 0; i < cursors.size() && errorStatus == 0; i++) {
+					final Map.Entry<int[], byte[]> entry = mib.higherEntry(cursors.get(i));
+					if (entry == null && v1) {
+						errorStatus = NO_SUCH_NAME;
+						errorIndex = i + 1;
+					} else if (entry == null) {
+						write(varbinds, varbind(cursors.get(i), tlv(END_OF_MIB_VIEW)));
+					} else {
+						write(varbinds, varbind(entry.getKey(), entry.getValue()));
+						cursors.set(i, entry.getKey());
+					}
+				}
+			}
+		}
+
+		byte[] response = response(message, version, communityTlv, reqId, errorStatus, errorIndex,
+				errorStatus == 0 ? varbinds.toByteArray() : requestVarbinds(message, varbindList));
+		if (response.length > maxResponseSize) {
+			response = response(message, version, communityTlv, reqId, TOO_BIG, 0,
+					requestVarbinds(message, varbindList));
+		}
+		return response;
+	}
+
+	private static byte[] response(byte[] message, int[] version, int[] community, int[] reqId, int errorStatus,
+			int errorIndex, byte[] varbinds) {
+		return tlv(0x30, copy(message, version), copy(message, community),
+				tlv(RESPONSE, copy(message, reqId), integer(errorStatus), integer(errorIndex), tlv(0x30, varbinds)));
+	}
+
+	private static byte[] requestVarbinds(byte[] message, int[] varbindList) {
+		final byte[] varbinds = new byte[varbindList[2]];
+		System.arraycopy(message, varbindList[1], varbinds, 0, varbinds.length);
+		return varbinds;
+	}
+
+	private static byte[] varbind(int[] oid, byte[] value) {
+		return tlv(0x30, encodeOid(oid), value);
+	}
+
+	private static void write(ByteArrayOutputStream out, byte[] bytes) {
+		out.write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Returns the TLV at offset, tag included.
+	 */
+	private static byte[] copy(byte[] b, int[] tlv) {
+		final int start = tlv[3];
+		final byte[] copy = new byte[next(tlv) - start];
+		System.arraycopy(b, start, copy, 0, copy.length);
+		return copy;
+	}
+
+	/**
+	 * Returns the tag, value offset, value length and offset of the TLV at offset.
+	 */
+	private static int[] tlv(byte[] b, int offset) {
+		final int tag = b[offset] & 0xff;
+		int length = b[offset + 1] & 0xff;
+		int value = offset + 2;
+		if (length > 0x80) {
+			final int n = length & 0x7f;
+			length = 0;
+			for (int i = 0; i < n; i++) {
+				length = (length << 8) | (b[value++] & 0xff);
+			}
+		}
+		return new int[] { tag, value, length, offset };
+	}
+
+	private static int next(int[] tlv) {
+		return tlv[1] + tlv[2];
+	}
+
+	private static int intValue(byte[] b, int[] tlv) {
+		final byte[] value = new byte[tlv[2]];
+		System.arraycopy(b, tlv[1], value, 0, value.length);
+		return new BigInteger(value).intValue();
+	}
+
+	private static byte[] integer(int value) {
+		return tlv(0x02, BigInteger.valueOf(value).toByteArray());
+	}
+
+	private static byte[] tlv(int tag, byte[]... parts) {
+		final ByteArrayOutputStream value = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			write(value, part);
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(tag);
+		final int length = value.size();
+		if (length < 0x80) {
+			out.write(length);
+		} else {
+			out.write(0x82);
+			out.write(length >> 8);
+			out.write(length);
+		}
+		write(out, value.toByteArray());
+		return out.toByteArray();
+	}
+
+	private static int[] parseOid(String oid) {
+		final String[] parts = oid.split("\\.");
+		final int[] result = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			result[i] = Integer.parseInt(parts[i]);
+		}
+		return result;
+	}
+
+	private static String toString(int[] oid) {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < oid.length; i++) {
+			if (i > 0) {
+				builder.append('.');
+			}
+			builder.append(oid[i]);
+		}
+		return builder.toString();
+	}
+
+	private static byte[] encodeOid(int[] oid) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(oid[0] * 40 + oid[1]);
+		for (int i = 2; i < oid.length; i++) {
+			int value = oid[i];
+			final byte[] bytes = new byte[5];
+			int n = 0;
+			do {
+				bytes[n++] = (byte) (value & 0x7f);
+				value >>>= 7;
+			} while (value != 0);
+			for (int j = n - 1; j >= 0; j--) {
+				out.write(bytes[j] | (j > 0 ? 0x80 : 0));
+			}
+		}
+		return tlv(0x06, out.toByteArray());
+	}
+
+	private static int[] decodeOid(byte[] b, int offset, int length) {
+		final List<Integer> parts = new ArrayList<>();
+		parts.add((b[offset] & 0xff) / 40);
+		parts.add((b[offset] & 0xff) % 40);
+		int value = 0;
+		for (int i = offset + 1; i < offset + length; i++) {
+			value = (value << 7) | (b[i] & 0x7f);
+			if ((b[i] & 0x80) == 0) {
+				parts.add(value);
+				value = 0;
+			}
+		}
+		final int[] oid = new int[parts.size()];
+		for (int i = 0; i < oid.length; i++) {
+			oid[i] = parts.get(i);
+		}
+		return oid;
+	}
+
+	private static int compare(int[] a, int[] b) {
+		for (int i = 0; i < Math.min(a.length, b.length); i++) {
+			if (a[i] != b[i]) {
+				return Integer.compare(a[i], b[i]);
+			}
+		}
+		return Integer.compare(a.length, b.length);
+	}
+}
@@ -0,0 +1,109 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ISnmpClientTest {
+
+	/**
+	 * A client that only implements the abstract methods of the interface
+	 */
+	private static class MinimalClient implements ISnmpClient {
+
+		@Override
+		public String get(String oid) throws Exception {
+			if (oid.endsWith(".1")) {
+				return "one";
+			}
+			throw new Exception("(no-such-oid)");
+		}
+
+		@Override
+		public String getNext(String oid) {
+			return null;
+		}
+
+		@Override
+		public List<List<String>> table(String rootOID, String[] selectColumns) {
+			return new ArrayList<>();
+		}
+
+		@Override
+		public String walk(String oid) {
+			return "1.3.6.1.2.1.1.1.0\tASN_OCTET_STR\tLinux host\nversion 5\n"
+					+ "1.3.6.1.2.1.1.2.0\tASN_OBJECT_ID\t1.3.6.1.4.1.8072.3.2.10\n"
+					+ "1.3.6.1.2.1.1.3.0\tASN_TIMETICKS\t123456";
+		}
+
+		@Override
+		public void freeResources() {
+			// Nothing to free
+		}
+	}
+
+	@Test
+	void testDefaultGetList() throws Exception {
+		assertEquals(Arrays.asList("one", null, "one"),
+				new MinimalClient().get(Arrays.asList("1.3.6.1.1", "1.3.6.1.2", "1.3.6.2.1")));
+	}
+
+	@Test
+	void testDefaultWalkWithVisitor() throws Exception {
+		final List<SnmpResult> results = new ArrayList<>();
+		new MinimalClient().walk("1.3.6.1.2.1.1", results::add);
+		assertEquals(3, results.size());
+		assertEquals("1.3.6.1.2.1.1.1.0", results.get(0).oid);
+		assertEquals("ASN_OCTET_STR", results.get(0).type);
+		assertEquals("Linux host\nversion 5", results.get(0).value);
+		assertEquals("1.3.6.1.2.1.1.3.0", results.get(2).oid);
+		assertEquals("123456", results.get(2).value);
+	}
+
+	@Test
+	void testDefaultWalkOfSeveralOidsStops() throws Exception {
+		final List<String> visited = new ArrayList<>();
+		new MinimalClient().walk(Arrays.asList("1.3.6.1.2.1.1", "1.3.6.1.2.1.2"),
+				result -> visited.add(result.oid) && visited.size() < 4);
+		assertEquals(4, visited.size());
+		assertEquals("1.3.6.1.2.1.1.1.0", visited.get(3));
+	}
+
+	@Test
+	void testDefaultWalkOfNothing() throws Exception {
+		final List<SnmpResult> results = new ArrayList<>();
+		new MinimalClient() {
+			@Override
+			public String walk(String oid) {
+				return "";
+			}
+		}.walk(Arrays.asList("1.3.6.1.2.1.1"), results::add);
+		assertTrue(results.isEmpty());
+	}
+}
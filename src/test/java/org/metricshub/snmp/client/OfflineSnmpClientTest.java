@@ -29,6 +29,8 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -93,6 +95,15 @@ class OfflineSnmpClientTest {
 		assertEquals("(no-such-oid)", exception.getMessage());
 	}
 
+	@Test
+	void testGetMultipleOids() throws Exception {
+		final List<String> values = client.get(Arrays.asList(
+				"1.3.6.1.2.1.2.2.1.2.6",
+				"1.3.6.1.999.1",
+				".1.3.6.1.2.1.2.2.1.1.1"));
+		assertEquals(Arrays.asList("bond0", null, "1"), values);
+	}
+
 	@Test
 	void testGetNextFromFirstFile() {
 		final String next = client.getNext("1.3.6.1.2.1.2.2.1.1.1");
@@ -109,6 +120,16 @@ class OfflineSnmpClientTest {
 		assertFalse(walk.contains("bond0")); // bond0 is under .2, not .1
 	}
 
+	@Test
+	void testWalkWithVisitor() throws Exception {
+		final List<String> oids = new ArrayList<>();
+		client.walk("1.3.6.1.2.1.2.2.1", result -> {
+			oids.add(result.oid);
+			return oids.size() < 3;
+		});
+		assertEquals(Arrays.asList("1.3.6.1.2.1.2.2.1.1.1", "1.3.6.1.2.1.2.2.1.1.6", "1.3.6.1.2.1.2.2.1.2.1"), oids);
+	}
+
 	@Test
 	void testTableFromFirstFile() {
 		final List<List<String>> rows = client.table("1.3.6.1.2.1.2.2.1", new String[]{"1", "2", "ID"});
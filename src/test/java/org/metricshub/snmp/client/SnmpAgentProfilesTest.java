@@ -0,0 +1,166 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnmpAgentProfilesTest {
+
+	private static final String IF_DESCR = "1.3.6.1.2.1.2.2.1.2";
+
+	private FakeSnmpAgent agent;
+	private final List<SnmpClient> clients = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() throws IOException {
+		agent = new FakeSnmpAgent("public");
+		for (int i = 1; i <= 20; i++) {
+			agent.put(IF_DESCR + "." + i, "eth" + i);
+		}
+	}
+
+	@AfterEach
+	void tearDown() {
+		clients.forEach(SnmpClient::freeResources);
+		agent.close();
+	}
+
+	private SnmpClient createClient() throws IOException {
+		SnmpClient client = new SnmpClient("127.0.0.1", agent.getPort(), SnmpClient.SNMP_V2C, new int[] { 200, 200 },
+				"public", null, null, null, null, null, null, null);
+		clients.add(client);
+		return client;
+	}
+
+	@Test
+	void testNotSharedByDefault() throws Exception {
+		agent.setBulkSupported(false);
+		SnmpClient first = createClient();
+		first.walk(IF_DESCR);
+		assertFalse(first.getAgentProfile().isBulkSupported());
+		assertTrue(createClient().getAgentProfile().isBulkSupported());
+		assertEquals(0, SnmpAgentProfiles.getShared().size());
+	}
+
+	@Test
+	void testSharedWhenSet() throws Exception {
+		agent.setBulkSupported(false);
+		SnmpAgentProfiles profiles = new SnmpAgentProfiles();
+		SnmpClient first = createClient();
+		first.setAgentProfiles(profiles);
+		first.walk(IF_DESCR);
+
+		SnmpClient second = createClient();
+		second.setAgentProfiles(profiles);
+		assertSame(first.getAgentProfile(), second.getAgentProfile());
+		assertFalse(second.getAgentProfile().isBulkSupported());
+		assertEquals(1, profiles.size());
+	}
+
+	@Test
+	void testBulkProbedAgain() throws Exception {
+		SnmpAgentProfiles profiles = new SnmpAgentProfiles(3600000, 200, TimeUnit.MILLISECONDS);
+		SnmpClient client = createClient();
+		client.setAgentProfiles(profiles);
+
+		// A transient failure of GETBULK
+		agent.setBulkSupported(false);
+		client.walk(IF_DESCR);
+		assertFalse(client.getAgentProfile().isBulkSupported());
+
+		agent.setBulkSupported(true);
+		int bulkRequests = agent.getRequestCount(FakeSnmpAgent.GETBULK);
+		client.walk(IF_DESCR);
+		assertEquals(bulkRequests, agent.getRequestCount(FakeSnmpAgent.GETBULK));
+
+		Thread.sleep(300);
+		assertEquals(20, client.walk(IF_DESCR).split("\n").length);
+		assertTrue(agent.getRequestCount(FakeSnmpAgent.GETBULK) > bulkRequests);
+		assertTrue(client.getAgentProfile().isBulkSupported());
+	}
+
+	@Test
+	void testIdleProfilesEvicted() throws Exception {
+		SnmpAgentProfiles profiles = new SnmpAgentProfiles(100, 1000, TimeUnit.MILLISECONDS);
+		SnmpAgentProfile idle = profiles.getProfile("host1", 161, SnmpClient.SNMP_V2C);
+		Thread.sleep(60);
+		SnmpAgentProfile used = profiles.getProfile("host2", 161, SnmpClient.SNMP_V2C);
+		Thread.sleep(60);
+		assertSame(used, profiles.getProfile("host2", 161, SnmpClient.SNMP_V2C));
+		assertEquals(1, profiles.size());
+		assertNotSame(idle, profiles.getProfile("host1", 161, SnmpClient.SNMP_V2C));
+
+		Thread.sleep(150);
+		assertEquals(2, profiles.evictIdle());
+		assertEquals(0, profiles.size());
+	}
+
+	@Test
+	void testSaveAndLoad() throws Exception {
+		File file = File.createTempFile("snmp-profiles", ".properties");
+		try {
+			SnmpAgentProfiles profiles = new SnmpAgentProfiles();
+			SnmpAgentProfile profile = profiles.getProfile("host1", 161, SnmpClient.SNMP_V2C);
+			profile.setBulkSupported(false);
+			profile.limitGetMaxOids(20);
+			profiles.save(file);
+
+			SnmpAgentProfiles loaded = new SnmpAgentProfiles();
+			loaded.load(file);
+			SnmpAgentProfile loadedProfile = loaded.getProfile("host1", 161, SnmpClient.SNMP_V2C);
+			assertFalse(loadedProfile.isBulkSupported());
+			assertEquals(19, loadedProfile.getGetMaxOids());
+
+			// GETBULK probed again when the time saved is over
+			Properties properties = new Properties();
+			properties.setProperty("host1:161:v2.bulkSupported", "false");
+			properties.setProperty("host1:161:v2.bulkReprobeTime", Long.toString(System.currentTimeMillis() - 1));
+			try (OutputStream out = new FileOutputStream(file)) {
+				properties.store(out, null);
+			}
+			loaded.load(file);
+			assertTrue(loaded.getProfile("host1", 161, SnmpClient.SNMP_V2C).isBulkSupported());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	void testInvalidSettings() {
+		assertThrows(IllegalArgumentException.class, () -> new SnmpAgentProfiles(0, 1, TimeUnit.HOURS));
+		assertThrows(IllegalArgumentException.class, () -> new SnmpAgentProfiles(1, 0, TimeUnit.HOURS));
+	}
+}
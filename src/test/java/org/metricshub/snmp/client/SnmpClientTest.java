@@ -0,0 +1,394 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.westhawk.snmp.stack.SnmpConstants;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnmpClientTest {
+
+	private static final String IF_DESCR = "1.3.6.1.2.1.2.2.1.2";
+	// A table at the end of the MIB of the agent
+	private static final String LAST_TABLE = "1.3.6.1.4.1.9999.1.1";
+
+	private FakeSnmpAgent agent;
+	private SnmpClient client;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		agent = new FakeSnmpAgent("public");
+		for (int i = 1; i <= 100; i++) {
+			agent.put(IF_DESCR + "." + i, "GigabitEthernet0/" + i + " uplink to the core switch");
+		}
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (client != null) {
+			client.freeResources();
+		}
+		agent.close();
+	}
+
+	private SnmpClient createClient(int version, String community) throws IOException {
+		client = new SnmpClient("127.0.0.1", agent.getPort(), version, new int[] { 200, 200 }, community, null,
+				null, null, null, null, null, null);
+		return client;
+	}
+
+	@Test
+	void testWalk() throws Exception {
+		final String result = createClient(SnmpClient.SNMP_V2C, "public").walk(IF_DESCR);
+		assertEquals(100, result.split("\n").length);
+		assertTrue(result.startsWith(IF_DESCR + ".1\tASN_OCTET_STR\tGigabitEthernet0/1 uplink"));
+	}
+
+	@Test
+	void testWalkWithWrongCommunityThrows() throws Exception {
+		createClient(SnmpClient.SNMP_V2C, "private");
+		assertThrows(Exception.class, () -> client.walk(IF_DESCR));
+	}
+
+	@Test
+	void testWalkAsksForLessOnTooBig() throws Exception {
+		agent.setMaxResponseSize(1000);
+		final String result = createClient(SnmpClient.SNMP_V2C, "public").walk(IF_DESCR);
+		assertEquals(100, result.split("\n").length);
+		assertTrue(client.getAgentProfile().getBulkMaxVarbinds() * 60 <= 1000);
+	}
+
+	@Test
+	void testWalkWithoutBulkSupport() throws Exception {
+		agent.setBulkSupported(false);
+		final String result = createClient(SnmpClient.SNMP_V2C, "public").walk(IF_DESCR);
+		assertEquals(100, result.split("\n").length);
+		assertTrue(agent.getRequestCount(FakeSnmpAgent.GETNEXT) > 0);
+		assertFalse(client.getAgentProfile().isBulkSupported());
+	}
+
+	private static List<String> ifDescrOids(int count) {
+		final List<String> oids = new ArrayList<>();
+		for (int i = 1; i <= count; i++) {
+			oids.add(IF_DESCR + "." + i);
+		}
+		return oids;
+	}
+
+	@Test
+	void testGetVarbindReadsCountersAsPrimitives() throws Exception {
+		agent.putCounter32("1.3.6.1.2.1.2.2.1.10.1", 4294967295L);
+		agent.putCounter64("1.3.6.1.2.1.31.1.1.1.6.1", -2L);
+		createClient(SnmpClient.SNMP_V2C, "public");
+
+		final SnmpVarbind counter32 = client.getVarbind("1.3.6.1.2.1.2.2.1.10.1");
+		assertEquals(SnmpConstants.COUNTER, counter32.getType());
+		assertTrue(counter32.isNumeric());
+		assertEquals(4294967295L, counter32.getLong());
+		assertEquals("1.3.6.1.2.1.2.2.1.10.1", counter32.getOid().toString());
+
+		final SnmpVarbind counter64 = client.getVarbind("1.3.6.1.2.1.31.1.1.1.6.1");
+		assertEquals(SnmpConstants.COUNTER64, counter64.getType());
+		assertTrue(counter64.isNumeric());
+		assertEquals(-2L, counter64.getLong());
+		final SnmpResult result = counter64.toSnmpResult();
+		assertEquals("COUNTER64", result.type);
+		assertEquals("18446744073709551614", result.value);
+		assertEquals(client.get("1.3.6.1.2.1.31.1.1.1.6.1"), result.value);
+		assertThrows(IllegalStateException.class, counter64::getBytes);
+	}
+
+	@Test
+	void testGetVarbindReadsOctetStringsAsBytes() throws Exception {
+		agent.put("1.3.6.1.2.1.2.2.1.6.1", new byte[] { 0x00, 0x1b, (byte) 0xfe, 0x01, 0x02, 0x03 });
+		createClient(SnmpClient.SNMP_V2C, "public");
+
+		final SnmpVarbind mac = client.getVarbind("1.3.6.1.2.1.2.2.1.6.1");
+		assertEquals(SnmpConstants.ASN_OCTET_STR, mac.getType());
+		assertFalse(mac.isNumeric());
+		assertFalse(mac.isNull());
+		assertArrayEquals(new byte[] { 0x00, 0x1b, (byte) 0xfe, 0x01, 0x02, 0x03 }, mac.getBytes());
+		assertThrows(IllegalStateException.class, mac::getLong);
+		assertEquals(client.get("1.3.6.1.2.1.2.2.1.6.1"), mac.toSnmpResult().value);
+
+		final SnmpVarbind descr = client.getVarbind(IF_DESCR + ".1");
+		assertEquals("GigabitEthernet0/1 uplink to the core switch", new String(descr.getBytes(), "UTF-8"));
+		assertEquals("ASN_OCTET_STR", descr.toSnmpResult().type);
+	}
+
+	@Test
+	void testGetVarbindOfAMissingOidThrows() throws Exception {
+		assertThrows(Exception.class, () -> createClient(SnmpClient.SNMP_V2C, "public").getVarbind(IF_DESCR + ".1000"));
+	}
+
+	@Test
+	void testGetVarbindsMissingOidsAreNull() throws Exception {
+		agent.putCounter32("1.3.6.1.2.1.2.2.1.10.1", 1234);
+		for (int version : new int[] { SnmpClient.SNMP_V1, SnmpClient.SNMP_V2C }) {
+			final List<SnmpVarbind> varbinds = createClient(version, "public").getVarbinds(
+					Arrays.asList(IF_DESCR + ".1000", "1.3.6.1.2.1.2.2.1.10.1", IF_DESCR + ".2", IF_DESCR + ".2000"));
+			assertEquals(4, varbinds.size());
+			assertNull(varbinds.get(0));
+			assertEquals(1234, varbinds.get(1).getLong());
+			assertEquals(IF_DESCR + ".2", varbinds.get(2).getOid().toString());
+			assertNull(varbinds.get(3));
+			client.freeResources();
+		}
+	}
+
+	@Test
+	void testWalkVarbinds() throws Exception {
+		for (int i = 1; i <= 5; i++) {
+			agent.putCounter64("1.3.6.1.2.1.31.1.1.1.6." + i, Long.MAX_VALUE + i);
+		}
+		final List<SnmpVarbind> varbinds = new ArrayList<>();
+		createClient(SnmpClient.SNMP_V2C, "public").walkVarbinds(
+				Arrays.asList("1.3.6.1.2.1.31.1.1.1.6", IF_DESCR), varbinds::add);
+		assertEquals(105, varbinds.size());
+		final List<Long> counters = new ArrayList<>();
+		for (SnmpVarbind varbind : varbinds) {
+			if (varbind.isNumeric()) {
+				assertEquals(SnmpConstants.COUNTER64, varbind.getType());
+				counters.add(varbind.getLong());
+			}
+		}
+		assertEquals(Arrays.asList(Long.MIN_VALUE, Long.MIN_VALUE + 1, Long.MIN_VALUE + 2, Long.MIN_VALUE + 3,
+				Long.MIN_VALUE + 4), counters);
+	}
+
+	@Test
+	void testGetPacksOids() throws Exception {
+		final List<String> values = createClient(SnmpClient.SNMP_V2C, "public").get(ifDescrOids(50));
+		assertEquals(50, values.size());
+		for (int i = 0; i < 50; i++) {
+			assertEquals("GigabitEthernet0/" + (i + 1) + " uplink to the core switch", values.get(i));
+		}
+		assertTrue(agent.getRequestCount(FakeSnmpAgent.GET) < 50);
+	}
+
+	@Test
+	void testGetSplitsOnTooBig() throws Exception {
+		agent.setMaxGetVarbinds(10);
+		final List<String> values = createClient(SnmpClient.SNMP_V2C, "public").get(ifDescrOids(50));
+		for (int i = 0; i < 50; i++) {
+			assertEquals("GigabitEthernet0/" + (i + 1) + " uplink to the core switch", values.get(i));
+		}
+		assertTrue(client.getAgentProfile().getGetMaxOids() <= 10);
+
+		// The next requests get fewer OIDs right away
+		final int requestCount = agent.getRequests().size();
+		client.get(ifDescrOids(50));
+		for (int[] request : agent.getRequests().subList(requestCount, agent.getRequests().size())) {
+			assertTrue(request[1] <= 10);
+		}
+	}
+
+	@Test
+	void testGetMissingOidsV1() throws Exception {
+		final List<String> values = createClient(SnmpClient.SNMP_V1, "public")
+				.get(Arrays.asList(IF_DESCR + ".1", IF_DESCR + ".1000", IF_DESCR + ".2", IF_DESCR + ".2000"));
+		assertEquals(Arrays.asList("GigabitEthernet0/1 uplink to the core switch", null,
+				"GigabitEthernet0/2 uplink to the core switch", null), values);
+	}
+
+	@Test
+	void testGetMissingOidsV2c() throws Exception {
+		final List<String> values = createClient(SnmpClient.SNMP_V2C, "public")
+				.get(Arrays.asList(IF_DESCR + ".1000", IF_DESCR + ".2"));
+		assertEquals(Arrays.asList(null, "GigabitEthernet0/2 uplink to the core switch"), values);
+	}
+
+	@Test
+	void testGetTimeoutThrows() throws Exception {
+		agent.setSilent(true);
+		createClient(SnmpClient.SNMP_V2C, "public");
+		assertThrows(Exception.class, () -> client.get(ifDescrOids(3)));
+	}
+
+	@Test
+	void testGetGenErrThrows() throws Exception {
+		agent.addGenErrOid(IF_DESCR + ".2");
+		createClient(SnmpClient.SNMP_V2C, "public");
+		assertThrows(Exception.class, () -> client.get(ifDescrOids(3)));
+	}
+
+	@Test
+	void testWalkCancelsOtherTreesWhenVisitorStops() throws Exception {
+		agent.addSilentOid("1.3.6.1.2.1.1");
+		createClient(SnmpClient.SNMP_V2C, "public");
+		final List<String> visited = new ArrayList<>();
+		client.walk(Arrays.asList(IF_DESCR, "1.3.6.1.2.1.1"), result -> visited.add(result.oid) && false);
+		assertEquals(1, visited.size());
+
+		// The request of the other tree is neither sent again nor kept in flight
+		Thread.sleep(300);
+		assertEquals(0, client.getCongestionControl().getInFlight());
+		assertTrue(agent.getRequestCount(FakeSnmpAgent.GETBULK) <= 2);
+	}
+
+	@Test
+	void testWalkCancelsOtherTreesWhenVisitorThrows() throws Exception {
+		agent.addSilentOid("1.3.6.1.2.1.1");
+		createClient(SnmpClient.SNMP_V2C, "public");
+		assertThrows(IllegalStateException.class, () -> client.walk(Arrays.asList(IF_DESCR, "1.3.6.1.2.1.1"), result -> {
+			throw new IllegalStateException();
+		}));
+		Thread.sleep(300);
+		assertEquals(0, client.getCongestionControl().getInFlight());
+		assertTrue(agent.getRequestCount(FakeSnmpAgent.GETBULK) <= 2);
+	}
+
+	@Test
+	void testWalkThrowsWhenTheFirstRequestOfATreeFails() throws Exception {
+		agent.addSilentOid("1.3.6.1.2.1.1");
+		createClient(SnmpClient.SNMP_V2C, "public");
+		final List<String> visited = new ArrayList<>();
+		assertThrows(Exception.class, () -> client.walk(Arrays.asList(IF_DESCR, "1.3.6.1.2.1.1"), result -> visited.add(result.oid)));
+		assertFalse(visited.isEmpty());
+	}
+
+	@Test
+	void testGetTruncatedAtTheDeadline() throws Exception {
+		// The first request is split in flight, and the deadline hits before the end
+		agent.setMaxGetVarbinds(5);
+		agent.setLatency(100);
+		createClient(SnmpClient.SNMP_V2C, "public").setOperationTimeout(450, TimeUnit.MILLISECONDS);
+		final List<String> values = client.get(ifDescrOids(20));
+		assertTrue(client.isTruncated());
+		assertEquals("GigabitEthernet0/1 uplink to the core switch", values.get(0));
+		assertNull(values.get(19));
+	}
+
+	@Test
+	void testGetNotTruncatedWithinTheDeadline() throws Exception {
+		createClient(SnmpClient.SNMP_V2C, "public").setOperationTimeout(5, TimeUnit.SECONDS);
+		client.get(ifDescrOids(20));
+		assertFalse(client.isTruncated());
+	}
+
+	@Test
+	void testWalkTruncatedWhenATreeIsInFlightAtTheDeadline() throws Exception {
+		agent.addSilentOid("1.3.6.1.2.1.1");
+		createClient(SnmpClient.SNMP_V2C, "public").setOperationTimeout(300, TimeUnit.MILLISECONDS);
+		final List<String> visited = new ArrayList<>();
+		client.walk(Arrays.asList(IF_DESCR, "1.3.6.1.2.1.1"), result -> visited.add(result.oid));
+		assertFalse(visited.isEmpty());
+		assertTrue(client.isTruncated());
+	}
+
+	@Test
+	void testTableTruncatedAtTheDeadline() throws Exception {
+		agent.setLatency(100);
+		agent.setMaxResponseSize(500);
+		createClient(SnmpClient.SNMP_V2C, "public").setOperationTimeout(350, TimeUnit.MILLISECONDS);
+		final List<List<String>> table = client.table("1.3.6.1.2.1.2.2.1", new String[] { "2" });
+		assertTrue(client.isTruncated());
+		assertFalse(table.isEmpty());
+		assertTrue(table.size() < 100);
+	}
+
+	/**
+	 * Column 1 has rows 1 to 5, column 2 has rows 1 to 5 and column 3 has rows
+	 * 2, 4 and 6.
+	 */
+	private void putLastTable() {
+		for (int i = 1; i <= 5; i++) {
+			agent.put(LAST_TABLE + ".1." + i, "id" + i);
+			agent.put(LAST_TABLE + ".2." + i, "name" + i);
+		}
+		for (int i = 2; i <= 6; i += 2) {
+			agent.put(LAST_TABLE + ".3." + i, "status" + i);
+		}
+	}
+
+	private static List<String> row(String... cells) {
+		return Arrays.asList(cells);
+	}
+
+	@Test
+	void testTableInterleavesColumns() throws Exception {
+		putLastTable();
+		final List<List<String>> table = createClient(SnmpClient.SNMP_V2C, "public").table(LAST_TABLE,
+				new String[] { "2", "1", "2" });
+		assertEquals(Arrays.asList(row("name1", "id1", "name1"), row("name2", "id2", "name2"),
+				row("name3", "id3", "name3"), row("name4", "id4", "name4"), row("name5", "id5", "name5")), table);
+
+		// Both columns (once each) in each request, far fewer requests than cells
+		final List<int[]> requests = agent.getRequests();
+		assertEquals(FakeSnmpAgent.GETBULK, requests.get(0)[0]);
+		assertEquals(2, requests.get(0)[1]);
+		assertTrue(requests.size() < 5);
+	}
+
+	@Test
+	void testWalkV1ToTheEndOfTheMibIsNotTruncated() throws Exception {
+		putLastTable();
+		final List<String> visited = new ArrayList<>();
+		createClient(SnmpClient.SNMP_V1, "public").walk(Arrays.asList(IF_DESCR, LAST_TABLE + ".3"),
+				result -> visited.add(result.oid));
+		assertEquals(103, visited.size());
+		assertTrue(visited.contains(LAST_TABLE + ".3.6"));
+		assertFalse(client.isTruncated());
+	}
+
+	@Test
+	void testTableSparseColumns() throws Exception {
+		putLastTable();
+		final List<List<String>> table = createClient(SnmpClient.SNMP_V2C, "public").table(LAST_TABLE,
+				new String[] { "2", "3" });
+		assertEquals(Arrays.asList(row("name1", ""), row("name2", "status2"), row("name3", ""),
+				row("name4", "status4"), row("name5", ""), row("", "status6")), table);
+		assertFalse(client.isTruncated());
+	}
+
+	@Test
+	void testTableRowsOfTheFirstColumnWithId() throws Exception {
+		putLastTable();
+		final List<List<String>> table = createClient(SnmpClient.SNMP_V2C, "public").table(LAST_TABLE,
+				new String[] { "ID", "3" });
+		assertEquals(Arrays.asList(row("1", ""), row("2", "status2"), row("3", ""), row("4", "status4"),
+				row("5", "")), table);
+	}
+
+	@Test
+	void testTableV1ColumnsAtTheEndOfTheMib() throws Exception {
+		putLastTable();
+		createClient(SnmpClient.SNMP_V1, "public");
+		assertEquals(Arrays.asList(row("1", ""), row("2", "status2"), row("3", ""), row("4", "status4"),
+				row("5", "")), client.table(LAST_TABLE, new String[] { "ID", "3" }));
+		assertEquals(Arrays.asList(row("name1", ""), row("name2", "status2"), row("name3", ""),
+				row("name4", "status4"), row("name5", ""), row("", "status6")),
+				client.table(LAST_TABLE, new String[] { "2", "3" }));
+		assertFalse(client.isTruncated());
+	}
+}
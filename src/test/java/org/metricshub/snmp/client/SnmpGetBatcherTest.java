@@ -0,0 +1,172 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnmpGetBatcherTest {
+
+	private static final String IF_DESCR = "1.3.6.1.2.1.2.2.1.2";
+
+	private FakeSnmpAgent agent;
+	private final List<SnmpClient> clients = new ArrayList<>();
+	private SnmpGetBatcher batcher;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		agent = new FakeSnmpAgent("public");
+		for (int i = 1; i <= 20; i++) {
+			agent.put(IF_DESCR + "." + i, "eth" + i);
+		}
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (batcher != null) {
+			batcher.close();
+		}
+		clients.forEach(SnmpClient::freeResources);
+		agent.close();
+	}
+
+	private SnmpClient createClient() throws IOException {
+		SnmpClient client = new SnmpClient("127.0.0.1", agent.getPort(), SnmpClient.SNMP_V2C, new int[] { 200, 200 },
+				"public", null, null, null, null, null, null, null);
+		clients.add(client);
+		return client;
+	}
+
+	private static String get(CompletableFuture<String> future) throws Exception {
+		try {
+			return future.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			throw (Exception) e.getCause();
+		}
+	}
+
+	@Test
+	void testBatch() throws Exception {
+		batcher = new SnmpGetBatcher(createClient(), 50, TimeUnit.MILLISECONDS);
+		List<CompletableFuture<String>> futures = new ArrayList<>();
+		for (int i = 1; i <= 10; i++) {
+			futures.add(batcher.getAsync("." + IF_DESCR + "." + i));
+		}
+		CompletableFuture<String> missing = batcher.getAsync(IF_DESCR + ".99");
+		CompletableFuture<String> again = batcher.getAsync(IF_DESCR + ".1");
+		for (int i = 1; i <= 10; i++) {
+			assertEquals("eth" + i, get(futures.get(i - 1)));
+		}
+		assertNull(get(missing));
+		assertEquals("eth1", get(again));
+		assertEquals(12, batcher.getRequests());
+		assertEquals(1, batcher.getBatches());
+		assertEquals(1, agent.getRequestCount(FakeSnmpAgent.GET));
+	}
+
+	@Test
+	void testTimeoutFailsTheCallers() throws Exception {
+		batcher = new SnmpGetBatcher(createClient(), 10, TimeUnit.MILLISECONDS);
+		agent.setSilent(true);
+		CompletableFuture<String> first = batcher.getAsync(IF_DESCR + ".1");
+		CompletableFuture<String> second = batcher.getAsync(IF_DESCR + ".2");
+		assertThrows(Exception.class, () -> get(first));
+		assertThrows(Exception.class, () -> get(second));
+	}
+
+	@Test
+	void testOidsNotReadBeforeTheDeadlineFail() throws Exception {
+		// The batch is split in flight, and the deadline hits before the end
+		agent.setMaxGetVarbinds(5);
+		agent.setLatency(100);
+		SnmpClient client = createClient();
+		client.setOperationTimeout(450, TimeUnit.MILLISECONDS);
+		batcher = new SnmpGetBatcher(client, 10, TimeUnit.MILLISECONDS);
+		List<CompletableFuture<String>> futures = new ArrayList<>();
+		for (int i = 1; i <= 20; i++) {
+			futures.add(batcher.getAsync(IF_DESCR + "." + i));
+		}
+		assertEquals("eth1", get(futures.get(0)));
+		assertThrows(TimeoutException.class, () -> get(futures.get(19)));
+	}
+
+	@Test
+	void testGenErrRetriedOneByOne() throws Exception {
+		agent.addGenErrOid(IF_DESCR + ".2");
+		batcher = new SnmpGetBatcher(createClient(), 10, TimeUnit.MILLISECONDS);
+		CompletableFuture<String> first = batcher.getAsync(IF_DESCR + ".1");
+		CompletableFuture<String> failing = batcher.getAsync(IF_DESCR + ".2");
+		CompletableFuture<String> third = batcher.getAsync(IF_DESCR + ".3");
+		assertEquals("eth1", get(first));
+		assertEquals("eth3", get(third));
+		assertThrows(Exception.class, () -> get(failing));
+		assertEquals(4, agent.getRequestCount(FakeSnmpAgent.GET));
+	}
+
+	@Test
+	void testBatchesSentConcurrently() throws Exception {
+		agent.addSilentOid(IF_DESCR + ".1");
+		batcher = new SnmpGetBatcher(Arrays.asList(createClient(), createClient()), 10, TimeUnit.MILLISECONDS);
+		CompletableFuture<String> unanswered = batcher.getAsync(IF_DESCR + ".1");
+		long deadline = System.currentTimeMillis() + 5000;
+		while (agent.getRequests().isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+
+		// Not held up by the batch in flight
+		CompletableFuture<String> next = batcher.getAsync(IF_DESCR + ".2");
+		assertEquals("eth2", next.get(300, TimeUnit.MILLISECONDS));
+		assertFalse(unanswered.isDone());
+		assertThrows(Exception.class, () -> get(unanswered));
+		assertEquals(2, batcher.getBatches());
+	}
+
+	@Test
+	void testClosed() throws Exception {
+		batcher = new SnmpGetBatcher(createClient(), 1, TimeUnit.HOURS);
+		CompletableFuture<String> pending = batcher.getAsync(IF_DESCR + ".1");
+		batcher.close();
+		assertEquals("eth1", get(pending));
+		assertThrows(IllegalStateException.class, () -> batcher.getAsync(IF_DESCR + ".2"));
+	}
+
+	@Test
+	void testInvalidSettings() {
+		assertThrows(IllegalArgumentException.class,
+				() -> new SnmpGetBatcher(new ArrayList<>(), 10, TimeUnit.MILLISECONDS));
+		assertThrows(IllegalArgumentException.class,
+				() -> new SnmpGetBatcher((SnmpClient) null, 10, TimeUnit.MILLISECONDS));
+	}
+}
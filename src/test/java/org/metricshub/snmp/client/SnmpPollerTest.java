@@ -0,0 +1,240 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnmpPollerTest {
+
+	private static final List<String> OIDS = Collections.singletonList("1.3.6.1.2.1.1.3.0");
+
+	/**
+	 * Answers the GETs after a delay, and counts the ones in progress
+	 */
+	private static class SlowClient implements ISnmpClient {
+		private final long delay;
+		private final AtomicInteger active;
+		private final AtomicInteger maxActive;
+		private volatile boolean freed;
+
+		private SlowClient(long delay, AtomicInteger active, AtomicInteger maxActive) {
+			this.delay = delay;
+			this.active = active;
+			this.maxActive = maxActive;
+		}
+
+		@Override
+		public String get(String oid) throws Exception {
+			return get(Collections.singletonList(oid)).get(0);
+		}
+
+		@Override
+		public List<String> get(List<String> oids) throws Exception {
+			maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(delay);
+			} finally {
+				active.decrementAndGet();
+			}
+			return Collections.nCopies(oids.size(), "42");
+		}
+
+		@Override
+		public String getNext(String oid) {
+			return null;
+		}
+
+		@Override
+		public List<List<String>> table(String rootOID, String[] selectColumns) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public String walk(String oid) {
+			return "";
+		}
+
+		@Override
+		public void walk(String oid, SnmpWalkVisitor visitor) {
+		}
+
+		@Override
+		public void walk(List<String> oids, SnmpWalkVisitor visitor) {
+		}
+
+		@Override
+		public void freeResources() {
+			freed = true;
+		}
+	}
+
+	/**
+	 * Records the calls, and whether any of them overlapped for the same job
+	 */
+	private static class RecordingSink implements SnmpPollSink {
+		private final AtomicInteger calls = new AtomicInteger();
+		private final AtomicInteger gets = new AtomicInteger();
+		private final AtomicInteger skipped = new AtomicInteger();
+		private final AtomicBoolean overlapped = new AtomicBoolean();
+		private final List<String> skipThreads = Collections.synchronizedList(new ArrayList<>());
+
+		private void call() {
+			if (calls.incrementAndGet() > 1) {
+				overlapped.set(true);
+			}
+			try {
+				Thread.sleep(2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			calls.decrementAndGet();
+		}
+
+		@Override
+		public void onGet(SnmpPollJob job, List<String> values) {
+			call();
+			gets.incrementAndGet();
+		}
+
+		@Override
+		public void onWalk(SnmpPollJob job, SnmpResult result) {
+			call();
+		}
+
+		@Override
+		public void onFailure(SnmpPollJob job, Exception exception) {
+			call();
+		}
+
+		@Override
+		public void onSkipped(SnmpPollJob job) {
+			call();
+			skipped.incrementAndGet();
+			skipThreads.add(Thread.currentThread().getName());
+		}
+	}
+
+	@Test
+	void testSkippedRunsAreReportedByTheRun() throws Exception {
+		RecordingSink sink = new RecordingSink();
+		SlowClient client = new SlowClient(100, new AtomicInteger(), new AtomicInteger());
+		try (SnmpPoller poller = new SnmpPoller(sink, 2, 1)) {
+			poller.setJitter(0);
+			poller.schedule(new SnmpPollJob("target", () -> client, OIDS, null, 10, TimeUnit.MILLISECONDS));
+			Thread.sleep(500);
+		}
+		assertTrue(sink.gets.get() > 0);
+		assertTrue(sink.skipped.get() > 0);
+		assertFalse(sink.overlapped.get());
+		for (String thread : sink.skipThreads) {
+			assertTrue(thread.startsWith("SnmpPoller-worker"), thread);
+		}
+	}
+
+	@Test
+	void testMaxInFlightPerTarget() throws Exception {
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger maxActive = new AtomicInteger();
+		try (SnmpPoller poller = new SnmpPoller(new RecordingSink(), 4, 1)) {
+			for (int i = 0; i < 4; i++) {
+				poller.schedule(new SnmpPollJob("target", () -> new SlowClient(20, active, maxActive), OIDS, null, 30,
+						TimeUnit.MILLISECONDS));
+			}
+			Thread.sleep(300);
+		}
+		assertEquals(1, maxActive.get());
+	}
+
+	@Test
+	void testCancelFreesTheClient() throws Exception {
+		SlowClient client = new SlowClient(50, new AtomicInteger(), new AtomicInteger());
+		RecordingSink sink = new RecordingSink();
+		try (SnmpPoller poller = new SnmpPoller(sink, 1, 1)) {
+			SnmpPollJob job = new SnmpPollJob("target", () -> client, OIDS, null, 10, TimeUnit.MILLISECONDS);
+			poller.schedule(job);
+			while (sink.gets.get() == 0) {
+				Thread.sleep(5);
+			}
+			assertTrue(poller.cancel(job));
+			assertFalse(poller.cancel(job));
+			Thread.sleep(100);
+			assertTrue(client.freed);
+			assertTrue(poller.getJobs().isEmpty());
+		}
+	}
+
+	@Test
+	void testCloseWhileRunning() throws Exception {
+		List<SlowClient> clients = Collections.synchronizedList(new ArrayList<>());
+		SnmpPoller poller = new SnmpPoller(new RecordingSink(), 2, 1);
+		for (int i = 0; i < 20; i++) {
+			poller.schedule(new SnmpPollJob("target" + (i % 3), () -> {
+				SlowClient client = new SlowClient(5, new AtomicInteger(), new AtomicInteger());
+				clients.add(client);
+				return client;
+			}, OIDS, null, 5, TimeUnit.MILLISECONDS));
+		}
+		Thread.sleep(100);
+		assertDoesNotThrow(poller::close);
+		assertEquals(0, poller.getInFlight());
+		assertFalse(clients.isEmpty());
+		for (SlowClient client : clients) {
+			assertTrue(client.freed);
+		}
+		assertThrows(IllegalStateException.class,
+				() -> poller.schedule(new SnmpPollJob("target", () -> null, OIDS, null, 5, TimeUnit.MILLISECONDS)));
+	}
+
+	@Test
+	void testJobsShareTheContextOfTheirSessionCache() throws Exception {
+		RecordingSink sink = new RecordingSink();
+		try (FakeSnmpAgent agent = new FakeSnmpAgent("public");
+				SnmpSessionCache sessions = new SnmpSessionCache(1, TimeUnit.MINUTES)) {
+			agent.put(OIDS.get(0), "42");
+			try (SnmpPoller poller = new SnmpPoller(sink, 4, 4)) {
+				for (int i = 0; i < 3; i++) {
+					poller.schedule(new SnmpPollJob("127.0.0.1:" + agent.getPort(), () -> createClient(agent, sessions),
+							OIDS, null, 20, TimeUnit.MILLISECONDS));
+				}
+				Thread.sleep(200);
+			}
+			assertTrue(sink.gets.get() >= 3);
+			assertEquals(1, sessions.size());
+		}
+	}
+
+	private static SnmpClient createClient(FakeSnmpAgent agent, SnmpSessionCache sessions) throws IOException {
+		return new SnmpClient("127.0.0.1", agent.getPort(), SnmpClient.SNMP_V2C, new int[] { 200, 200 }, "public",
+				null, null, null, null, null, null, null, sessions);
+	}
+}
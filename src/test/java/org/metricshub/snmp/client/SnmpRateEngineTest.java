@@ -0,0 +1,191 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.westhawk.snmp.stack.SnmpConstants;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnmpRateEngineTest {
+
+	private static final String IF_IN_OCTETS = "1.3.6.1.2.1.2.2.1.10.1";
+	private static final String IF_HC_IN_OCTETS = "1.3.6.1.2.1.31.1.1.1.6.1";
+
+	@Test
+	void testCounter32Rate() {
+		SnmpRateEngine engine = new SnmpRateEngine();
+		long key = engine.getKey("host1", IF_IN_OCTETS);
+		assertTrue(Double.isNaN(engine.update(key, SnmpConstants.COUNTER, 1000, 100)));
+		assertEquals(500.0, engine.update(key, SnmpConstants.COUNTER, 6000, 1100));
+		assertFalse(engine.isDiscontinuity(key));
+	}
+
+	@Test
+	void testCounter32Wrap() {
+		SnmpRateEngine engine = new SnmpRateEngine();
+		long key = engine.getKey("host1", IF_IN_OCTETS);
+		engine.update(key, SnmpConstants.COUNTER, 0xFFFFFF00L, 100);
+		assertEquals(102.4, engine.update(key, SnmpConstants.COUNTER, 0x100, 600));
+		assertFalse(engine.isDiscontinuity(key));
+	}
+
+	@Test
+	void testCounter64Unsigned() {
+		SnmpRateEngine engine = new SnmpRateEngine();
+		long key = engine.getKey("host1", IF_HC_IN_OCTETS);
+		engine.update(key, SnmpConstants.COUNTER64, Long.MAX_VALUE, 100);
+		assertEquals(101.0, engine.update(key, SnmpConstants.COUNTER64, Long.MAX_VALUE + 101, 200));
+	}
+
+	@Test
+	void testCounter64DecreaseIsDiscontinuity() {
+		SnmpRateEngine engine = new SnmpRateEngine();
+		long key = engine.getKey("host1", IF_HC_IN_OCTETS);
+		engine.update(key, SnmpConstants.COUNTER64, 1000000000000L, 100);
+
+		// sysUpTime moves forward: still a reset, not a wrap
+		assertTrue(Double.isNaN(engine.update(key, SnmpConstants.COUNTER64, 5, 3100)));
+		assertTrue(engine.isDiscontinuity(key));
+		assertEquals(10.0, engine.update(key, SnmpConstants.COUNTER64, 305, 6100));
+		assertFalse(engine.isDiscontinuity(key));
+
+		// Above Long.MAX_VALUE, compared as unsigned
+		engine.update(key, SnmpConstants.COUNTER64, -1L, 6200);
+		assertTrue(Double.isNaN(engine.update(key, SnmpConstants.COUNTER64, Long.MAX_VALUE, 6300)));
+		assertTrue(engine.isDiscontinuity(key));
+	}
+
+	@Test
+	void testAgentRestartIsDiscontinuity() {
+		SnmpRateEngine engine = new SnmpRateEngine();
+		long key = engine.getKey("host1", IF_IN_OCTETS);
+		engine.update(key, SnmpConstants.COUNTER, 5000000, 100000000);
+		assertTrue(Double.isNaN(engine.update(key, SnmpConstants.COUNTER, 100, 500)));
+		assertTrue(engine.isDiscontinuity(key));
+		assertEquals(10.0, engine.update(key, SnmpConstants.COUNTER, 1100, 10500));
+		assertFalse(engine.isDiscontinuity(key));
+	}
+
+	@Test
+	void testDecreaseWithSameUpTimeIsDiscontinuity() {
+		SnmpRateEngine engine = new SnmpRateEngine();
+		long key = engine.getKey("host1", IF_IN_OCTETS);
+		engine.update(key, SnmpConstants.COUNTER, 5000, 100);
+		assertTrue(Double.isNaN(engine.update(key, SnmpConstants.COUNTER, 1000, 100)));
+		assertTrue(engine.isDiscontinuity(key));
+	}
+
+	@Test
+	void testDecreaseWithLocalClockIsDiscontinuity() throws InterruptedException {
+		SnmpRateEngine engine = new SnmpRateEngine();
+		long key = engine.getKey("host1", IF_HC_IN_OCTETS);
+		engine.update(key, SnmpConstants.COUNTER64, 5000, -1);
+		Thread.sleep(10);
+		assertTrue(Double.isNaN(engine.update(key, SnmpConstants.COUNTER64, 1000, -1)));
+		assertTrue(engine.isDiscontinuity(key));
+		Thread.sleep(10);
+		double rate = engine.update(key, SnmpConstants.COUNTER64, 2000, -1);
+		assertTrue(rate > 0, "rate " + rate);
+		assertFalse(engine.isDiscontinuity(key));
+	}
+
+	@Test
+	void testNotACounter() {
+		SnmpRateEngine engine = new SnmpRateEngine();
+		long key = engine.getKey("host1", IF_IN_OCTETS);
+		assertThrows(IllegalArgumentException.class, () -> engine.update(key, SnmpConstants.GAUGE, 1, 100));
+	}
+
+	@Test
+	void testManyCounters() {
+		SnmpRateEngine engine = new SnmpRateEngine();
+		long[] keys = new long[1000];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = engine.getKey("host" + (i % 10), IF_IN_OCTETS + i);
+			engine.update(keys[i], SnmpConstants.COUNTER, i, 100);
+		}
+		assertEquals(1000, engine.size());
+		for (int i = 0; i < keys.length; i++) {
+			assertEquals((double) i, engine.update(keys[i], SnmpConstants.COUNTER, 2 * i, 200));
+		}
+	}
+
+	@Test
+	void testRemovePrunesInterned() {
+		SnmpRateEngine engine = new SnmpRateEngine();
+		long key1 = engine.getKey("host1", IF_IN_OCTETS);
+		long key2 = engine.getKey("host2", IF_IN_OCTETS);
+		engine.update(key1, SnmpConstants.COUNTER, 0, 100);
+		engine.update(key2, SnmpConstants.COUNTER, 0, 100);
+		assertEquals(3, engine.internedSize());
+
+		assertTrue(engine.remove(key1));
+		assertFalse(engine.remove(key1));
+		assertEquals(1, engine.size());
+		assertEquals(2, engine.internedSize());
+		assertEquals(1.0, engine.update(key2, SnmpConstants.COUNTER, 1, 200));
+
+		// A new key, which does not alias the removed one
+		long newKey = engine.getKey("host1", IF_IN_OCTETS);
+		assertNotEquals(key1, newKey);
+		assertNotEquals(key2, newKey);
+	}
+
+	@Test
+	void testEvictIdle() throws InterruptedException {
+		SnmpRateEngine engine = new SnmpRateEngine();
+		long[] keys = new long[200];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = engine.getKey("host" + i, IF_IN_OCTETS);
+			engine.update(keys[i], SnmpConstants.COUNTER, 0, 100);
+		}
+		Thread.sleep(50);
+		// The even counters are still polled
+		for (int i = 0; i < keys.length; i += 2) {
+			engine.update(keys[i], SnmpConstants.COUNTER, 100, 200);
+		}
+		assertEquals(100, engine.evictIdle(40));
+		assertEquals(100, engine.size());
+		assertEquals(101, engine.internedSize());
+		for (int i = 0; i < keys.length; i++) {
+			if (i % 2 == 0) {
+				assertEquals(100.0, engine.update(keys[i], SnmpConstants.COUNTER, 200, 300));
+			} else {
+				assertFalse(engine.isDiscontinuity(keys[i]));
+			}
+		}
+	}
+
+	@Test
+	void testClear() {
+		SnmpRateEngine engine = new SnmpRateEngine();
+		long key = engine.getKey("host1", IF_IN_OCTETS);
+		engine.update(key, SnmpConstants.COUNTER, 0, 100);
+		engine.clear();
+		assertEquals(0, engine.size());
+		assertEquals(0, engine.internedSize());
+		assertTrue(Double.isNaN(engine.update(key, SnmpConstants.COUNTER, 100, 200)));
+	}
+}
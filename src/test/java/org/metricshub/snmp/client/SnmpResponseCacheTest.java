@@ -0,0 +1,131 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnmpResponseCacheTest {
+
+	private static final String SYSTEM = "1.3.6.1.2.1.1";
+	private static final String SYS_DESCR = "1.3.6.1.2.1.1.1.0";
+	private static final String IF_DESCR_1 = "1.3.6.1.2.1.2.2.1.2.1";
+
+	@Test
+	void testSubtreeTtl() {
+		SnmpResponseCache cache = new SnmpResponseCache(1000000, 1, TimeUnit.SECONDS);
+		cache.setTtl("." + SYSTEM, 1, TimeUnit.HOURS);
+		cache.setTtl("1.3.6.1.2.1.1.1", 0, TimeUnit.SECONDS);
+		assertEquals(TimeUnit.HOURS.toNanos(1), cache.getTtlNanos("1.3.6.1.2.1.1.5.0"));
+		assertEquals(TimeUnit.HOURS.toNanos(1), cache.getTtlNanos(SYSTEM));
+		assertEquals(0, cache.getTtlNanos(SYS_DESCR));
+		assertEquals(TimeUnit.SECONDS.toNanos(1), cache.getTtlNanos("1.3.6.1.2.1.10"));
+		assertEquals(TimeUnit.SECONDS.toNanos(1), cache.getTtlNanos(IF_DESCR_1));
+
+		// Not kept with a TTL of 0
+		cache.put("host1", "get", SYS_DESCR, null, "Linux");
+		assertNull(cache.get("host1", "get", SYS_DESCR, null));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void testExpiry() throws InterruptedException {
+		SnmpResponseCache cache = new SnmpResponseCache(1000000, 50, TimeUnit.MILLISECONDS);
+		cache.put("host1", "get", SYS_DESCR, null, "Linux");
+		assertEquals("Linux", cache.get("host1", "get", SYS_DESCR, null));
+		Thread.sleep(100);
+		assertNull(cache.get("host1", "get", SYS_DESCR, null));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getBytes());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	void testBoundedByBytes() {
+		SnmpResponseCache cache = new SnmpResponseCache(4096, 1, TimeUnit.HOURS);
+		cache.put("host1", "get", SYS_DESCR, null, "Linux");
+		long small = cache.getBytes();
+		assertTrue(small > 0);
+
+		// Responses of 1000 characters: about 2000 bytes each
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			large.append('x');
+		}
+		cache.put("host1", "get", IF_DESCR_1, null, large.toString());
+		assertEquals(2, cache.size());
+
+		// The least recently used one goes
+		assertEquals("Linux", cache.get("host1", "get", SYS_DESCR, null));
+		cache.put("host2", "get", IF_DESCR_1, null, large.toString());
+		assertEquals(2, cache.size());
+		assertEquals("Linux", cache.get("host1", "get", SYS_DESCR, null));
+		assertNull(cache.get("host1", "get", IF_DESCR_1, null));
+		assertNotNull(cache.get("host2", "get", IF_DESCR_1, null));
+		assertTrue(cache.getBytes() <= 4096);
+
+		// Larger than the whole cache: not kept, and nothing evicted
+		cache.put("host3", "get", IF_DESCR_1, null, large.toString() + large + large);
+		assertNull(cache.get("host3", "get", IF_DESCR_1, null));
+		assertEquals(2, cache.size());
+
+		// Replacing an entry does not count it twice
+		long bytes = cache.getBytes();
+		cache.put("host1", "get", SYS_DESCR, null, "Linux");
+		assertEquals(bytes, cache.getBytes());
+
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getBytes());
+	}
+
+	@Test
+	void testInvalidate() {
+		SnmpResponseCache cache = new SnmpResponseCache(1000000, 1, TimeUnit.HOURS);
+		cache.put("host1", "get", SYS_DESCR, null, "Linux");
+		cache.put("host1", "get", IF_DESCR_1 + "0", null, "eth9");
+		cache.put("host2", "get", SYS_DESCR, null, "Windows");
+
+		// A prefix of the OID string, but not the same subtree
+		cache.invalidate("host1", IF_DESCR_1);
+		assertEquals(3, cache.size());
+
+		cache.invalidate("host1", "." + SYSTEM);
+		assertNull(cache.get("host1", "get", SYS_DESCR, null));
+		assertEquals("eth9", cache.get("host1", "get", IF_DESCR_1 + "0", null));
+		assertEquals("Windows", cache.get("host2", "get", SYS_DESCR, null));
+
+		cache.invalidate("host2");
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void testInvalidSettings() {
+		assertThrows(IllegalArgumentException.class, () -> new SnmpResponseCache(0, 1, TimeUnit.SECONDS));
+		assertThrows(IllegalArgumentException.class, () -> new SnmpResponseCache(1000, -1, TimeUnit.SECONDS));
+	}
+}
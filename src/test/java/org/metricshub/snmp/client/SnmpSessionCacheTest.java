@@ -0,0 +1,163 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.co.westhawk.snmp.stack.SnmpContextBasisFace;
+import uk.co.westhawk.snmp.stack.SnmpContextv2c;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnmpSessionCacheTest {
+
+	private static final String SYS_DESCR = "1.3.6.1.2.1.1.1.0";
+
+	private FakeSnmpAgent agent;
+	private SnmpSessionCache cache;
+	private final AtomicInteger created = new AtomicInteger();
+
+	@BeforeEach
+	void setUp() throws IOException {
+		agent = new FakeSnmpAgent("public");
+		agent.put(SYS_DESCR, "Fake agent");
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (cache != null) {
+			cache.close();
+		}
+		agent.close();
+	}
+
+	private SnmpContextBasisFace createContext() throws IOException {
+		created.incrementAndGet();
+		return new SnmpContextv2c("127.0.0.1", agent.getPort());
+	}
+
+	private SnmpClient createClient(String community) throws IOException {
+		return new SnmpClient("127.0.0.1", agent.getPort(), SnmpClient.SNMP_V2C, new int[] { 200, 200 }, community,
+				null, null, null, null, null, null, null, cache);
+	}
+
+	@Test
+	void testClientsReuseTheContext() throws Exception {
+		cache = new SnmpSessionCache(1, TimeUnit.MINUTES);
+		SnmpClient first = createClient("public");
+		assertEquals("Fake agent", first.get(SYS_DESCR));
+		first.freeResources();
+
+		SnmpClient second = createClient("public");
+		SnmpClient third = createClient("public");
+		assertEquals("Fake agent", second.get(SYS_DESCR));
+		assertEquals("Fake agent", third.get(SYS_DESCR));
+		assertEquals(1, cache.size());
+		assertSame(second.getCongestionControl(), third.getCongestionControl());
+		second.freeResources();
+		third.freeResources();
+	}
+
+	@Test
+	void testCredentialsAreNotShared() throws Exception {
+		cache = new SnmpSessionCache(1, TimeUnit.MINUTES);
+		SnmpClient good = createClient("public");
+		SnmpClient bad = createClient("private");
+		assertEquals(2, cache.size());
+		assertEquals("Fake agent", good.get(SYS_DESCR));
+		assertThrows(Exception.class, () -> bad.get(SYS_DESCR));
+		good.freeResources();
+		bad.freeResources();
+	}
+
+	@Test
+	void testAcquireCreatesOnce() throws Exception {
+		cache = new SnmpSessionCache(1, TimeUnit.MINUTES);
+		List<Object> key = Arrays.asList("127.0.0.1", agent.getPort());
+		SnmpContextBasisFace context = cache.acquire(key, this::createContext);
+		assertSame(context, cache.acquire(key, this::createContext));
+		cache.release(key);
+		cache.release(key);
+		assertSame(context, cache.acquire(key, this::createContext));
+		assertEquals(1, created.get());
+	}
+
+	@Test
+	void testIdleContextsAreEvicted() throws Exception {
+		cache = new SnmpSessionCache(100, TimeUnit.MILLISECONDS);
+		List<Object> idleKey = Arrays.asList("idle");
+		List<Object> usedKey = Arrays.asList("used");
+		SnmpContextBasisFace idle = cache.acquire(idleKey, this::createContext);
+		SnmpContextBasisFace used = cache.acquire(usedKey, this::createContext);
+		cache.release(idleKey);
+		Thread.sleep(400);
+
+		assertEquals(1, cache.size());
+		assertTrue(idle.isDestroyed());
+		assertFalse(used.isDestroyed());
+
+		// A new context is created for the evicted key
+		assertNotSame(idle, cache.acquire(idleKey, this::createContext));
+		assertEquals(3, created.get());
+	}
+
+	@Test
+	void testEvictIdleKeepsRecentlyReleasedContexts() throws Exception {
+		cache = new SnmpSessionCache(1, TimeUnit.MINUTES);
+		List<Object> key = Arrays.asList("recent");
+		SnmpContextBasisFace context = cache.acquire(key, this::createContext);
+		cache.release(key);
+		cache.evictIdle();
+		assertEquals(1, cache.size());
+		assertFalse(context.isDestroyed());
+	}
+
+	@Test
+	void testFailedCreationIsNotKept() throws Exception {
+		cache = new SnmpSessionCache(100, TimeUnit.MILLISECONDS);
+		List<Object> key = Arrays.asList("failing");
+		assertThrows(IOException.class, () -> cache.acquire(key, () -> {
+			throw new IOException("No socket");
+		}));
+		assertNotNull(cache.acquire(key, this::createContext));
+		assertEquals(1, created.get());
+	}
+
+	@Test
+	void testCloseDestroysAllContexts() throws Exception {
+		cache = new SnmpSessionCache(1, TimeUnit.MINUTES);
+		SnmpContextBasisFace context = cache.acquire(Arrays.asList("used"), this::createContext);
+		cache.close();
+		assertEquals(0, cache.size());
+		assertTrue(context.isDestroyed());
+		assertThrows(IllegalStateException.class, () -> cache.acquire(Arrays.asList("used"), this::createContext));
+	}
+}
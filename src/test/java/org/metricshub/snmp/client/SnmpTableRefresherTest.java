@@ -0,0 +1,169 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package org.metricshub.snmp.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnmpTableRefresherTest {
+
+	private static final String IF_TABLE = "1.3.6.1.2.1.2.2.1";
+	private static final String IF_DESCR = IF_TABLE + ".2";
+	private static final String IF_IN_OCTETS = IF_TABLE + ".10";
+	private static final String IF_OUT_OCTETS = IF_TABLE + ".16";
+	private static final String[] COLUMNS = { "ID", "2", "10", "16" };
+
+	private FakeSnmpAgent agent;
+	private SnmpClient client;
+	private SnmpTableRefresher refresher;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		agent = new FakeSnmpAgent("public");
+		agent.putTimeTicks(SnmpTableRefresher.SYS_UPTIME, 100000);
+		agent.putTimeTicks(SnmpTableRefresher.IF_TABLE_LAST_CHANGE, 500);
+		for (int i = 1; i <= 3; i++) {
+			agent.put(IF_DESCR + "." + i, "eth" + i);
+			agent.putCounter32(IF_IN_OCTETS + "." + i, 1000 * i);
+		}
+		// Sparse: only the first row has ifOutOctets
+		agent.putCounter32(IF_OUT_OCTETS + ".1", 7);
+		client = new SnmpClient("127.0.0.1", agent.getPort(), SnmpClient.SNMP_V2C, new int[] { 200, 200 }, "public",
+				null, null, null, null, null, null, null);
+		refresher = new SnmpTableRefresher(client, IF_TABLE, COLUMNS, Arrays.asList("10", "16"),
+				Collections.singletonList(SnmpTableRefresher.IF_TABLE_LAST_CHANGE));
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.freeResources();
+		agent.close();
+	}
+
+	private static List<String> row(String... cells) {
+		return Arrays.asList(cells);
+	}
+
+	@Test
+	void testFirstRefreshReadsTheWholeTable() throws Exception {
+		final List<List<String>> rows = refresher.refresh();
+		assertTrue(refresher.isFullRead());
+		assertEquals(Arrays.asList(row("1", "eth1", "1000", "7"), row("2", "eth2", "2000", ""),
+				row("3", "eth3", "3000", "")), rows);
+		assertEquals(client.table(IF_TABLE, COLUMNS), rows);
+	}
+
+	@Test
+	void testRowsAreTheOnesOfTable() throws Exception {
+		// A row in a column that is not the first one of the table
+		agent.putCounter32(IF_IN_OCTETS + ".4", 4000);
+		final String[] columns = { "10", "2" };
+		refresher = new SnmpTableRefresher(client, IF_TABLE, columns, Collections.singletonList("10"),
+				Collections.<String>emptyList());
+		final List<List<String>> rows = refresher.refresh();
+		assertEquals(client.table(IF_TABLE, columns), rows);
+		assertEquals(row("4000", ""), rows.get(3));
+
+		assertEquals(rows, refresher.refresh());
+		assertFalse(refresher.isFullRead());
+	}
+
+	@Test
+	void testUnchangedTableOnlyGetsTheVolatileColumns() throws Exception {
+		refresher.refresh();
+		final int bulks = agent.getRequestCount(FakeSnmpAgent.GETBULK);
+		agent.putTimeTicks(SnmpTableRefresher.SYS_UPTIME, 103000);
+		agent.putCounter32(IF_IN_OCTETS + ".2", 2500);
+		agent.putCounter32(IF_OUT_OCTETS + ".1", 9);
+		agent.put(IF_DESCR + ".3", "renamed");
+
+		final List<List<String>> rows = refresher.refresh();
+		assertFalse(refresher.isFullRead());
+		assertEquals(bulks, agent.getRequestCount(FakeSnmpAgent.GETBULK));
+		assertEquals(Arrays.asList(row("1", "eth1", "1000", "9"), row("2", "eth2", "2500", ""),
+				row("3", "eth3", "3000", "")), rows);
+	}
+
+	@Test
+	void testChangeIndicatorLeadsToAFullRead() throws Exception {
+		refresher.refresh();
+		agent.put(IF_DESCR + ".3", "renamed");
+		agent.putTimeTicks(SnmpTableRefresher.IF_TABLE_LAST_CHANGE, 600);
+		assertEquals(row("3", "renamed", "3000", ""), refresher.refresh().get(2));
+		assertTrue(refresher.isFullRead());
+		refresher.refresh();
+		assertFalse(refresher.isFullRead());
+	}
+
+	@Test
+	void testRestartLeadsToAFullRead() throws Exception {
+		refresher.refresh();
+		agent.put(IF_DESCR + ".4", "eth4");
+		agent.putCounter32(IF_IN_OCTETS + ".4", 4000);
+
+		// Rows added without any indicator moving are not seen...
+		agent.putTimeTicks(SnmpTableRefresher.SYS_UPTIME, 200000);
+		assertEquals(3, refresher.refresh().size());
+		assertFalse(refresher.isFullRead());
+
+		// ... until sysUpTime goes backwards
+		agent.putTimeTicks(SnmpTableRefresher.SYS_UPTIME, 100);
+		assertEquals(4, refresher.refresh().size());
+		assertTrue(refresher.isFullRead());
+	}
+
+	@Test
+	void testDisappearedRowLeadsToAFullRead() throws Exception {
+		refresher.refresh();
+		agent.remove(IF_DESCR + ".2");
+		agent.remove(IF_IN_OCTETS + ".2");
+
+		final List<List<String>> rows = refresher.refresh();
+		assertTrue(refresher.isFullRead());
+		assertEquals(Arrays.asList(row("1", "eth1", "1000", "7"), row("3", "eth3", "3000", "")), rows);
+	}
+
+	@Test
+	void testFullReadInterval() throws Exception {
+		assertThrows(IllegalArgumentException.class, () -> refresher.setFullReadInterval(-1));
+		refresher.setFullReadInterval(100);
+		refresher.refresh();
+		refresher.refresh();
+		assertFalse(refresher.isFullRead());
+		Thread.sleep(150);
+		refresher.refresh();
+		assertTrue(refresher.isFullRead());
+
+		refresher.reset();
+		refresher.refresh();
+		assertTrue(refresher.isFullRead());
+	}
+}
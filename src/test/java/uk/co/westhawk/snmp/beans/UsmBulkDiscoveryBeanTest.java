@@ -0,0 +1,92 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package uk.co.westhawk.snmp.beans;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import uk.co.westhawk.snmp.stack.FakeSnmpv3Agent;
+import uk.co.westhawk.snmp.stack.SnmpContextv3Face;
+import uk.co.westhawk.snmp.stack.SnmpEngineId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsmBulkDiscoveryBeanTest {
+
+	private static final byte[] ENGINE_ID_1 = { (byte) 0x80, 0, 0, 0x09, 0x03, 0x0a, 0x0b, 0x0c, 0x0d, 0x0e, 0x01 };
+	private static final byte[] ENGINE_ID_2 = { (byte) 0x80, 0, 0, 0x09, 0x03, 0x0a, 0x0b, 0x0c, 0x0d, 0x0e, 0x02 };
+
+	private FakeSnmpv3Agent agent1;
+	private FakeSnmpv3Agent agent2;
+	private FakeSnmpv3Agent silent;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		agent1 = new FakeSnmpv3Agent(ENGINE_ID_1);
+		agent2 = new FakeSnmpv3Agent(ENGINE_ID_2);
+		silent = new FakeSnmpv3Agent(ENGINE_ID_2);
+		agent1.start();
+		agent2.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		agent1.close();
+		agent2.close();
+		silent.close();
+	}
+
+	@Test
+	void testDiscoverEngineIds() throws Exception {
+		final UsmBulkDiscoveryBean bean = new UsmBulkDiscoveryBean();
+		bean.setRetryIntervals(new int[] { 200, 200 });
+		bean.setConcurrency(2);
+
+		final List<UsmBulkDiscoveryBean.Result> results = bean.discover(Arrays.asList(
+				new UsmBulkDiscoveryBean.Target("127.0.0.1", agent1.getPort()),
+				new UsmBulkDiscoveryBean.Target("127.0.0.1", silent.getPort()),
+				new UsmBulkDiscoveryBean.Target("127.0.0.1", agent2.getPort()),
+				new UsmBulkDiscoveryBean.Target("127.0.0.1", agent1.getPort())));
+
+		assertEquals(4, results.size());
+		assertTrue(results.get(0).isSuccess());
+		assertEquals(new SnmpEngineId(ENGINE_ID_1), results.get(0).getEngineId());
+		assertFalse(results.get(1).isSuccess());
+		assertNull(results.get(1).getEngineId());
+		assertTrue(results.get(2).isSuccess());
+		assertEquals(new SnmpEngineId(ENGINE_ID_2), results.get(2).getEngineId());
+		assertTrue(results.get(3).isSuccess());
+		assertEquals(new SnmpEngineId(ENGINE_ID_1), results.get(3).getEngineId());
+	}
+
+	@Test
+	void testPrivacyWithoutAuthenticationIsRejected() {
+		final UsmBulkDiscoveryBean.Target target = new UsmBulkDiscoveryBean.Target("127.0.0.1", 161);
+		assertThrows(IllegalArgumentException.class,
+				() -> target.setPrivacyDetails("privacy", SnmpContextv3Face.AES_ENCRYPT));
+	}
+}
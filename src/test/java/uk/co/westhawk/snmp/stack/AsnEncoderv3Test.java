@@ -0,0 +1,146 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package uk.co.westhawk.snmp.stack;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.westhawk.snmp.util.SnmpUtilities;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the messages of AsnEncoderv3 with the messages the encoder
+ * built before the message template was introduced, for the same input.
+ */
+class AsnEncoderv3Test {
+
+	private static final String ENGINE_ID = "80000009030001020304050607";
+
+	// Encoded by the previous encoder
+	private static final String NO_AUTH_GET = "306C020103300E020210920202051404010402010304253023040D80000009030001020304050607020107020301E240"
+			+ "04067075626C6963040004003030040D800000090300010203040506070403637478A01A02020309020100020100300E"
+			+ "300C06082B060102010101000400";
+
+	private static final String NO_AUTH_RESPONSE = "3081A2020103300E020210920202051404010002010304253023040D80000009030001020304050607020107020301E2"
+			+ "4004067075626C6963040004003066040D800000090300010203040506070403637478A2500202030902010002010030"
+			+ "44302006082B0601020101010004146161616161616161616161616161616161616161302006082B0601020101020004"
+			+ "146262626262626262626262626262626262626262";
+
+	private static final String MD5_GET = "308195020103300E020210920202051404010502010304323030040D80000009030001020304050607020107020301E2"
+			+ "4004076D643575736572040CE79A0160C54A5F5C042715D60400304C040D800000090300010203040506070403637478"
+			+ "A03602020309020100020100302A300C06082B060102010101000400300C06082B060102010102000400300C06082B06"
+			+ "0102010103000400";
+
+	private static final String SHA1_SET_LONG = "30820147020103300E020210920202051404010502010304333031040D80000009030001020304050607020107020301"
+			+ "E24004087368613175736572040C8063E306D9BBF055E4AEF5F104003081FC040D800000090300010203040506070403"
+			+ "637478A381E5020203090201000201003081D83081D506082B060102010101000481C861616161616161616161616161"
+			+ "616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161"
+			+ "616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161"
+			+ "616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161"
+			+ "61616161616161616161616161616161616161616161616161616161616161616161616161616161616161";
+
+	private static final String SHA256_SET_LONGER = "3082043A020103300E02021092020205140401050201030441303F040D80000009030001020304050607020107020301"
+			+ "E240040A736861323536757365720418345DDEA7E38B332757FDA3D7D01E585C30A731CE33272F680400308203E0040D"
+			+ "800000090300010203040506070403637478A38203C802020309020100020100308203BA3082013A06082B0601020101"
+			+ "01000482012C616161616161616161616161616161616161616161616161616161616161616161616161616161616161"
+			+ "616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161"
+			+ "616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161"
+			+ "616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161"
+			+ "616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161"
+			+ "616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161616161"
+			+ "6161616161616161616161616161616161613082013A06082B060102010102000482012C626262626262626262626262"
+			+ "626262626262626262626262626262626262626262626262626262626262626262626262626262626262626262626262"
+			+ "626262626262626262626262626262626262626262626262626262626262626262626262626262626262626262626262"
+			+ "626262626262626262626262626262626262626262626262626262626262626262626262626262626262626262626262"
+			+ "626262626262626262626262626262626262626262626262626262626262626262626262626262626262626262626262"
+			+ "626262626262626262626262626262626262626262626262626262626262626262626262626262626262626262626262"
+			+ "626262626262626262626262626262626262626262626262626262626262626262626262626262626262626262626262"
+			+ "3082013A06082B060102010103000482012C636363636363636363636363636363636363636363636363636363636363"
+			+ "636363636363636363636363636363636363636363636363636363636363636363636363636363636363636363636363"
+			+ "636363636363636363636363636363636363636363636363636363636363636363636363636363636363636363636363"
+			+ "636363636363636363636363636363636363636363636363636363636363636363636363636363636363636363636363"
+			+ "636363636363636363636363636363636363636363636363636363636363636363636363636363636363636363636363"
+			+ "636363636363636363636363636363636363636363636363636363636363636363636363636363636363636363636363"
+			+ "636363636363636363636363636363636363636363636363636363636363";
+
+	private static final String SHA512_GETBULK = "3081AE020103300E020210920202051404010502010304593057040D80000009030001020304050607020107020301E2"
+			+ "40040A73686135313275736572043011EF01D256BFF604DC0EBB2B9283268A73E3D30A26CD358F4CB68C36F7EDAE9D27"
+			+ "8D4A04838DBCC4A50A883039342A270400303E040D800000090300010203040506070403637478A52802020309020100"
+			+ "020100301C300C06082B060102010101000400300C06082B060102010102000400";
+
+	@Test
+	void testNoAuthentication() throws Exception {
+		assertEquals(NO_AUTH_GET, encode(-1, "public", SnmpConstants.GET_REQ_MSG, 1, 0));
+		assertEquals(NO_AUTH_RESPONSE, encode(-1, "public", SnmpConstants.GET_RSP_MSG, 2, 20));
+	}
+
+	@Test
+	void testAuthentication() throws Exception {
+		assertEquals(MD5_GET, encode(SnmpContextv3Face.MD5_PROTOCOL, "md5user", SnmpConstants.GET_REQ_MSG, 3, 0));
+		assertEquals(SHA512_GETBULK,
+				encode(SnmpContextv3Face.SHA512_PROTOCOL, "sha512user", SnmpConstants.GETBULK_REQ_MSG, 2, 0));
+	}
+
+	@Test
+	void testLongFormLengths() throws Exception {
+		assertEquals(SHA1_SET_LONG,
+				encode(SnmpContextv3Face.SHA1_PROTOCOL, "sha1user", SnmpConstants.SET_REQ_MSG, 1, 200));
+		assertEquals(SHA256_SET_LONGER,
+				encode(SnmpContextv3Face.SHA256_PROTOCOL, "sha256user", SnmpConstants.SET_REQ_MSG, 3, 300));
+	}
+
+	/**
+	 * Encodes a message with the given number of OctetString values of the
+	 * given length, and returns it in hex.
+	 */
+	private static String encode(int authProtocol, String user, byte msgType, int values, int valueLength)
+			throws Exception {
+		final SnmpContextv3 context = new SnmpContextv3("127.0.0.1", 16199);
+		try {
+			context.setUserName(user);
+			if (authProtocol >= 0) {
+				context.setUseAuthentication(true);
+				context.setAuthenticationProtocol(authProtocol);
+				context.setUserAuthenticationPassword("authenticationPassword");
+			}
+			context.setContextEngineId(SnmpUtilities.toBytes(ENGINE_ID));
+			context.setContextName("ctx");
+
+			final Vector<varbind> vars = new Vector<>();
+			for (int i = 0; i < values; i++) {
+				final byte[] value = new byte[valueLength];
+				Arrays.fill(value, (byte) ('a' + i));
+				vars.add(new varbind("1.3.6.1.2.1.1." + (i + 1) + ".0", new AsnOctets(value)));
+			}
+			final TimeWindowNode node = new TimeWindowNode(SnmpEngineId.fromHexString(ENGINE_ID), 7, 123456);
+			final byte[] message = new AsnEncoderv3().EncodeSNMPv3(context, 4242, node, msgType, 777, 0, 0,
+					vars.elements());
+			return SnmpUtilities.toHexString(message);
+		} finally {
+			context.destroy();
+		}
+	}
+}
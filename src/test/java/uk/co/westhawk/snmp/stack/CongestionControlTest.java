@@ -0,0 +1,331 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package uk.co.westhawk.snmp.stack;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CongestionControlTest {
+
+	private static final String SYS_UP_TIME = "1.3.6.1.2.1.1.3.0";
+	private static final String IGNORED = EchoSnmpAgent.IGNORED_OID + ".1.0";
+
+	private EchoSnmpAgent agent;
+	private SnmpContextv2c context;
+	private CongestionControl control;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		agent = new EchoSnmpAgent();
+		context = new SnmpContextv2c("127.0.0.1", agent.getPort());
+		control = context.getCongestionControl();
+	}
+
+	@AfterEach
+	void tearDown() {
+		context.destroy();
+		agent.close();
+	}
+
+	private GetPdu createPdu(String oid, int... retryIntervals) {
+		final GetPdu pdu = new GetPdu(context);
+		pdu.setRetryIntervals(retryIntervals);
+		pdu.addOid(oid);
+		return pdu;
+	}
+
+	@Test
+	void testWindowLimitsTheRequestsInFlight() throws Exception {
+		control.setLimits(2, 2);
+		createPdu(IGNORED, 300).send();
+		createPdu(IGNORED, 300).send();
+		assertEquals(2, control.getInFlight());
+
+		// The third one waits for a slot, i.e. the timeout of one of the others
+		final CountDownLatch sent = new CountDownLatch(1);
+		final Thread thread = new Thread(() -> {
+			try {
+				createPdu(SYS_UP_TIME, 300).send();
+			} catch (Exception e) {
+				// Never sent
+			}
+			sent.countDown();
+		});
+		thread.start();
+		assertFalse(sent.await(150, TimeUnit.MILLISECONDS));
+		assertEquals(2, control.getInFlight());
+		assertTrue(sent.await(2, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void testResponseFreesTheSlotBeforeTheObservers() throws Exception {
+		control.setLimits(1, 1);
+		final AtomicReference<Integer> inFlight = new AtomicReference<>();
+		final GetPdu pdu = createPdu(SYS_UP_TIME, 1000);
+		pdu.addObserver((observable, arg) -> inFlight.set(control.getInFlight()));
+		pdu.send();
+		assertTrue(pdu.waitForSelf());
+		assertEquals(Integer.valueOf(0), inFlight.get());
+	}
+
+	@Test
+	void testSendFromUpdate() throws Exception {
+		control.setLimits(1, 1);
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+		final AtomicReference<GetPdu> second = new AtomicReference<>();
+		final AtomicLong sendTime = new AtomicLong();
+		final GetPdu first = createPdu(SYS_UP_TIME, 1000);
+		first.addObserver((observable, arg) -> {
+			try {
+				final long start = System.nanoTime();
+				final GetPdu pdu = createPdu(SYS_UP_TIME, 1000);
+				pdu.send();
+				sendTime.set(System.nanoTime() - start);
+				second.set(pdu);
+			} catch (Exception e) {
+				failure.set(e);
+			}
+		});
+		first.send();
+		assertTrue(first.waitForSelf());
+		assertNull(failure.get());
+		assertTrue(second.get().waitForSelf());
+		assertTrue(sendTime.get() < TimeUnit.MILLISECONDS.toNanos(100));
+	}
+
+	@Test
+	void testNoLimitByDefault() throws Exception {
+		assertFalse(control.isLimited());
+
+		// Beans that chain requests from update() are not held back
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+		final CountDownLatch updated = new CountDownLatch(1);
+		final GetPdu first = createPdu(SYS_UP_TIME, 1000);
+		first.addObserver((observable, arg) -> {
+			try {
+				for (int i = 0; i < 10; i++) {
+					createPdu(IGNORED, 1000).send();
+				}
+			} catch (Exception e) {
+				failure.set(e);
+			}
+			updated.countDown();
+		});
+		first.send();
+		assertTrue(updated.await(2, TimeUnit.SECONDS));
+		assertNull(failure.get());
+		assertEquals(10, control.getInFlight());
+		assertEquals(0, control.getDecreases());
+	}
+
+	@Test
+	void testSendFromUpdateFailsFastWithoutSlot() throws Exception {
+		control.setLimits(2, 2);
+		createPdu(IGNORED, 1000).send();
+
+		// The response frees a slot for one request, not two
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+		final AtomicLong sendTime = new AtomicLong();
+		final GetPdu first = createPdu(SYS_UP_TIME, 1000);
+		first.addObserver((observable, arg) -> {
+			final long start = System.nanoTime();
+			try {
+				createPdu(IGNORED, 1000).send();
+				createPdu(IGNORED, 1000).send();
+			} catch (Exception e) {
+				failure.set(e);
+			}
+			sendTime.set(System.nanoTime() - start);
+		});
+		first.send();
+		assertTrue(first.waitForSelf());
+		assertTrue(failure.get() instanceof PduException);
+		assertTrue(sendTime.get() < TimeUnit.MILLISECONDS.toNanos(100));
+		assertEquals(2, control.getInFlight());
+	}
+
+	@Test
+	void testRateCapDoesNotBlockTheReceiver() throws Exception {
+		control.setMaxRequestRate(5);
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+		final AtomicReference<GetPdu> second = new AtomicReference<>();
+		final AtomicLong sendTime = new AtomicLong();
+		final GetPdu first = createPdu(SYS_UP_TIME, 1000);
+		first.addObserver((observable, arg) -> {
+			try {
+				final long start = System.nanoTime();
+				final GetPdu pdu = createPdu(SYS_UP_TIME, 1000);
+				pdu.send();
+				sendTime.set(System.nanoTime() - start);
+				second.set(pdu);
+			} catch (Exception e) {
+				failure.set(e);
+			}
+		});
+		final long start = System.nanoTime();
+		first.send();
+		assertTrue(first.waitForSelf());
+		assertNull(failure.get());
+		assertTrue(sendTime.get() < TimeUnit.MILLISECONDS.toNanos(100));
+
+		// The transmitter waited for the rate cap instead
+		assertTrue(second.get().waitForSelf());
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(180));
+	}
+
+	private void openCircuit() throws Exception {
+		control.setCircuitBreaker(2, 300);
+		for (int i = 0; i < 2; i++) {
+			final GetPdu pdu = createPdu(IGNORED, 100);
+			pdu.send();
+			pdu.waitForSelf();
+			assertTrue(pdu.isTimedOut());
+		}
+		assertEquals(CongestionControl.CircuitState.OPEN, control.getCircuitState());
+	}
+
+	@Test
+	void testNoCircuitBreakerByDefault() throws Exception {
+		for (int i = 0; i < 4; i++) {
+			final GetPdu pdu = createPdu(IGNORED, 50);
+			pdu.send();
+			pdu.waitForSelf();
+			assertTrue(pdu.isTimedOut());
+		}
+		assertEquals(4, control.getConsecutiveTimeouts());
+		assertEquals(CongestionControl.CircuitState.CLOSED, control.getCircuitState());
+		final GetPdu pdu = createPdu(SYS_UP_TIME, 1000);
+		pdu.send();
+		assertTrue(pdu.waitForSelf());
+	}
+
+	@Test
+	void testCircuitOutlivesTheContexts() throws Exception {
+		openCircuit();
+		final SnmpContextv2c other = new SnmpContextv2c("127.0.0.1", agent.getPort());
+		assertSame(control, other.getCongestionControl());
+		context.destroy();
+		other.destroy();
+
+		// No context left: the agent is still known to be unresponsive
+		assertFalse(CongestionControl.isAvailable("127.0.0.1", agent.getPort()));
+		context = new SnmpContextv2c("127.0.0.1", agent.getPort());
+		assertSame(control, context.getCongestionControl());
+		final GetPdu pdu = new GetPdu(context);
+		pdu.addOid(SYS_UP_TIME);
+		assertThrows(AgentUnavailableException.class, pdu::send);
+	}
+
+	@Test
+	void testIdleAgentIsForgotten() throws Exception {
+		openCircuit();
+		context.destroy();
+		try {
+			CongestionControl.setIdleTimeout(50);
+			Thread.sleep(100);
+			assertTrue(CongestionControl.isAvailable("127.0.0.1", agent.getPort()));
+			context = new SnmpContextv2c("127.0.0.1", agent.getPort());
+			assertNotSame(control, context.getCongestionControl());
+			assertEquals(CongestionControl.CircuitState.CLOSED, context.getCongestionControl().getCircuitState());
+		} finally {
+			CongestionControl.setIdleTimeout(CongestionControl.DEFAULT_IDLE_TIMEOUT);
+		}
+		assertThrows(IllegalArgumentException.class, () -> CongestionControl.setIdleTimeout(0));
+	}
+
+	@Test
+	void testTimeoutsOpenTheCircuit() throws Exception {
+		openCircuit();
+		assertEquals(2, control.getConsecutiveTimeouts());
+		assertFalse(control.isAvailable());
+		assertFalse(CongestionControl.isAvailable("127.0.0.1", agent.getPort()));
+		assertThrows(AgentUnavailableException.class, () -> createPdu(SYS_UP_TIME, 100).send());
+
+		// The probe closes the circuit
+		Thread.sleep(350);
+		assertTrue(control.isAvailable());
+		final GetPdu probe = createPdu(SYS_UP_TIME, 1000);
+		probe.send();
+		assertTrue(probe.waitForSelf());
+		assertEquals(CongestionControl.CircuitState.CLOSED, control.getCircuitState());
+		assertEquals(0, control.getConsecutiveTimeouts());
+	}
+
+	@Test
+	void testProbeTimeoutReopensTheCircuit() throws Exception {
+		openCircuit();
+		Thread.sleep(350);
+		final GetPdu probe = createPdu(IGNORED, 100);
+		probe.send();
+		assertEquals(CongestionControl.CircuitState.HALF_OPEN, control.getCircuitState());
+		assertThrows(AgentUnavailableException.class, () -> createPdu(SYS_UP_TIME, 100).send());
+		probe.waitForSelf();
+		assertTrue(probe.isTimedOut());
+		Thread.sleep(50);
+		assertEquals(CongestionControl.CircuitState.OPEN, control.getCircuitState());
+		assertFalse(control.isAvailable());
+	}
+
+	@Test
+	void testDestroyedProbeDoesNotKeepTheCircuitHalfOpen() throws Exception {
+		final SnmpContextv2c other = new SnmpContextv2c("127.0.0.1", agent.getPort());
+		openCircuit();
+		Thread.sleep(350);
+		final GetPdu probe = new GetPdu(other);
+		probe.setRetryIntervals(new int[] { 1000 });
+		probe.addOid(IGNORED);
+		probe.send();
+		assertEquals(CongestionControl.CircuitState.HALF_OPEN, control.getCircuitState());
+		other.destroy();
+
+		// The next request is the probe
+		assertEquals(CongestionControl.CircuitState.OPEN, control.getCircuitState());
+		assertTrue(control.isAvailable());
+		final GetPdu next = createPdu(SYS_UP_TIME, 1000);
+		next.send();
+		assertTrue(next.waitForSelf());
+		assertEquals(CongestionControl.CircuitState.CLOSED, control.getCircuitState());
+	}
+
+	@Test
+	void testCancelledProbeDoesNotKeepTheCircuitHalfOpen() throws Exception {
+		openCircuit();
+		Thread.sleep(350);
+		final GetPdu probe = createPdu(IGNORED, 1000);
+		probe.send();
+		assertEquals(CongestionControl.CircuitState.HALF_OPEN, control.getCircuitState());
+		probe.cancel();
+		Thread.sleep(100);
+		assertEquals(0, control.getInFlight());
+		assertEquals(CongestionControl.CircuitState.OPEN, control.getCircuitState());
+		assertTrue(control.isAvailable());
+	}
+}
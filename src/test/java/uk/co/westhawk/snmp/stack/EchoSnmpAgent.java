@@ -0,0 +1,133 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package uk.co.westhawk.snmp.stack;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+/**
+ * An SNMP v1/v2c agent on the loopback interface that answers each request
+ * with the same varbinds, or not at all when it is silent or the request
+ * holds an OID under {@link #IGNORED_OID}.
+ */
+class EchoSnmpAgent implements AutoCloseable {
+
+	/**
+	 * The requests of the OIDs under this one are never answered.
+	 */
+	static final String IGNORED_OID = "1.3.6.1.4.1.99999";
+
+	private static final byte[] IGNORED_OID_BYTES = { 0x2b, 0x06, 0x01, 0x04, 0x01, (byte) 0x86, (byte) 0x8d, 0x1f };
+
+	private final DatagramSocket socket;
+	private final Thread thread;
+	private volatile boolean silent;
+
+	EchoSnmpAgent() throws IOException {
+		socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+		thread = new Thread(this::receive, "EchoSnmpAgent");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	int getPort() {
+		return socket.getLocalPort();
+	}
+
+	/**
+	 * Makes the agent stop answering.
+	 */
+	void setSilent(boolean silent) {
+		this.silent = silent;
+	}
+
+	@Override
+	public void close() {
+		socket.close();
+	}
+
+	private void receive() {
+		final byte[] buffer = new byte[65535];
+		while (!socket.isClosed()) {
+			try {
+				final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+				socket.receive(packet);
+				final byte[] message = new byte[packet.getLength()];
+				System.arraycopy(buffer, 0, message, 0, message.length);
+				if (silent || contains(message, IGNORED_OID_BYTES)) {
+					continue;
+				}
+
+				// Message, version, community, then the PDU, whose tag becomes
+				// GetResponse
+				int offset = skipHeader(message, 0);
+				offset = skip(message, offset);
+				offset = skip(message, offset);
+				message[offset] = (byte) 0xa2;
+				socket.send(new DatagramPacket(message, message.length, packet.getSocketAddress()));
+			} catch (IOException | RuntimeException e) {
+				// Closed, or not a request
+			}
+		}
+	}
+
+	/**
+	 * @return The offset of the value of the TLV at offset
+	 */
+	private static int skipHeader(byte[] message, int offset) {
+		int length = message[offset + 1] & 0xff;
+		return offset + 2 + ((length & 0x80) != 0 ? length & 0x7f : 0);
+	}
+
+	/**
+	 * @return The offset of the TLV after the one at offset
+	 */
+	private static int skip(byte[] message, int offset) {
+		int length = message[offset + 1] & 0xff;
+		int header = 2;
+		if ((length & 0x80) != 0) {
+			int count = length & 0x7f;
+			length = 0;
+			for (int i = 0; i < count; i++) {
+				length = (length << 8) | (message[offset + 2 + i] & 0xff);
+			}
+			header += count;
+		}
+		return offset + header + length;
+	}
+
+	private static boolean contains(byte[] message, byte[] bytes) {
+		for (int i = 0; i + bytes.length <= message.length; i++) {
+			int j = 0;
+			while (j < bytes.length && message[i + j] == bytes[j]) {
+				j++;
+			}
+			if (j == bytes.length) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
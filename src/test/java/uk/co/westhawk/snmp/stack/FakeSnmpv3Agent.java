@@ -0,0 +1,159 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package uk.co.westhawk.snmp.stack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+/**
+ * A minimal SNMPv3 agent on the loopback address, for tests. It answers an
+ * unknown engine ID with a report, and any other request with an empty
+ * response. It does not support authentication. Until started, it does not
+ * answer at all.
+ */
+public class FakeSnmpv3Agent implements AutoCloseable {
+
+	private static final byte[] UNKNOWN_ENGINE_IDS_OID = { 0x2b, 6, 1, 6, 3, 15, 1, 1, 4, 0 };
+
+	private final byte[] engineId;
+	private final DatagramSocket agent;
+
+	public FakeSnmpv3Agent(byte[] engineId) throws IOException {
+		this.engineId = engineId;
+		agent = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+	}
+
+	public int getPort() {
+		return agent.getLocalPort();
+	}
+
+	@Override
+	public void close() {
+		agent.close();
+	}
+
+	/**
+	 * Starts answering.
+	 */
+	public void start() {
+		final Thread thread = new Thread(() -> {
+			final byte[] buffer = new byte[4096];
+			while (!agent.isClosed()) {
+				try {
+					final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+					agent.receive(packet);
+					final byte[] reply = answer(buffer);
+					agent.send(new DatagramPacket(reply, reply.length, packet.getSocketAddress()));
+				} catch (Exception e) {
+					// closed
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private byte[] answer(byte[] message) {
+		final int[] top = tlv(message, 0);
+		final int[] version = tlv(message, top[1]);
+		final int[] header = tlv(message, next(version));
+		final int msgId = intValue(message, tlv(message, header[1]));
+		final int[] securityParameters = tlv(message, next(header));
+		final int[] usm = tlv(message, securityParameters[1]);
+		final int[] receivedEngineId = tlv(message, usm[1]);
+		final boolean discovery = receivedEngineId[2] == 0;
+		final int[] userName = tlv(message, next(tlv(message, next(tlv(message, next(receivedEngineId))))));
+		final byte[] user = new byte[userName[2]];
+		System.arraycopy(message, userName[1], user, 0, user.length);
+		final int[] scopedPdu = tlv(message, next(securityParameters));
+		final int[] contextName = tlv(message, next(tlv(message, scopedPdu[1])));
+		final int[] pdu = tlv(message, next(contextName));
+		final int reqId = intValue(message, tlv(message, pdu[1]));
+
+		final byte[] varbinds = discovery
+				? encode(0x30, encode(0x30, encode(0x06, UNKNOWN_ENGINE_IDS_OID), encode(0x41, new byte[] { 1 })))
+				: encode(0x30);
+		return encode(0x30,
+				integer(3),
+				encode(0x30, integer(msgId), integer(65507), encode(0x04, new byte[] { 0 }), integer(3)),
+				encode(0x04, encode(0x30, encode(0x04, engineId), integer(1), integer(100),
+						encode(0x04, user), encode(0x04), encode(0x04))),
+				encode(0x30, encode(0x04, engineId), encode(0x04),
+						encode(discovery ? 0xa8 : 0xa2, integer(reqId), integer(0), integer(0), varbinds)));
+	}
+
+	/**
+	 * Returns the tag, value offset and value length of the TLV at offset.
+	 */
+	private static int[] tlv(byte[] b, int offset) {
+		final int tag = b[offset] & 0xff;
+		int length = b[offset + 1] & 0xff;
+		int value = offset + 2;
+		if (length > 0x80) {
+			final int n = length & 0x7f;
+			length = 0;
+			for (int i = 0; i < n; i++) {
+				length = (length << 8) | (b[value++] & 0xff);
+			}
+		}
+		return new int[] { tag, value, length };
+	}
+
+	private static int next(int[] tlv) {
+		return tlv[1] + tlv[2];
+	}
+
+	private static int intValue(byte[] b, int[] tlv) {
+		final byte[] value = new byte[tlv[2]];
+		System.arraycopy(b, tlv[1], value, 0, value.length);
+		return new BigInteger(value).intValue();
+	}
+
+	private static byte[] integer(int value) {
+		return encode(0x02, BigInteger.valueOf(value).toByteArray());
+	}
+
+	private static byte[] encode(int tag, byte[]... parts) {
+		final ByteArrayOutputStream value = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			value.write(part, 0, part.length);
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(tag);
+		final int length = value.size();
+		if (length < 0x80) {
+			out.write(length);
+		} else {
+			out.write(0x82);
+			out.write(length >> 8);
+			out.write(length);
+		}
+		final byte[] bytes = value.toByteArray();
+		out.write(bytes, 0, bytes.length);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,160 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package uk.co.westhawk.snmp.stack;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import uk.co.westhawk.snmp.util.SnmpUtilities;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnmpContextv3BasisTest {
+
+	private static final byte[] ENGINE_ID = { (byte) 0x80, 0, 0, 0x09, 0x03, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06 };
+
+	private FakeSnmpv3Agent agent;
+	private SnmpContextv3 context;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		if (TimeWindow.getCurrent() == null) {
+			new TimeWindow();
+		}
+		agent = new FakeSnmpv3Agent(ENGINE_ID);
+		context = new SnmpContextv3("127.0.0.1", agent.getPort());
+		context.setUserName("test");
+	}
+
+	@AfterEach
+	void tearDown() {
+		context.destroy();
+		agent.close();
+	}
+
+	@Test
+	void testDiscoveryFromObserverDoesNotBlockTheReceiver() throws Exception {
+		agent.start();
+
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+		final AtomicReference<GetPdu> second = new AtomicReference<>();
+		final GetPdu first = new GetPdu(context);
+		first.setRetryIntervals(new int[] { 1000, 2000 });
+		first.addOid("1.3.6.1.2.1.1.3.0");
+		first.addObserver((observable, arg) -> {
+			// Forget the engine, so the next PDU is discovered again from
+			// the receiver thread
+			TimeWindow.getCurrent().clearTimeWindow(new SnmpEngineId(ENGINE_ID));
+			try {
+				final GetPdu pdu = new GetPdu(context);
+				pdu.setRetryIntervals(new int[] { 1000, 2000 });
+				pdu.addOid("1.3.6.1.2.1.1.5.0");
+				pdu.send();
+				second.set(pdu);
+			} catch (Exception e) {
+				failure.set(e);
+			}
+		});
+		first.send();
+		first.waitForSelf();
+
+		assertNull(failure.get());
+		assertNotNull(second.get());
+		assertTrue(second.get().waitForSelf());
+		assertEquals(SnmpConstants.SNMP_ERR_NOERROR, second.get().getErrorStatus());
+	}
+
+	@Test
+	void testWaitingForAFailedDiscoveryDoesNotHang() throws Exception {
+		// The agent never answers
+		final int[] retryIntervals = { 100, 100 };
+		final CountDownLatch done = new CountDownLatch(2);
+		final AtomicReference<Exception> failure1 = new AtomicReference<>();
+		final AtomicReference<Exception> failure2 = new AtomicReference<>();
+		final Thread t1 = new Thread(() -> discover(retryIntervals, failure1, done));
+		final Thread t2 = new Thread(() -> discover(retryIntervals, failure2, done));
+		t1.start();
+		t2.start();
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(failure1.get() instanceof PduException);
+		assertTrue(failure2.get() instanceof PduException);
+	}
+
+	private void discover(int[] retryIntervals, AtomicReference<Exception> failure, CountDownLatch done) {
+		try {
+			context.discoverIfNeeded(retryIntervals);
+		} catch (Exception e) {
+			failure.set(e);
+		} finally {
+			done.countDown();
+		}
+	}
+
+	@Test
+	void testFailedSendForgetsTheMsgId() throws Exception {
+		// The agent never answers: the discovery fails, and the PDU is not added
+		final GetPdu pdu = new GetPdu(context);
+		pdu.setRetryIntervals(new int[] { 100 });
+		pdu.addOid("1.3.6.1.2.1.1.3.0");
+		assertThrows(PduException.class, pdu::send);
+
+		// The discovery PDUs are forgotten once their transmitter is done
+		final Field msgIdHash = SnmpContextv3Basis.class.getDeclaredField("msgIdHash");
+		msgIdHash.setAccessible(true);
+		final Map<?, ?> msgIds = (Map<?, ?>) msgIdHash.get(context);
+		for (int i = 0; i < 50 && !msgIds.isEmpty(); i++) {
+			Thread.sleep(20);
+		}
+		assertTrue(msgIds.isEmpty());
+		final Field msgIdUsers = SnmpContextv3Basis.class.getDeclaredField("msgIdUsers");
+		msgIdUsers.setAccessible(true);
+		assertTrue(((Map<?, ?>) msgIdUsers.get(context)).isEmpty());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	void testDeprecatedKeyMethodsDelegateToTheUser() {
+		// The test vectors of RFC 3414, appendix A.3
+		final SnmpEngineId engineId = SnmpEngineId.fromHexString("000000000000000000000002");
+		context.setUserAuthenticationPassword("maplesyrup");
+		context.setUserPrivacyPassword("maplesyrup");
+		assertEquals("526F5EED9FCCE26F8964C2930787D82B", SnmpUtilities.toHexString(
+				context.generatePrivacyKey(engineId.toString(), SnmpContextv3Face.MD5_PROTOCOL,
+						SnmpContextv3Face.DES_ENCRYPT)));
+
+		final byte[] message = "some message".getBytes();
+		final byte[] expected = new UsmUser("test", SnmpContextv3Face.SHA1_PROTOCOL, "maplesyrup")
+				.computeFingerprint(engineId, message);
+		assertArrayEquals(expected, context.computeFingerprint(engineId, SnmpContextv3Face.SHA1_PROTOCOL, null, message));
+		final byte[] unknown = new byte[12];
+		assertSame(unknown, context.computeFingerprint(engineId, 99, unknown, message));
+	}
+}
@@ -0,0 +1,100 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package uk.co.westhawk.snmp.stack;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeWindowNodeTest {
+
+	private static final SnmpEngineId ENGINE_ID = SnmpEngineId.fromHexString("800000090300aabbccddeeff");
+
+	@Test
+	void testTimelineIsConsistentSnapshot() {
+		final TimeWindowNode node = new TimeWindowNode(ENGINE_ID, 3, 1000);
+		final TimeWindowNode.Timeline before = node.getTimeline();
+
+		assertTrue(node.updateIfNewer(4, 10));
+
+		// The old snapshot is not affected by the update
+		assertEquals(3, before.getSnmpEngineBoots());
+		assertEquals(1000, before.getLatestReceivedEngineTime());
+		final TimeWindowNode.Timeline after = node.getTimeline();
+		assertEquals(4, after.getSnmpEngineBoots());
+		assertEquals(10, after.getLatestReceivedEngineTime());
+		assertTrue(after.getSnmpEngineTime() >= 10);
+	}
+
+	@Test
+	void testUpdateIfNewer() {
+		final TimeWindowNode node = new TimeWindowNode(ENGINE_ID, 3, 1000);
+
+		assertFalse(node.updateIfNewer(2, 5000));
+		assertFalse(node.updateIfNewer(3, 1000));
+		assertEquals(1000, node.getLatestReceivedEngineTime());
+
+		assertTrue(node.updateIfNewer(3, 1001));
+		assertEquals(3, node.getSnmpEngineBoots());
+		assertEquals(1001, node.getLatestReceivedEngineTime());
+	}
+
+	@Test
+	void testRestoredNodeAcceptsAnyUpdate() {
+		final TimeWindowNode node = new TimeWindowNode(ENGINE_ID, 7, 5000);
+		node.setRestored(true);
+		assertTrue(node.isRestored());
+		assertEquals(7, node.getSnmpEngineBoots());
+
+		assertTrue(node.updateIfNewer(1, 1));
+		assertFalse(node.isRestored());
+		assertEquals(1, node.getSnmpEngineBoots());
+		assertEquals(1, node.getLatestReceivedEngineTime());
+	}
+
+	@Test
+	void testEngineTimeWrapsIntoBoots() {
+		final TimeWindowNode node = new TimeWindowNode(ENGINE_ID, 1, TimeWindowNode.maxTime);
+
+		// One second later at most: still the same or one more boot
+		final TimeWindowNode.Timeline timeline = node.getTimeline();
+		final int boots = timeline.getSnmpEngineBoots();
+		final int time = timeline.getSnmpEngineTime();
+		assertTrue(boots == 1 && time == TimeWindowNode.maxTime || boots == 2 && time >= 0);
+	}
+
+	@Test
+	void testSettersKeepOtherValues() {
+		final TimeWindowNode node = new TimeWindowNode(ENGINE_ID, 3, 1000);
+		node.setRestored(true);
+		node.setSnmpEngineBoots(5);
+		assertEquals(5, node.getSnmpEngineBoots());
+		assertEquals(1000, node.getLatestReceivedEngineTime());
+		assertTrue(node.isRestored());
+
+		node.setSnmpEngineTime(20);
+		assertEquals(5, node.getSnmpEngineBoots());
+		assertEquals(20, node.getLatestReceivedEngineTime());
+		assertTrue(node.isRestored());
+	}
+}
@@ -0,0 +1,101 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package uk.co.westhawk.snmp.stack;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeWindowStoreTest {
+
+	private TimeWindow timeWindow;
+	private File file;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		if (TimeWindow.getCurrent() == null) {
+			new TimeWindow();
+		}
+		timeWindow = TimeWindow.getCurrent();
+		file = File.createTempFile("engines", ".txt");
+		file.deleteOnExit();
+	}
+
+	@Test
+	void testSaveAndLoad() throws Exception {
+		final SnmpEngineAddress address = new SnmpEngineAddress("192.0.2.10", 161);
+		final SnmpEngineId engineId = SnmpEngineId.fromHexString("800000090300aabbccdd0010");
+		timeWindow.setSnmpEngineId(address, engineId);
+		timeWindow.updateTimeWindow(engineId, 4, 4000, false);
+
+		new TimeWindowStore(file).save();
+		final String saved = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		assertTrue(saved.contains("192.0.2.10\t161\t800000090300AABBCCDD0010\t4\t"), saved);
+
+		// Loading does not replace what is known
+		assertEquals(0, new TimeWindowStore(file).load());
+	}
+
+	@Test
+	void testPlaceholderEngineIdsAreNotSaved() throws Exception {
+		timeWindow.setSnmpEngineId(new SnmpEngineAddress("192.0.2.11", 161), SnmpEngineId.PLACEHOLDER);
+
+		new TimeWindowStore(file).save();
+		final String saved = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		assertFalse(saved.contains("192.0.2.11"), saved);
+	}
+
+	@Test
+	void testPlaceholderEngineIdsAreNotLoaded() throws Exception {
+		final long now = System.currentTimeMillis();
+		final List<String> lines = Arrays.asList(
+				"192.0.2.12\t161\t00\t-\t-\t" + now,
+				"192.0.2.13\t161\t800000090300aabbccdd0013\t1\t100\t" + now);
+		Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+
+		assertEquals(1, new TimeWindowStore(file).load());
+		assertFalse(timeWindow.isSnmpEngineIdKnown("192.0.2.12", 161));
+		assertTrue(timeWindow.isSnmpEngineIdKnown("192.0.2.13", 161));
+		final TimeWindowNode node = timeWindow.getTimeLine(SnmpEngineId.fromHexString("800000090300aabbccdd0013"));
+		assertTrue(node.isRestored());
+		assertEquals(1, node.getSnmpEngineBoots());
+	}
+
+	@Test
+	void testOldEntriesAreIgnored() throws Exception {
+		final List<String> lines = Arrays.asList("192.0.2.14\t161\t800000090300aabbccdd0014\t1\t100\t1000");
+		Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+
+		final TimeWindowStore store = new TimeWindowStore(file);
+		store.setMaxAge(60000);
+		assertEquals(0, store.load());
+		assertFalse(timeWindow.isSnmpEngineIdKnown("192.0.2.14", 161));
+	}
+}
@@ -0,0 +1,91 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package uk.co.westhawk.snmp.stack;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeWindowTest {
+
+	private TimeWindow timeWindow;
+
+	@BeforeEach
+	void setUp() {
+		if (TimeWindow.getCurrent() == null) {
+			new TimeWindow();
+		}
+		timeWindow = TimeWindow.getCurrent();
+	}
+
+	@Test
+	void testStringAndBinaryEngineIdsAreTheSame() {
+		timeWindow.setSnmpEngineId("192.0.2.1", 161, "800000090300AABBCCDDEE01");
+
+		final SnmpEngineId engineId = timeWindow.getSnmpEngineId(new SnmpEngineAddress("192.0.2.1", 161));
+		assertEquals(SnmpEngineId.fromHexString("800000090300aabbccddee01"), engineId);
+		assertEquals("800000090300AABBCCDDEE01", timeWindow.getSnmpEngineId("192.0.2.1", 161));
+		assertTrue(timeWindow.isSnmpEngineIdKnown("192.0.2.1", 161));
+		assertFalse(timeWindow.isSnmpEngineIdKnown("192.0.2.1", 162));
+		assertTrue(timeWindow.isEngineIdOK("192.0.2.1", 161, "800000090300aabbccddee01"));
+		assertFalse(timeWindow.isEngineIdOK("192.0.2.1", 161, "800000090300aabbccddee02"));
+	}
+
+	@Test
+	void testUpdateAndOutsideTimeWindow() {
+		final SnmpEngineId engineId = SnmpEngineId.fromHexString("800000090300aabbccddee03");
+		assertFalse(timeWindow.isTimeLineKnown(engineId));
+
+		// Unauthentic messages create the timeline, but do not update it
+		assertFalse(timeWindow.updateTimeWindow(engineId, 2, 1000, false));
+		assertTrue(timeWindow.isTimeLineKnown(engineId));
+		assertFalse(timeWindow.updateTimeWindow(engineId, 2, 2000, false));
+		assertTrue(timeWindow.updateTimeWindow(engineId, 2, 2000, true));
+
+		assertFalse(timeWindow.isOutsideTimeWindow(engineId, 2, 2000));
+		assertFalse(timeWindow.isOutsideTimeWindow(engineId, 2, 2000 - TimeWindow.MaxTimeDifference));
+		assertTrue(timeWindow.isOutsideTimeWindow(engineId, 2, 1000));
+		assertTrue(timeWindow.isOutsideTimeWindow(engineId, 1, 5000));
+		assertTrue(timeWindow.isOutsideTimeWindow(engineId, TimeWindowNode.maxTime, 0));
+
+		timeWindow.clearTimeWindow(engineId);
+		assertFalse(timeWindow.isTimeLineKnown(engineId));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	void testDeprecatedStringOverloads() {
+		final String hexEngineId = "800000090300AABBCCDDEE04";
+		final TimeWindowNode node = new TimeWindowNode(SnmpEngineId.fromHexString(hexEngineId), 5, 50);
+		timeWindow.setTimeLine(hexEngineId, node);
+
+		assertSame(node, timeWindow.getTimeLine(hexEngineId));
+		assertSame(node, timeWindow.getTimeLine(SnmpEngineId.fromHexString(hexEngineId)));
+		assertNull(timeWindow.getTimeLine((String) null));
+		assertEquals("192.0.2.1:161", timeWindow.getKey("192.0.2.1", 161));
+		assertEquals(new SnmpEngineAddress("192.0.2.1", 161), timeWindow.getAddressKey("192.0.2.1", 161));
+		timeWindow.updateTimeWindows();
+		timeWindow.clearTimeWindow(hexEngineId);
+	}
+}
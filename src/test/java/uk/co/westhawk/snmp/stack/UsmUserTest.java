@@ -0,0 +1,109 @@
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SNMP Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 MetricsHub
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+package uk.co.westhawk.snmp.stack;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.westhawk.snmp.util.SnmpUtilities;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsmUserTest {
+
+	// The test vectors of RFC 3414, appendix A.3
+	private static final SnmpEngineId ENGINE_ID = SnmpEngineId.fromHexString("000000000000000000000002");
+	private static final String PASSWORD = "maplesyrup";
+
+	@Test
+	void testLocalizedKeyMD5() {
+		final UsmUser user = new UsmUser("user", SnmpContextv3Face.MD5_PROTOCOL, "authPassword",
+				SnmpContextv3Face.DES_ENCRYPT, PASSWORD);
+		assertEquals("526F5EED9FCCE26F8964C2930787D82B", SnmpUtilities.toHexString(user.getPrivacyKey(ENGINE_ID)));
+	}
+
+	@Test
+	void testLocalizedKeySHA1() {
+		final UsmUser user = new UsmUser("user", SnmpContextv3Face.SHA1_PROTOCOL, "authPassword",
+				SnmpContextv3Face.AES_ENCRYPT, PASSWORD);
+		assertEquals("6695FEBC9288E36282235FC7151F128497B38F3F",
+				SnmpUtilities.toHexString(user.getPrivacyKey(ENGINE_ID)));
+	}
+
+	@Test
+	void testFingerprintUsesTheLocalizedAuthenticationKey() {
+		final UsmUser user = new UsmUser("user", SnmpContextv3Face.MD5_PROTOCOL, PASSWORD);
+		final byte[] message = "some message".getBytes();
+		final byte[] key = SnmpUtilities.toBytes("526F5EED9FCCE26F8964C2930787D82B");
+		assertArrayEquals(SnmpUtilities.getFingerPrintMD5(key, message), user.computeFingerprint(ENGINE_ID, message));
+	}
+
+	@Test
+	void testKeysAreCachedPerEngineUntilCleared() {
+		final UsmUser user = new UsmUser("user", SnmpContextv3Face.SHA1_PROTOCOL, "authPassword",
+				SnmpContextv3Face.AES_ENCRYPT, PASSWORD);
+		final byte[] key = user.getPrivacyKey(ENGINE_ID);
+		assertSame(key, user.getPrivacyKey(ENGINE_ID));
+
+		final SnmpEngineId otherEngineId = SnmpEngineId.fromHexString("000000000000000000000003");
+		assertFalse(SnmpUtilities.toHexString(key).equals(SnmpUtilities.toHexString(user.getPrivacyKey(otherEngineId))));
+
+		user.clearEngine(ENGINE_ID);
+		final byte[] recomputed = user.getPrivacyKey(ENGINE_ID);
+		assertNotSame(key, recomputed);
+		assertArrayEquals(key, recomputed);
+	}
+
+	@Test
+	void testClearTimeWindowClearsTheKeysOfTheUsers() {
+		if (TimeWindow.getCurrent() == null) {
+			new TimeWindow();
+		}
+		final UsmUser user = UsmUserTable.getCurrent().add(new UsmUser("user", SnmpContextv3Face.MD5_PROTOCOL,
+				"authPassword", SnmpContextv3Face.DES_ENCRYPT, PASSWORD));
+		final byte[] key = user.getPrivacyKey(ENGINE_ID);
+
+		TimeWindow.getCurrent().clearTimeWindow(ENGINE_ID);
+
+		assertNotSame(key, user.getPrivacyKey(ENGINE_ID));
+		UsmUserTable.getCurrent().remove(user);
+	}
+
+	@Test
+	void testUserTableIsBounded() {
+		final UsmUserTable table = new UsmUserTable();
+		table.setMaximumSize(2);
+		final UsmUser user1 = table.add(new UsmUser("user1"));
+		final UsmUser user2 = table.add(new UsmUser("user2"));
+		assertSame(user1, table.add(new UsmUser("user1")));
+
+		// user2 is now the least recently used one
+		table.add(new UsmUser("user3"));
+		assertEquals(2, table.size());
+		assertSame(user1, table.add(new UsmUser("user1")));
+		assertNotSame(user2, table.add(new UsmUser("user2")));
+		assertEquals(2, table.size());
+
+		table.setMaximumSize(1);
+		assertEquals(1, table.size());
+	}
+}